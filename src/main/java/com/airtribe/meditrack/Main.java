@@ -1,10 +1,14 @@
 package com.airtribe.meditrack;
 
+import com.airtribe.meditrack.constants.Constants;
 import com.airtribe.meditrack.entity.*;
 import com.airtribe.meditrack.exception.AppointmentNotFoundException;
 import com.airtribe.meditrack.exception.InvalidDataException;
 import com.airtribe.meditrack.service.*;
+import com.airtribe.meditrack.util.Journal;
 
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.Scanner;
 
@@ -18,12 +22,22 @@ public class Main {
     private static PatientService patientService;
     private static AppointmentService appointmentService;
     private static Scanner scanner;
+    private static ClinicPersistence persistence;
     
     public static void main(String[] args) {
-        // Initialize services
-        doctorService = new DoctorService();
-        patientService = new PatientService();
-        appointmentService = new AppointmentService(doctorService, patientService);
+        // Initialize services, restoring saved data from the journal
+        try {
+            persistence = ClinicPersistence.open(Paths.get(Constants.JOURNAL_DIRECTORY),
+                                                 Journal.FsyncPolicy.GROUP_COMMIT);
+            doctorService = persistence.getDoctorService();
+            patientService = persistence.getPatientService();
+            appointmentService = persistence.getAppointmentService();
+        } catch (IOException e) {
+            System.out.println("Could not load saved data, changes will not be saved: " + e.getMessage());
+            doctorService = new DoctorService();
+            patientService = new PatientService();
+            appointmentService = new AppointmentService(doctorService, patientService);
+        }
         scanner = new Scanner(System.in);
         
         // Display welcome message
@@ -53,6 +67,15 @@ public class Main {
                     System.out.println("Invalid choice. Please try again.");
             }
         }
+        
+        if (persistence != null) {
+            try {
+                persistence.checkpoint();
+                persistence.close();
+            } catch (IOException e) {
+                System.out.println("Error saving data: " + e.getMessage());
+            }
+        }
  
     }
     
@@ -79,7 +102,8 @@ public class Main {
             System.out.println("2. View All Doctors");
             System.out.println("3. Search Doctor by ID");
             System.out.println("4. Update Doctor Availability");
-            System.out.println("5. Back to Main Menu");
+            System.out.println("5. Import Doctors from CSV");
+            System.out.println("6. Back to Main Menu");
             System.out.print("Enter your choice: ");
             
             int choice = getUserChoice();
@@ -98,6 +122,9 @@ public class Main {
                     updateDoctorAvailability();
                     break;
                 case 5:
+                    importFromCSV(false);
+                    break;
+                case 6:
                     back = true;
                     break;
                 default:
@@ -114,7 +141,8 @@ public class Main {
             System.out.println("2. View All Patients");
             System.out.println("3. Search Patient by ID");
             System.out.println("4. Update Medical History");
-            System.out.println("5. Back to Main Menu");
+            System.out.println("5. Import Patients from CSV");
+            System.out.println("6. Back to Main Menu");
             System.out.print("Enter your choice: ");
             
             int choice = getUserChoice();
@@ -133,6 +161,9 @@ public class Main {
                     updateMedicalHistory();
                     break;
                 case 5:
+                    importFromCSV(true);
+                    break;
+                case 6:
                     back = true;
                     break;
                 default:
@@ -294,6 +325,22 @@ public class Main {
         }
     }
     
+    private static void importFromCSV(boolean patients) {
+        System.out.print("Enter CSV file path: ");
+        String path = scanner.nextLine().trim();
+        try {
+            BulkImporter importer = new BulkImporter(patientService, doctorService);
+            BulkImporter.ImportReport report = patients ? importer.importPatients(Paths.get(path))
+                                                        : importer.importDoctors(Paths.get(path));
+            System.out.println("✓ Imported " + report.getImported() + " of " + report.getRowsRead() + " rows.");
+            for (BulkImporter.RowError error : report.getErrors()) {
+                System.out.println("✗ " + error);
+            }
+        } catch (IOException e) {
+            System.out.println("✗ Error reading file: " + e.getMessage());
+        }
+    }
+    
     private static void bookAppointment() {
         try {
             System.out.print("Enter doctor ID: ");
@@ -1,5 +1,7 @@
 package com.airtribe.meditrack.constants;
 
+import java.util.List;
+
 /**
  * Constants used across the MediTrack application.
  */
@@ -24,20 +26,58 @@ public class Constants {
     public static final double APPOINTMENT_FEE = 500.0;
     public static final double LAB_CHARGES = 200.0;
     
+    // Scheduling
+    public static final int DEFAULT_SLOT_MINUTES = 30;
+    public static final int CLINIC_OPENING_HOUR = 9;
+    public static final int CLINIC_CLOSING_HOUR = 17;
+    public static final int SLOT_SEARCH_DAYS = 14;
+    
+    // Bulk import
+    public static final int IMPORT_CHUNK_BYTES = 8 * 1024 * 1024;
+    public static final int IMPORT_BATCH_SIZE = 1000;
+    
+    // Patients
+    public static final int MAX_AGE = 150;
+    
+    // Off-heap patient store
+    public static final int PATIENT_CACHE_SIZE = 10_000;
+    
     // Error messages
     public static final String INVALID_EMAIL = "Invalid email format";
     public static final String INVALID_PHONE = "Invalid phone number";
     public static final String INVALID_DATE = "Invalid date format";
     public static final String APPOINTMENT_NOT_FOUND = "Appointment not found";
     public static final String DOCTOR_NOT_AVAILABLE = "Doctor is not available at this time";
+    public static final String SLOT_ALREADY_BOOKED = "Doctor already has an appointment in this time slot";
     
     // CSV file paths
     public static final String DOCTORS_CSV = "data/doctors.csv";
     public static final String PATIENTS_CSV = "data/patients.csv";
     public static final String APPOINTMENTS_CSV = "data/appointments.csv";
     public static final String BILLS_CSV = "data/bills.csv";
+    
+    // Journal
+    public static final String JOURNAL_DIRECTORY = "data/journal";
+    public static final long JOURNAL_SYNC_INTERVAL_MILLIS = 100;
+    public static final String SNAPSHOT_FILE = "snapshot.dat";
+    public static final String ID_RESERVATION_FILE = "ids.dat";
+    public static final String JOURNAL_REGISTER_DOCTOR = "REGISTER_DOCTOR";
+    public static final String JOURNAL_UPDATE_DOCTOR = "UPDATE_DOCTOR";
+    public static final String JOURNAL_DOCTOR_AVAILABILITY = "DOCTOR_AVAILABILITY";
+    public static final String JOURNAL_REMOVE_DOCTOR = "REMOVE_DOCTOR";
+    public static final String JOURNAL_REGISTER_PATIENT = "REGISTER_PATIENT";
+    public static final String JOURNAL_UPDATE_PATIENT = "UPDATE_PATIENT";
+    public static final String JOURNAL_MEDICAL_HISTORY = "MEDICAL_HISTORY";
+    public static final String JOURNAL_UPDATE_AGE = "UPDATE_AGE";
+    public static final String JOURNAL_REMOVE_PATIENT = "REMOVE_PATIENT";
+    public static final String JOURNAL_BOOK_APPOINTMENT = "BOOK_APPOINTMENT";
+    public static final String JOURNAL_CANCEL_APPOINTMENT = "CANCEL_APPOINTMENT";
+    public static final String JOURNAL_COMPLETE_APPOINTMENT = "COMPLETE_APPOINTMENT";
+    public static final String JOURNAL_RESCHEDULE_APPOINTMENT = "RESCHEDULE_APPOINTMENT";
 
 
     // Other constants
     public static final String PATIENT_HEALTH_STATUS = "Patient health status appears stable.";
+    public static final List<String> CHRONIC_CONDITIONS =
+            List.of("diabetes", "hypertension", "asthma", "copd", "arthritis", "epilepsy");
 }
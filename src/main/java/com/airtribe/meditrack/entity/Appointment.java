@@ -1,17 +1,26 @@
 package com.airtribe.meditrack.entity;
 
+import com.airtribe.meditrack.util.EntityKey;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.time.LocalDateTime;
 
 /**
  * Represents an Appointment between a Doctor and Patient.
+ * <p>
+ * The doctor and patient are referenced by their packed {@link EntityKey}s rather
+ * than by ID strings; the ID getters rebuild the strings on demand. Serialized
+ * forms carry the IDs, since interned keys do not survive the process.
  */
 public class Appointment implements Serializable {
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 2L;
     
     private String appointmentId;
-    private String doctorId;
-    private String patientId;
+    private transient long doctorKey;
+    private transient long patientKey;
     private LocalDateTime appointmentDateTime;
     private AppointmentStatus status;
     private String notes;
@@ -29,8 +38,29 @@ public class Appointment implements Serializable {
     public Appointment(String appointmentId, String doctorId, String patientId,
                        LocalDateTime appointmentDateTime, AppointmentStatus status, String notes) {
         this.appointmentId = appointmentId;
-        this.doctorId = doctorId;
-        this.patientId = patientId;
+        this.doctorKey = EntityKey.of(doctorId);
+        this.patientKey = EntityKey.of(patientId);
+        this.appointmentDateTime = appointmentDateTime;
+        this.status = status;
+        this.notes = notes;
+    }
+    
+    /**
+     * Constructs an Appointment from already packed doctor and patient keys, as
+     * stores that keep the keys rather than the ID strings do.
+     *
+     * @param appointmentId the unique appointment identifier
+     * @param doctorKey the doctor's packed key
+     * @param patientKey the patient's packed key
+     * @param appointmentDateTime the appointment date and time
+     * @param status the appointment status
+     * @param notes any notes about the appointment
+     */
+    public Appointment(String appointmentId, long doctorKey, long patientKey,
+                       LocalDateTime appointmentDateTime, AppointmentStatus status, String notes) {
+        this.appointmentId = appointmentId;
+        this.doctorKey = doctorKey;
+        this.patientKey = patientKey;
         this.appointmentDateTime = appointmentDateTime;
         this.status = status;
         this.notes = notes;
@@ -46,19 +76,27 @@ public class Appointment implements Serializable {
     }
     
     public String getDoctorId() {
-        return doctorId;
+        return EntityKey.toId(doctorKey);
     }
     
     public void setDoctorId(String doctorId) {
-        this.doctorId = doctorId;
+        this.doctorKey = EntityKey.of(doctorId);
+    }
+    
+    public long getDoctorKey() {
+        return doctorKey;
     }
     
     public String getPatientId() {
-        return patientId;
+        return EntityKey.toId(patientKey);
     }
     
     public void setPatientId(String patientId) {
-        this.patientId = patientId;
+        this.patientKey = EntityKey.of(patientId);
+    }
+    
+    public long getPatientKey() {
+        return patientKey;
     }
     
     public LocalDateTime getAppointmentDateTime() {
@@ -85,13 +123,25 @@ public class Appointment implements Serializable {
         this.notes = notes;
     }
     
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeObject(getDoctorId());
+        out.writeObject(getPatientId());
+    }
+    
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        doctorKey = EntityKey.of((String) in.readObject());
+        patientKey = EntityKey.of((String) in.readObject());
+    }
+    
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Appointment{");
         sb.append("appointmentId=\"").append(appointmentId).append('"');
-        sb.append(", doctorId=\"").append(doctorId).append('"');
-        sb.append(", patientId=\"").append(patientId).append('"');
+        sb.append(", doctorId=\"").append(getDoctorId()).append('"');
+        sb.append(", patientId=\"").append(getPatientId()).append('"');
         sb.append(", appointmentDateTime=").append(appointmentDateTime);
         sb.append(", status=\"").append(status != null ? status.name() : "null").append('"');
         sb.append(", notes=\"").append(notes).append('"');
@@ -34,6 +34,29 @@ public final class BillSummary implements Serializable {
         this.paidDate = bill.getPaidDate();
     }
     
+    /**
+     * Constructs a BillSummary from its individual values, for example when
+     * reading one back from disk.
+     *
+     * @param billId the bill's ID
+     * @param patientId the patient's ID
+     * @param appointmentId the appointment's ID
+     * @param totalAmount the bill's total amount
+     * @param paid whether the bill is paid
+     * @param billDate when the bill was issued
+     * @param paidDate when the bill was paid, or null
+     */
+    public BillSummary(String billId, String patientId, String appointmentId, double totalAmount,
+                       boolean paid, LocalDateTime billDate, LocalDateTime paidDate) {
+        this.billId = billId;
+        this.patientId = patientId;
+        this.appointmentId = appointmentId;
+        this.totalAmount = totalAmount;
+        this.paid = paid;
+        this.billDate = billDate;
+        this.paidDate = paidDate;
+    }
+    
     // Getters only (immutable)
     public String getBillId() {
         return billId;
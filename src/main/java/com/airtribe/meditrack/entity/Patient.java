@@ -1,6 +1,7 @@
 package com.airtribe.meditrack.entity;
 
 import com.airtribe.meditrack.interface_impl.Searchable;
+import com.airtribe.meditrack.util.EntityKey;
 
 /**
  * Represents a Patient in the clinic.
@@ -48,8 +49,7 @@ public class Patient extends Person implements Searchable, Cloneable {
     
     @Override
     public boolean matchesId(String id) {
-        if (id == null || this.id == null) return false;
-        return this.id.equalsIgnoreCase(id);
+        return EntityKey.sameId(this.id, id);
     }
     
     @Override
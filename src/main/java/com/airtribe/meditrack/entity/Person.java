@@ -1,5 +1,6 @@
 package com.airtribe.meditrack.entity;
 
+import com.airtribe.meditrack.util.NameMatcher;
 import java.io.Serializable;
 
 /**
@@ -88,6 +89,22 @@ public abstract class Person implements Serializable {
         return this.name != null && name != null && this.name.equalsIgnoreCase(name);
     }
     
+    /**
+     * Checks whether a word of this person's name starts with the given prefix,
+     * ignoring case and accents.
+     */
+    public boolean matchesNamePrefix(String prefix) {
+        return NameMatcher.matchesPrefix(name, prefix);
+    }
+    
+    /**
+     * Checks whether this person's name matches the given one despite a few typing
+     * mistakes per word.
+     */
+    public boolean matchesNameFuzzy(String name) {
+        return NameMatcher.matchesFuzzy(this.name, name);
+    }
+    
     @Override
     public String toString() {
         StringBuilder sb = new StringBuilder();
@@ -0,0 +1,30 @@
+package com.airtribe.meditrack.exception;
+
+/**
+ * Exception thrown when a patient's email or phone number is already registered
+ * to another patient.
+ */
+public class DuplicatePatientException extends InvalidDataException {
+    
+    private final String existingPatientId;
+    
+    /**
+     * Constructs a DuplicatePatientException with the specified detail message.
+     *
+     * @param message the detail message
+     * @param existingPatientId the ID of the patient already holding the contact
+     */
+    public DuplicatePatientException(String message, String existingPatientId) {
+        super(message);
+        this.existingPatientId = existingPatientId;
+    }
+    
+    /**
+     * Gets the ID of the patient the contact is registered to.
+     *
+     * @return the existing patient's ID
+     */
+    public String getExistingPatientId() {
+        return existingPatientId;
+    }
+}
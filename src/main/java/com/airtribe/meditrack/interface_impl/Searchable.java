@@ -21,4 +21,21 @@ public interface Searchable {
      * @return true if the entity matches the name, false otherwise
      */
     boolean matchesName(String name);
+    
+    /**
+     * Searches by the start of a name, ignoring case and accents. The prefix may
+     * begin at any word of the name, so "Shar" matches "Anita Sharma".
+     *
+     * @param prefix the typed start of a name
+     * @return true if a word of the name starts with the prefix, false otherwise
+     */
+    boolean matchesNamePrefix(String prefix);
+    
+    /**
+     * Searches by a name that may contain a few typing mistakes in each word.
+     *
+     * @param name the name as typed
+     * @return true if the name matches despite the mistakes, false otherwise
+     */
+    boolean matchesNameFuzzy(String name);
 }
@@ -1,17 +1,33 @@
 package com.airtribe.meditrack.service;
 
+import java.time.Duration;
+import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 import static java.util.stream.Collectors.toList;
 
 import com.airtribe.meditrack.constants.Constants;
 import com.airtribe.meditrack.entity.Appointment;
+import com.airtribe.meditrack.entity.AppointmentStatus;
 import com.airtribe.meditrack.entity.Doctor;
 import com.airtribe.meditrack.entity.Patient;
 import com.airtribe.meditrack.exception.AppointmentNotFoundException;
 import com.airtribe.meditrack.exception.InvalidDataException;
+import com.airtribe.meditrack.util.AppointmentCalendar;
+import com.airtribe.meditrack.util.AppointmentStatistics;
+import com.airtribe.meditrack.util.AppointmentTimeIndex;
+import com.airtribe.meditrack.util.ColumnarAppointmentStore;
 import com.airtribe.meditrack.util.DataStore;
+import com.airtribe.meditrack.util.EntityKey;
+import com.airtribe.meditrack.util.EntityStore;
+import com.airtribe.meditrack.util.FreeSlotFinder;
 import com.airtribe.meditrack.util.IdGenerator;
+import com.airtribe.meditrack.util.Journal;
+import com.airtribe.meditrack.util.SkipListTimeIndex;
 
 /**
  * Service class for managing appointments.
@@ -19,9 +35,18 @@ import com.airtribe.meditrack.util.IdGenerator;
  */
 public class AppointmentService {
     
-    private DataStore<Appointment> appointmentStore;
+    private static final String PATIENT_INDEX = ColumnarAppointmentStore.PATIENT_COLUMN;
+    private static final String DOCTOR_INDEX = ColumnarAppointmentStore.DOCTOR_COLUMN;
+    private static final String STATUS_INDEX = ColumnarAppointmentStore.STATUS_COLUMN;
+    
+    private EntityStore<Appointment> appointmentStore;
     private DoctorService doctorService;
     private PatientService patientService;
+    private AppointmentCalendar calendar;
+    private AppointmentTimeIndex timeIndex;
+    private final AppointmentStatistics statistics = new AppointmentStatistics();
+    private FreeSlotFinder slotFinder;
+    private Journal journal;
     
     /**
      * Constructs an AppointmentService with empty data store.
@@ -30,9 +55,52 @@ public class AppointmentService {
      * @param patientService the patient service instance
      */
     public AppointmentService(DoctorService doctorService, PatientService patientService) {
-        this.appointmentStore = new DataStore<>();
+        this(doctorService, patientService, new DataStore<>(Appointment::getAppointmentId));
+    }
+    
+    /**
+     * Constructs an AppointmentService backed by the given data store, for example a
+     * {@link com.airtribe.meditrack.util.ConcurrentDataStore} when the service is
+     * shared between threads, or a {@link ColumnarAppointmentStore} for very large
+     * histories. With the columnar store, time range queries scan its columns and
+     * returned appointments are copies; changes go through this service.
+     *
+     * @param doctorService the doctor service instance
+     * @param patientService the patient service instance
+     * @param appointmentStore a store keyed by appointment ID
+     * @throws IllegalArgumentException if the store is not keyed
+     */
+    public AppointmentService(DoctorService doctorService, PatientService patientService,
+                              EntityStore<Appointment> appointmentStore) {
+        this(doctorService, patientService, appointmentStore, Duration.ofMinutes(Constants.DEFAULT_SLOT_MINUTES));
+    }
+    
+    /**
+     * Constructs an AppointmentService with a custom appointment slot duration.
+     * Two scheduled appointments of the same doctor may not overlap within a slot.
+     *
+     * @param doctorService the doctor service instance
+     * @param patientService the patient service instance
+     * @param appointmentStore a store keyed by appointment ID
+     * @param slotDuration how long each appointment occupies the doctor
+     * @throws IllegalArgumentException if the store is not keyed or the duration is not positive
+     */
+    public AppointmentService(DoctorService doctorService, PatientService patientService,
+                              EntityStore<Appointment> appointmentStore, Duration slotDuration) {
+        if (!appointmentStore.isKeyed()) {
+            throw new IllegalArgumentException("Appointment store must be keyed by appointment ID");
+        }
+        this.appointmentStore = appointmentStore;
+        this.appointmentStore.addIndex(PATIENT_INDEX, Appointment::getPatientKey);
+        this.appointmentStore.addIndex(DOCTOR_INDEX, Appointment::getDoctorKey);
+        this.appointmentStore.addIndex(STATUS_INDEX, Appointment::getStatus);
         this.doctorService = doctorService;
         this.patientService = patientService;
+        this.calendar = new AppointmentCalendar(slotDuration);
+        this.timeIndex = appointmentStore instanceof ColumnarAppointmentStore
+                ? ((ColumnarAppointmentStore) appointmentStore).timeIndex() : new SkipListTimeIndex();
+        this.slotFinder = new FreeSlotFinder(calendar, LocalTime.of(Constants.CLINIC_OPENING_HOUR, 0),
+                                             LocalTime.of(Constants.CLINIC_CLOSING_HOUR, 0));
     }
     
     /**
@@ -43,7 +111,8 @@ public class AppointmentService {
      * @param appointmentDateTime the appointment date and time
      * @param notes any notes about the appointment
      * @return the booked appointment
-     * @throws InvalidDataException if doctor or patient not found, or appointment time is invalid
+     * @throws InvalidDataException if doctor or patient not found, appointment time is invalid,
+     *         or the doctor already has an appointment overlapping that slot
      */
     public Appointment bookAppointment(String doctorId, String patientId, 
                                        LocalDateTime appointmentDateTime, String notes) throws InvalidDataException {
@@ -59,14 +128,25 @@ public class AppointmentService {
         }
         
         String appointmentId = IdGenerator.generateAppointmentId();
-        Appointment appointment = new Appointment(appointmentId, doctorId, patientId,
+        Appointment appointment = new Appointment(appointmentId, doctor.getId(), patient.getId(),
             appointmentDateTime, com.airtribe.meditrack.entity.AppointmentStatus.SCHEDULED, notes);
+        if (!calendar.reserve(appointment)) {
+            throw new InvalidDataException(Constants.SLOT_ALREADY_BOOKED);
+        }
         try {
-            appointmentStore.add(appointment);
+            // indexed under the store's lock so a cancel cannot reach the appointment before its statistics do
+            withJournal(() -> appointmentStore.add(appointment, a -> {
+                appendToJournal(Constants.JOURNAL_BOOK_APPOINTMENT, appointmentId, doctorId, patientId,
+                                appointmentDateTime.toString(), notes);
+                timeIndex.add(a);
+                statistics.add(a);
+            }));
         } catch (RuntimeException e) {
+            calendar.release(appointment);
             throw new InvalidDataException("Failed to add appointment", e);
         }
         if (!appointmentStore.contains(appointment)) {
+            calendar.release(appointment);
             throw new InvalidDataException("Failed to add appointment to store");
         }
 
@@ -80,10 +160,7 @@ public class AppointmentService {
      * @return the appointment if found, null otherwise
      */
     public Appointment getAppointmentById(String appointmentId) {
-        return appointmentStore.getAll().stream()
-                .filter(a -> a.getAppointmentId().equalsIgnoreCase(appointmentId))
-                .findFirst()
-                .orElse(null);
+        return appointmentStore.findByKey(appointmentId).orElse(null);
     }
     
     /**
@@ -93,9 +170,7 @@ public class AppointmentService {
      * @return a list of patient's appointments
      */
     public List<Appointment> getAppointmentsByPatient(String patientId) {
-        return appointmentStore.getAll().stream()
-                .filter(a -> a.getPatientId().equalsIgnoreCase(patientId))
-                .collect(toList());
+        return appointmentStore.findByIndex(PATIENT_INDEX, EntityKey.find(patientId));
     }
     
     /**
@@ -105,13 +180,12 @@ public class AppointmentService {
      * @return a list of doctor's appointments
      */
     public List<Appointment> getAppointmentsByDoctor(String doctorId) {
-        return appointmentStore.getAll().stream()
-                .filter(a -> a.getDoctorId().equalsIgnoreCase(doctorId))
-                .collect(toList());
+        return appointmentStore.findByIndex(DOCTOR_INDEX, EntityKey.find(doctorId));
     }
     
     /**
-     * Retrieves all appointments with a specific status.
+     * Retrieves all appointments with a specific status. To only show how many
+     * there are, {@link #countAppointments(AppointmentStatus)} avoids building the list.
      *
      * @param status the appointment status
      * @return a list of appointments with that status, or empty list if status is null
@@ -120,9 +194,155 @@ public class AppointmentService {
         if (status == null) {
             return new java.util.ArrayList<>();
         }
-        return appointmentStore.getAll().stream()
-                .filter(a -> a.getStatus() == status)
+        return appointmentStore.findByIndex(STATUS_INDEX, status);
+    }
+    
+    /**
+     * Counts the appointments with a specific status without retrieving them.
+     *
+     * @param status the appointment status
+     * @return the number of appointments with that status
+     */
+    public long countAppointments(AppointmentStatus status) {
+        return statistics.count(status);
+    }
+    
+    /**
+     * Gets the number of appointments with each status, for dashboards. The counts
+     * are kept up to date as appointments change, so nothing is scanned.
+     *
+     * @return the counts of every status
+     */
+    public Map<AppointmentStatus, Long> getStatusCounts() {
+        return statistics.counts();
+    }
+    
+    /**
+     * Gets the number of a doctor's appointments with each status.
+     *
+     * @param doctorId the doctor's ID
+     * @return the counts of every status, all zero for an unknown doctor
+     */
+    public Map<AppointmentStatus, Long> getStatusCountsForDoctor(String doctorId) {
+        return statistics.countsForDoctor(EntityKey.find(doctorId));
+    }
+    
+    /**
+     * Gets the number of appointments on a day with each status.
+     *
+     * @param day the day the appointments start on
+     * @return the counts of every status
+     */
+    public Map<AppointmentStatus, Long> getStatusCountsForDay(LocalDate day) {
+        return statistics.countsForDay(day);
+    }
+    
+    /**
+     * Retrieves all appointments starting in [from, to), in time order.
+     *
+     * @param from inclusive start of the range
+     * @param to exclusive end of the range
+     * @return a list of appointments in the range
+     */
+    public List<Appointment> getAppointmentsBetween(LocalDateTime from, LocalDateTime to) {
+        return timeIndex.between(from, to, null);
+    }
+    
+    /**
+     * Retrieves appointments with a specific status starting in [from, to), in time order.
+     *
+     * @param from inclusive start of the range
+     * @param to exclusive end of the range
+     * @param status the appointment status, or null for any status
+     * @return a list of matching appointments
+     */
+    public List<Appointment> getAppointmentsBetween(LocalDateTime from, LocalDateTime to, AppointmentStatus status) {
+        return timeIndex.between(from, to, status);
+    }
+    
+    /**
+     * Retrieves a doctor's appointments starting in [from, to), in time order.
+     *
+     * @param doctorId the doctor's ID
+     * @param from inclusive start of the range
+     * @param to exclusive end of the range
+     * @return a list of the doctor's appointments in the range
+     */
+    public List<Appointment> getDoctorAppointmentsBetween(String doctorId, LocalDateTime from, LocalDateTime to) {
+        return timeIndex.betweenForDoctor(doctorId, from, to, null);
+    }
+    
+    /**
+     * Retrieves a doctor's appointments with a specific status starting in [from, to), in time order.
+     *
+     * @param doctorId the doctor's ID
+     * @param from inclusive start of the range
+     * @param to exclusive end of the range
+     * @param status the appointment status, or null for any status
+     * @return a list of matching appointments
+     */
+    public List<Appointment> getDoctorAppointmentsBetween(String doctorId, LocalDateTime from, LocalDateTime to,
+                                                          AppointmentStatus status) {
+        return timeIndex.betweenForDoctor(doctorId, from, to, status);
+    }
+    
+    /**
+     * Retrieves a patient's appointments starting in [from, to), in time order.
+     *
+     * @param patientId the patient's ID
+     * @param from inclusive start of the range
+     * @param to exclusive end of the range
+     * @return a list of the patient's appointments in the range
+     */
+    public List<Appointment> getPatientAppointmentsBetween(String patientId, LocalDateTime from, LocalDateTime to) {
+        return timeIndex.betweenForPatient(patientId, from, to, null);
+    }
+    
+    /**
+     * Retrieves a patient's appointments with a specific status starting in [from, to), in time order.
+     *
+     * @param patientId the patient's ID
+     * @param from inclusive start of the range
+     * @param to exclusive end of the range
+     * @param status the appointment status, or null for any status
+     * @return a list of matching appointments
+     */
+    public List<Appointment> getPatientAppointmentsBetween(String patientId, LocalDateTime from, LocalDateTime to,
+                                                           AppointmentStatus status) {
+        return timeIndex.betweenForPatient(patientId, from, to, status);
+    }
+    
+    /**
+     * Finds a doctor's earliest free slots within clinic hours starting in [from, to).
+     *
+     * @param doctorId the doctor's ID
+     * @param from inclusive start of the search window
+     * @param to exclusive end of the search window
+     * @param limit the maximum number of slots to return
+     * @return free slot start times in ascending order, empty if the doctor is unknown or not available
+     */
+    public List<LocalDateTime> findFreeSlots(String doctorId, LocalDateTime from, LocalDateTime to, int limit) {
+        return doctorService.getDoctorById(doctorId)
+                .filter(Doctor::isAvailable)
+                .map(d -> slotFinder.findFreeSlots(d.getId(), from, to, limit))
+                .orElseGet(java.util.ArrayList::new);
+    }
+    
+    /**
+     * Finds the earliest free slots across all available doctors of a specialty.
+     *
+     * @param specialty the specialty
+     * @param from inclusive start of the search window
+     * @param to exclusive end of the search window
+     * @param limit the maximum number of slots to return
+     * @return the earliest free slots, ordered by start time
+     */
+    public List<FreeSlotFinder.Slot> findFreeSlotsBySpecialty(String specialty, LocalDateTime from,
+                                                             LocalDateTime to, int limit) {
+        List<String> doctorIds = doctorService.getAvailableDoctors(specialty).stream()
+                .map(Doctor::getId)
                 .collect(toList());
+        return slotFinder.findFreeSlots(doctorIds, from, to, limit);
     }
     
     /**
@@ -136,7 +356,12 @@ public class AppointmentService {
         if (appointment == null) {
             throw new AppointmentNotFoundException(Constants.APPOINTMENT_NOT_FOUND);
         }
-        appointment.setStatus(com.airtribe.meditrack.entity.AppointmentStatus.CANCELLED);
+        journaledUpdate(appointment, a -> {
+            statistics.remove(a);
+            a.setStatus(AppointmentStatus.CANCELLED);
+            statistics.add(a);
+            calendar.release(a);
+        }, Constants.JOURNAL_CANCEL_APPOINTMENT, appointmentId);
     }
     
     /**
@@ -150,7 +375,12 @@ public class AppointmentService {
         if (appointment == null) {
             throw new AppointmentNotFoundException(Constants.APPOINTMENT_NOT_FOUND);
         }
-        appointment.setStatus(com.airtribe.meditrack.entity.AppointmentStatus.COMPLETED);
+        journaledUpdate(appointment, a -> {
+            statistics.remove(a);
+            a.setStatus(AppointmentStatus.COMPLETED);
+            statistics.add(a);
+            calendar.release(a);
+        }, Constants.JOURNAL_COMPLETE_APPOINTMENT, appointmentId);
     }
     
     /**
@@ -159,7 +389,7 @@ public class AppointmentService {
      * @param appointmentId the appointment's ID
      * @param newDateTime the new date and time
      * @throws AppointmentNotFoundException if appointment not found
-     * @throws InvalidDataException if new date/time is invalid
+     * @throws InvalidDataException if new date/time is invalid or overlaps another of the doctor's appointments
      */
     public void rescheduleAppointment(String appointmentId, LocalDateTime newDateTime) 
             throws AppointmentNotFoundException, InvalidDataException {
@@ -170,15 +400,133 @@ public class AppointmentService {
         if (newDateTime.isBefore(LocalDateTime.now())) {
             throw new InvalidDataException("New appointment time cannot be in the past");
         }
-        appointment.setAppointmentDateTime(newDateTime);
+        boolean[] slotTaken = new boolean[1];
+        // the status check and calendar move share the update's lock with cancel and complete,
+        // so a concurrent release always sees the slot the appointment actually holds
+        withJournal(() -> appointmentStore.update(appointment, a -> {
+            LocalDateTime oldDateTime = a.getAppointmentDateTime();
+            boolean scheduled = a.getStatus() == AppointmentStatus.SCHEDULED;
+            if (scheduled && !calendar.move(a, newDateTime)) {
+                slotTaken[0] = true;
+                return;
+            }
+            try {
+                appendToJournal(Constants.JOURNAL_RESCHEDULE_APPOINTMENT, appointmentId, newDateTime.toString());
+            } catch (RuntimeException e) {
+                if (scheduled) {
+                    calendar.move(a, newDateTime, oldDateTime);
+                }
+                throw e;
+            }
+            moveTo(a, newDateTime);
+        }));
+        if (slotTaken[0]) {
+            throw new InvalidDataException(Constants.SLOT_ALREADY_BOOKED);
+        }
     }
     
     /**
-     * Gets all appointments in the system.
+     * Gets all appointments in the system as a read-only live view.
+     * Nothing is copied; the view reflects later changes, and iterating it while
+     * another thread writes is only safe with a concurrent data store.
      *
-     * @return a list of all appointments
+     * @return an unmodifiable view of all appointments
      */
-    public List<Appointment> getAllAppointments() {
-        return appointmentStore.getAll();
+    public Collection<Appointment> getAllAppointments() {
+        return appointmentStore.view();
+    }
+    
+    /**
+     * Starts recording every mutating call in the journal.
+     *
+     * @param journal the journal to append to
+     */
+    void attachJournal(Journal journal) {
+        this.journal = journal;
+    }
+    
+    /**
+     * Puts an appointment read back from disk into the store and indexes,
+     * skipping the availability, past-time and journaling steps of a booking.
+     * An appointment already stored under the same ID is replaced.
+     *
+     * @param appointment the restored appointment
+     */
+    void restoreAppointment(Appointment appointment) {
+        IdGenerator.advancePast(appointment.getAppointmentId());
+        Appointment existing = getAppointmentById(appointment.getAppointmentId());
+        if (existing != null) {
+            calendar.release(existing);
+            timeIndex.remove(existing);
+            statistics.remove(existing);
+        }
+        if (appointment.getStatus() == AppointmentStatus.SCHEDULED) {
+            calendar.reserve(appointment);
+        }
+        appointmentStore.add(appointment);
+        timeIndex.add(appointment);
+        statistics.add(appointment);
+    }
+    
+    /**
+     * Replays a reschedule read back from disk. The time was validated when the
+     * call was first made, so it is applied even if it now lies in the past.
+     *
+     * @param appointmentId the appointment's ID
+     * @param newDateTime the new date and time
+     */
+    void restoreReschedule(String appointmentId, LocalDateTime newDateTime) {
+        Appointment appointment = getAppointmentById(appointmentId);
+        if (appointment == null) {
+            return;
+        }
+        appointmentStore.update(appointment, a -> {
+            if (a.getStatus() == AppointmentStatus.SCHEDULED) {
+                calendar.move(a, newDateTime);
+            }
+            moveTo(a, newDateTime);
+        });
+    }
+    
+    /**
+     * Moves an appointment to a new time in the time index and statistics; runs
+     * inside the store's update so a status change cannot interleave with it.
+     */
+    private void moveTo(Appointment appointment, LocalDateTime newDateTime) {
+        timeIndex.remove(appointment);
+        statistics.remove(appointment);
+        appointment.setAppointmentDateTime(newDateTime);
+        timeIndex.add(appointment);
+        statistics.add(appointment);
+    }
+    
+    /**
+     * Journals and applies a change to one appointment under the store's lock for
+     * that appointment, so concurrent changes to it are journaled in the order they apply.
+     */
+    private void journaledUpdate(Appointment appointment, Consumer<Appointment> mutation, String operation,
+                                 String... fields) {
+        withJournal(() -> appointmentStore.update(appointment, a -> {
+            appendToJournal(operation, fields);
+            mutation.accept(a);
+        }));
+    }
+    
+    /**
+     * Runs a store write as one journal operation; the write appends its own record
+     * from inside the store's lock.
+     */
+    private void withJournal(Runnable write) {
+        if (journal == null) {
+            write.run();
+        } else {
+            journal.perform(write);
+        }
+    }
+    
+    private void appendToJournal(String operation, String... fields) {
+        if (journal != null) {
+            journal.append(operation, fields);
+        }
     }
 }
@@ -0,0 +1,391 @@
+package com.airtribe.meditrack.service;
+
+import com.airtribe.meditrack.constants.Constants;
+import com.airtribe.meditrack.entity.Doctor;
+import com.airtribe.meditrack.entity.DoctorAvailability;
+import com.airtribe.meditrack.entity.Patient;
+import com.airtribe.meditrack.exception.InvalidDataException;
+import com.airtribe.meditrack.util.CSVReader;
+import com.airtribe.meditrack.util.Validator;
+import java.io.CharArrayReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Imports patients and doctors from large CSV files.
+ * <p>
+ * The file is memory-mapped in chunks that end on line boundaries. Chunks are parsed
+ * and validated in parallel on a fork/join pool, then inserted in file order and in
+ * batches, so IDs follow the file and each batch costs one journal write. Parsing runs
+ * at most two chunks per pool thread ahead of insertion, so a large file is never held
+ * parsed in memory as a whole. Invalid rows
+ * are reported with their line number and skipped; they never abort the import. A
+ * patient row whose email or phone number is already registered, or appears on an
+ * earlier row, is reported the same way.
+ * Because chunks are cut at line breaks, quoted fields must not contain line breaks.
+ * <p>
+ * Patient columns: name, email, phone, age, medical history.
+ * Doctor columns: name, email, phone, specialty, license number, optional availability.
+ * A first row whose first field is {@code name} is treated as a header.
+ */
+public class BulkImporter {
+    
+    private final PatientService patientService;
+    private final DoctorService doctorService;
+    private final ForkJoinPool pool;
+    private final int chunkBytes;
+    private final int batchSize;
+    private final int maxPendingChunks;
+    
+    /**
+     * Constructs a BulkImporter that parses on the common fork/join pool.
+     *
+     * @param patientService the service patients are imported into
+     * @param doctorService the service doctors are imported into
+     */
+    public BulkImporter(PatientService patientService, DoctorService doctorService) {
+        this(patientService, doctorService, ForkJoinPool.commonPool(), Constants.IMPORT_CHUNK_BYTES,
+             Constants.IMPORT_BATCH_SIZE);
+    }
+    
+    /**
+     * Constructs a BulkImporter with explicit tuning.
+     *
+     * @param patientService the service patients are imported into
+     * @param doctorService the service doctors are imported into
+     * @param pool the pool chunks are parsed on
+     * @param chunkBytes the approximate size of each parsed chunk
+     * @param batchSize the number of rows inserted per batch
+     */
+    public BulkImporter(PatientService patientService, DoctorService doctorService, ForkJoinPool pool,
+                        int chunkBytes, int batchSize) {
+        if (chunkBytes <= 0 || batchSize <= 0) {
+            throw new IllegalArgumentException("chunkBytes and batchSize must be positive");
+        }
+        this.patientService = patientService;
+        this.doctorService = doctorService;
+        this.pool = pool;
+        this.chunkBytes = chunkBytes;
+        this.batchSize = batchSize;
+        this.maxPendingChunks = Math.max(2, pool.getParallelism() * 2);
+    }
+    
+    /**
+     * Imports patients from a UTF-8 CSV file.
+     *
+     * @param file the CSV file
+     * @return the number of imported rows and the errors of rejected rows
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReport importPatients(Path file) throws IOException {
+        patientService.startBulkRegistration((int) Math.min(Integer.MAX_VALUE, estimateRows(file)));
+        try {
+            return importFile(file, BulkImporter::parsePatient, patientService::registerValidated);
+        } finally {
+            patientService.finishBulkRegistration();
+        }
+    }
+    
+    /**
+     * Imports doctors from a UTF-8 CSV file.
+     *
+     * @param file the CSV file
+     * @return the number of imported rows and the errors of rejected rows
+     * @throws IOException if the file cannot be read
+     */
+    public ImportReport importDoctors(Path file) throws IOException {
+        return importFile(file, BulkImporter::parseDoctor, batch -> {
+            doctorService.registerValidated(batch);
+            return Collections.emptyMap();
+        });
+    }
+    
+    private <T> ImportReport importFile(Path file, RowParser<T> parser, BatchInserter<T> inserter)
+            throws IOException {
+        ImportReport report = new ImportReport();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            Deque<ForkJoinTask<ChunkResult<T>>> pending = new ArrayDeque<>();
+            long start = 0;
+            long size = channel.size();
+            long linesBefore = 0;
+            while (start < size || !pending.isEmpty()) {
+                if (start < size && pending.size() < maxPendingChunks) {
+                    long end = lineEndAfter(channel, Math.min(size, start + chunkBytes));
+                    long chunkStart = start;
+                    boolean first = start == 0;
+                    pending.addLast(pool.submit(() -> parseChunk(channel, chunkStart, end - chunkStart, first,
+                                                                 parser)));
+                    start = end;
+                    continue;
+                }
+                // the window is full or the file is split: insert the oldest chunk before parsing more
+                ChunkResult<T> chunk = joinChunk(pending.removeFirst());
+                for (RowError error : chunk.errors) {
+                    report.errors.add(new RowError(linesBefore + error.line, error.message));
+                }
+                insert(chunk, linesBefore, inserter, report);
+                report.rowsRead += chunk.rows;
+                linesBefore += chunk.lines;
+            }
+        }
+        return report;
+    }
+    
+    private <T> void insert(ChunkResult<T> chunk, long linesBefore, BatchInserter<T> inserter,
+                            ImportReport report) {
+        for (int from = 0; from < chunk.entities.size(); from += batchSize) {
+            int to = Math.min(chunk.entities.size(), from + batchSize);
+            List<T> batch = new ArrayList<>(chunk.entities.subList(from, to));
+            try {
+                Map<Integer, String> rejected = inserter.insert(batch);
+                for (Map.Entry<Integer, String> entry : rejected.entrySet()) {
+                    report.errors.add(new RowError(linesBefore + chunk.entityLines.get(from + entry.getKey()),
+                                                   entry.getValue()));
+                }
+                report.imported += batch.size() - rejected.size();
+            } catch (RuntimeException e) {
+                for (int i = from; i < to; i++) {
+                    report.errors.add(new RowError(linesBefore + chunk.entityLines.get(i),
+                                                   "Insert failed: " + e.getMessage()));
+                }
+            }
+        }
+    }
+    
+    private static <T> ChunkResult<T> parseChunk(FileChannel channel, long start, long length, boolean first,
+                                                 RowParser<T> parser) throws IOException {
+        ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+        if (first && length >= 3 && bytes.get(0) == (byte) 0xEF && bytes.get(1) == (byte) 0xBB
+                && bytes.get(2) == (byte) 0xBF) {
+            bytes.position(3);
+        }
+        CharBuffer chars = StandardCharsets.UTF_8.decode(bytes);
+        ChunkResult<T> result = new ChunkResult<>();
+        List<String> row = new ArrayList<>();
+        try (CSVReader reader = new CSVReader(new CharArrayReader(chars.array(), chars.arrayOffset(),
+                                                                  chars.remaining()))) {
+            while (reader.readRow(row)) {
+                long line = reader.getRowNumber();
+                result.lines = line;
+                if (row.size() == 1 && row.get(0).trim().isEmpty()) {
+                    continue;
+                }
+                if (first && line == 1 && "name".equalsIgnoreCase(row.get(0).trim())) {
+                    continue;
+                }
+                result.rows++;
+                try {
+                    result.entities.add(parser.parse(row));
+                    result.entityLines.add(line);
+                } catch (InvalidDataException e) {
+                    result.errors.add(new RowError(line, e.getMessage()));
+                }
+            }
+        }
+        return result;
+    }
+    
+    private static Patient parsePatient(List<String> row) throws InvalidDataException {
+        requireColumns(row, 4);
+        String name = row.get(0).trim();
+        String email = row.get(1).trim();
+        String phone = row.get(2).trim();
+        int age;
+        try {
+            age = Integer.parseInt(row.get(3).trim());
+        } catch (NumberFormatException e) {
+            throw new InvalidDataException("Invalid age: " + row.get(3));
+        }
+        Validator.validatePatient(name, email, phone, age);
+        return new Patient(null, name, email, phone, age, row.size() > 4 ? row.get(4) : "");
+    }
+    
+    private static Doctor parseDoctor(List<String> row) throws InvalidDataException {
+        requireColumns(row, 5);
+        String name = row.get(0).trim();
+        String email = row.get(1).trim();
+        String phone = row.get(2).trim();
+        Validator.validateDoctor(name, email, phone);
+        DoctorAvailability availability = DoctorAvailability.AVAILABLE;
+        if (row.size() > 5 && !row.get(5).trim().isEmpty()) {
+            try {
+                availability = DoctorAvailability.valueOf(row.get(5).trim().toUpperCase(Locale.ROOT));
+            } catch (IllegalArgumentException e) {
+                throw new InvalidDataException("Invalid availability: " + row.get(5));
+            }
+        }
+        return new Doctor(null, name, email, phone, row.get(3).trim(), row.get(4).trim(), availability);
+    }
+    
+    private static void requireColumns(List<String> row, int columns) throws InvalidDataException {
+        if (row.size() < columns) {
+            throw new InvalidDataException("Expected at least " + columns + " columns but found " + row.size());
+        }
+    }
+    
+    /**
+     * Estimates the number of rows in a file from the average length of the lines in
+     * its first block.
+     */
+    private static long estimateRows(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            ByteBuffer sample = ByteBuffer.allocate((int) Math.min(size, 64 * 1024));
+            while (sample.hasRemaining()) {
+                if (channel.read(sample, sample.position()) <= 0) {
+                    break;
+                }
+            }
+            long lines = 0;
+            for (int i = 0; i < sample.position(); i++) {
+                if (sample.get(i) == '\n') {
+                    lines++;
+                }
+            }
+            if (lines == 0) {
+                return 1;
+            }
+            return size * lines / sample.position() + 1;
+        }
+    }
+    
+    /**
+     * Finds the position just past the first line break at or after a position.
+     */
+    private static long lineEndAfter(FileChannel channel, long position) throws IOException {
+        long size = channel.size();
+        if (position >= size) {
+            return size;
+        }
+        ByteBuffer window = ByteBuffer.allocate(8192);
+        while (position < size) {
+            window.clear();
+            int read = channel.read(window, position);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (window.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+    
+    private static <T> ChunkResult<T> joinChunk(ForkJoinTask<ChunkResult<T>> task) throws IOException {
+        try {
+            return task.join();
+        } catch (RuntimeException e) {
+            // the pool wraps a chunk's I/O failure; report it as the I/O error it is
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw e;
+        }
+    }
+    
+    /**
+     * Parses and validates one CSV row.
+     */
+    private interface RowParser<T> {
+        T parse(List<String> row) throws InvalidDataException;
+    }
+    
+    /**
+     * Inserts one batch of parsed rows.
+     */
+    private interface BatchInserter<T> {
+        /**
+         * @return the reasons for rows left out, by their position in the batch
+         */
+        Map<Integer, String> insert(List<T> batch);
+    }
+    
+    private static final class ChunkResult<T> {
+        private final List<T> entities = new ArrayList<>();
+        private final List<Long> entityLines = new ArrayList<>();
+        private final List<RowError> errors = new ArrayList<>();
+        private long rows;
+        private long lines;
+    }
+    
+    /**
+     * Outcome of an import.
+     */
+    public static final class ImportReport {
+        private final List<RowError> errors = new ArrayList<>();
+        private long rowsRead;
+        private long imported;
+        
+        /**
+         * Gets the number of data rows read, excluding a header and blank lines.
+         *
+         * @return the row count
+         */
+        public long getRowsRead() {
+            return rowsRead;
+        }
+        
+        public long getImported() {
+            return imported;
+        }
+        
+        /**
+         * Gets the rejected rows in file order.
+         *
+         * @return an unmodifiable list of row errors
+         */
+        public List<RowError> getErrors() {
+            return Collections.unmodifiableList(errors);
+        }
+        
+        @Override
+        public String toString() {
+            return "ImportReport{rowsRead=" + rowsRead + ", imported=" + imported + ", errors=" + errors.size() + '}';
+        }
+    }
+    
+    /**
+     * A rejected row and the reason.
+     */
+    public static final class RowError {
+        private final long line;
+        private final String message;
+        
+        RowError(long line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+        
+        public long getLine() {
+            return line;
+        }
+        
+        public String getMessage() {
+            return message;
+        }
+        
+        @Override
+        public String toString() {
+            return "line " + line + ": " + message;
+        }
+    }
+}
@@ -0,0 +1,265 @@
+package com.airtribe.meditrack.service;
+
+import com.airtribe.meditrack.constants.Constants;
+import com.airtribe.meditrack.entity.Appointment;
+import com.airtribe.meditrack.entity.AppointmentStatus;
+import com.airtribe.meditrack.entity.Doctor;
+import com.airtribe.meditrack.entity.DoctorAvailability;
+import com.airtribe.meditrack.entity.Patient;
+import com.airtribe.meditrack.exception.AppointmentNotFoundException;
+import com.airtribe.meditrack.util.ConcurrentDataStore;
+import com.airtribe.meditrack.util.EntityCodec;
+import com.airtribe.meditrack.util.IdGenerator;
+import com.airtribe.meditrack.util.Journal;
+import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the services of a clinic whose data survives restarts.
+ * <p>
+ * Opening loads the latest snapshot in a directory, replays the journal segments it
+ * does not cover into the services and then attaches the journal to them, so every
+ * later mutating call is appended before it takes effect. The services are backed by
+ * concurrent data stores. {@link #checkpoint()} bounds the replay work of the next start.
+ */
+public class ClinicPersistence implements Closeable {
+    
+    private final Path directory;
+    private final DoctorService doctorService;
+    private final PatientService patientService;
+    private final AppointmentService appointmentService;
+    private final ExecutorService checkpointer;
+    private Journal journal;
+    private long replayedRecords;
+    
+    private ClinicPersistence(Path directory) {
+        this.directory = directory;
+        this.doctorService = new DoctorService(new ConcurrentDataStore<>(Doctor::getId));
+        this.patientService = new PatientService(new ConcurrentDataStore<>(Patient::getId));
+        this.appointmentService = new AppointmentService(doctorService, patientService,
+                new ConcurrentDataStore<>(Appointment::getAppointmentId));
+        this.checkpointer = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "clinic-checkpoint");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Restores the clinic from the journal in a directory and starts journaling.
+     *
+     * @param directory the journal directory, created if it does not exist
+     * @param policy when journal appends are forced to disk
+     * @return the restored clinic
+     * @throws IOException if the journal cannot be read, is corrupt, or cannot be opened
+     */
+    public static ClinicPersistence open(Path directory, Journal.FsyncPolicy policy) throws IOException {
+        Files.createDirectories(directory);
+        IdGenerator.persistTo(directory.resolve(Constants.ID_RESERVATION_FILE));
+        ClinicPersistence clinic = new ClinicPersistence(directory);
+        long firstSegment = clinic.loadSnapshot();
+        try {
+            clinic.replayedRecords = Journal.replay(directory, firstSegment,
+                    record -> apply(record, clinic.doctorService, clinic.patientService, clinic.appointmentService));
+        } catch (RuntimeException e) {
+            clinic.checkpointer.shutdown();
+            throw new IOException("Failed to replay journal in " + directory, e);
+        }
+        clinic.journal = Journal.open(directory, policy, Constants.JOURNAL_SYNC_INTERVAL_MILLIS);
+        clinic.doctorService.attachJournal(clinic.journal);
+        clinic.patientService.attachJournal(clinic.journal);
+        clinic.appointmentService.attachJournal(clinic.journal);
+        return clinic;
+    }
+    
+    /**
+     * Writes a point-in-time snapshot of all services and the ID counters, then deletes
+     * the journal segments it makes redundant. Writers keep running throughout.
+     * <p>
+     * The snapshot is fuzzy: it is read while writers change the stores. The journal is
+     * rotated before reading starts, which waits for operations in progress, so the closed
+     * segments hold only changes the snapshot already contains. Changes the snapshot may
+     * catch half-way are in the new segment; journaled operations carry absolute values,
+     * so replaying that segment over the snapshot is safe.
+     *
+     * @return the snapshot file
+     * @throws IOException if the snapshot cannot be written
+     */
+    public synchronized Path checkpoint() throws IOException {
+        long firstKept = journal.rotate() + 1;
+        Path snapshot = directory.resolve(Constants.SNAPSHOT_FILE);
+        Path temp = directory.resolve(Constants.SNAPSHOT_FILE + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            EntityCodec.Encoder out = new EntityCodec.Encoder(Channels.newOutputStream(channel));
+            out.writeLongs(firstKept);
+            out.writeLongs(IdGenerator.getCounters());
+            // doctors and patients first, so restored appointments find them
+            writeAll(out, doctorService.getAllDoctors());
+            writeAll(out, patientService.getAllPatients());
+            writeAll(out, appointmentService.getAllAppointments());
+            out.writeEnd();
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, snapshot, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.deleteSegmentsBefore(firstKept);
+        return snapshot;
+    }
+    
+    /**
+     * Runs {@link #checkpoint()} on a background thread. Checkpoints never overlap.
+     *
+     * @return a future completed with the snapshot file, or exceptionally if the checkpoint fails
+     */
+    public CompletableFuture<Path> checkpointInBackground() {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return checkpoint();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }, checkpointer);
+    }
+    
+    public DoctorService getDoctorService() {
+        return doctorService;
+    }
+    
+    public PatientService getPatientService() {
+        return patientService;
+    }
+    
+    public AppointmentService getAppointmentService() {
+        return appointmentService;
+    }
+    
+    public Journal getJournal() {
+        return journal;
+    }
+    
+    /**
+     * Gets how many journal records were replayed after the snapshot when the clinic was opened.
+     *
+     * @return the number of replayed records
+     */
+    public long getReplayedRecords() {
+        return replayedRecords;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        checkpointer.shutdown();
+        try {
+            checkpointer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        IdGenerator.persistTo(null);
+        journal.close();
+    }
+    
+    /**
+     * Restores the services from the snapshot file, if there is one.
+     *
+     * @return the first journal segment the snapshot does not cover
+     */
+    private long loadSnapshot() throws IOException {
+        Path snapshot = directory.resolve(Constants.SNAPSHOT_FILE);
+        if (!Files.exists(snapshot)) {
+            return 0;
+        }
+        try (EntityCodec.Decoder in = new EntityCodec.Decoder(Files.newInputStream(snapshot))) {
+            long firstSegment = ((long[]) in.read())[0];
+            IdGenerator.advanceCounters((long[]) in.read());
+            for (Object entity = in.read(); entity != null; entity = in.read()) {
+                if (entity instanceof Doctor) {
+                    doctorService.restoreDoctor((Doctor) entity);
+                } else if (entity instanceof Patient) {
+                    patientService.restorePatient((Patient) entity);
+                } else if (entity instanceof Appointment) {
+                    appointmentService.restoreAppointment((Appointment) entity);
+                }
+            }
+            return firstSegment;
+        } catch (ClassCastException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Corrupt snapshot " + snapshot, e);
+        }
+    }
+    
+    private static void writeAll(EntityCodec.Encoder out, Collection<?> entities) throws IOException {
+        for (Object entity : entities) {
+            out.write(entity);
+        }
+    }
+    
+    private static void apply(Journal.Record record, DoctorService doctors, PatientService patients,
+                              AppointmentService appointments) {
+        try {
+            switch (record.getOperation()) {
+                case Constants.JOURNAL_REGISTER_DOCTOR:
+                    doctors.restoreDoctor(new Doctor(record.field(0), record.field(1), record.field(2),
+                            record.field(3), record.field(4), record.field(5), availability(record.field(6))));
+                    break;
+                case Constants.JOURNAL_UPDATE_DOCTOR:
+                    doctors.restoreDoctorContacts(record.field(0), record.field(1), record.field(2));
+                    break;
+                case Constants.JOURNAL_DOCTOR_AVAILABILITY:
+                    doctors.setDoctorAvailability(record.field(0), availability(record.field(1)));
+                    break;
+                case Constants.JOURNAL_REMOVE_DOCTOR:
+                    doctors.removeDoctor(record.field(0));
+                    break;
+                case Constants.JOURNAL_REGISTER_PATIENT:
+                    patients.restorePatient(new Patient(record.field(0), record.field(1), record.field(2),
+                            record.field(3), Integer.parseInt(record.field(4)), record.field(5)));
+                    break;
+                case Constants.JOURNAL_UPDATE_PATIENT:
+                    patients.restorePatientContacts(record.field(0), record.field(1), record.field(2));
+                    break;
+                case Constants.JOURNAL_UPDATE_AGE:
+                    patients.restoreAge(record.field(0), Integer.parseInt(record.field(1)));
+                    break;
+                case Constants.JOURNAL_MEDICAL_HISTORY:
+                    patients.updateMedicalHistory(record.field(0), record.field(1));
+                    break;
+                case Constants.JOURNAL_REMOVE_PATIENT:
+                    patients.removePatient(record.field(0));
+                    break;
+                case Constants.JOURNAL_BOOK_APPOINTMENT:
+                    appointments.restoreAppointment(new Appointment(record.field(0), record.field(1),
+                            record.field(2), LocalDateTime.parse(record.field(3)), AppointmentStatus.SCHEDULED,
+                            record.field(4)));
+                    break;
+                case Constants.JOURNAL_CANCEL_APPOINTMENT:
+                    appointments.cancelAppointment(record.field(0));
+                    break;
+                case Constants.JOURNAL_COMPLETE_APPOINTMENT:
+                    appointments.completeAppointment(record.field(0));
+                    break;
+                case Constants.JOURNAL_RESCHEDULE_APPOINTMENT:
+                    appointments.restoreReschedule(record.field(0), LocalDateTime.parse(record.field(1)));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown journal operation: " + record.getOperation());
+            }
+        } catch (AppointmentNotFoundException e) {
+            // the appointment was never restored; nothing to apply
+        }
+    }
+    
+    private static DoctorAvailability availability(String name) {
+        return name == null ? null : DoctorAvailability.valueOf(name);
+    }
+}
@@ -1,12 +1,23 @@
 package com.airtribe.meditrack.service;
 
+import com.airtribe.meditrack.constants.Constants;
 import com.airtribe.meditrack.entity.Doctor;
+import com.airtribe.meditrack.entity.DoctorAvailability;
 import com.airtribe.meditrack.exception.InvalidDataException;
 import com.airtribe.meditrack.util.DataStore;
+import com.airtribe.meditrack.util.EntityKey;
+import com.airtribe.meditrack.util.EntityStore;
 import com.airtribe.meditrack.util.IdGenerator;
+import com.airtribe.meditrack.util.Journal;
+import com.airtribe.meditrack.util.NameIndex;
 import com.airtribe.meditrack.util.Validator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import static java.util.stream.Collectors.toList;
@@ -17,13 +28,38 @@ import static java.util.stream.Collectors.toList;
  */
 public class DoctorService {
     
-    private DataStore<Doctor> doctorStore;
+    private static final String SPECIALTY_INDEX = "specialty";
+    private static final String AVAILABILITY_INDEX = "availability";
+    private static final String SPECIALTY_AVAILABILITY_INDEX = "specialtyAvailability";
+    
+    private EntityStore<Doctor> doctorStore;
+    private final NameIndex nameIndex = new NameIndex();
+    private Journal journal;
     
     /**
      * Constructs a DoctorService with an empty data store.
      */
     public DoctorService() {
-        this.doctorStore = new DataStore<Doctor>();
+        this(new DataStore<Doctor>(Doctor::getId));
+    }
+    
+    /**
+     * Constructs a DoctorService backed by the given data store, for example a
+     * {@link com.airtribe.meditrack.util.ConcurrentDataStore} when the service is
+     * shared between threads.
+     *
+     * @param doctorStore a store keyed by doctor ID
+     * @throws IllegalArgumentException if the store is not keyed
+     */
+    public DoctorService(EntityStore<Doctor> doctorStore) {
+        if (!doctorStore.isKeyed()) {
+            throw new IllegalArgumentException("Doctor store must be keyed by doctor ID");
+        }
+        this.doctorStore = doctorStore;
+        this.doctorStore.addIndex(SPECIALTY_INDEX, Doctor::getSpecialty);
+        this.doctorStore.addIndex(AVAILABILITY_INDEX, Doctor::getAvailability);
+        this.doctorStore.addIndex(SPECIALTY_AVAILABILITY_INDEX,
+                                  d -> specialtyAvailability(d.getSpecialty(), d.getAvailability()));
     }
     
     /**
@@ -51,7 +87,7 @@ public class DoctorService {
 
         String doctorId = IdGenerator.generateDoctorId();
         Doctor doctor = new Doctor(doctorId, name, email, phoneNumber, specialty, licenseNumber, availability);
-        doctorStore.add(doctor);
+        journaled(() -> store(doctor), Constants.JOURNAL_REGISTER_DOCTOR, registrationFields(doctor));
 
         return doctor;
     }
@@ -63,9 +99,7 @@ public class DoctorService {
      * @return an Optional containing the doctor if found, empty otherwise
      */
     public Optional<Doctor> getDoctorById(String doctorId) {
-        return doctorStore.getAll().stream()
-                .filter(d -> d.matchesId(doctorId))
-                .findFirst();
+        return doctorStore.findByKey(doctorId);
     }
     
     /**
@@ -75,9 +109,32 @@ public class DoctorService {
      * @return an Optional containing the doctor if found, empty otherwise
      */
     public Optional<Doctor> getDoctorByName(String name) {
-        return doctorStore.getAll().stream()
-                .filter(d -> d.matchesName(name))
-                .findFirst();
+        for (long key : nameIndex.withWords(name)) {
+            Optional<Doctor> doctor = doctorStore.findByKey(key).filter(d -> d.matchesName(name));
+            if (doctor.isPresent()) {
+                return doctor;
+            }
+        }
+        return Optional.empty();
+    }
+    
+    /**
+     * Searches doctors by a name as typed at the front desk, tolerating partial
+     * names and typing mistakes. Names with a word starting with the query rank
+     * first, shorter completions ahead of longer ones, followed by names within a
+     * few typing mistakes of it, closest first.
+     *
+     * @param query the typed name, such as "Shar" or "Sarma"
+     * @param limit the most doctors to return
+     * @return the matching doctors, best first
+     */
+    public List<Doctor> searchDoctorsByName(String query, int limit) {
+        long[] keys = nameIndex.search(query, limit);
+        List<Doctor> doctors = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            doctorStore.findByKey(key).ifPresent(doctors::add);
+        }
+        return doctors;
     }
     
     /**
@@ -87,9 +144,7 @@ public class DoctorService {
      * @return a list of doctors with that specialty
      */
     public List<Doctor> getDoctorsBySpecialty(String specialty) {
-        return doctorStore.getAll().stream()
-                .filter(d -> d.getSpecialty().equalsIgnoreCase(specialty))
-                .collect(toList());
+        return doctorStore.findByIndex(SPECIALTY_INDEX, specialty);
     }
     
     /**
@@ -98,9 +153,66 @@ public class DoctorService {
      * @return a list of available doctors
      */
     public List<Doctor> getAvailableDoctors() {
-        return doctorStore.getAll().stream()
-                .filter(Doctor::isAvailable)
-                .collect(toList());
+        return doctorStore.findByIndex(AVAILABILITY_INDEX, com.airtribe.meditrack.entity.DoctorAvailability.AVAILABLE);
+    }
+    
+    /**
+     * Retrieves the available doctors of a specialty, such as the available
+     * cardiologists, from the specialty and availability index.
+     *
+     * @param specialty the specialty
+     * @return a list of available doctors with that specialty
+     */
+    public List<Doctor> getAvailableDoctors(String specialty) {
+        return getDoctors(specialty, DoctorAvailability.AVAILABLE);
+    }
+    
+    /**
+     * Retrieves the doctors of a specialty in the given availability state.
+     *
+     * @param specialty the specialty
+     * @param availability the availability state
+     * @return a list of matching doctors, empty if either argument is null
+     */
+    public List<Doctor> getDoctors(String specialty, DoctorAvailability availability) {
+        Object key = specialtyAvailability(specialty, availability);
+        return key == null ? new ArrayList<>() : doctorStore.findByIndex(SPECIALTY_AVAILABILITY_INDEX, key);
+    }
+    
+    /**
+     * Counts the doctors in an availability state without retrieving them.
+     *
+     * @param availability the availability state
+     * @return the number of doctors in that state
+     */
+    public int countDoctors(DoctorAvailability availability) {
+        return doctorStore.countByIndex(AVAILABILITY_INDEX, availability);
+    }
+    
+    /**
+     * Counts the doctors of a specialty in an availability state without retrieving them.
+     *
+     * @param specialty the specialty
+     * @param availability the availability state
+     * @return the number of matching doctors
+     */
+    public int countDoctors(String specialty, DoctorAvailability availability) {
+        Object key = specialtyAvailability(specialty, availability);
+        return key == null ? 0 : doctorStore.countByIndex(SPECIALTY_AVAILABILITY_INDEX, key);
+    }
+    
+    /**
+     * Gets how many doctors are in each availability state. Doctors without a state
+     * are not counted.
+     *
+     * @return the count for every availability state
+     */
+    public Map<DoctorAvailability, Integer> getAvailabilityCounts() {
+        Map<DoctorAvailability, Integer> counts = new EnumMap<>(DoctorAvailability.class);
+        for (DoctorAvailability availability : DoctorAvailability.values()) {
+            counts.put(availability, countDoctors(availability));
+        }
+        return counts;
     }
     
     /**
@@ -115,8 +227,8 @@ public class DoctorService {
         getDoctorById(doctorId).ifPresent(doctor -> {
             try {
                 Validator.validateDoctor(doctor.getName(), email, phoneNumber);
-                doctor.setEmail(email);
-                doctor.setPhoneNumber(phoneNumber);
+                journaledUpdate(doctor, contactChange(email, phoneNumber), Constants.JOURNAL_UPDATE_DOCTOR,
+                                doctor.getId(), email, phoneNumber);
             } catch (InvalidDataException e) {
                 throw new RuntimeException(e);
             }
@@ -130,7 +242,8 @@ public class DoctorService {
      * @param available the availability status
      */
     public void setDoctorAvailability(String doctorId, boolean available) {
-        getDoctorById(doctorId).ifPresent(doctor -> doctor.setAvailable(available));
+        setDoctorAvailability(doctorId, available ? com.airtribe.meditrack.entity.DoctorAvailability.AVAILABLE
+                                                  : com.airtribe.meditrack.entity.DoctorAvailability.NOT_AVAILABLE);
     }
 
     /**
@@ -140,7 +253,9 @@ public class DoctorService {
      * @param availability the availability state
      */
     public void setDoctorAvailability(String doctorId, com.airtribe.meditrack.entity.DoctorAvailability availability) {
-        getDoctorById(doctorId).ifPresent(doctor -> doctor.setAvailability(availability));
+        getDoctorById(doctorId).ifPresent(doctor -> journaledUpdate(
+                doctor, d -> d.setAvailability(availability), Constants.JOURNAL_DOCTOR_AVAILABILITY, doctor.getId(),
+                availability == null ? null : availability.name()));
     }
     
     /**
@@ -150,15 +265,127 @@ public class DoctorService {
      * @return true if removed, false otherwise
      */
     public boolean removeDoctor(String doctorId) {
-        return getDoctorById(doctorId).map(doctorStore::remove).orElse(false);
+        if (!doctorStore.containsKey(doctorId)) {
+            return false;
+        }
+        journaled(() -> {
+            doctorStore.removeByKey(doctorId);
+            nameIndex.remove(EntityKey.find(doctorId));
+        }, Constants.JOURNAL_REMOVE_DOCTOR, doctorId);
+        return true;
+    }
+    
+    /**
+     * Gets all doctors in the system as a read-only live view.
+     * Nothing is copied; the view reflects later changes, and iterating it while
+     * another thread writes is only safe with a concurrent data store.
+     *
+     * @return an unmodifiable view of all doctors
+     */
+    public Collection<Doctor> getAllDoctors() {
+        return doctorStore.view();
+    }
+    
+    /**
+     * Starts recording every mutating call in the journal.
+     *
+     * @param journal the journal to append to
+     */
+    void attachJournal(Journal journal) {
+        this.journal = journal;
+    }
+    
+    /**
+     * Registers doctors that were already validated, such as the rows of a bulk
+     * import, with a single journal write for the whole batch. IDs are assigned here
+     * in list order.
+     *
+     * @param doctors validated doctors without IDs
+     */
+    void registerValidated(List<Doctor> doctors) {
+        List<String[]> records = new ArrayList<>(doctors.size());
+        for (Doctor doctor : doctors) {
+            doctor.setId(IdGenerator.generateDoctorId());
+            records.add(registrationFields(doctor));
+        }
+        Runnable apply = () -> doctors.forEach(this::store);
+        if (journal == null) {
+            apply.run();
+        } else {
+            journal.recordAll(apply, Constants.JOURNAL_REGISTER_DOCTOR, records);
+        }
+    }
+    
+    /**
+     * Puts a doctor read back from disk into the store without validation or journaling.
+     *
+     * @param doctor the restored doctor
+     */
+    void restoreDoctor(Doctor doctor) {
+        IdGenerator.advancePast(doctor.getId());
+        store(doctor);
     }
     
     /**
-     * Gets all doctors in the system.
+     * Replays a contact update read back from disk without validating it again.
      *
-     * @return a list of all doctors
+     * @param doctorId the doctor's ID
+     * @param email the new email
+     * @param phoneNumber the new phone number
+     */
+    void restoreDoctorContacts(String doctorId, String email, String phoneNumber) {
+        getDoctorById(doctorId).ifPresent(doctor -> doctorStore.update(doctor, contactChange(email, phoneNumber)));
+    }
+    
+    private static Consumer<Doctor> contactChange(String email, String phoneNumber) {
+        return d -> {
+            d.setEmail(email);
+            d.setPhoneNumber(phoneNumber);
+        };
+    }
+    
+    private void store(Doctor doctor) {
+        doctorStore.add(doctor);
+        nameIndex.put(EntityKey.of(doctor.getId()), doctor.getName());
+    }
+    
+    /**
+     * Builds the key of the specialty and availability index, normalizing the
+     * specialty the way the specialty index does.
+     */
+    private static Object specialtyAvailability(String specialty, DoctorAvailability availability) {
+        if (specialty == null || availability == null) {
+            return null;
+        }
+        return List.of(EntityStore.normalizeKey(specialty), availability);
+    }
+    
+    private static String[] registrationFields(Doctor doctor) {
+        return new String[] {doctor.getId(), doctor.getName(), doctor.getEmail(), doctor.getPhoneNumber(),
+                             doctor.getSpecialty(), doctor.getLicenseNumber(),
+                             doctor.getAvailability() == null ? null : doctor.getAvailability().name()};
+    }
+    
+    private void journaled(Runnable apply, String operation, String... fields) {
+        if (journal == null) {
+            apply.run();
+        } else {
+            journal.record(apply, operation, fields);
+        }
+    }
+    
+    /**
+     * Journals and applies a change to one doctor under the store's lock for that
+     * doctor, so concurrent changes to it are journaled in the order they apply.
      */
-    public List<Doctor> getAllDoctors() {
-        return doctorStore.getAll();
+    private void journaledUpdate(Doctor doctor, Consumer<Doctor> mutation, String operation, String... fields) {
+        if (journal == null) {
+            doctorStore.update(doctor, mutation);
+            return;
+        }
+        journal.perform(() -> doctorStore.update(doctor, d -> {
+            journal.append(operation, fields);
+            mutation.accept(d);
+        }));
     }
 }
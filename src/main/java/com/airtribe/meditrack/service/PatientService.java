@@ -1,15 +1,34 @@
 package com.airtribe.meditrack.service;
 
+import com.airtribe.meditrack.constants.Constants;
 import com.airtribe.meditrack.entity.Patient;
+import com.airtribe.meditrack.exception.DuplicatePatientException;
 import com.airtribe.meditrack.exception.InvalidDataException;
+import com.airtribe.meditrack.util.AgeIndex;
 import com.airtribe.meditrack.util.DataStore;
+import com.airtribe.meditrack.util.EntityKey;
+import com.airtribe.meditrack.util.EntityStore;
 import com.airtribe.meditrack.util.IdGenerator;
+import com.airtribe.meditrack.util.InvertedIndex;
+import com.airtribe.meditrack.util.Journal;
+import com.airtribe.meditrack.util.LruCache;
+import com.airtribe.meditrack.util.NameIndex;
+import com.airtribe.meditrack.util.OffHeapPatientStore;
+import com.airtribe.meditrack.util.UniqueIndex;
 import com.airtribe.meditrack.util.Validator;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
-
-import static java.util.stream.Collectors.toList;
+import java.util.stream.IntStream;
 
 /**
  * Service class for managing patients.
@@ -17,13 +36,39 @@ import static java.util.stream.Collectors.toList;
  */
 public class PatientService {
     
-    private DataStore<Patient> patientStore;
+    private EntityStore<Patient> patientStore;
+    private final InvertedIndex historyIndex = new InvertedIndex();
+    private final NameIndex nameIndex = new NameIndex();
+    private final AgeIndex ageIndex = new AgeIndex();
+    private final UniqueIndex emailIndex = new UniqueIndex();
+    private final UniqueIndex phoneIndex = new UniqueIndex();
+    private Journal journal;
     
     /**
      * Constructs a PatientService with an empty data store.
      */
     public PatientService() {
-        this.patientStore = new DataStore<Patient>();
+        this(new DataStore<Patient>(Patient::getId));
+    }
+    
+    /**
+     * Constructs a PatientService backed by the given data store, for example a
+     * {@link com.airtribe.meditrack.util.ConcurrentDataStore} when the service is
+     * shared between threads. Patients already in the store, such as those of a
+     * reopened {@link OffHeapPatientStore}, are indexed as if just registered.
+     *
+     * @param patientStore a store keyed by patient ID
+     * @throws IllegalArgumentException if the store is not keyed
+     */
+    public PatientService(EntityStore<Patient> patientStore) {
+        if (!patientStore.isKeyed()) {
+            throw new IllegalArgumentException("Patient store must be keyed by patient ID");
+        }
+        this.patientStore = patientStore;
+        for (Patient patient : patientStore.view()) {
+            IdGenerator.advancePast(patient.getId());
+            index(patient);
+        }
     }
     
     /**
@@ -35,6 +80,7 @@ public class PatientService {
      * @param age the patient's age
      * @param medicalHistory the patient's medical history
      * @return the registered patient
+     * @throws DuplicatePatientException if the email or phone number is already registered
      * @throws InvalidDataException if any field is invalid
      */
     public Patient registerPatient(String name, String email, String phoneNumber, 
@@ -43,7 +89,13 @@ public class PatientService {
         
         String patientId = IdGenerator.generatePatientId();
         Patient patient = new Patient(patientId, name, email, phoneNumber, age, medicalHistory);
-        patientStore.add(patient);
+        Runnable unreserve = reserveContacts(email, phoneNumber, EntityKey.of(patientId), Set.of());
+        try {
+            journaled(() -> store(patient), Constants.JOURNAL_REGISTER_PATIENT, registrationFields(patient));
+        } catch (RuntimeException e) {
+            unreserve.run();
+            throw e;
+        }
         
         return patient;
     }
@@ -55,9 +107,7 @@ public class PatientService {
      * @return an Optional containing the patient if found, empty otherwise
      */
     public Optional<Patient> getPatientById(String patientId) {
-        return patientStore.getAll().stream()
-                .filter(p -> p.matchesId(patientId))
-                .findFirst();
+        return patientStore.findByKey(patientId);
     }
     
     /**
@@ -67,22 +117,98 @@ public class PatientService {
      * @return an Optional containing the patient if found, empty otherwise
      */
     public Optional<Patient> getPatientByName(String name) {
-        return patientStore.getAll().stream()
-                .filter(p -> p.matchesName(name))
-                .findFirst();
+        for (long key : nameIndex.withWords(name)) {
+            Optional<Patient> patient = patientStore.findByKey(key).filter(p -> p.matchesName(name));
+            if (patient.isPresent()) {
+                return patient;
+            }
+        }
+        return Optional.empty();
     }
     
     /**
-     * Retrieves all patients within a specific age range.
+     * Searches patients by a partial or misspelt name. Prefix matches come first,
+     * then names within a few typing mistakes; see
+     * {@link DoctorService#searchDoctorsByName(String, int)} for the ranking.
+     *
+     * @param query the typed name, such as "Shar" or "Sarma"
+     * @param limit the most patients to return
+     * @return the matching patients, best first
+     */
+    public List<Patient> searchPatientsByName(String query, int limit) {
+        long[] keys = nameIndex.search(query, limit);
+        List<Patient> patients = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            patientStore.findByKey(key).ifPresent(patients::add);
+        }
+        return patients;
+    }
+    
+    /**
+     * Retrieves all patients within a specific age range, from the age index
+     * rather than by scanning every patient.
      *
      * @param minAge the minimum age
      * @param maxAge the maximum age
-     * @return a list of patients within the age range
+     * @return a list of patients within the age range, youngest first
      */
     public List<Patient> getPatientsByAgeRange(int minAge, int maxAge) {
-        return patientStore.getAll().stream()
-                .filter(p -> p.getAge() >= minAge && p.getAge() <= maxAge)
-                .collect(toList());
+        long[] keys = ageIndex.between(minAge, maxAge);
+        List<Patient> patients = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            patientStore.findByKey(key).ifPresent(patients::add);
+        }
+        return patients;
+    }
+    
+    /**
+     * Counts the patients within a specific age range without retrieving them.
+     *
+     * @param minAge the minimum age
+     * @param maxAge the maximum age
+     * @return the number of patients within the age range
+     */
+    public int countPatientsByAgeRange(int minAge, int maxAge) {
+        return ageIndex.countBetween(minAge, maxAge);
+    }
+    
+    /**
+     * Gets the number of patients of each age, for age-band reports.
+     *
+     * @return patient counts indexed by age, from 0 to {@link Constants#MAX_AGE}
+     */
+    public int[] getAgeHistogram() {
+        return ageIndex.histogram();
+    }
+    
+    /**
+     * Finds the patients whose medical history matches a full-text query. Words must
+     * all appear, {@code OR} separates alternatives, quoted text must appear as a
+     * phrase and a trailing {@code *} matches any word with that prefix, as in
+     * {@code diabetes "high blood pressure" OR hyperten*}. Matching ignores case and
+     * punctuation.
+     *
+     * @param query the query
+     * @return the matching patients, most recently recorded history last
+     */
+    public List<Patient> searchMedicalHistory(String query) {
+        long[] keys = historyIndex.search(query);
+        List<Patient> patients = new ArrayList<>(keys.length);
+        for (long key : keys) {
+            patientStore.findByKey(key).ifPresent(patients::add);
+        }
+        return patients;
+    }
+    
+    /**
+     * Counts the patients whose medical history matches a full-text query, using the
+     * syntax of {@link #searchMedicalHistory(String)}.
+     *
+     * @param query the query
+     * @return the number of matching patients
+     */
+    public int countMedicalHistoryMatches(String query) {
+        return historyIndex.search(query).length;
     }
     
     /**
@@ -92,6 +218,7 @@ public class PatientService {
      * @param email the new email
      * @param phoneNumber the new phone number
      * @return true if update was successful, false if patient not found
+     * @throws DuplicatePatientException if the email or phone number is registered to another patient
      * @throws InvalidDataException if any field is invalid
      */
     public boolean updatePatient(String patientId, String email, String phoneNumber) throws InvalidDataException {
@@ -101,11 +228,36 @@ public class PatientService {
         }
         Patient patient = optionalPatient.get();
         Validator.validatePatient(patient.getName(), email, phoneNumber, patient.getAge());
-        patient.setEmail(email);
-        patient.setPhoneNumber(phoneNumber);
+        Runnable unreserve = reserveContacts(email, phoneNumber, EntityKey.of(patientId), Set.of());
+        try {
+            journaledUpdate(patient, contactChange(email, phoneNumber), Constants.JOURNAL_UPDATE_PATIENT, patientId,
+                            email, phoneNumber);
+        } catch (RuntimeException e) {
+            unreserve.run();
+            throw e;
+        }
         return true;
     }
     
+    /**
+     * Updates a patient's age.
+     *
+     * @param patientId the patient's ID
+     * @param age the new age
+     * @return true if update was successful, false if patient not found
+     * @throws InvalidDataException if the age is invalid
+     */
+    public boolean updateAge(String patientId, int age) throws InvalidDataException {
+        if (!Validator.isValidAge(age)) {
+            throw new InvalidDataException("Age must be between 1 and " + Constants.MAX_AGE);
+        }
+        return getPatientById(patientId).map(patient -> {
+            journaledUpdate(patient, ageChange(age), Constants.JOURNAL_UPDATE_AGE, patient.getId(),
+                            String.valueOf(age));
+            return true;
+        }).orElse(false);
+    }
+    
     /**
      * Updates a patient's medical history.
      *
@@ -115,7 +267,10 @@ public class PatientService {
      */
     public boolean updateMedicalHistory(String patientId, String medicalHistory) {
         return getPatientById(patientId).map(patient -> {
-            patient.setMedicalHistory(medicalHistory);
+            journaledUpdate(patient, p -> {
+                p.setMedicalHistory(medicalHistory);
+                historyIndex.put(EntityKey.of(p.getId()), medicalHistory);
+            }, Constants.JOURNAL_MEDICAL_HISTORY, patient.getId(), medicalHistory);
             return true;
         }).orElse(false);
     }
@@ -127,15 +282,353 @@ public class PatientService {
      * @return true if removed, false otherwise
      */
     public boolean removePatient(String patientId) {
-        return getPatientById(patientId).map(patientStore::remove).orElse(false);
+        if (!patientStore.containsKey(patientId)) {
+            return false;
+        }
+        journaled(() -> {
+            long key = EntityKey.find(patientId);
+            patientStore.findByKey(key).ifPresent(p -> releaseContacts(p, key));
+            patientStore.removeByKey(patientId);
+            historyIndex.remove(key);
+            nameIndex.remove(key);
+            ageIndex.remove(key);
+        }, Constants.JOURNAL_REMOVE_PATIENT, patientId);
+        return true;
+    }
+    
+    /**
+     * Gets all patients in the system as a read-only live view.
+     * Nothing is copied; the view reflects later changes, and iterating it while
+     * another thread writes is only safe with a concurrent data store.
+     *
+     * @return an unmodifiable view of all patients
+     */
+    public Collection<Patient> getAllPatients() {
+        return patientStore.view();
     }
     
     /**
-     * Gets all patients in the system.
+     * Finds groups of patients that share a normalized email address or phone
+     * number, directly or through a chain of shared contacts. Registration rejects
+     * such patients, but restored or journaled data from before the check, and
+     * registrations racing on another thread, can still carry them.
+     * <p>
+     * The patients are grouped by each contact on parallel streams, and groups
+     * sharing a patient are then merged, so the report costs two passes over a
+     * snapshot of the store rather than a comparison of every pair.
      *
-     * @return a list of all patients
+     * @return the groups of two or more patients, each and all in store order
      */
-    public List<Patient> getAllPatients() {
-        return patientStore.getAll();
+    public List<List<Patient>> findDuplicates() {
+        List<Patient> patients = new ArrayList<>(patientStore.view());
+        int[] parent = IntStream.range(0, patients.size()).toArray();
+        for (Function<Patient, String> contact : List.<Function<Patient, String>>of(PatientService::emailOf,
+                                                                                     PatientService::phoneOf)) {
+            Map<String, List<Integer>> groups = IntStream.range(0, patients.size()).parallel().boxed()
+                    .filter(i -> contact.apply(patients.get(i)) != null)
+                    .collect(Collectors.groupingByConcurrent(i -> contact.apply(patients.get(i))));
+            for (List<Integer> group : groups.values()) {
+                for (int i = 1; i < group.size(); i++) {
+                    union(parent, group.get(0), group.get(i));
+                }
+            }
+        }
+        Map<Integer, List<Patient>> byRoot = new LinkedHashMap<>();
+        for (int i = 0; i < patients.size(); i++) {
+            byRoot.computeIfAbsent(root(parent, i), r -> new ArrayList<>()).add(patients.get(i));
+        }
+        return byRoot.values().stream().filter(group -> group.size() > 1).collect(Collectors.toList());
+    }
+    
+    /**
+     * Gets the counters of the patient cache when the service is backed by an
+     * {@link OffHeapPatientStore}, where only recently used patients stay on the heap.
+     *
+     * @return the cache hits, misses and evictions, or empty for a heap store
+     */
+    public Optional<LruCache.Stats> getCacheStats() {
+        if (patientStore instanceof OffHeapPatientStore) {
+            return Optional.of(((OffHeapPatientStore) patientStore).getCacheStats());
+        }
+        return Optional.empty();
+    }
+    
+    /**
+     * Starts recording every mutating call in the journal.
+     *
+     * @param journal the journal to append to
+     */
+    void attachJournal(Journal journal) {
+        this.journal = journal;
+    }
+    
+    /**
+     * Puts a Bloom filter in front of the email and phone indexes before a bulk
+     * import, so checking the mostly new contacts of its rows rarely touches the
+     * indexes themselves. Call {@link #finishBulkRegistration()} when the import ends.
+     *
+     * @param expectedPatients about how many patients the import will add
+     */
+    void startBulkRegistration(int expectedPatients) {
+        emailIndex.addBloomFilter(expectedPatients);
+        phoneIndex.addBloomFilter(expectedPatients);
+    }
+    
+    /**
+     * Removes the Bloom filters added for a bulk import, so single registrations
+     * only pay for the index lookup.
+     */
+    void finishBulkRegistration() {
+        emailIndex.removeBloomFilter();
+        phoneIndex.removeBloomFilter();
+    }
+    
+    /**
+     * Registers patients that were already validated, such as the rows of a bulk
+     * import, with a single journal write for the whole batch. IDs are assigned here
+     * in list order. A patient whose email or phone number is already registered, or
+     * appears earlier in the batch, is left out.
+     *
+     * @param patients validated patients without IDs
+     * @return the reasons for leaving patients out, by their position in the list
+     */
+    Map<Integer, String> registerValidated(List<Patient> patients) {
+        Map<Integer, String> rejected = new LinkedHashMap<>();
+        Set<String> batchIds = new HashSet<>();
+        List<Runnable> reservations = new ArrayList<>(patients.size());
+        List<Patient> accepted = new ArrayList<>(patients.size());
+        List<String[]> records = new ArrayList<>(patients.size());
+        for (int i = 0; i < patients.size(); i++) {
+            Patient patient = patients.get(i);
+            String patientId = IdGenerator.generatePatientId();
+            try {
+                reservations.add(reserveContacts(patient.getEmail(), patient.getPhoneNumber(),
+                                                 EntityKey.of(patientId), batchIds));
+            } catch (DuplicatePatientException e) {
+                rejected.put(i, e.getMessage());
+                continue;
+            }
+            patient.setId(patientId);
+            batchIds.add(patientId);
+            accepted.add(patient);
+            records.add(registrationFields(patient));
+        }
+        Runnable apply = () -> accepted.forEach(this::store);
+        try {
+            if (journal == null) {
+                apply.run();
+            } else {
+                journal.recordAll(apply, Constants.JOURNAL_REGISTER_PATIENT, records);
+            }
+        } catch (RuntimeException e) {
+            reservations.forEach(Runnable::run);
+            throw e;
+        }
+        return rejected;
+    }
+    
+    /**
+     * Puts a patient read back from disk into the store without validation or journaling.
+     *
+     * @param patient the restored patient
+     */
+    void restorePatient(Patient patient) {
+        IdGenerator.advancePast(patient.getId());
+        store(patient);
+    }
+    
+    /**
+     * Replays a contact update read back from disk. It was validated when first made,
+     * and the journal may already hold patients sharing a contact, so neither check is
+     * repeated; a contact another patient owns stays with that patient in the index.
+     *
+     * @param patientId the patient's ID
+     * @param email the new email
+     * @param phoneNumber the new phone number
+     */
+    void restorePatientContacts(String patientId, String email, String phoneNumber) {
+        getPatientById(patientId).ifPresent(patient -> patientStore.update(patient, contactChange(email, phoneNumber)));
+    }
+    
+    /**
+     * Replays an age update read back from disk without validating the age again.
+     *
+     * @param patientId the patient's ID
+     * @param age the new age
+     */
+    void restoreAge(String patientId, int age) {
+        getPatientById(patientId).ifPresent(patient -> patientStore.update(patient, ageChange(age)));
+    }
+    
+    private Consumer<Patient> contactChange(String email, String phoneNumber) {
+        return p -> {
+            long key = EntityKey.of(p.getId());
+            String oldEmail = emailOf(p);
+            String oldPhone = phoneOf(p);
+            p.setEmail(email);
+            p.setPhoneNumber(phoneNumber);
+            // claimed before the old contacts go, so an unchanged contact is never free in between
+            claimContacts(p, key);
+            if (!Objects.equals(oldEmail, emailOf(p))) {
+                emailIndex.release(oldEmail, key);
+            }
+            if (!Objects.equals(oldPhone, phoneOf(p))) {
+                phoneIndex.release(oldPhone, key);
+            }
+        };
+    }
+    
+    private Consumer<Patient> ageChange(int age) {
+        return p -> {
+            p.setAge(age);
+            ageIndex.put(EntityKey.of(p.getId()), age);
+        };
+    }
+    
+    private void store(Patient patient) {
+        patientStore.add(patient);
+        index(patient);
+    }
+    
+    private void index(Patient patient) {
+        long key = EntityKey.of(patient.getId());
+        historyIndex.put(key, patient.getMedicalHistory());
+        nameIndex.put(key, patient.getName());
+        ageIndex.put(key, patient.getAge());
+        claimContacts(patient, key);
+    }
+    
+    /**
+     * Reserves an email and phone number for a patient before it is stored or
+     * changed. Claiming a contact in its unique index is itself the duplicate check,
+     * so of two concurrent registrations of one contact only the first succeeds. If
+     * the phone number is taken, the email reserved here is released again.
+     *
+     * @param batchIds IDs of patients registered in the same batch, which are
+     *                 reported as earlier rows
+     * @return releases the contacts this call reserved, for when storing fails
+     */
+    private Runnable reserveContacts(String email, String phoneNumber, long key, Set<String> batchIds)
+            throws DuplicatePatientException {
+        String normalizedEmail = Validator.normalizeEmail(email);
+        String normalizedPhone = Validator.normalizePhone(phoneNumber);
+        long emailOwner = emailIndex.putIfAbsent(normalizedEmail, key);
+        String rival = rival(emailOwner, normalizedEmail, PatientService::emailOf, key);
+        if (rival != null) {
+            throw duplicate("Email", rival, batchIds);
+        }
+        long phoneOwner = phoneIndex.putIfAbsent(normalizedPhone, key);
+        rival = rival(phoneOwner, normalizedPhone, PatientService::phoneOf, key);
+        if (rival != null) {
+            if (emailOwner == EntityKey.NONE) {
+                emailIndex.release(normalizedEmail, key);
+            }
+            throw duplicate("Phone number", rival, batchIds);
+        }
+        return () -> {
+            if (emailOwner == EntityKey.NONE) {
+                emailIndex.release(normalizedEmail, key);
+            }
+            if (phoneOwner == EntityKey.NONE) {
+                phoneIndex.release(normalizedPhone, key);
+            }
+        };
+    }
+    
+    /**
+     * Gets the ID of the patient other than the given one that holds a contact. The
+     * indexes answer by fingerprint, so a stored owner whose own contact differs but
+     * shares the fingerprint is not a rival; an owner that is not stored yet, or whose
+     * contact is changing to this one, has reserved it and is.
+     */
+    private String rival(long owner, String value, Function<Patient, String> contact, long self) {
+        if (owner == EntityKey.NONE || owner == self) {
+            return null;
+        }
+        Optional<Patient> holder = patientStore.findByKey(owner);
+        if (holder.isEmpty()) {
+            return EntityKey.toId(owner);
+        }
+        String held = contact.apply(holder.get());
+        if (held != null && !held.equals(value) && UniqueIndex.fingerprint(held) == UniqueIndex.fingerprint(value)) {
+            return null;
+        }
+        return holder.get().getId();
+    }
+    
+    private static DuplicatePatientException duplicate(String contact, String ownerId, Set<String> batchIds) {
+        if (batchIds.contains(ownerId)) {
+            return new DuplicatePatientException(contact + " repeats an earlier row", ownerId);
+        }
+        return new DuplicatePatientException(contact + " is already registered to patient " + ownerId, ownerId);
+    }
+    
+    /**
+     * Indexes a patient's contacts. A contact already owned by another patient, which
+     * restored data can contain, stays with its first owner.
+     */
+    private void claimContacts(Patient patient, long key) {
+        emailIndex.claim(emailOf(patient), key);
+        phoneIndex.claim(phoneOf(patient), key);
+    }
+    
+    private void releaseContacts(Patient patient, long key) {
+        emailIndex.release(emailOf(patient), key);
+        phoneIndex.release(phoneOf(patient), key);
+    }
+    
+    private static String emailOf(Patient patient) {
+        return Validator.normalizeEmail(patient.getEmail());
+    }
+    
+    private static String phoneOf(Patient patient) {
+        return Validator.normalizePhone(patient.getPhoneNumber());
+    }
+    
+    private static int root(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+    
+    private static void union(int[] parent, int a, int b) {
+        int rootA = root(parent, a);
+        int rootB = root(parent, b);
+        // the earlier patient stays the root so groups keep store order
+        if (rootA < rootB) {
+            parent[rootB] = rootA;
+        } else if (rootB < rootA) {
+            parent[rootA] = rootB;
+        }
+    }
+    
+    private static String[] registrationFields(Patient patient) {
+        return new String[] {patient.getId(), patient.getName(), patient.getEmail(), patient.getPhoneNumber(),
+                             String.valueOf(patient.getAge()), patient.getMedicalHistory()};
+    }
+    
+    private void journaled(Runnable apply, String operation, String... fields) {
+        if (journal == null) {
+            apply.run();
+        } else {
+            journal.record(apply, operation, fields);
+        }
+    }
+    
+    /**
+     * Journals and applies a change to one patient under the store's lock for that
+     * patient, so concurrent changes to it are journaled in the order they apply.
+     */
+    private void journaledUpdate(Patient patient, Consumer<Patient> mutation, String operation, String... fields) {
+        if (journal == null) {
+            patientStore.update(patient, mutation);
+            return;
+        }
+        journal.perform(() -> patientStore.update(patient, p -> {
+            journal.append(operation, fields);
+            mutation.accept(p);
+        }));
     }
 }
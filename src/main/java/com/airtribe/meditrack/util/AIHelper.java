@@ -1,5 +1,17 @@
 package com.airtribe.meditrack.util;
 
+import com.airtribe.meditrack.constants.Constants;
+import com.airtribe.meditrack.entity.Patient;
+import com.airtribe.meditrack.service.AppointmentService;
+import com.airtribe.meditrack.service.PatientService;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
 /**
  * Utility class for AI-related helper functions (optional).
  * This can be extended with machine learning or AI features in the future.
@@ -12,11 +24,30 @@ public class AIHelper {
      *
      * @param doctorId the doctor's ID
      * @return a suggested appointment time as a string
+     * @deprecated has no access to the schedule; use
+     *             {@link #suggestAppointmentTime(AppointmentService, String)}
      */
+    @Deprecated
     public static String suggestAppointmentTime(String doctorId) {
         return "2026-02-15 10:00:00";
     }
     
+    /**
+     * Suggests the doctor's earliest free slot within the next
+     * {@link Constants#SLOT_SEARCH_DAYS} days, based on the booked appointments
+     * and the doctor's availability.
+     *
+     * @param appointmentService the service holding the doctor's schedule
+     * @param doctorId the doctor's ID
+     * @return the suggested appointment time as a string, or null if no slot is free
+     */
+    public static String suggestAppointmentTime(AppointmentService appointmentService, String doctorId) {
+        LocalDateTime now = LocalDateTime.now();
+        List<LocalDateTime> slots = appointmentService.findFreeSlots(doctorId, now,
+                now.plusDays(Constants.SLOT_SEARCH_DAYS), 1);
+        return slots.isEmpty() ? null : DateUtil.formatDateTime(slots.get(0));
+    }
+    
     /**
      * Predicts appointment no-show probability.
      * This is a placeholder for predictive analytics.
@@ -38,4 +69,29 @@ public class AIHelper {
     public static String analyzeMedicalHistory(String medicalHistory) {
         return "Patient health status appears stable.";
     }
+    
+    /**
+     * Analyzes a patient's medical history for the chronic conditions in
+     * {@link Constants#CHRONIC_CONDITIONS}, reporting for each one found how many
+     * patients share it according to the service's medical history index.
+     *
+     * @param patientService the service holding the patients
+     * @param patientId the patient's ID
+     * @return analysis and recommendations, or null if the patient does not exist
+     */
+    public static String analyzeMedicalHistory(PatientService patientService, String patientId) {
+        Optional<Patient> patient = patientService.getPatientById(patientId);
+        if (patient.isEmpty()) {
+            return null;
+        }
+        Set<String> words = new HashSet<>(InvertedIndex.tokenize(patient.get().getMedicalHistory()));
+        List<String> findings = new ArrayList<>();
+        for (String condition : Constants.CHRONIC_CONDITIONS) {
+            if (words.contains(condition)) {
+                findings.add(condition + " (" + patientService.countMedicalHistoryMatches(condition) + " patients)");
+            }
+        }
+        return findings.isEmpty() ? Constants.PATIENT_HEALTH_STATUS
+                : "Chronic conditions needing regular follow-up: " + String.join(", ", findings);
+    }
 }
@@ -0,0 +1,146 @@
+package com.airtribe.meditrack.util;
+
+import com.airtribe.meditrack.constants.Constants;
+
+import java.util.Arrays;
+
+/**
+ * Index of people by age, with one bucket of packed keys per age from 0 to
+ * {@link Constants#MAX_AGE}.
+ * <p>
+ * A range lookup copies the keys of the buckets in the range, youngest first,
+ * without looking at anyone outside it. Each bucket also keeps its size, so
+ * counting a range adds at most {@code MAX_AGE + 1} numbers however many people
+ * are indexed. A key is removed by moving the bucket's last key into its place,
+ * so keys within a bucket are not kept in any particular order. Ages outside the
+ * bucket range, which only restored data can carry, are held in a side map and
+ * checked by every lookup. All methods are synchronized.
+ */
+public class AgeIndex {
+    
+    private static final int BUCKETS = Constants.MAX_AGE + 1;
+    private static final long ABSENT = Long.MIN_VALUE;
+    
+    private final long[][] buckets = new long[BUCKETS][];
+    private final int[] counts = new int[BUCKETS];
+    private final LongLongMap slots = new LongLongMap(0, ABSENT);
+    private final LongLongMap outOfRange = new LongLongMap(0, ABSENT);
+    
+    /**
+     * Indexes a person's age, replacing any age indexed for them before.
+     *
+     * @param key the person's packed key
+     * @param age the age
+     */
+    public synchronized void put(long key, int age) {
+        remove(key);
+        if (age < 0 || age >= BUCKETS) {
+            outOfRange.put(key, age);
+            return;
+        }
+        long[] bucket = buckets[age];
+        if (bucket == null) {
+            bucket = buckets[age] = new long[4];
+        } else if (counts[age] == bucket.length) {
+            bucket = buckets[age] = Arrays.copyOf(bucket, bucket.length * 2);
+        }
+        int position = counts[age]++;
+        bucket[position] = key;
+        slots.put(key, slot(age, position));
+    }
+    
+    /**
+     * Removes a person from the index.
+     *
+     * @param key the person's packed key
+     * @return true if they were indexed, false otherwise
+     */
+    public synchronized boolean remove(long key) {
+        long slot = slots.remove(key);
+        if (slot == ABSENT) {
+            return outOfRange.remove(key) != ABSENT;
+        }
+        int age = (int) (slot >>> 32);
+        int position = (int) slot;
+        int last = --counts[age];
+        if (position != last) {
+            long moved = buckets[age][last];
+            buckets[age][position] = moved;
+            slots.put(moved, slot(age, position));
+        }
+        return true;
+    }
+    
+    /**
+     * Finds the people whose age is within a range.
+     *
+     * @param minAge the lowest age, inclusive
+     * @param maxAge the highest age, inclusive
+     * @return the matching keys, youngest first
+     */
+    public synchronized long[] between(int minAge, int maxAge) {
+        long[] keys = new long[countBetween(minAge, maxAge)];
+        int size = 0;
+        for (int age = Math.max(0, minAge); age <= Math.min(maxAge, BUCKETS - 1); age++) {
+            if (counts[age] > 0) {
+                System.arraycopy(buckets[age], 0, keys, size, counts[age]);
+                size += counts[age];
+            }
+        }
+        if (!outOfRange.isEmpty()) {
+            int[] filled = {size};
+            outOfRange.forEach((key, age) -> {
+                if (age >= minAge && age <= maxAge) {
+                    keys[filled[0]++] = key;
+                }
+            });
+        }
+        return keys;
+    }
+    
+    /**
+     * Counts the people whose age is within a range.
+     *
+     * @param minAge the lowest age, inclusive
+     * @param maxAge the highest age, inclusive
+     * @return the number of people in the range
+     */
+    public synchronized int countBetween(int minAge, int maxAge) {
+        int count = 0;
+        for (int age = Math.max(0, minAge); age <= Math.min(maxAge, BUCKETS - 1); age++) {
+            count += counts[age];
+        }
+        if (!outOfRange.isEmpty()) {
+            int[] outside = {0};
+            outOfRange.forEach((key, age) -> {
+                if (age >= minAge && age <= maxAge) {
+                    outside[0]++;
+                }
+            });
+            count += outside[0];
+        }
+        return count;
+    }
+    
+    /**
+     * Gets the number of people of each age.
+     *
+     * @return counts indexed by age, from 0 to {@link Constants#MAX_AGE}
+     */
+    public synchronized int[] histogram() {
+        return counts.clone();
+    }
+    
+    /**
+     * Gets the number of indexed people.
+     *
+     * @return the number of indexed people
+     */
+    public synchronized int size() {
+        return slots.size() + outOfRange.size();
+    }
+    
+    private static long slot(int age, int position) {
+        return (long) age << 32 | position;
+    }
+}
@@ -0,0 +1,177 @@
+package com.airtribe.meditrack.util;
+
+import com.airtribe.meditrack.entity.Appointment;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Per-doctor calendar of booked appointment slots.
+ * <p>
+ * Every appointment occupies one slot of a fixed duration starting at its
+ * appointment time. Each doctor's slots are kept in a map ordered by start time,
+ * so an overlap check only has to look at the nearest slot on either side and
+ * runs in O(log n) for a doctor with n booked slots. Operations on one doctor's
+ * calendar are atomic; different doctors do not contend. Bookings are matched by
+ * appointment ID, so a copy of a booked appointment can release or move it.
+ */
+public class AppointmentCalendar {
+    
+    private final Duration slotDuration;
+    private final Map<Long, NavigableMap<LocalDateTime, Appointment>> schedules = new ConcurrentHashMap<>();
+    
+    /**
+     * Constructs an empty calendar.
+     *
+     * @param slotDuration how long each appointment occupies the doctor
+     * @throws IllegalArgumentException if the duration is not positive
+     */
+    public AppointmentCalendar(Duration slotDuration) {
+        if (slotDuration == null || slotDuration.isNegative() || slotDuration.isZero()) {
+            throw new IllegalArgumentException("Slot duration must be positive");
+        }
+        this.slotDuration = slotDuration;
+    }
+    
+    /**
+     * Gets the duration of one appointment slot.
+     *
+     * @return the slot duration
+     */
+    public Duration getSlotDuration() {
+        return slotDuration;
+    }
+    
+    /**
+     * Finds a booked appointment overlapping a slot starting at the given time.
+     *
+     * @param doctorId the doctor's ID
+     * @param start the start of the candidate slot
+     * @return an Optional containing the conflicting appointment, empty if the slot is free
+     */
+    public Optional<Appointment> findConflict(String doctorId, LocalDateTime start) {
+        NavigableMap<LocalDateTime, Appointment> schedule = schedules.get(EntityKey.find(doctorId));
+        if (schedule == null) {
+            return Optional.empty();
+        }
+        synchronized (schedule) {
+            return Optional.ofNullable(conflict(schedule, start));
+        }
+    }
+    
+    /**
+     * Lists the start times of booked slots that overlap [from, to), in order.
+     *
+     * @param doctorId the doctor's ID
+     * @param from inclusive start of the window
+     * @param to exclusive end of the window
+     * @return the booked start times overlapping the window
+     */
+    public List<LocalDateTime> bookedStarts(String doctorId, LocalDateTime from, LocalDateTime to) {
+        NavigableMap<LocalDateTime, Appointment> schedule = schedules.get(EntityKey.find(doctorId));
+        if (schedule == null || !from.isBefore(to)) {
+            return new ArrayList<>();
+        }
+        synchronized (schedule) {
+            return new ArrayList<>(schedule.subMap(from.minus(slotDuration), false, to, false).keySet());
+        }
+    }
+    
+    /**
+     * Books the appointment's slot if it does not overlap another booking.
+     *
+     * @param appointment the appointment to book
+     * @return true if booked, false if the slot overlaps an existing booking
+     */
+    public boolean reserve(Appointment appointment) {
+        NavigableMap<LocalDateTime, Appointment> schedule = scheduleFor(appointment.getDoctorKey());
+        synchronized (schedule) {
+            if (conflict(schedule, appointment.getAppointmentDateTime()) != null) {
+                return false;
+            }
+            schedule.put(appointment.getAppointmentDateTime(), appointment);
+            return true;
+        }
+    }
+    
+    /**
+     * Moves a booked appointment to a new start time if the new slot is free.
+     * The appointment's own slot does not count as a conflict. The caller is
+     * expected to update the appointment's date and time afterwards.
+     *
+     * @param appointment the booked appointment, still holding its current time
+     * @param newStart the new start time
+     * @return true if moved, false if the new slot overlaps another booking
+     */
+    public boolean move(Appointment appointment, LocalDateTime newStart) {
+        return move(appointment, appointment.getAppointmentDateTime(), newStart);
+    }
+    
+    /**
+     * Moves the appointment's booking from an explicit start time, for callers that
+     * update the appointment's own time before or after touching the calendar.
+     *
+     * @param appointment the appointment being moved
+     * @param oldStart the start time the appointment is booked at
+     * @param newStart the requested start time
+     * @return true if the appointment now holds the new slot, false if it conflicts
+     */
+    public boolean move(Appointment appointment, LocalDateTime oldStart, LocalDateTime newStart) {
+        NavigableMap<LocalDateTime, Appointment> schedule = scheduleFor(appointment.getDoctorKey());
+        synchronized (schedule) {
+            boolean booked = removeBooking(schedule, oldStart, appointment);
+            if (conflict(schedule, newStart) != null) {
+                if (booked) {
+                    schedule.put(oldStart, appointment);
+                }
+                return false;
+            }
+            schedule.put(newStart, appointment);
+            return true;
+        }
+    }
+    
+    /**
+     * Frees the appointment's slot.
+     *
+     * @param appointment the appointment to release
+     * @return true if the slot was booked by this appointment, false otherwise
+     */
+    public boolean release(Appointment appointment) {
+        NavigableMap<LocalDateTime, Appointment> schedule = schedules.get(appointment.getDoctorKey());
+        if (schedule == null) {
+            return false;
+        }
+        synchronized (schedule) {
+            return removeBooking(schedule, appointment.getAppointmentDateTime(), appointment);
+        }
+    }
+    
+    private static boolean removeBooking(NavigableMap<LocalDateTime, Appointment> schedule, LocalDateTime start,
+                                         Appointment appointment) {
+        Appointment booked = schedule.get(start);
+        if (booked == null || !EntityKey.sameId(booked.getAppointmentId(), appointment.getAppointmentId())) {
+            return false;
+        }
+        schedule.remove(start);
+        return true;
+    }
+    
+    private NavigableMap<LocalDateTime, Appointment> scheduleFor(long doctorKey) {
+        return schedules.computeIfAbsent(doctorKey, k -> new TreeMap<>());
+    }
+    
+    private Appointment conflict(NavigableMap<LocalDateTime, Appointment> schedule, LocalDateTime start) {
+        Map.Entry<LocalDateTime, Appointment> before = schedule.floorEntry(start);
+        if (before != null && before.getKey().plus(slotDuration).isAfter(start)) {
+            return before.getValue();
+        }
+        Map.Entry<LocalDateTime, Appointment> after = schedule.higherEntry(start);
+        if (after != null && after.getKey().isBefore(start.plus(slotDuration))) {
+            return after.getValue();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+package com.airtribe.meditrack.util;
+
+import com.airtribe.meditrack.entity.Appointment;
+import com.airtribe.meditrack.entity.AppointmentStatus;
+
+import java.time.LocalDate;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Appointment counts by status, kept up to date as appointments are added and
+ * change, overall and per doctor and day.
+ * <p>
+ * Each count is a {@link LongAdder}, so threads booking and cancelling at the same
+ * time update separate cells instead of contending on one field, and reading a
+ * count costs the same however many appointments there are. Reads are not a
+ * consistent snapshot: a count read while an appointment changes may reflect only
+ * half of that change. Like {@link AppointmentTimeIndex}, an appointment must be
+ * removed before its status or date changes and added back afterwards.
+ */
+public class AppointmentStatistics {
+    
+    private static final AppointmentStatus[] STATUSES = AppointmentStatus.values();
+    
+    private final LongAdder[] all = newCounters();
+    private final Map<Long, LongAdder[]> byDoctor = new ConcurrentHashMap<>();
+    private final Map<LocalDate, LongAdder[]> byDay = new ConcurrentHashMap<>();
+    
+    /**
+     * Counts an appointment under its current status, doctor and day.
+     *
+     * @param appointment the appointment
+     */
+    public void add(Appointment appointment) {
+        adjust(appointment, 1);
+    }
+    
+    /**
+     * Stops counting an appointment under its current status, doctor and day.
+     *
+     * @param appointment the appointment
+     */
+    public void remove(Appointment appointment) {
+        adjust(appointment, -1);
+    }
+    
+    /**
+     * Gets the number of appointments with a status.
+     *
+     * @param status the status
+     * @return the count
+     */
+    public long count(AppointmentStatus status) {
+        return all[status.ordinal()].sum();
+    }
+    
+    /**
+     * Gets the number of appointments with each status.
+     *
+     * @return the counts of every status
+     */
+    public Map<AppointmentStatus, Long> counts() {
+        return snapshot(all);
+    }
+    
+    /**
+     * Gets the number of a doctor's appointments with each status.
+     *
+     * @param doctorKey the doctor's packed key
+     * @return the counts of every status, all zero for a doctor without appointments
+     */
+    public Map<AppointmentStatus, Long> countsForDoctor(long doctorKey) {
+        return snapshot(byDoctor.get(doctorKey));
+    }
+    
+    /**
+     * Gets the number of appointments on a day with each status.
+     *
+     * @param day the day the appointments start on
+     * @return the counts of every status, all zero for a day without appointments
+     */
+    public Map<AppointmentStatus, Long> countsForDay(LocalDate day) {
+        return snapshot(byDay.get(day));
+    }
+    
+    private void adjust(Appointment appointment, long delta) {
+        int status = appointment.getStatus().ordinal();
+        all[status].add(delta);
+        byDoctor.computeIfAbsent(appointment.getDoctorKey(), k -> newCounters())[status].add(delta);
+        byDay.computeIfAbsent(appointment.getAppointmentDateTime().toLocalDate(), k -> newCounters())[status]
+                .add(delta);
+    }
+    
+    private static LongAdder[] newCounters() {
+        LongAdder[] counters = new LongAdder[STATUSES.length];
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] = new LongAdder();
+        }
+        return counters;
+    }
+    
+    private static Map<AppointmentStatus, Long> snapshot(LongAdder[] counters) {
+        Map<AppointmentStatus, Long> counts = new EnumMap<>(AppointmentStatus.class);
+        for (AppointmentStatus status : STATUSES) {
+            counts.put(status, counters == null ? 0L : counters[status.ordinal()].sum());
+        }
+        return counts;
+    }
+}
@@ -0,0 +1,65 @@
+package com.airtribe.meditrack.util;
+
+import com.airtribe.meditrack.entity.Appointment;
+import com.airtribe.meditrack.entity.AppointmentStatus;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Time-ordered index of appointments, globally and per doctor and patient.
+ * {@link SkipListTimeIndex} indexes appointment objects;
+ * {@link ColumnarAppointmentStore#timeIndex()} answers from the store's time column.
+ * An appointment must be removed before its date and time changes and added back
+ * afterwards.
+ */
+public interface AppointmentTimeIndex {
+    
+    /**
+     * Adds an appointment at its current date and time.
+     *
+     * @param appointment the appointment to index
+     */
+    void add(Appointment appointment);
+    
+    /**
+     * Removes an appointment indexed at its current date and time.
+     *
+     * @param appointment the appointment to remove
+     */
+    void remove(Appointment appointment);
+    
+    /**
+     * Finds appointments starting in [from, to), in time order.
+     *
+     * @param from inclusive start of the range
+     * @param to exclusive end of the range
+     * @param status the status to keep, or null for any status
+     * @return the matching appointments
+     */
+    List<Appointment> between(LocalDateTime from, LocalDateTime to, AppointmentStatus status);
+    
+    /**
+     * Finds a doctor's appointments starting in [from, to), in time order.
+     *
+     * @param doctorId the doctor's ID
+     * @param from inclusive start of the range
+     * @param to exclusive end of the range
+     * @param status the status to keep, or null for any status
+     * @return the matching appointments
+     */
+    List<Appointment> betweenForDoctor(String doctorId, LocalDateTime from, LocalDateTime to,
+                                       AppointmentStatus status);
+    
+    /**
+     * Finds a patient's appointments starting in [from, to), in time order.
+     *
+     * @param patientId the patient's ID
+     * @param from inclusive start of the range
+     * @param to exclusive end of the range
+     * @param status the status to keep, or null for any status
+     * @return the matching appointments
+     */
+    List<Appointment> betweenForPatient(String patientId, LocalDateTime from, LocalDateTime to,
+                                        AppointmentStatus status);
+}
@@ -0,0 +1,82 @@
+package com.airtribe.meditrack.util;
+
+/**
+ * Fixed-size Bloom filter over 64-bit fingerprints. It answers "definitely
+ * absent" or "possibly present" from a bit array small enough to stay in cache,
+ * so a lookup that is usually a miss can skip a larger hash table.
+ * <p>
+ * Each fingerprint sets k bits chosen by double hashing of its two halves.
+ * Nothing can be removed; a filter that has seen removals or more insertions than
+ * it was sized for only answers "possibly present" more often. The filter is not
+ * thread-safe.
+ */
+public class BloomFilter {
+    
+    private final long[] bits;
+    private final long bitCount;
+    private final int hashes;
+    
+    /**
+     * Constructs a filter sized for an expected number of insertions and false
+     * positive rate.
+     *
+     * @param expectedInsertions the number of fingerprints it is sized for
+     * @param falsePositiveRate the wanted chance of a "possibly present" answer for
+     *                          an absent fingerprint, between 0 and 1 exclusive
+     * @throws IllegalArgumentException if an argument is out of range
+     */
+    public BloomFilter(int expectedInsertions, double falsePositiveRate) {
+        if (expectedInsertions < 0) {
+            throw new IllegalArgumentException("expectedInsertions cannot be negative");
+        }
+        if (!(falsePositiveRate > 0 && falsePositiveRate < 1)) {
+            throw new IllegalArgumentException("falsePositiveRate must be between 0 and 1");
+        }
+        int n = Math.max(1, expectedInsertions);
+        long m = Math.max(64, (long) Math.ceil(-n * Math.log(falsePositiveRate) / (Math.log(2) * Math.log(2))));
+        this.bits = new long[(int) ((m + 63) / 64)];
+        this.bitCount = bits.length * 64L;
+        this.hashes = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+    }
+    
+    /**
+     * Records a fingerprint.
+     *
+     * @param fingerprint the fingerprint
+     */
+    public void add(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = Long.rotateLeft(fingerprint, 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            bits[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+    
+    /**
+     * Checks whether a fingerprint may have been recorded.
+     *
+     * @param fingerprint the fingerprint
+     * @return false if it was definitely never recorded, true otherwise
+     */
+    public boolean mightContain(long fingerprint) {
+        long h1 = fingerprint;
+        long h2 = Long.rotateLeft(fingerprint, 32) | 1;
+        for (int i = 0; i < hashes; i++) {
+            long bit = Math.floorMod(h1 + i * h2, bitCount);
+            if ((bits[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Gets the size of the bit array in bytes.
+     *
+     * @return the footprint in bytes
+     */
+    public long footprintBytes() {
+        return bits.length * 8L;
+    }
+}
@@ -0,0 +1,248 @@
+package com.airtribe.meditrack.util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Long-lived, thread-safe CSV writer for append-only exports.
+ * <p>
+ * The file stays open for the appender's lifetime. Rows are encoded as UTF-8 into a
+ * direct buffer and written in batches when the buffer fills or the flush interval
+ * passes, optionally forcing each batch to disk. Fields containing a delimiter, quote
+ * or line break are quoted as RFC 4180 requires, so {@link CSVReader} reads them back intact.
+ */
+public class CSVAppender implements Closeable, Flushable {
+    
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    private static final long DEFAULT_FLUSH_INTERVAL_MILLIS = 1000;
+    
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+    private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+    private final StringBuilder line = new StringBuilder(256);
+    private final long flushIntervalNanos;
+    private final boolean forceOnFlush;
+    private final ScheduledExecutorService flusher;
+    private long lastFlush = System.nanoTime();
+    private long rowsWritten;
+    private IOException backgroundFailure;
+    private boolean closed;
+    
+    /**
+     * Opens an appender with a 64 KB buffer that flushes at least once a second
+     * without forcing to disk.
+     *
+     * @param path the file to append to, created if it does not exist
+     * @throws IOException if the file cannot be opened
+     */
+    public CSVAppender(Path path) throws IOException {
+        this(path, DEFAULT_BUFFER_SIZE, DEFAULT_FLUSH_INTERVAL_MILLIS, false);
+    }
+    
+    /**
+     * Opens an appender.
+     *
+     * @param path the file to append to, created if it does not exist
+     * @param bufferSize the batch size in bytes
+     * @param flushIntervalMillis the longest time a row stays buffered, or 0 to flush only when full
+     * @param forceOnFlush whether each batch is forced to disk after it is written
+     * @throws IOException if the file cannot be opened
+     */
+    public CSVAppender(Path path, int bufferSize, long flushIntervalMillis, boolean forceOnFlush) throws IOException {
+        if (bufferSize < 16) {
+            throw new IllegalArgumentException("bufferSize must be at least 16 bytes");
+        }
+        if (flushIntervalMillis < 0) {
+            throw new IllegalArgumentException("flushIntervalMillis cannot be negative");
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                        StandardOpenOption.APPEND);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.forceOnFlush = forceOnFlush;
+        if (flushIntervalMillis > 0) {
+            this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "csv-appender-flush");
+                thread.setDaemon(true);
+                return thread;
+            });
+            flusher.scheduleWithFixedDelay(this::flushIfDue, flushIntervalMillis, flushIntervalMillis,
+                                           TimeUnit.MILLISECONDS);
+        } else {
+            this.flusher = null;
+        }
+    }
+    
+    /**
+     * Appends one row.
+     *
+     * @param fields the row's values; null is written as an empty field
+     * @throws IOException if a batch cannot be written, including a failed background flush
+     */
+    public void append(String... fields) throws IOException {
+        append(Arrays.asList(fields));
+    }
+    
+    /**
+     * Appends one row.
+     *
+     * @param row the row's values; null is written as an empty field
+     * @throws IOException if a batch cannot be written, including a failed background flush
+     */
+    public synchronized void append(List<String> row) throws IOException {
+        ensureOpen();
+        line.setLength(0);
+        for (int i = 0; i < row.size(); i++) {
+            if (i > 0) {
+                line.append(',');
+            }
+            appendField(line, row.get(i));
+        }
+        line.append('\n');
+        encode(CharBuffer.wrap(line));
+        rowsWritten++;
+        if (flushIntervalNanos > 0 && System.nanoTime() - lastFlush >= flushIntervalNanos) {
+            writeBatch();
+        }
+    }
+    
+    /**
+     * Writes buffered rows to the file, forcing them to disk if configured.
+     *
+     * @throws IOException if the rows cannot be written
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        ensureOpen();
+        writeBatch();
+    }
+    
+    /**
+     * Gets the number of rows appended so far, including rows still buffered.
+     *
+     * @return the row count
+     */
+    public synchronized long getRowsWritten() {
+        return rowsWritten;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        if (flusher != null) {
+            flusher.shutdownNow();
+        }
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                writeBatch();
+                if (!forceOnFlush) {
+                    channel.force(false);
+                }
+            } finally {
+                channel.close();
+            }
+        }
+    }
+    
+    /**
+     * Appends one field, quoted if it contains a delimiter, quote or line break.
+     *
+     * @param line the row being built
+     * @param value the field's value; null is written as an empty field
+     */
+    static void appendField(StringBuilder line, String value) {
+        if (value == null) {
+            return;
+        }
+        boolean quote = false;
+        for (int i = 0; i < value.length() && !quote; i++) {
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"') {
+                line.append('"');
+            }
+            line.append(c);
+        }
+        line.append('"');
+    }
+    
+    private void encode(CharBuffer chars) throws IOException {
+        encoder.reset();
+        while (true) {
+            CoderResult result = encoder.encode(chars, buffer, true);
+            if (result.isUnderflow()) {
+                result = encoder.flush(buffer);
+                if (result.isUnderflow()) {
+                    return;
+                }
+            }
+            if (result.isOverflow()) {
+                writeBatch();
+            } else {
+                result.throwException();
+            }
+        }
+    }
+    
+    private void writeBatch() throws IOException {
+        lastFlush = System.nanoTime();
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+        if (forceOnFlush) {
+            channel.force(false);
+        }
+    }
+    
+    private synchronized void flushIfDue() {
+        if (closed || System.nanoTime() - lastFlush < flushIntervalNanos) {
+            return;
+        }
+        try {
+            writeBatch();
+        } catch (IOException e) {
+            backgroundFailure = e;
+        }
+    }
+    
+    private void ensureOpen() throws IOException {
+        if (closed) {
+            throw new IOException("CSV appender is closed");
+        }
+        if (backgroundFailure != null) {
+            IOException failure = backgroundFailure;
+            backgroundFailure = null;
+            throw failure;
+        }
+    }
+}
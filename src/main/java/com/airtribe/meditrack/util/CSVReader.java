@@ -0,0 +1,258 @@
+package com.airtribe.meditrack.util;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Streaming RFC 4180 CSV reader.
+ * <p>
+ * Rows are parsed lazily from a reusable character buffer, so memory use is bounded
+ * by the buffer plus the longest row regardless of file size. Quoted fields may
+ * contain delimiters, doubled quotes and line breaks; rows may end with LF, CRLF or CR.
+ * Trailing empty fields are kept, and a blank line is read as a row with one empty field.
+ */
+public class CSVReader implements Closeable, Iterator<List<String>> {
+    
+    private static final char DELIMITER = ',';
+    private static final char QUOTE = '"';
+    private static final char BYTE_ORDER_MARK = '\uFEFF';
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    
+    private final Reader reader;
+    private final char[] buffer;
+    private final StringBuilder field = new StringBuilder();
+    private int position;
+    private int limit;
+    private long rowNumber;
+    private int lastRowWidth = 8;
+    private List<String> pending;
+    
+    /**
+     * Constructs a CSVReader over a character stream.
+     *
+     * @param reader the source of CSV text
+     */
+    public CSVReader(Reader reader) {
+        this(reader, DEFAULT_BUFFER_SIZE);
+    }
+    
+    /**
+     * Constructs a CSVReader with a specific buffer size.
+     *
+     * @param reader the source of CSV text
+     * @param bufferSize the number of characters read at a time
+     */
+    public CSVReader(Reader reader, int bufferSize) {
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.reader = Objects.requireNonNull(reader, "reader cannot be null");
+        this.buffer = new char[bufferSize];
+    }
+    
+    /**
+     * Opens a UTF-8 CSV file, skipping a leading byte order mark.
+     *
+     * @param path the file to read
+     * @return a reader positioned at the first row
+     * @throws IOException if the file cannot be opened
+     */
+    public static CSVReader open(Path path) throws IOException {
+        CSVReader csv = new CSVReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8));
+        if (csv.fill() && csv.buffer[csv.position] == BYTE_ORDER_MARK) {
+            csv.position++;
+        }
+        return csv;
+    }
+    
+    /**
+     * Reads the next row into a new list.
+     *
+     * @return the row's fields, or null at the end of the input
+     * @throws IOException if the input cannot be read or ends inside a quoted field
+     */
+    public List<String> readRow() throws IOException {
+        List<String> row = new ArrayList<>(lastRowWidth);
+        return readRow(row) ? row : null;
+    }
+    
+    /**
+     * Reads the next row into a caller-supplied list, which is cleared first.
+     * Reusing one list across calls avoids allocating a list per row.
+     *
+     * @param row the list to fill
+     * @return true if a row was read, false at the end of the input
+     * @throws IOException if the input cannot be read or ends inside a quoted field
+     */
+    public boolean readRow(List<String> row) throws IOException {
+        row.clear();
+        if (pending != null) {
+            row.addAll(pending);
+            pending = null;
+            return true;
+        }
+        if (!fill()) {
+            return false;
+        }
+        while (!readField(row)) {
+            // keep reading fields until the row ends
+        }
+        rowNumber++;
+        lastRowWidth = row.size();
+        return true;
+    }
+    
+    /**
+     * Gets how many rows have been read so far.
+     *
+     * @return the 1-based number of the last row read, or 0 before the first
+     */
+    public long getRowNumber() {
+        return rowNumber;
+    }
+    
+    @Override
+    public boolean hasNext() {
+        if (pending == null) {
+            try {
+                pending = readRow();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return pending != null;
+    }
+    
+    @Override
+    public List<String> next() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        List<String> row = pending;
+        pending = null;
+        return row;
+    }
+    
+    /**
+     * Returns the remaining rows as a lazy sequential stream. Closing the stream
+     * closes this reader; read errors surface as {@link UncheckedIOException}.
+     *
+     * @return a stream of rows
+     */
+    public Stream<List<String>> stream() {
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this,
+                Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+    
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+    
+    /**
+     * Reads one field and adds it to the row.
+     *
+     * @return true if the field ended the row, false if a delimiter follows it
+     */
+    private boolean readField(List<String> row) throws IOException {
+        field.setLength(0);
+        if (fill() && buffer[position] == QUOTE) {
+            position++;
+            return readQuotedField(row);
+        }
+        int start = position;
+        while (true) {
+            if (position == limit) {
+                field.append(buffer, start, position - start);
+                if (!fill()) {
+                    row.add(field.toString());
+                    return true;
+                }
+                start = position;
+            }
+            char c = buffer[position];
+            if (c == DELIMITER || c == '\n' || c == '\r') {
+                // most fields sit inside one buffer load and are copied straight out of it
+                row.add(field.length() == 0 ? new String(buffer, start, position - start)
+                                            : field.append(buffer, start, position - start).toString());
+                position++;
+                return endsRow(c);
+            }
+            position++;
+        }
+    }
+    
+    private boolean readQuotedField(List<String> row) throws IOException {
+        int start = position;
+        while (true) {
+            if (position == limit) {
+                field.append(buffer, start, position - start);
+                if (!fill()) {
+                    throw new IOException("Unterminated quoted field in row " + (rowNumber + 1));
+                }
+                start = position;
+            }
+            if (buffer[position++] != QUOTE) {
+                continue;
+            }
+            field.append(buffer, start, position - 1 - start);
+            if (fill() && buffer[position] == QUOTE) {
+                field.append(QUOTE);
+                position++;
+                start = position;
+                continue;
+            }
+            // closing quote; anything before the next delimiter is kept as-is
+            while (fill()) {
+                char c = buffer[position++];
+                if (c == DELIMITER || c == '\n' || c == '\r') {
+                    row.add(field.toString());
+                    return endsRow(c);
+                }
+                field.append(c);
+            }
+            row.add(field.toString());
+            return true;
+        }
+    }
+    
+    private boolean endsRow(char c) throws IOException {
+        if (c == DELIMITER) {
+            return false;
+        }
+        if (c == '\r' && fill() && buffer[position] == '\n') {
+            position++;
+        }
+        return true;
+    }
+    
+    /**
+     * Makes sure at least one unread character is buffered.
+     *
+     * @return false at the end of the input
+     */
+    private boolean fill() throws IOException {
+        if (position < limit) {
+            return true;
+        }
+        int read;
+        do {
+            read = reader.read(buffer, 0, buffer.length);
+        } while (read == 0);
+        position = 0;
+        limit = Math.max(read, 0);
+        return read > 0;
+    }
+}
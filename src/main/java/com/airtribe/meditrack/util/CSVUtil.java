@@ -1,18 +1,21 @@
 package com.airtribe.meditrack.util;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
 import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * Utility class for CSV file operations.
  */
 public class CSVUtil {
     
-    private static final String DELIMITER = ",";
-    private static final String QUOTE = "\"";
+    private static final char DELIMITER = ',';
     
     /**
-     * Writes data to a CSV file.
+     * Writes data to a UTF-8 CSV file. Fields are quoted like {@link CSVAppender}
+     * quotes them, so {@link #readCSV} reads them back intact.
      *
      * @param filePath the path to the CSV file
      * @param headers the column headers
@@ -20,21 +23,20 @@ public class CSVUtil {
      * @throws IOException if an I/O error occurs
      */
     public static void writeCSV(String filePath, List<String> headers, List<List<String>> data) throws IOException {
-        try (FileWriter writer = new FileWriter(filePath)) {
+        try (FileWriter writer = new FileWriter(filePath, StandardCharsets.UTF_8)) {
             // Write headers
-            writer.append(String.join(DELIMITER, headers));
-            writer.append("\n");
+            writeRow(writer, headers);
             
             // Write data rows
             for (List<String> row : data) {
-                writer.append(String.join(DELIMITER, row));
-                writer.append("\n");
+                writeRow(writer, row);
             }
         }
     }
     
     /**
-     * Reads data from a CSV file.
+     * Reads data from a UTF-8 CSV file. Quoted fields may contain commas,
+     * quotes and line breaks. Use {@link #streamCSV} for files too large to hold in memory.
      *
      * @param filePath the path to the CSV file
      * @return a list of rows, where each row is a list of values
@@ -43,10 +45,10 @@ public class CSVUtil {
     public static List<List<String>> readCSV(String filePath) throws IOException {
         List<List<String>> data = new ArrayList<>();
         
-        try (BufferedReader reader = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                data.add(Arrays.asList(line.split(DELIMITER)));
+        try (CSVReader reader = CSVReader.open(Paths.get(filePath))) {
+            List<String> row;
+            while ((row = reader.readRow()) != null) {
+                data.add(row);
             }
         }
         
@@ -54,16 +56,27 @@ public class CSVUtil {
     }
     
     /**
-     * Appends a row to an existing CSV file.
+     * Streams the rows of a UTF-8 CSV file lazily, one row in memory at a time.
+     * The stream holds the file open and must be closed, e.g. with try-with-resources.
+     *
+     * @param filePath the path to the CSV file
+     * @return a stream of rows, where each row is a list of values
+     * @throws IOException if the file cannot be opened
+     */
+    public static Stream<List<String>> streamCSV(String filePath) throws IOException {
+        return CSVReader.open(Paths.get(filePath)).stream();
+    }
+    
+    /**
+     * Appends a row to an existing UTF-8 CSV file, quoting fields like {@link #writeCSV}.
      *
      * @param filePath the path to the CSV file
      * @param row the row to append
      * @throws IOException if an I/O error occurs
      */
     public static void appendRowToCSV(String filePath, List<String> row) throws IOException {
-        try (FileWriter writer = new FileWriter(filePath, true)) {
-            writer.append(String.join(DELIMITER, row));
-            writer.append("\n");
+        try (FileWriter writer = new FileWriter(filePath, StandardCharsets.UTF_8, true)) {
+            writeRow(writer, row);
         }
     }
     
@@ -76,4 +89,16 @@ public class CSVUtil {
     public static boolean fileExists(String filePath) {
         return new File(filePath).exists();
     }
+    
+    private static void writeRow(Writer writer, List<String> row) throws IOException {
+        StringBuilder line = new StringBuilder();
+        for (int i = 0; i < row.size(); i++) {
+            if (i > 0) {
+                line.append(DELIMITER);
+            }
+            CSVAppender.appendField(line, row.get(i));
+        }
+        line.append('\n');
+        writer.append(line);
+    }
 }
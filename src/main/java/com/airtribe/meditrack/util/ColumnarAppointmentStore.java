@@ -0,0 +1,575 @@
+package com.airtribe.meditrack.util;
+
+import com.airtribe.meditrack.entity.Appointment;
+import com.airtribe.meditrack.entity.AppointmentStatus;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Appointment store that keeps appointments as rows of parallel primitive columns
+ * instead of as objects, for histories of tens of millions of appointments.
+ * <p>
+ * A row holds the packed appointment key, dictionary codes for the doctor and
+ * patient keys, the start time in minutes since the epoch (UTC), the status ordinal
+ * and a code into a pool of distinct notes: about 25 bytes per appointment. The
+ * dictionaries and the notes pool grow with the number of distinct doctors,
+ * patients and notes, not with the number of appointments. Times that do not fall
+ * on a whole minute are kept exactly in a side map.
+ * <p>
+ * Appointment objects are built on every read and are copies: changing one has no
+ * effect until it is passed to {@link #update} or {@link #add}. Key lookups are a
+ * binary search over the key column, which is in ascending order as long as IDs
+ * are added in generated order; keys added out of order go to a small side map.
+ * Removed rows are marked and skipped. Indexes named after a column
+ * ({@link #DOCTOR_COLUMN}, {@link #PATIENT_COLUMN}, {@link #STATUS_COLUMN}) are
+ * answered by scanning that column; other indexes scan every row. Use
+ * {@link #timeIndex()} for time range queries, which scan the time column.
+ * The store is not thread-safe.
+ */
+public class ColumnarAppointmentStore extends EntityStore<Appointment> {
+    
+    /** Index name answered by the doctor column; index values are packed keys or IDs. */
+    public static final String DOCTOR_COLUMN = "doctorKey";
+    /** Index name answered by the patient column; index values are packed keys or IDs. */
+    public static final String PATIENT_COLUMN = "patientKey";
+    /** Index name answered by the status column; index values are statuses. */
+    public static final String STATUS_COLUMN = "status";
+    
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final byte REMOVED = -1;
+    private static final byte NO_STATUS = -2;
+    private static final int NO_TIME = Integer.MIN_VALUE;
+    private static final AppointmentStatus[] STATUSES = AppointmentStatus.values();
+    
+    private long[] keys = new long[INITIAL_CAPACITY];
+    private int[] doctors = new int[INITIAL_CAPACITY];
+    private int[] patients = new int[INITIAL_CAPACITY];
+    private int[] minutes = new int[INITIAL_CAPACITY];
+    private byte[] statuses = new byte[INITIAL_CAPACITY];
+    private int[] notes = new int[INITIAL_CAPACITY];
+    private int rows;
+    private int live;
+    private int modCount;
+    
+    private KeyDictionary doctorCodes = new KeyDictionary();
+    private KeyDictionary patientCodes = new KeyDictionary();
+    private List<String> notePool = new ArrayList<>();
+    private Map<String, Integer> noteCodes = new HashMap<>();
+    private LongLongMap outOfOrderRows = new LongLongMap(0, -1L);
+    private LongLongMap outOfOrderKeys = new LongLongMap(0, EntityKey.NONE);
+    private LongObjectMap<LocalDateTime> preciseTimes = new LongObjectMap<>();
+    private final Set<String> columnIndexes = new HashSet<>();
+    private final Map<String, Function<? super Appointment, ?>> rowIndexes = new LinkedHashMap<>();
+    
+    /**
+     * Constructs an empty columnar store keyed by appointment ID.
+     */
+    public ColumnarAppointmentStore() {
+        super(Appointment::getAppointmentId);
+    }
+    
+    @Override
+    public void add(Appointment appointment) {
+        if (appointment == null) {
+            return;
+        }
+        long key = EntityKey.of(appointment.getAppointmentId());
+        if (key == EntityKey.NONE) {
+            throw new IllegalArgumentException("Entity key cannot be null");
+        }
+        int row = rowOf(key);
+        if (row < 0) {
+            row = appendRow(key);
+        }
+        write(row, appointment);
+        modCount++;
+    }
+    
+    @Override
+    public boolean remove(Appointment appointment) {
+        return appointment != null && removeByKey(EntityKey.find(appointment.getAppointmentId()));
+    }
+    
+    @Override
+    public Optional<Appointment> findByKey(long key) {
+        int row = rowOf(key);
+        return row < 0 ? Optional.empty() : Optional.of(materialize(row));
+    }
+    
+    @Override
+    public boolean containsKey(long key) {
+        return rowOf(key) >= 0;
+    }
+    
+    @Override
+    public boolean removeByKey(long key) {
+        int row = rowOf(key);
+        if (row < 0) {
+            return false;
+        }
+        removeRow(row);
+        return true;
+    }
+    
+    @Override
+    public boolean contains(Appointment appointment) {
+        return appointment != null && rowOf(EntityKey.find(appointment.getAppointmentId())) >= 0;
+    }
+    
+    /**
+     * Applies a mutation to an appointment and writes the result back to its row.
+     * The appointment may be any copy carrying the stored appointment's ID.
+     */
+    @Override
+    public boolean update(Appointment appointment, Consumer<? super Appointment> mutation) {
+        Objects.requireNonNull(appointment, "appointment cannot be null");
+        int row = rowOf(EntityKey.find(appointment.getAppointmentId()));
+        mutation.accept(appointment);
+        if (row < 0) {
+            return false;
+        }
+        if (EntityKey.of(appointment.getAppointmentId()) != keyAt(row)) {
+            removeRow(row);
+            add(appointment);
+        } else {
+            write(row, appointment);
+            modCount++;
+        }
+        return true;
+    }
+    
+    @Override
+    public void addIndex(String name, Function<? super Appointment, ?> indexKeyExtractor) {
+        Objects.requireNonNull(name, "name cannot be null");
+        Objects.requireNonNull(indexKeyExtractor, "indexKeyExtractor cannot be null");
+        if (columnIndexes.contains(name) || rowIndexes.containsKey(name)) {
+            throw new IllegalArgumentException("Index already exists: " + name);
+        }
+        if (DOCTOR_COLUMN.equals(name) || PATIENT_COLUMN.equals(name) || STATUS_COLUMN.equals(name)) {
+            columnIndexes.add(name);
+        } else {
+            rowIndexes.put(name, indexKeyExtractor);
+        }
+    }
+    
+    @Override
+    public List<Appointment> findByIndex(String name, Object value) {
+        List<Appointment> result = new ArrayList<>();
+        if (columnIndexes.contains(name)) {
+            int[] column = columnFor(name);
+            int code = codeFor(name, value);
+            if (code != -1) {
+                for (int row = 0; row < rows; row++) {
+                    if (matches(column, code, row)) {
+                        result.add(materialize(row));
+                    }
+                }
+            }
+            return result;
+        }
+        Function<? super Appointment, ?> extractor = indexNamed(name);
+        Object expected = normalizeIndexKey(value);
+        if (expected == null) {
+            return result;
+        }
+        for (int row = 0; row < rows; row++) {
+            if (statuses[row] != REMOVED) {
+                Appointment appointment = materialize(row);
+                if (expected.equals(normalizeIndexKey(extractor.apply(appointment)))) {
+                    result.add(appointment);
+                }
+            }
+        }
+        return result;
+    }
+    
+    @Override
+    public int countByIndex(String name, Object value) {
+        if (!columnIndexes.contains(name)) {
+            return findByIndex(name, value).size();
+        }
+        int[] column = columnFor(name);
+        int code = codeFor(name, value);
+        int count = 0;
+        if (code != -1) {
+            for (int row = 0; row < rows; row++) {
+                if (matches(column, code, row)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    
+    @Override
+    public List<Appointment> getAll() {
+        List<Appointment> result = new ArrayList<>(live);
+        for (int row = 0; row < rows; row++) {
+            if (statuses[row] != REMOVED) {
+                result.add(materialize(row));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Gets a read-only live view that builds each appointment as it is iterated.
+     */
+    @Override
+    public Collection<Appointment> view() {
+        return new AbstractCollection<Appointment>() {
+            @Override
+            public Iterator<Appointment> iterator() {
+                return new RowIterator();
+            }
+            
+            @Override
+            public int size() {
+                return live;
+            }
+        };
+    }
+    
+    @Override
+    public Stream<Appointment> stream() {
+        return view().stream();
+    }
+    
+    @Override
+    public int size() {
+        return live;
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return live == 0;
+    }
+    
+    @Override
+    public void clear() {
+        keys = new long[INITIAL_CAPACITY];
+        doctors = new int[INITIAL_CAPACITY];
+        patients = new int[INITIAL_CAPACITY];
+        minutes = new int[INITIAL_CAPACITY];
+        statuses = new byte[INITIAL_CAPACITY];
+        notes = new int[INITIAL_CAPACITY];
+        rows = 0;
+        live = 0;
+        doctorCodes = new KeyDictionary();
+        patientCodes = new KeyDictionary();
+        notePool = new ArrayList<>();
+        noteCodes = new HashMap<>();
+        outOfOrderRows = new LongLongMap(0, -1L);
+        outOfOrderKeys = new LongLongMap(0, EntityKey.NONE);
+        preciseTimes = new LongObjectMap<>();
+        modCount++;
+    }
+    
+    @Override
+    public Appointment get(int index) {
+        if (index < 0 || index >= live) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + live);
+        }
+        int seen = 0;
+        for (int row = 0; ; row++) {
+            if (statuses[row] != REMOVED && seen++ == index) {
+                return materialize(row);
+            }
+        }
+    }
+    
+    /**
+     * Finds appointments starting in [from, to) by scanning the time column, with
+     * optional filters on doctor, patient and status, in time order.
+     *
+     * @param from inclusive start of the range
+     * @param to exclusive end of the range
+     * @param doctorKey the doctor's packed key, or {@link EntityKey#NONE} for any doctor
+     * @param patientKey the patient's packed key, or {@link EntityKey#NONE} for any patient
+     * @param status the status to keep, or null for any status
+     * @return the matching appointments
+     */
+    public List<Appointment> between(LocalDateTime from, LocalDateTime to, long doctorKey, long patientKey,
+                                     AppointmentStatus status) {
+        Objects.requireNonNull(from, "from cannot be null");
+        Objects.requireNonNull(to, "to cannot be null");
+        List<Appointment> result = new ArrayList<>();
+        int doctor = doctorKey == EntityKey.NONE ? -1 : doctorCodes.find(doctorKey);
+        int patient = patientKey == EntityKey.NONE ? -1 : patientCodes.find(patientKey);
+        if (!from.isBefore(to) || (doctorKey != EntityKey.NONE && doctor < 0)
+                || (patientKey != EntityKey.NONE && patient < 0)) {
+            return result;
+        }
+        long fromMinute = Math.floorDiv(from.toEpochSecond(ZoneOffset.UTC), 60);
+        long toMinute = Math.floorDiv(to.toEpochSecond(ZoneOffset.UTC), 60);
+        List<long[]> hits = new ArrayList<>();
+        for (int row = 0; row < rows; row++) {
+            byte rowStatus = statuses[row];
+            int minute = minutes[row];
+            if (rowStatus == REMOVED || minute == NO_TIME || minute < fromMinute || minute > toMinute
+                    || (status != null && rowStatus != status.ordinal())
+                    || (doctor >= 0 && doctors[row] != doctor) || (patient >= 0 && patients[row] != patient)) {
+                continue;
+            }
+            LocalDateTime time = timeAt(row);
+            if (!time.isBefore(from) && time.isBefore(to)) {
+                hits.add(new long[] {row, keyAt(row)});
+            }
+        }
+        hits.sort(Comparator.<long[], LocalDateTime>comparing(hit -> timeAt((int) hit[0]))
+                          .thenComparingLong(hit -> hit[1]));
+        for (long[] hit : hits) {
+            result.add(materialize((int) hit[0]));
+        }
+        return result;
+    }
+    
+    /**
+     * Gets a time index that answers its range queries from this store's columns
+     * and ignores add and remove calls, so no appointment objects are retained.
+     *
+     * @return a scanning time index over this store
+     */
+    public AppointmentTimeIndex timeIndex() {
+        return new ScanningTimeIndex();
+    }
+    
+    private int appendRow(long key) {
+        if (rows == keys.length) {
+            int capacity = rows + (rows >> 1);
+            keys = Arrays.copyOf(keys, capacity);
+            doctors = Arrays.copyOf(doctors, capacity);
+            patients = Arrays.copyOf(patients, capacity);
+            minutes = Arrays.copyOf(minutes, capacity);
+            statuses = Arrays.copyOf(statuses, capacity);
+            notes = Arrays.copyOf(notes, capacity);
+        }
+        int row = rows++;
+        if (row == 0 || key > keys[row - 1]) {
+            keys[row] = key;
+        } else {
+            // repeat the previous key so the column stays sorted for binary search
+            keys[row] = keys[row - 1];
+            outOfOrderRows.put(key, row);
+            outOfOrderKeys.put(row, key);
+        }
+        live++;
+        return row;
+    }
+    
+    private void removeRow(int row) {
+        outOfOrderRows.remove(keyAt(row));
+        preciseTimes.remove(row);
+        statuses[row] = REMOVED;
+        live--;
+        modCount++;
+    }
+    
+    private void write(int row, Appointment appointment) {
+        doctors[row] = doctorCodes.code(appointment.getDoctorKey());
+        patients[row] = patientCodes.code(appointment.getPatientKey());
+        AppointmentStatus status = appointment.getStatus();
+        statuses[row] = status == null ? NO_STATUS : (byte) status.ordinal();
+        String note = appointment.getNotes();
+        notes[row] = note == null ? 0 : noteCodes.computeIfAbsent(note, n -> {
+            notePool.add(n);
+            return notePool.size();
+        });
+        LocalDateTime time = appointment.getAppointmentDateTime();
+        if (time == null) {
+            minutes[row] = NO_TIME;
+            preciseTimes.remove(row);
+            return;
+        }
+        long seconds = time.toEpochSecond(ZoneOffset.UTC);
+        long minute = Math.floorDiv(seconds, 60);
+        minutes[row] = (int) Math.max(Integer.MIN_VALUE + 1, Math.min(Integer.MAX_VALUE, minute));
+        if (minute != minutes[row] || seconds % 60 != 0 || time.getNano() != 0) {
+            preciseTimes.put(row, time);
+        } else {
+            preciseTimes.remove(row);
+        }
+    }
+    
+    private Appointment materialize(int row) {
+        byte status = statuses[row];
+        int note = notes[row];
+        return new Appointment(EntityKey.toId(keyAt(row)), doctorCodes.key(doctors[row]),
+                               patientCodes.key(patients[row]), timeAt(row),
+                               status == NO_STATUS ? null : STATUSES[status],
+                               note == 0 ? null : notePool.get(note - 1));
+    }
+    
+    private LocalDateTime timeAt(int row) {
+        LocalDateTime precise = preciseTimes.get(row);
+        if (precise != null) {
+            return precise;
+        }
+        return minutes[row] == NO_TIME ? null : LocalDateTime.ofEpochSecond(minutes[row] * 60L, 0, ZoneOffset.UTC);
+    }
+    
+    private long keyAt(int row) {
+        long key = outOfOrderKeys.get(row);
+        return key != EntityKey.NONE ? key : keys[row];
+    }
+    
+    /**
+     * Finds the live row holding a key, or -1. The leftmost row holding a key value
+     * in the sorted column is the one added in order; repeats after it are rows
+     * whose own key lives in the out-of-order map.
+     */
+    private int rowOf(long key) {
+        if (key == EntityKey.NONE) {
+            return -1;
+        }
+        long outOfOrder = outOfOrderRows.get(key);
+        if (outOfOrder >= 0) {
+            return (int) outOfOrder;
+        }
+        int low = 0;
+        int high = rows;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (keys[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low < rows && keys[low] == key && statuses[low] != REMOVED ? low : -1;
+    }
+    
+    private int[] columnFor(String name) {
+        return DOCTOR_COLUMN.equals(name) ? doctors : PATIENT_COLUMN.equals(name) ? patients : null;
+    }
+    
+    /**
+     * Gets the code a column holds for an index value, or -1 if no row can match.
+     */
+    private int codeFor(String name, Object value) {
+        if (STATUS_COLUMN.equals(name)) {
+            return value instanceof AppointmentStatus ? ((AppointmentStatus) value).ordinal() : -1;
+        }
+        long key = value instanceof Long ? (Long) value
+                : value instanceof String ? EntityKey.find((String) value) : EntityKey.NONE;
+        if (key == EntityKey.NONE) {
+            return -1;
+        }
+        return DOCTOR_COLUMN.equals(name) ? doctorCodes.find(key) : patientCodes.find(key);
+    }
+    
+    private boolean matches(int[] column, int code, int row) {
+        byte status = statuses[row];
+        return status != REMOVED && (column == null ? status == code : column[row] == code);
+    }
+    
+    private Function<? super Appointment, ?> indexNamed(String name) {
+        Function<? super Appointment, ?> extractor = rowIndexes.get(name);
+        if (extractor == null) {
+            throw new IllegalArgumentException("Unknown index: " + name);
+        }
+        return extractor;
+    }
+    
+    private static Object normalizeIndexKey(Object key) {
+        return key instanceof String ? normalizeKey((String) key) : key;
+    }
+    
+    /**
+     * Assigns dense int codes to distinct packed keys.
+     */
+    private static final class KeyDictionary {
+        private final LongLongMap codes = new LongLongMap(0, -1L);
+        private long[] keys = new long[16];
+        
+        int code(long key) {
+            long code = codes.get(key);
+            if (code >= 0) {
+                return (int) code;
+            }
+            int next = codes.size();
+            if (next == keys.length) {
+                keys = Arrays.copyOf(keys, next * 2);
+            }
+            keys[next] = key;
+            codes.put(key, next);
+            return next;
+        }
+        
+        int find(long key) {
+            return (int) codes.get(key);
+        }
+        
+        long key(int code) {
+            return keys[code];
+        }
+    }
+    
+    private final class RowIterator implements Iterator<Appointment> {
+        private final int expectedModCount = modCount;
+        private int next = advance(0);
+        
+        @Override
+        public boolean hasNext() {
+            return next < rows;
+        }
+        
+        @Override
+        public Appointment next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= rows) {
+                throw new NoSuchElementException();
+            }
+            Appointment appointment = materialize(next);
+            next = advance(next + 1);
+            return appointment;
+        }
+        
+        private int advance(int from) {
+            while (from < rows && statuses[from] == REMOVED) {
+                from++;
+            }
+            return from;
+        }
+    }
+    
+    private final class ScanningTimeIndex implements AppointmentTimeIndex {
+        @Override
+        public void add(Appointment appointment) {
+            // rows are read straight from the store
+        }
+        
+        @Override
+        public void remove(Appointment appointment) {
+            // rows are read straight from the store
+        }
+        
+        @Override
+        public List<Appointment> between(LocalDateTime from, LocalDateTime to, AppointmentStatus status) {
+            return ColumnarAppointmentStore.this.between(from, to, EntityKey.NONE, EntityKey.NONE, status);
+        }
+        
+        @Override
+        public List<Appointment> betweenForDoctor(String doctorId, LocalDateTime from, LocalDateTime to,
+                                                  AppointmentStatus status) {
+            long key = EntityKey.find(doctorId);
+            return key == EntityKey.NONE ? new ArrayList<>()
+                    : ColumnarAppointmentStore.this.between(from, to, key, EntityKey.NONE, status);
+        }
+        
+        @Override
+        public List<Appointment> betweenForPatient(String patientId, LocalDateTime from, LocalDateTime to,
+                                                   AppointmentStatus status) {
+            long key = EntityKey.find(patientId);
+            return key == EntityKey.NONE ? new ArrayList<>()
+                    : ColumnarAppointmentStore.this.between(from, to, EntityKey.NONE, key, status);
+        }
+    }
+}
@@ -0,0 +1,168 @@
+package com.airtribe.meditrack.util;
+
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Thread-safe keyed DataStore for services shared by several threads.
+ * <p>
+ * Entities live in a {@link ConcurrentHashMap}, so key lookups, size checks and
+ * iteration are lock-free and never throw {@code ConcurrentModificationException};
+ * iteration is weakly consistent. Writers are serialized per key by a fixed set of
+ * striped locks, which keeps each add, remove and update atomic with respect to its
+ * secondary index entries while writers on different keys proceed in parallel.
+ * A key lookup is linearizable; an index query may briefly miss an entity that is
+ * being moved between buckets by a concurrent update. An update only holds the lock
+ * of the entity's key, so its mutation must not change the key; one that does is
+ * rejected and the entity removed.
+ *
+ * @param <T> the type of entity stored in this data store
+ */
+public class ConcurrentDataStore<T> extends DataStore<T> {
+    
+    private static final int DEFAULT_STRIPES = 64;
+    
+    private final ReentrantLock[] stripes;
+    
+    /**
+     * Constructs an empty ConcurrentDataStore with the default number of lock stripes.
+     *
+     * @param keyExtractor function returning the unique key of an entity
+     */
+    public ConcurrentDataStore(Function<? super T, String> keyExtractor) {
+        this(keyExtractor, DEFAULT_STRIPES);
+    }
+    
+    /**
+     * Constructs an empty ConcurrentDataStore.
+     *
+     * @param keyExtractor function returning the unique key of an entity
+     * @param stripeCount the number of write locks, rounded up to a power of two
+     */
+    public ConcurrentDataStore(Function<? super T, String> keyExtractor, int stripeCount) {
+        super(keyExtractor, true);
+        if (stripeCount <= 0) {
+            throw new IllegalArgumentException("stripeCount must be positive");
+        }
+        int size = Integer.highestOneBit(stripeCount - 1) << 1;
+        this.stripes = new ReentrantLock[Math.max(1, size)];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+    
+    @Override
+    public void add(T entity) {
+        if (entity == null) {
+            return;
+        }
+        ReentrantLock lock = stripeFor(keyOf(entity));
+        lock.lock();
+        try {
+            super.add(entity);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public void add(T entity, Consumer<? super T> beforeAdd) {
+        if (entity == null) {
+            return;
+        }
+        ReentrantLock lock = stripeFor(keyOf(entity));
+        lock.lock();
+        try {
+            beforeAdd.accept(entity);
+            super.add(entity);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public boolean remove(T entity) {
+        if (entity == null) {
+            return false;
+        }
+        ReentrantLock lock = stripeFor(keyOf(entity));
+        lock.lock();
+        try {
+            return super.remove(entity);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public boolean removeByKey(long key) {
+        if (key == EntityKey.NONE) {
+            return false;
+        }
+        ReentrantLock lock = stripeFor(key);
+        lock.lock();
+        try {
+            return super.removeByKey(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    public boolean update(T entity, Consumer<? super T> mutation) {
+        Objects.requireNonNull(entity, "entity cannot be null");
+        ReentrantLock lock = stripeFor(keyOf(entity));
+        lock.lock();
+        try {
+            return super.update(entity, mutation);
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    @Override
+    protected boolean allowsKeyChange() {
+        return false;
+    }
+    
+    @Override
+    public void addIndex(String name, Function<? super T, ?> indexKeyExtractor) {
+        lockAll();
+        try {
+            super.addIndex(name, indexKeyExtractor);
+        } finally {
+            unlockAll();
+        }
+    }
+    
+    @Override
+    public void clear() {
+        lockAll();
+        try {
+            super.clear();
+        } finally {
+            unlockAll();
+        }
+    }
+    
+    private ReentrantLock stripeFor(long key) {
+        int h = (int) (key ^ (key >>> 32));
+        h ^= (h >>> 16);
+        return stripes[h & (stripes.length - 1)];
+    }
+    
+    private void lockAll() {
+        for (ReentrantLock lock : stripes) {
+            lock.lock();
+        }
+    }
+    
+    private void unlockAll() {
+        for (int i = stripes.length - 1; i >= 0; i--) {
+            stripes[i].unlock();
+        }
+    }
+}
@@ -1,31 +1,107 @@
 package com.airtribe.meditrack.util;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
- * Generic DataStore for storing and managing entities.
+ * Generic DataStore for storing and managing entities: the {@link EntityStore}
+ * that holds the entity objects themselves.
+ * <p>
+ * A store created with a key extractor runs in keyed mode: entities are held in a
+ * {@link LongObjectMap} from the packed {@link EntityKey} of their ID to the entity,
+ * in insertion order, so lookups and removals by key are O(1) primitive probes and
+ * need no copy of the underlying data. String keys are parsed once at the call,
+ * case-insensitively; callers that already hold a packed key can use the
+ * {@code long} overloads directly.
+ * <p>
+ * Named secondary indexes can be declared with {@link #addIndex}. They are
+ * non-unique and kept up to date on add and remove; fields that feed an index
+ * must only be changed through {@link #update} so the entity moves buckets.
+ * <p>
+ * {@link #view()} and {@link #stream()} read the live data without copying it.
+ * On this class they are not thread-safe and fail fast with
+ * {@code ConcurrentModificationException} if the store changes during iteration;
+ * {@link ConcurrentDataStore} overrides that with weakly consistent iteration.
+ * {@link #getAll()} remains available when a stable point-in-time copy is needed.
+ *
  * @param <T> the type of entity stored in this data store
  */
-public class DataStore<T> {
+public class DataStore<T> extends EntityStore<T> {
     
     private List<T> data;
+    private KeyIndex<T> keyIndex;
+    private final boolean concurrent;
+    private final Map<String, SecondaryIndex<T>> indexes;
     
     /**
      * Constructs an empty DataStore.
      */
     public DataStore() {
+        super(null);
         this.data = new ArrayList<>();
+        this.concurrent = false;
+        this.indexes = new LinkedHashMap<>();
+    }
+    
+    /**
+     * Constructs an empty keyed DataStore.
+     *
+     * @param keyExtractor function returning the unique key of an entity
+     */
+    public DataStore(Function<? super T, String> keyExtractor) {
+        this(keyExtractor, false);
+    }
+    
+    /**
+     * Constructs an empty keyed DataStore. A concurrent store holds its entities and
+     * secondary indexes in concurrent maps and sets instead of the primitive key map,
+     * paying for boxed keys so that subclasses can offer lock-free reads.
+     *
+     * @param keyExtractor function returning the unique key of an entity
+     * @param concurrent whether the store's maps must support concurrent access
+     */
+    protected DataStore(Function<? super T, String> keyExtractor, boolean concurrent) {
+        super(Objects.requireNonNull(keyExtractor, "keyExtractor cannot be null"));
+        this.keyIndex = concurrent ? new ConcurrentKeyIndex<>() : new PrimitiveKeyIndex<>();
+        this.concurrent = concurrent;
+        this.indexes = concurrent ? new ConcurrentHashMap<>() : new LinkedHashMap<>();
+    }
+    
+    /**
+     * Checks if this data store was created with a key extractor.
+     *
+     * @return true if keyed, false otherwise
+     */
+    @Override
+    public boolean isKeyed() {
+        return keyIndex != null;
     }
     
     /**
      * Adds an entity to the data store.
+     * In keyed mode an entity with the same key replaces the existing one.
      *
      * @param entity the entity to add
+     * @throws IllegalArgumentException if the store is keyed and the entity has no key
      */
+    @Override
     public void add(T entity) {
-        if (entity != null) {
+        if (entity == null) {
+            return;
+        }
+        if (isKeyed()) {
+            T previous = keyIndex.put(keyOf(entity), entity);
+            if (previous != null) {
+                unindex(previous);
+            }
+        } else {
             data.add(entity);
         }
+        index(entity);
     }
     
     /**
@@ -34,53 +110,248 @@ public class DataStore<T> {
      * @param entity the entity to remove
      * @return true if the entity was removed, false otherwise
      */
+    @Override
     public boolean remove(T entity) {
-        return data.remove(entity);
+        if (!isKeyed()) {
+            if (!data.remove(entity)) {
+                return false;
+            }
+            unindex(entity);
+            return true;
+        }
+        if (entity == null) {
+            return false;
+        }
+        long key = EntityKey.find(keyExtractor().apply(entity));
+        if (key == EntityKey.NONE || !Objects.equals(keyIndex.get(key), entity)) {
+            return false;
+        }
+        unindex(keyIndex.remove(key));
+        return true;
+    }
+    
+    /**
+     * Finds an entity by its packed key (keyed mode only).
+     *
+     * @param key the packed key
+     * @return an Optional containing the entity if found, empty otherwise
+     * @throws IllegalStateException if the store is not keyed
+     */
+    @Override
+    public Optional<T> findByKey(long key) {
+        requireKeyed();
+        return key == EntityKey.NONE ? Optional.empty() : Optional.ofNullable(keyIndex.get(key));
+    }
+    
+    /**
+     * Checks if an entity with the given packed key exists (keyed mode only).
+     *
+     * @param key the packed key
+     * @return true if present, false otherwise
+     * @throws IllegalStateException if the store is not keyed
+     */
+    @Override
+    public boolean containsKey(long key) {
+        requireKeyed();
+        return key != EntityKey.NONE && keyIndex.containsKey(key);
+    }
+    
+    /**
+     * Removes the entity with the given packed key (keyed mode only).
+     *
+     * @param key the packed key
+     * @return true if an entity was removed, false otherwise
+     * @throws IllegalStateException if the store is not keyed
+     */
+    @Override
+    public boolean removeByKey(long key) {
+        requireKeyed();
+        if (key == EntityKey.NONE) {
+            return false;
+        }
+        T removed = keyIndex.remove(key);
+        if (removed == null) {
+            return false;
+        }
+        unindex(removed);
+        return true;
+    }
+    
+    /**
+     * Declares a named secondary index. Entities already in the store are indexed
+     * immediately. String index keys are normalized like primary keys, and
+     * entities whose index key is null are left out of the index.
+     *
+     * @param name the index name
+     * @param indexKeyExtractor function returning the index key of an entity
+     * @throws IllegalArgumentException if an index with that name already exists
+     */
+    @Override
+    public void addIndex(String name, Function<? super T, ?> indexKeyExtractor) {
+        Objects.requireNonNull(name, "name cannot be null");
+        if (indexes.containsKey(name)) {
+            throw new IllegalArgumentException("Index already exists: " + name);
+        }
+        SecondaryIndex<T> index = new SecondaryIndex<>(indexKeyExtractor, concurrent);
+        for (T entity : values()) {
+            index.add(entity);
+        }
+        indexes.put(name, index);
     }
     
     /**
-     * Gets all entities in the data store.
+     * Finds all entities whose index key equals the given value.
+     * Runs in time proportional to the number of matches.
+     *
+     * @param name the index name
+     * @param value the index key to look up
+     * @return a list of matching entities, empty if none
+     * @throws IllegalArgumentException if no index with that name exists
+     */
+    @Override
+    public List<T> findByIndex(String name, Object value) {
+        return new ArrayList<>(indexNamed(name).bucket(value));
+    }
+    
+    /**
+     * Counts the entities whose index key equals the given value.
+     *
+     * @param name the index name
+     * @param value the index key to look up
+     * @return the number of matching entities
+     * @throws IllegalArgumentException if no index with that name exists
+     */
+    @Override
+    public int countByIndex(String name, Object value) {
+        return indexNamed(name).bucket(value).size();
+    }
+    
+    /**
+     * Applies a mutation to a stored entity and re-indexes it, so that changes to
+     * indexed fields (or to the key itself) are reflected in every index.
+     *
+     * @param entity the stored entity to change
+     * @param mutation the change to apply
+     * @return true if the entity was in the store, false if only the mutation was applied
+     * @throws NullPointerException if the entity is null
+     * @throws IllegalArgumentException if the mutation changed the key of an entity in a
+     *         store that does not allow it; the entity is then removed from the store
+     */
+    @Override
+    public boolean update(T entity, Consumer<? super T> mutation) {
+        Objects.requireNonNull(entity, "entity cannot be null");
+        if (!contains(entity)) {
+            mutation.accept(entity);
+            return false;
+        }
+        long oldKey = isKeyed() ? keyOf(entity) : EntityKey.NONE;
+        boolean keyChangeRejected = false;
+        unindex(entity);
+        try {
+            mutation.accept(entity);
+        } finally {
+            if (isKeyed() && keyOf(entity) != oldKey && !allowsKeyChange()) {
+                keyIndex.remove(oldKey);
+                keyChangeRejected = true;
+            } else {
+                index(entity);
+            }
+            if (isKeyed() && !keyChangeRejected) {
+                long newKey = keyOf(entity);
+                if (newKey != oldKey) {
+                    keyIndex.remove(oldKey);
+                }
+                // re-publishing the entity also makes the mutation visible to lock-free readers
+                T displaced = keyIndex.put(newKey, entity);
+                if (displaced != null && displaced != entity) {
+                    unindex(displaced);
+                }
+            }
+        }
+        if (keyChangeRejected) {
+            throw new IllegalArgumentException("Update cannot change an entity's key in this store");
+        }
+        return true;
+    }
+    
+    /**
+     * Gets a copy of all entities in the data store.
+     * Prefer {@link #view()} or {@link #stream()} unless a snapshot is required.
      *
      * @return a list of all entities
      */
+    @Override
     public List<T> getAll() {
-        return new ArrayList<>(data);
+        return new ArrayList<>(values());
     }
     
     /**
-     * Gets the number of entities in the data store.
+     * Gets a read-only live view of all entities, without copying.
+     * The view reflects later changes to the store.
      *
-     * @return the number of entities
+     * @return an unmodifiable view of all entities
      */
-    public int size() {
-        return data.size();
+    @Override
+    public Collection<T> view() {
+        return Collections.unmodifiableCollection(values());
+    }
+    
+    /**
+     * Streams all entities directly from the live data, without copying.
+     *
+     * @return a sequential stream of all entities
+     */
+    @Override
+    public Stream<T> stream() {
+        return values().stream();
     }
     
     /**
-     * Checks if the data store is empty.
+     * Gets the number of entities in the data store.
      *
-     * @return true if empty, false otherwise
+     * @return the number of entities
      */
-    public boolean isEmpty() {
-        return data.isEmpty();
+    @Override
+    public int size() {
+        return isKeyed() ? keyIndex.size() : data.size();
     }
     
     /**
      * Clears all entities from the data store.
      */
+    @Override
     public void clear() {
-        data.clear();
+        if (isKeyed()) {
+            keyIndex.clear();
+        } else {
+            data.clear();
+        }
+        for (SecondaryIndex<T> index : indexes.values()) {
+            index.clear();
+        }
     }
     
     /**
      * Gets an entity by index.
+     * In keyed mode entities are ordered by insertion and this is a linear walk.
      *
      * @param index the index of the entity
      * @return the entity at the specified index
      * @throws IndexOutOfBoundsException if the index is out of range
      */
+    @Override
     public T get(int index) {
-        return data.get(index);
+        if (!isKeyed()) {
+            return data.get(index);
+        }
+        if (index < 0 || index >= keyIndex.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + keyIndex.size());
+        }
+        Iterator<T> it = keyIndex.values().iterator();
+        for (int i = 0; i < index; i++) {
+            it.next();
+        }
+        return it.next();
     }
     
     /**
@@ -89,7 +360,164 @@ public class DataStore<T> {
      * @param entity the entity to search for
      * @return true if the entity is in the store, false otherwise
      */
+    @Override
     public boolean contains(T entity) {
-        return data.contains(entity);
+        if (!isKeyed()) {
+            return data.contains(entity);
+        }
+        if (entity == null) {
+            return false;
+        }
+        long key = EntityKey.find(keyExtractor().apply(entity));
+        return key != EntityKey.NONE && Objects.equals(keyIndex.get(key), entity);
+    }
+    
+    /**
+     * Checks whether {@link #update} may change an entity's key. Stores that lock by
+     * key cannot move an entity to a key whose lock they do not hold.
+     *
+     * @return true if key changes are allowed
+     */
+    protected boolean allowsKeyChange() {
+        return true;
+    }
+    
+    private Collection<T> values() {
+        return isKeyed() ? keyIndex.values() : data;
+    }
+    
+    private void index(T entity) {
+        for (SecondaryIndex<T> index : indexes.values()) {
+            index.add(entity);
+        }
+    }
+    
+    private void unindex(T entity) {
+        for (SecondaryIndex<T> index : indexes.values()) {
+            index.remove(entity);
+        }
+    }
+    
+    private SecondaryIndex<T> indexNamed(String name) {
+        SecondaryIndex<T> index = indexes.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown index: " + name);
+        }
+        return index;
+    }
+    
+    private void requireKeyed() {
+        if (!isKeyed()) {
+            throw new IllegalStateException("DataStore was not created with a key extractor");
+        }
+    }
+    
+    /**
+     * The primary map from packed key to entity.
+     */
+    private interface KeyIndex<T> {
+        T get(long key);
+        T put(long key, T entity);
+        T remove(long key);
+        boolean containsKey(long key);
+        int size();
+        Collection<T> values();
+        void clear();
+    }
+    
+    private static final class PrimitiveKeyIndex<T> extends LongObjectMap<T> implements KeyIndex<T> {
+    }
+    
+    private static final class ConcurrentKeyIndex<T> implements KeyIndex<T> {
+        private final ConcurrentMap<Long, T> entities = new ConcurrentHashMap<>();
+        
+        @Override
+        public T get(long key) {
+            return entities.get(key);
+        }
+        
+        @Override
+        public T put(long key, T entity) {
+            return entities.put(key, entity);
+        }
+        
+        @Override
+        public T remove(long key) {
+            return entities.remove(key);
+        }
+        
+        @Override
+        public boolean containsKey(long key) {
+            return entities.containsKey(key);
+        }
+        
+        @Override
+        public int size() {
+            return entities.size();
+        }
+        
+        @Override
+        public Collection<T> values() {
+            return entities.values();
+        }
+        
+        @Override
+        public void clear() {
+            entities.clear();
+        }
+    }
+    
+    /**
+     * Non-unique index from a derived key to the set of entities sharing it.
+     * Buckets are added and dropped with per-key atomic compute calls, so a
+     * concurrent index never loses an entity to a racing empty-bucket removal.
+     */
+    private static final class SecondaryIndex<T> {
+        private final Function<? super T, ?> keyExtractor;
+        private final boolean concurrent;
+        private final Map<Object, Set<T>> buckets;
+        
+        SecondaryIndex(Function<? super T, ?> keyExtractor, boolean concurrent) {
+            this.keyExtractor = Objects.requireNonNull(keyExtractor, "indexKeyExtractor cannot be null");
+            this.concurrent = concurrent;
+            this.buckets = concurrent ? new ConcurrentHashMap<>() : new HashMap<>();
+        }
+        
+        void add(T entity) {
+            Object key = keyFor(entity);
+            if (key != null) {
+                buckets.compute(key, (k, bucket) -> {
+                    Set<T> target = bucket != null ? bucket
+                            : concurrent ? ConcurrentHashMap.<T>newKeySet() : new LinkedHashSet<>();
+                    target.add(entity);
+                    return target;
+                });
+            }
+        }
+        
+        void remove(T entity) {
+            Object key = keyFor(entity);
+            if (key != null) {
+                buckets.computeIfPresent(key, (k, bucket) -> bucket.remove(entity) && bucket.isEmpty() ? null : bucket);
+            }
+        }
+        
+        Set<T> bucket(Object value) {
+            Object key = normalize(value);
+            Set<T> bucket = key == null ? null : buckets.get(key);
+            return bucket == null ? Collections.<T>emptySet() : bucket;
+        }
+        
+        void clear() {
+            buckets.clear();
+        }
+        
+        private Object keyFor(T entity) {
+            return normalize(keyExtractor.apply(entity));
+        }
+        
+        private static Object normalize(Object key) {
+            return key instanceof String ? normalizeKey((String) key) : key;
+        }
     }
 }
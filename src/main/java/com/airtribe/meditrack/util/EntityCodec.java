@@ -0,0 +1,473 @@
+package com.airtribe.meditrack.util;
+
+import com.airtribe.meditrack.entity.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Compact, versioned binary format for the clinic's entities.
+ * <p>
+ * A stream starts with a magic number and the schema version, followed by tagged
+ * records. Each record is length-prefixed, so a reader skips record types it does not
+ * know and trailing fields that a newer writer appended to a known type. Numbers are
+ * varints (zigzag for signed values), generated IDs are stored as a prefix code plus a
+ * varint, timestamps as epoch seconds and nanos in UTC, enums as ordinals and strings
+ * as length-prefixed UTF-8. Null is encoded explicitly wherever a field allows it.
+ */
+public final class EntityCodec {
+    
+    /** Current schema version written by {@link Encoder}. */
+    public static final int SCHEMA_VERSION = 1;
+    
+    private static final int MAGIC = 0x4D544B31;
+    private static final int END = 0;
+    private static final int DOCTOR = 1;
+    private static final int PATIENT = 2;
+    private static final int APPOINTMENT = 3;
+    private static final int BILL = 4;
+    private static final int BILL_SUMMARY = 5;
+    private static final int LONGS = 6;
+    
+    private static final int ID_NULL = 0;
+    private static final int ID_STRING = 1;
+    private static final int ID_PREFIXED = 2;
+    
+    private EntityCodec() {
+    }
+    
+    /**
+     * Writes entities to a stream. Not thread-safe.
+     */
+    public static final class Encoder implements Closeable, Flushable {
+        private final DataOutputStream out;
+        private byte[] record = new byte[256];
+        private int length;
+        
+        /**
+         * Starts a stream and writes its header.
+         *
+         * @param out the destination; it is buffered internally
+         * @throws IOException if the header cannot be written
+         */
+        public Encoder(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out, 1 << 16));
+            this.out.writeInt(MAGIC);
+            this.out.writeShort(SCHEMA_VERSION);
+        }
+        
+        /**
+         * Writes one entity: a Doctor, Patient, Appointment, Bill or BillSummary.
+         *
+         * @param entity the entity to write
+         * @throws IOException if the record cannot be written
+         * @throws IllegalArgumentException if the type is not supported
+         */
+        public void write(Object entity) throws IOException {
+            length = 0;
+            if (entity instanceof Doctor) {
+                Doctor doctor = (Doctor) entity;
+                putPerson(doctor);
+                putString(doctor.getSpecialty());
+                putEnum(doctor.getAvailability());
+                putString(doctor.getLicenseNumber());
+                emit(DOCTOR);
+            } else if (entity instanceof Patient) {
+                Patient patient = (Patient) entity;
+                putPerson(patient);
+                putSigned(patient.getAge());
+                putString(patient.getMedicalHistory());
+                emit(PATIENT);
+            } else if (entity instanceof Appointment) {
+                Appointment appointment = (Appointment) entity;
+                putId(appointment.getAppointmentId());
+                putId(appointment.getDoctorId());
+                putId(appointment.getPatientId());
+                putDateTime(appointment.getAppointmentDateTime());
+                putEnum(appointment.getStatus());
+                putString(appointment.getNotes());
+                emit(APPOINTMENT);
+            } else if (entity instanceof Bill) {
+                Bill bill = (Bill) entity;
+                putId(bill.getBillId());
+                putId(bill.getPatientId());
+                putId(bill.getAppointmentId());
+                putDouble(bill.getConsultationFee());
+                putDouble(bill.getLabCharges());
+                putDouble(bill.getOtherCharges());
+                putVarLong(bill.isPaid() ? 1 : 0);
+                putDateTime(bill.getBillDate());
+                putDateTime(bill.getPaidDate());
+                emit(BILL);
+            } else if (entity instanceof BillSummary) {
+                BillSummary summary = (BillSummary) entity;
+                putId(summary.getBillId());
+                putId(summary.getPatientId());
+                putId(summary.getAppointmentId());
+                putDouble(summary.getTotalAmount());
+                putVarLong(summary.isPaid() ? 1 : 0);
+                putDateTime(summary.getBillDate());
+                putDateTime(summary.getPaidDate());
+                emit(BILL_SUMMARY);
+            } else {
+                throw new IllegalArgumentException("Unsupported entity type: "
+                        + (entity == null ? "null" : entity.getClass().getName()));
+            }
+        }
+        
+        /**
+         * Writes an array of longs, such as counters stored next to the entities.
+         *
+         * @param values the values to write
+         * @throws IOException if the record cannot be written
+         */
+        public void writeLongs(long... values) throws IOException {
+            length = 0;
+            putVarLong(values.length);
+            for (long value : values) {
+                putSigned(value);
+            }
+            emit(LONGS);
+        }
+        
+        /**
+         * Writes the end marker; {@link Decoder#read()} returns null when it reaches it.
+         *
+         * @throws IOException if the marker cannot be written
+         */
+        public void writeEnd() throws IOException {
+            out.writeByte(END);
+        }
+        
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+        }
+        
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+        
+        private void emit(int type) throws IOException {
+            out.writeByte(type);
+            int n = length;
+            while ((n & ~0x7F) != 0) {
+                out.writeByte((n & 0x7F) | 0x80);
+                n >>>= 7;
+            }
+            out.writeByte(n);
+            out.write(record, 0, length);
+        }
+        
+        private void putPerson(Person person) {
+            putId(person.getId());
+            putString(person.getName());
+            putString(person.getEmail());
+            putString(person.getPhoneNumber());
+        }
+        
+        private void putId(String id) {
+            if (id == null) {
+                putVarLong(ID_NULL);
+                return;
+            }
+            // only exact spellings are packed, so decoding reproduces the string
+            long key = EntityKey.pack(id, true);
+            if (key != EntityKey.NONE) {
+                putVarLong(ID_PREFIXED + EntityKey.prefixCode(key));
+                putVarLong(EntityKey.number(key));
+                return;
+            }
+            putVarLong(ID_STRING);
+            putString(id);
+        }
+        
+        private void putString(String value) {
+            if (value == null) {
+                putVarLong(0);
+                return;
+            }
+            int chars = value.length();
+            boolean ascii = true;
+            for (int i = 0; i < chars && ascii; i++) {
+                ascii = value.charAt(i) < 0x80;
+            }
+            if (ascii) {
+                putVarLong(chars + 1L);
+                ensure(chars);
+                for (int i = 0; i < chars; i++) {
+                    record[length++] = (byte) value.charAt(i);
+                }
+            } else {
+                byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                putVarLong(bytes.length + 1L);
+                ensure(bytes.length);
+                System.arraycopy(bytes, 0, record, length, bytes.length);
+                length += bytes.length;
+            }
+        }
+        
+        private void putDateTime(LocalDateTime time) {
+            if (time == null) {
+                putVarLong(0);
+                return;
+            }
+            // the nano field is stored +1 so that 0 can mean null
+            putVarLong(time.getNano() + 1L);
+            putSigned(time.toEpochSecond(ZoneOffset.UTC));
+        }
+        
+        private void putEnum(Enum<?> value) {
+            putVarLong(value == null ? 0 : value.ordinal() + 1L);
+        }
+        
+        private void putDouble(double value) {
+            long bits = Double.doubleToLongBits(value);
+            ensure(8);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                record[length++] = (byte) (bits >>> shift);
+            }
+        }
+        
+        private void putSigned(long value) {
+            putVarLong((value << 1) ^ (value >> 63));
+        }
+        
+        private void putVarLong(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                record[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            record[length++] = (byte) value;
+        }
+        
+        private void ensure(int extra) {
+            if (length + extra > record.length) {
+                byte[] grown = new byte[Math.max(record.length * 2, length + extra)];
+                System.arraycopy(record, 0, grown, 0, length);
+                record = grown;
+            }
+        }
+    }
+    
+    /**
+     * Reads entities written by an {@link Encoder}. Not thread-safe.
+     */
+    public static final class Decoder implements Closeable {
+        private final DataInputStream in;
+        private final int schemaVersion;
+        private byte[] record = new byte[256];
+        private int position;
+        private int limit;
+        
+        /**
+         * Opens a stream and checks its header.
+         *
+         * @param in the source; it is buffered internally
+         * @throws IOException if the header is missing or the schema version is newer than supported
+         */
+        public Decoder(InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in, 1 << 16));
+            if (this.in.readInt() != MAGIC) {
+                throw new IOException("Not an entity stream");
+            }
+            this.schemaVersion = this.in.readUnsignedShort();
+            if (schemaVersion > SCHEMA_VERSION) {
+                throw new IOException("Unsupported schema version " + schemaVersion);
+            }
+        }
+        
+        /**
+         * Gets the schema version the stream was written with.
+         *
+         * @return the schema version
+         */
+        public int getSchemaVersion() {
+            return schemaVersion;
+        }
+        
+        /**
+         * Reads the next entity, skipping records of unknown types.
+         *
+         * @return the entity, a {@code long[]} written by {@link Encoder#writeLongs}, or null at the end marker
+         * @throws IOException if the stream is truncated or corrupt
+         */
+        public Object read() throws IOException {
+            while (true) {
+                int type = in.readUnsignedByte();
+                if (type == END) {
+                    return null;
+                }
+                loadRecord();
+                switch (type) {
+                    case DOCTOR:
+                        return readDoctor();
+                    case PATIENT:
+                        return readPatient();
+                    case APPOINTMENT:
+                        return readAppointment();
+                    case BILL:
+                        return readBill();
+                    case BILL_SUMMARY:
+                        return new BillSummary(getId(), getId(), getId(), getDouble(), getVarLong() == 1,
+                                               getDateTime(), getDateTime());
+                    case LONGS:
+                        long[] values = new long[(int) getVarLong()];
+                        for (int i = 0; i < values.length; i++) {
+                            values[i] = getSigned();
+                        }
+                        return values;
+                    default:
+                        // a record type from a newer schema
+                }
+            }
+        }
+        
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+        
+        private Doctor readDoctor() throws IOException {
+            String id = getId();
+            String name = getString();
+            String email = getString();
+            String phone = getString();
+            String specialty = getString();
+            DoctorAvailability availability = getEnum(DoctorAvailability.values());
+            return new Doctor(id, name, email, phone, specialty, getString(), availability);
+        }
+        
+        private Patient readPatient() throws IOException {
+            String id = getId();
+            String name = getString();
+            String email = getString();
+            String phone = getString();
+            int age = (int) getSigned();
+            return new Patient(id, name, email, phone, age, getString());
+        }
+        
+        private Appointment readAppointment() throws IOException {
+            String id = getId();
+            String doctorId = getId();
+            String patientId = getId();
+            LocalDateTime time = getDateTime();
+            AppointmentStatus status = getEnum(AppointmentStatus.values());
+            return new Appointment(id, doctorId, patientId, time, status, getString());
+        }
+        
+        private Bill readBill() throws IOException {
+            Bill bill = new Bill(getId(), getId(), getId(), getDouble(), getDouble(), getDouble());
+            boolean paid = getVarLong() == 1;
+            bill.setBillDate(getDateTime());
+            LocalDateTime paidDate = getDateTime();
+            if (paid) {
+                bill.markAsPaid();
+            }
+            bill.setPaidDate(paidDate);
+            return bill;
+        }
+        
+        private void loadRecord() throws IOException {
+            int size = 0;
+            for (int shift = 0; ; shift += 7) {
+                int b = in.readUnsignedByte();
+                size |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    break;
+                }
+                if (shift > 28) {
+                    throw new IOException("Corrupt record length");
+                }
+            }
+            if (size > record.length) {
+                record = new byte[Math.max(size, record.length * 2)];
+            }
+            in.readFully(record, 0, size);
+            position = 0;
+            limit = size;
+        }
+        
+        private String getId() throws IOException {
+            int kind = (int) getVarLong();
+            if (kind == ID_NULL) {
+                return null;
+            }
+            if (kind == ID_STRING) {
+                return getString();
+            }
+            int prefix = kind - ID_PREFIXED;
+            if (prefix >= EntityKey.prefixCount()) {
+                throw new IOException("Unknown ID prefix code " + kind);
+            }
+            return EntityKey.prefix(prefix) + getVarLong();
+        }
+        
+        private String getString() throws IOException {
+            long encoded = getVarLong();
+            if (encoded == 0) {
+                return null;
+            }
+            int size = (int) (encoded - 1);
+            require(size);
+            String value = new String(record, position, size, StandardCharsets.UTF_8);
+            position += size;
+            return value;
+        }
+        
+        private LocalDateTime getDateTime() throws IOException {
+            long nano = getVarLong();
+            if (nano == 0) {
+                return null;
+            }
+            return LocalDateTime.ofEpochSecond(getSigned(), (int) (nano - 1), ZoneOffset.UTC);
+        }
+        
+        private <E extends Enum<E>> E getEnum(E[] values) throws IOException {
+            int ordinal = (int) getVarLong();
+            if (ordinal == 0) {
+                return null;
+            }
+            if (ordinal > values.length) {
+                throw new IOException("Unknown enum ordinal " + (ordinal - 1));
+            }
+            return values[ordinal - 1];
+        }
+        
+        private double getDouble() throws IOException {
+            require(8);
+            long bits = 0;
+            for (int i = 0; i < 8; i++) {
+                bits = (bits << 8) | (record[position++] & 0xFF);
+            }
+            return Double.longBitsToDouble(bits);
+        }
+        
+        private long getSigned() throws IOException {
+            long raw = getVarLong();
+            return (raw >>> 1) ^ -(raw & 1);
+        }
+        
+        private long getVarLong() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                require(1);
+                byte b = record[position++];
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Corrupt varint");
+        }
+        
+        private void require(int bytes) throws IOException {
+            if (bytes < 0 || position + bytes > limit) {
+                throw new IOException("Truncated record");
+            }
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package com.airtribe.meditrack.util;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Packs entity IDs into primitive long keys for stores and indexes.
+ * <p>
+ * An ID produced by {@link IdGenerator} (a known prefix followed by a canonical
+ * number) is packed arithmetically: the prefix code goes in the top byte and the
+ * number in the low 56 bits, so parsing needs no lookup and the ID can be rebuilt
+ * from the key alone. Prefixes match case-insensitively, which makes
+ * {@code "doc1001"} and {@code "DOC1001"} the same key. Any other ID is interned:
+ * it is assigned the next key in a reserved range and its first spelling is kept
+ * so the key can be turned back into a string. Interned keys are only meaningful
+ * within the running process and are never written to disk.
+ */
+public final class EntityKey {
+    
+    /** The key of a null or unknown ID; no entity ever has this key. */
+    public static final long NONE = 0L;
+    
+    static final String DOCTOR_PREFIX = "DOC";
+    static final String PATIENT_PREFIX = "PAT";
+    static final String APPOINTMENT_PREFIX = "APT";
+    static final String BILL_PREFIX = "BILL";
+    
+    // the position of a prefix is its code in keys and in EntityCodec streams, so new prefixes go at the end
+    private static final String[] PREFIXES = {DOCTOR_PREFIX, PATIENT_PREFIX, APPOINTMENT_PREFIX, BILL_PREFIX};
+    private static final int NUMBER_BITS = 56;
+    private static final long NUMBER_MASK = (1L << NUMBER_BITS) - 1;
+    private static final long INTERNED = 0x7FL;
+    
+    private static final Map<String, Long> internedKeys = new ConcurrentHashMap<>();
+    private static final Map<Long, String> internedIds = new ConcurrentHashMap<>();
+    private static final AtomicLong nextInterned = new AtomicLong(1);
+    
+    private EntityKey() {
+    }
+    
+    /**
+     * Gets the key of an ID, interning the ID if it is not a generated one.
+     * Use this when an entity is stored; lookups should use {@link #find}.
+     *
+     * @param id the ID
+     * @return the key, or {@link #NONE} if the ID is null
+     */
+    public static long of(String id) {
+        if (id == null) {
+            return NONE;
+        }
+        long key = pack(id, false);
+        if (key != NONE) {
+            return key;
+        }
+        return internedKeys.computeIfAbsent(id.toUpperCase(Locale.ROOT), normalized -> {
+            long interned = (INTERNED << NUMBER_BITS) | nextInterned.getAndIncrement();
+            internedIds.put(interned, id);
+            return interned;
+        });
+    }
+    
+    /**
+     * Gets the key of an ID without interning it, so looking up arbitrary input
+     * does not grow the intern table.
+     *
+     * @param id the ID
+     * @return the key, or {@link #NONE} if the ID is null or was never stored
+     */
+    public static long find(String id) {
+        if (id == null) {
+            return NONE;
+        }
+        long key = pack(id, false);
+        if (key != NONE) {
+            return key;
+        }
+        Long interned = internedKeys.get(id.toUpperCase(Locale.ROOT));
+        return interned == null ? NONE : interned;
+    }
+    
+    /**
+     * Turns a key back into an ID. Generated IDs come back with an upper-case
+     * prefix; interned IDs come back as first spelled.
+     *
+     * @param key the key
+     * @return the ID, or null for {@link #NONE} or an unknown key
+     */
+    public static String toId(long key) {
+        int code = (int) (key >>> NUMBER_BITS);
+        if (code >= 1 && code <= PREFIXES.length) {
+            return PREFIXES[code - 1] + (key & NUMBER_MASK);
+        }
+        return code == INTERNED ? internedIds.get(key) : null;
+    }
+    
+    /**
+     * Checks whether two IDs name the same entity, ignoring case.
+     *
+     * @param a an ID
+     * @param b another ID
+     * @return true if both are non-null and equivalent
+     */
+    public static boolean sameId(String a, String b) {
+        if (a == null || b == null) {
+            return false;
+        }
+        long key = pack(a, false);
+        return key != NONE ? key == pack(b, false) : a.equalsIgnoreCase(b);
+    }
+    
+    /**
+     * Packs a generated ID, or returns {@link #NONE} if the ID has another shape.
+     * Only canonical numbers (no sign, no leading zeros) qualify, so that
+     * {@link #toId} reproduces the ID up to the case of its prefix; with
+     * {@code matchCase} only the upper-case prefix qualifies, so it is reproduced exactly.
+     * This is the one definition of a generated ID, shared with {@link IdGenerator}
+     * and {@link EntityCodec}.
+     */
+    static long pack(String id, boolean matchCase) {
+        for (int code = 0; code < PREFIXES.length; code++) {
+            String prefix = PREFIXES[code];
+            if (!id.regionMatches(!matchCase, 0, prefix, 0, prefix.length())) {
+                continue;
+            }
+            int digits = id.length() - prefix.length();
+            if (digits < 1 || digits > 17 || (digits > 1 && id.charAt(prefix.length()) == '0')) {
+                return NONE;
+            }
+            long number = 0;
+            for (int i = prefix.length(); i < id.length(); i++) {
+                char c = id.charAt(i);
+                if (c < '0' || c > '9') {
+                    return NONE;
+                }
+                number = number * 10 + (c - '0');
+            }
+            return number > NUMBER_MASK ? NONE : ((long) (code + 1) << NUMBER_BITS) | number;
+        }
+        return NONE;
+    }
+    
+    /**
+     * Gets the number of known ID prefixes; codes run from zero up to it.
+     */
+    static int prefixCount() {
+        return PREFIXES.length;
+    }
+    
+    /**
+     * Gets the ID prefix with the given code.
+     */
+    static String prefix(int code) {
+        return PREFIXES[code];
+    }
+    
+    /**
+     * Gets the prefix code of a packed generated ID's key.
+     */
+    static int prefixCode(long key) {
+        return (int) (key >>> NUMBER_BITS) - 1;
+    }
+    
+    /**
+     * Gets the number of a packed generated ID's key.
+     */
+    static long number(long key) {
+        return key & NUMBER_MASK;
+    }
+}
@@ -0,0 +1,268 @@
+package com.airtribe.meditrack.util;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Base class of the entity stores the services work against.
+ * <p>
+ * A store is keyed by entity ID: lookups and removals take either the ID, which
+ * is parsed once and compared case-insensitively, or its packed {@link EntityKey}.
+ * Named non-unique secondary indexes can be declared with {@link #addIndex}, and
+ * fields that feed an index or the key must only be changed through
+ * {@link #update}. Implementations decide how entities are held: {@link DataStore}
+ * keeps the objects, {@link ColumnarAppointmentStore} and {@link OffHeapPatientStore}
+ * keep encoded copies, so only the operations below are common to all of them.
+ *
+ * @param <T> the type of entity stored
+ */
+public abstract class EntityStore<T> {
+    
+    private final Function<? super T, String> keyExtractor;
+    
+    /**
+     * Constructs a store that takes entity keys from the given function.
+     *
+     * @param keyExtractor function returning the unique key of an entity, or null
+     *                     for a store that is not keyed
+     */
+    protected EntityStore(Function<? super T, String> keyExtractor) {
+        this.keyExtractor = keyExtractor;
+    }
+    
+    /**
+     * Normalizes a string index key so that lookups are case-insensitive.
+     *
+     * @param key the raw key
+     * @return the normalized key, or null if the key is null
+     */
+    public static String normalizeKey(String key) {
+        return key == null ? null : key.toUpperCase(Locale.ROOT);
+    }
+    
+    /**
+     * Checks if this store looks entities up by key.
+     *
+     * @return true if keyed, false otherwise
+     */
+    public boolean isKeyed() {
+        return true;
+    }
+    
+    /**
+     * Adds an entity; an entity with the same key replaces the existing one.
+     *
+     * @param entity the entity to add
+     * @throws IllegalArgumentException if the entity has no key
+     */
+    public abstract void add(T entity);
+    
+    /**
+     * Adds an entity after running a preparatory step that must be atomic with the
+     * insert, such as journaling it or updating structures kept beside the store.
+     * If the step throws, the entity is not added.
+     *
+     * @param entity the entity to add
+     * @param beforeAdd the step to run first
+     * @throws IllegalArgumentException if the entity has no key
+     */
+    public void add(T entity, Consumer<? super T> beforeAdd) {
+        if (entity == null) {
+            return;
+        }
+        beforeAdd.accept(entity);
+        add(entity);
+    }
+    
+    /**
+     * Removes an entity.
+     *
+     * @param entity the entity to remove
+     * @return true if the entity was removed, false otherwise
+     */
+    public abstract boolean remove(T entity);
+    
+    /**
+     * Finds an entity by its key.
+     *
+     * @param key the key, compared case-insensitively
+     * @return an Optional containing the entity if found, empty otherwise
+     */
+    public Optional<T> findByKey(String key) {
+        return findByKey(EntityKey.find(key));
+    }
+    
+    /**
+     * Finds an entity by its packed key.
+     *
+     * @param key the packed key
+     * @return an Optional containing the entity if found, empty otherwise
+     */
+    public abstract Optional<T> findByKey(long key);
+    
+    /**
+     * Checks if an entity with the given key exists.
+     *
+     * @param key the key, compared case-insensitively
+     * @return true if present, false otherwise
+     */
+    public boolean containsKey(String key) {
+        return containsKey(EntityKey.find(key));
+    }
+    
+    /**
+     * Checks if an entity with the given packed key exists.
+     *
+     * @param key the packed key
+     * @return true if present, false otherwise
+     */
+    public abstract boolean containsKey(long key);
+    
+    /**
+     * Removes the entity with the given key.
+     *
+     * @param key the key, compared case-insensitively
+     * @return true if an entity was removed, false otherwise
+     */
+    public boolean removeByKey(String key) {
+        return removeByKey(EntityKey.find(key));
+    }
+    
+    /**
+     * Removes the entity with the given packed key.
+     *
+     * @param key the packed key
+     * @return true if an entity was removed, false otherwise
+     */
+    public abstract boolean removeByKey(long key);
+    
+    /**
+     * Checks if the store holds the given entity.
+     *
+     * @param entity the entity to search for
+     * @return true if the entity is in the store, false otherwise
+     */
+    public abstract boolean contains(T entity);
+    
+    /**
+     * Applies a mutation to a stored entity and re-indexes it.
+     *
+     * @param entity the stored entity to change
+     * @param mutation the change to apply
+     * @return true if the entity was in the store, false if only the mutation was applied
+     * @throws NullPointerException if the entity is null
+     */
+    public abstract boolean update(T entity, Consumer<? super T> mutation);
+    
+    /**
+     * Declares a named secondary index. Entities already in the store are indexed
+     * immediately; string index keys are normalized like primary keys.
+     *
+     * @param name the index name
+     * @param indexKeyExtractor function returning the index key of an entity
+     * @throws IllegalArgumentException if an index with that name already exists
+     */
+    public abstract void addIndex(String name, Function<? super T, ?> indexKeyExtractor);
+    
+    /**
+     * Finds the entities whose index key equals the given value.
+     *
+     * @param name the index name
+     * @param value the index key to look up
+     * @return the matching entities
+     * @throws IllegalArgumentException if no index with that name exists
+     */
+    public abstract List<T> findByIndex(String name, Object value);
+    
+    /**
+     * Counts the entities whose index key equals the given value.
+     *
+     * @param name the index name
+     * @param value the index key to look up
+     * @return the number of matching entities
+     * @throws IllegalArgumentException if no index with that name exists
+     */
+    public abstract int countByIndex(String name, Object value);
+    
+    /**
+     * Gets a copy of all entities.
+     *
+     * @return a list of all entities
+     */
+    public abstract List<T> getAll();
+    
+    /**
+     * Gets a read-only live view of all entities.
+     *
+     * @return an unmodifiable view of all entities
+     */
+    public abstract Collection<T> view();
+    
+    /**
+     * Streams all entities from the live data.
+     *
+     * @return a sequential stream of all entities
+     */
+    public Stream<T> stream() {
+        return view().stream();
+    }
+    
+    /**
+     * Gets the number of entities.
+     *
+     * @return the number of entities
+     */
+    public abstract int size();
+    
+    /**
+     * Checks if the store is empty.
+     *
+     * @return true if empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+    
+    /**
+     * Removes every entity.
+     */
+    public abstract void clear();
+    
+    /**
+     * Gets an entity by position in iteration order.
+     *
+     * @param index the position of the entity
+     * @return the entity at that position
+     * @throws IndexOutOfBoundsException if the index is out of range
+     */
+    public abstract T get(int index);
+    
+    /**
+     * Returns the packed key of an entity, interning its ID if needed.
+     *
+     * @param entity the entity
+     * @return the packed key
+     * @throws IllegalArgumentException if the entity has no key
+     */
+    protected long keyOf(T entity) {
+        long key = EntityKey.of(keyExtractor.apply(entity));
+        if (key == EntityKey.NONE) {
+            throw new IllegalArgumentException("Entity key cannot be null");
+        }
+        return key;
+    }
+    
+    /**
+     * Gets the function this store takes entity keys from.
+     *
+     * @return the key extractor, or null if the store is not keyed
+     */
+    protected Function<? super T, String> keyExtractor() {
+        return keyExtractor;
+    }
+}
@@ -0,0 +1,150 @@
+package com.airtribe.meditrack.util;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.*;
+
+/**
+ * Finds free appointment slots from the booked slots in an {@link AppointmentCalendar}.
+ * <p>
+ * Each working day is divided into a grid of slots of the calendar's slot duration,
+ * starting at the opening time. For every day it visits, the finder builds an
+ * occupancy bitmap from only that day's bookings and reads free slots off it with
+ * {@link BitSet#nextClearBit}, so the cost depends on the days scanned and the
+ * bookings in them, not on the size of the appointment history.
+ */
+public class FreeSlotFinder {
+    
+    private final AppointmentCalendar calendar;
+    private final LocalTime openingTime;
+    private final long slotSeconds;
+    private final int slotsPerDay;
+    
+    /**
+     * Constructs a finder for the given working hours.
+     *
+     * @param calendar the calendar holding booked slots
+     * @param openingTime the start of the first slot of each day
+     * @param closingTime the time by which the last slot of each day must end
+     * @throws IllegalArgumentException if no slot fits between opening and closing time
+     */
+    public FreeSlotFinder(AppointmentCalendar calendar, LocalTime openingTime, LocalTime closingTime) {
+        this.calendar = Objects.requireNonNull(calendar, "calendar cannot be null");
+        this.openingTime = Objects.requireNonNull(openingTime, "openingTime cannot be null");
+        this.slotSeconds = calendar.getSlotDuration().getSeconds();
+        long workingSeconds = Duration.between(openingTime, closingTime).getSeconds();
+        if (slotSeconds <= 0 || workingSeconds < slotSeconds) {
+            throw new IllegalArgumentException("Working hours must fit at least one slot");
+        }
+        this.slotsPerDay = (int) (workingSeconds / slotSeconds);
+    }
+    
+    /**
+     * Finds the earliest free slots of one doctor starting in [from, to).
+     *
+     * @param doctorId the doctor's ID
+     * @param from inclusive start of the search window
+     * @param to exclusive end of the search window
+     * @param limit the maximum number of slots to return
+     * @return free slot start times in ascending order
+     */
+    public List<LocalDateTime> findFreeSlots(String doctorId, LocalDateTime from, LocalDateTime to, int limit) {
+        List<LocalDateTime> result = new ArrayList<>();
+        if (limit <= 0 || !from.isBefore(to)) {
+            return result;
+        }
+        for (LocalDate day = from.toLocalDate(); !day.atTime(openingTime).isAfter(to) && result.size() < limit;
+             day = day.plusDays(1)) {
+            LocalDateTime dayStart = day.atTime(openingTime);
+            LocalDateTime dayEnd = dayStart.plusSeconds(slotSeconds * slotsPerDay);
+            BitSet occupied = occupancy(doctorId, dayStart, dayEnd);
+            int slot = firstSlotAtOrAfter(dayStart, from);
+            while (result.size() < limit) {
+                slot = occupied.nextClearBit(slot);
+                if (slot >= slotsPerDay) {
+                    break;
+                }
+                LocalDateTime start = dayStart.plusSeconds(slot * slotSeconds);
+                if (!start.isBefore(to)) {
+                    break;
+                }
+                result.add(start);
+                slot++;
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Finds the earliest free slots across several doctors starting in [from, to).
+     * Slots are ordered by start time, then by doctor in the order given.
+     *
+     * @param doctorIds the doctors to search
+     * @param from inclusive start of the search window
+     * @param to exclusive end of the search window
+     * @param limit the maximum number of slots to return
+     * @return the earliest free slots across all doctors
+     */
+    public List<Slot> findFreeSlots(Collection<String> doctorIds, LocalDateTime from, LocalDateTime to, int limit) {
+        List<Slot> candidates = new ArrayList<>();
+        for (String doctorId : doctorIds) {
+            for (LocalDateTime start : findFreeSlots(doctorId, from, to, limit)) {
+                candidates.add(new Slot(doctorId, start));
+            }
+        }
+        candidates.sort(Comparator.comparing(Slot::getStart));
+        return candidates.size() > limit ? new ArrayList<>(candidates.subList(0, limit)) : candidates;
+    }
+    
+    private BitSet occupancy(String doctorId, LocalDateTime dayStart, LocalDateTime dayEnd) {
+        BitSet occupied = new BitSet(slotsPerDay);
+        for (LocalDateTime booked : calendar.bookedStarts(doctorId, dayStart, dayEnd)) {
+            long offset = Duration.between(dayStart, booked).getSeconds();
+            // a booking covering [offset, offset + slot) overlaps grid slots floor(offset/slot) .. ceil((offset+slot)/slot) - 1
+            long first = Math.floorDiv(offset, slotSeconds);
+            long end = -Math.floorDiv(-(offset + slotSeconds), slotSeconds);
+            occupied.set((int) Math.max(0, first), (int) Math.min(slotsPerDay, end));
+        }
+        return occupied;
+    }
+    
+    private int firstSlotAtOrAfter(LocalDateTime dayStart, LocalDateTime from) {
+        if (!from.isAfter(dayStart)) {
+            return 0;
+        }
+        long offset = Duration.between(dayStart, from).getSeconds();
+        long slot = -Math.floorDiv(-offset, slotSeconds);
+        if (dayStart.plusSeconds(slot * slotSeconds).isBefore(from)) {
+            slot++;
+        }
+        return (int) Math.min(slot, slotsPerDay);
+    }
+    
+    /**
+     * A free slot of a particular doctor.
+     */
+    public static final class Slot {
+        private final String doctorId;
+        private final LocalDateTime start;
+        
+        public Slot(String doctorId, LocalDateTime start) {
+            this.doctorId = doctorId;
+            this.start = start;
+        }
+        
+        public String getDoctorId() {
+            return doctorId;
+        }
+        
+        public LocalDateTime getStart() {
+            return start;
+        }
+        
+        @Override
+        public String toString() {
+            return "Slot{doctorId=\"" + doctorId + "\", start=" + start + '}';
+        }
+    }
+}
@@ -1,15 +1,39 @@
 package com.airtribe.meditrack.util;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
 
 /**
  * Utility class for generating unique IDs for entities.
+ * <p>
+ * IDs are allocated with hi/lo block reservation. Each thread takes a small sub-block
+ * of numbers from a shared counter and hands them out without contention. Once
+ * {@link #persistTo} names a file, numbers are only handed out below a limit that has
+ * been written to that file, and the limit is raised {@value #RESERVATION_SIZE} numbers
+ * at a time, so a restart resumes above every ID issued before it at the cost of one
+ * durable write per reservation rather than per ID.
  */
 public class IdGenerator {
-    private static final AtomicLong doctorIdCounter = new AtomicLong(1000);
-    private static final AtomicLong patientIdCounter = new AtomicLong(2000);
-    private static final AtomicLong appointmentIdCounter = new AtomicLong(3000);
-    private static final AtomicLong billIdCounter = new AtomicLong(4000);
+    
+    private static final int RESERVATION_SIZE = 10_000;
+    private static final int THREAD_BLOCK_SIZE = 64;
+    
+    private static final Sequence doctorIds = new Sequence(EntityKey.DOCTOR_PREFIX, 1000);
+    private static final Sequence patientIds = new Sequence(EntityKey.PATIENT_PREFIX, 2000);
+    private static final Sequence appointmentIds = new Sequence(EntityKey.APPOINTMENT_PREFIX, 3000);
+    private static final Sequence billIds = new Sequence(EntityKey.BILL_PREFIX, 4000);
+    private static final Sequence[] sequences = {doctorIds, patientIds, appointmentIds, billIds};
+    
+    private static Path reservationFile;
     
     /**
      * Generates a unique doctor ID.
@@ -17,7 +41,7 @@ public class IdGenerator {
      * @return a unique doctor ID
      */
     public static String generateDoctorId() {
-        return "DOC" + doctorIdCounter.getAndIncrement();
+        return doctorIds.nextId();
     }
     
     /**
@@ -26,7 +50,7 @@ public class IdGenerator {
      * @return a unique patient ID
      */
     public static String generatePatientId() {
-        return "PAT" + patientIdCounter.getAndIncrement();
+        return patientIds.nextId();
     }
     
     /**
@@ -35,7 +59,7 @@ public class IdGenerator {
      * @return a unique appointment ID
      */
     public static String generateAppointmentId() {
-        return "APT" + appointmentIdCounter.getAndIncrement();
+        return appointmentIds.nextId();
     }
     
     /**
@@ -44,6 +68,165 @@ public class IdGenerator {
      * @return a unique bill ID
      */
     public static String generateBillId() {
-        return "BILL" + billIdCounter.getAndIncrement();
+        return billIds.nextId();
+    }
+    
+    /**
+     * Makes ID reservations durable in a file. Limits already in the file move every
+     * counter past the IDs issued by earlier runs.
+     *
+     * @param file the reservation file, created if it does not exist, or null to
+     *             keep later reservations in memory only
+     * @throws IOException if an existing file cannot be read or is corrupt
+     */
+    public static synchronized void persistTo(Path file) throws IOException {
+        if (file != null && Files.exists(file)) {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (data.remaining() != sequences.length * Long.BYTES + Integer.BYTES) {
+                throw new IOException("Corrupt ID reservation file " + file);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data.array(), 0, sequences.length * Long.BYTES);
+            if ((int) crc.getValue() != data.getInt(sequences.length * Long.BYTES)) {
+                throw new IOException("Corrupt ID reservation file " + file);
+            }
+            for (Sequence sequence : sequences) {
+                long saved = data.getLong();
+                sequence.advanceTo(saved);
+                // the saved limit is already durable; a reservation for another
+                // counter rewrites it and must not move it backwards
+                sequence.limit = Math.max(sequence.limit, saved);
+            }
+        }
+        reservationFile = file;
+    }
+    
+    /**
+     * Moves the matching counter past an existing ID, so IDs generated after
+     * entities are restored from disk never collide with the restored ones.
+     * IDs that {@link EntityKey} does not recognize as generated are ignored.
+     *
+     * @param id an ID produced by this generator
+     */
+    public static void advancePast(String id) {
+        long key = id == null ? EntityKey.NONE : EntityKey.pack(id, false);
+        if (key == EntityKey.NONE) {
+            return;
+        }
+        String prefix = EntityKey.prefix(EntityKey.prefixCode(key));
+        for (Sequence sequence : sequences) {
+            if (sequence.prefix.equals(prefix)) {
+                sequence.advanceTo(EntityKey.number(key) + 1);
+                return;
+            }
+        }
+    }
+    
+    /**
+     * Gets the next number of each counter, in the order doctor, patient,
+     * appointment, bill, so it can be saved alongside a snapshot.
+     *
+     * @return the current counter values
+     */
+    public static long[] getCounters() {
+        long[] counters = new long[sequences.length];
+        for (int i = 0; i < sequences.length; i++) {
+            counters[i] = sequences[i].next.get();
+        }
+        return counters;
+    }
+    
+    /**
+     * Raises each counter to at least the saved value; counters never move backwards.
+     *
+     * @param counters values previously returned by {@link #getCounters()}
+     */
+    public static void advanceCounters(long[] counters) {
+        for (int i = 0; i < Math.min(sequences.length, counters.length); i++) {
+            sequences[i].advanceTo(counters[i]);
+        }
+    }
+    
+    /**
+     * Makes sure every number below {@code end} is covered by a durable reservation.
+     */
+    private static synchronized void reserve(Sequence sequence, long end) {
+        if (end <= sequence.limit) {
+            return;
+        }
+        long newLimit = end + RESERVATION_SIZE;
+        if (reservationFile != null) {
+            long[] limits = new long[sequences.length];
+            for (int i = 0; i < sequences.length; i++) {
+                limits[i] = sequences[i] == sequence ? newLimit : sequences[i].limit;
+            }
+            try {
+                writeLimits(limits);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to reserve IDs", e);
+            }
+        }
+        sequence.limit = newLimit;
+    }
+    
+    private static void writeLimits(long[] limits) throws IOException {
+        ByteBuffer data = ByteBuffer.allocate(limits.length * Long.BYTES + Integer.BYTES);
+        for (long limit : limits) {
+            data.putLong(limit);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), 0, limits.length * Long.BYTES);
+        data.putInt((int) crc.getValue());
+        data.flip();
+        Path temp = reservationFile.resolveSibling(reservationFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (data.hasRemaining()) {
+                channel.write(data);
+            }
+            channel.force(false);
+        }
+        Files.move(temp, reservationFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+    
+    /**
+     * One ID counter. The shared counter only moves forward in thread-sized steps;
+     * each thread keeps its current sub-block as {next, end, epoch}. Advancing the
+     * counter bumps the epoch, which makes threads drop sub-blocks handed out earlier.
+     */
+    private static final class Sequence {
+        private final String prefix;
+        private final AtomicLong next;
+        private final AtomicInteger epoch = new AtomicInteger();
+        private final ThreadLocal<long[]> block = ThreadLocal.withInitial(() -> new long[3]);
+        private volatile long limit;
+        
+        Sequence(String prefix, long start) {
+            this.prefix = prefix;
+            this.next = new AtomicLong(start);
+            this.limit = start;
+        }
+        
+        String nextId() {
+            long[] current = block.get();
+            if (current[0] >= current[1] || current[2] != epoch.get()) {
+                int currentEpoch = epoch.get();
+                long start = next.getAndAdd(THREAD_BLOCK_SIZE);
+                if (start + THREAD_BLOCK_SIZE > limit) {
+                    reserve(this, start + THREAD_BLOCK_SIZE);
+                }
+                current[0] = start;
+                current[1] = start + THREAD_BLOCK_SIZE;
+                current[2] = currentEpoch;
+            }
+            return prefix + current[0]++;
+        }
+        
+        void advanceTo(long value) {
+            long previous = next.getAndAccumulate(value, Math::max);
+            if (previous < value) {
+                epoch.incrementAndGet();
+            }
+        }
     }
 }
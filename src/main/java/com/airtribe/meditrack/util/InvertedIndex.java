@@ -0,0 +1,488 @@
+package com.airtribe.meditrack.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text index from the words of a text field, such as a patient's medical
+ * history, to the packed keys of the entities whose text contains them.
+ * <p>
+ * Text is split into lower-case runs of letters and digits. Every indexed text gets
+ * an increasing document number, and each word keeps a posting list of the
+ * documents containing it together with the word's positions, encoded as
+ * variable-length deltas in a byte array. Replacing or removing a text retires its
+ * document number; the posting lists are rewritten without retired documents once
+ * they outnumber the live ones.
+ * <p>
+ * {@link #search} accepts words, which must all appear, {@code OR} between
+ * alternatives, quoted phrases and {@code prefix*} terms, for example
+ * {@code diabetes "high blood pressure" OR hyperten*}. All methods are
+ * synchronized, so one index can serve a concurrent store.
+ */
+public class InvertedIndex {
+    
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+    private static final Pattern QUERY_TOKEN = Pattern.compile("\"([^\"]*)\"?|(\\S+)");
+    private static final String OR = "OR";
+    private static final int MIN_RETIRED_FOR_COMPACTION = 1024;
+    private static final int[] NO_DOCS = new int[0];
+    
+    private final TreeMap<String, Postings> terms = new TreeMap<>();
+    private final LongLongMap docsByKey = new LongLongMap(0, -1L);
+    private long[] keysByDoc = new long[16];
+    private int nextDoc;
+    private int retired;
+    
+    /**
+     * Splits text into the lower-case words the index uses.
+     *
+     * @param text the text, may be null
+     * @return the words in order
+     */
+    public static List<String> tokenize(String text) {
+        List<String> words = new ArrayList<>();
+        if (text != null) {
+            Matcher matcher = WORD.matcher(text);
+            while (matcher.find()) {
+                words.add(matcher.group().toLowerCase(Locale.ROOT));
+            }
+        }
+        return words;
+    }
+    
+    /**
+     * Indexes the text of an entity, replacing any text indexed for it before.
+     *
+     * @param key the entity's packed key
+     * @param text the text, may be null
+     */
+    public synchronized void put(long key, String text) {
+        remove(key);
+        List<String> words = tokenize(text);
+        if (words.isEmpty()) {
+            return;
+        }
+        int doc = nextDoc++;
+        if (doc == keysByDoc.length) {
+            keysByDoc = Arrays.copyOf(keysByDoc, doc * 2);
+        }
+        keysByDoc[doc] = key;
+        docsByKey.put(key, doc);
+        Map<String, List<Integer>> positions = new TreeMap<>();
+        for (int i = 0; i < words.size(); i++) {
+            positions.computeIfAbsent(words.get(i), w -> new ArrayList<>()).add(i);
+        }
+        for (Map.Entry<String, List<Integer>> entry : positions.entrySet()) {
+            int[] offsets = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+            terms.computeIfAbsent(entry.getKey(), w -> new Postings()).append(doc, offsets);
+        }
+    }
+    
+    /**
+     * Removes the text indexed for an entity.
+     *
+     * @param key the entity's packed key
+     * @return true if text was indexed for it, false otherwise
+     */
+    public synchronized boolean remove(long key) {
+        int doc = (int) docsByKey.remove(key);
+        if (doc < 0) {
+            return false;
+        }
+        keysByDoc[doc] = EntityKey.NONE;
+        retired++;
+        if (retired >= MIN_RETIRED_FOR_COMPACTION && retired > docsByKey.size()) {
+            compact();
+        }
+        return true;
+    }
+    
+    /**
+     * Gets the number of entities with indexed text.
+     *
+     * @return the number of indexed entities
+     */
+    public synchronized int size() {
+        return docsByKey.size();
+    }
+    
+    /**
+     * Gets the number of distinct words in the index, including words left only
+     * in retired documents until the next compaction.
+     *
+     * @return the number of words
+     */
+    public synchronized int termCount() {
+        return terms.size();
+    }
+    
+    /**
+     * Removes every indexed text.
+     */
+    public synchronized void clear() {
+        terms.clear();
+        docsByKey.clear();
+        keysByDoc = new long[16];
+        nextDoc = 0;
+        retired = 0;
+    }
+    
+    /**
+     * Finds the entities whose text contains every given word.
+     *
+     * @param words the words
+     * @return the matching keys, in indexing order
+     */
+    public synchronized long[] allOf(String... words) {
+        int[] docs = null;
+        for (String word : words) {
+            int[] matches = phraseDocs(tokenize(word));
+            docs = docs == null ? matches : intersect(docs, matches);
+        }
+        return keysOf(docs == null ? NO_DOCS : docs);
+    }
+    
+    /**
+     * Finds the entities whose text contains at least one of the given words.
+     *
+     * @param words the words
+     * @return the matching keys, in indexing order
+     */
+    public synchronized long[] anyOf(String... words) {
+        int[] docs = NO_DOCS;
+        for (String word : words) {
+            docs = union(docs, phraseDocs(tokenize(word)));
+        }
+        return keysOf(docs);
+    }
+    
+    /**
+     * Finds the entities whose text contains the given words next to each other.
+     *
+     * @param phrase the phrase
+     * @return the matching keys, in indexing order
+     */
+    public synchronized long[] phrase(String phrase) {
+        return keysOf(phraseDocs(tokenize(phrase)));
+    }
+    
+    /**
+     * Finds the entities whose text contains a word starting with the given prefix.
+     *
+     * @param prefix the prefix
+     * @return the matching keys, in indexing order
+     */
+    public synchronized long[] prefix(String prefix) {
+        return keysOf(prefixDocs(prefix.toLowerCase(Locale.ROOT)));
+    }
+    
+    /**
+     * Evaluates a query combining words, {@code OR}, quoted phrases and
+     * {@code prefix*} terms. Adjacent terms must all match; {@code OR} separates
+     * alternatives and binds more loosely.
+     *
+     * @param query the query
+     * @return the matching keys, in indexing order
+     */
+    public synchronized long[] search(String query) {
+        int[] result = NO_DOCS;
+        int[] group = null;
+        Matcher matcher = QUERY_TOKEN.matcher(query == null ? "" : query);
+        while (matcher.find()) {
+            if (matcher.group(2) != null && OR.equals(matcher.group(2))) {
+                result = union(result, group == null ? NO_DOCS : group);
+                group = null;
+                continue;
+            }
+            int[] docs = termDocs(matcher.group(1) != null ? "\"" + matcher.group(1) : matcher.group(2));
+            if (docs != null) {
+                group = group == null ? docs : intersect(group, docs);
+            }
+        }
+        return keysOf(union(result, group == null ? NO_DOCS : group));
+    }
+    
+    /**
+     * Gets the documents of one query term, or null if the term has no words.
+     */
+    private int[] termDocs(String token) {
+        if (token.startsWith("\"")) {
+            List<String> words = tokenize(token);
+            return words.isEmpty() ? null : phraseDocs(words);
+        }
+        if (token.endsWith("*")) {
+            List<String> words = tokenize(token);
+            if (words.isEmpty()) {
+                return null;
+            }
+            String last = words.remove(words.size() - 1);
+            int[] docs = prefixDocs(last);
+            return words.isEmpty() ? docs : intersect(phraseDocs(words), docs);
+        }
+        List<String> words = tokenize(token);
+        return words.isEmpty() ? null : phraseDocs(words);
+    }
+    
+    private int[] prefixDocs(String prefix) {
+        int[] docs = NO_DOCS;
+        for (Postings postings : terms.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            docs = union(docs, postings.docs());
+        }
+        return docs;
+    }
+    
+    private int[] phraseDocs(List<String> words) {
+        if (words.isEmpty()) {
+            return NO_DOCS;
+        }
+        Postings[] lists = new Postings[words.size()];
+        for (int i = 0; i < lists.length; i++) {
+            lists[i] = terms.get(words.get(i));
+            if (lists[i] == null) {
+                return NO_DOCS;
+            }
+        }
+        int[][] docsOf = new int[lists.length][];
+        int[] docs = docsOf[0] = lists[0].docs();
+        for (int i = 1; i < lists.length; i++) {
+            docsOf[i] = lists[i].docs();
+            docs = intersect(docs, docsOf[i]);
+        }
+        if (lists.length == 1 || docs.length == 0) {
+            return docs;
+        }
+        int[][][] positions = new int[lists.length][][];
+        for (int i = 0; i < lists.length; i++) {
+            positions[i] = lists[i].positions();
+        }
+        int matched = 0;
+        for (int doc : docs) {
+            if (adjacent(doc, docsOf, positions)) {
+                docs[matched++] = doc;
+            }
+        }
+        return Arrays.copyOf(docs, matched);
+    }
+    
+    /**
+     * Checks whether some position of the first word is followed by the other words.
+     */
+    private static boolean adjacent(int doc, int[][] docsOf, int[][][] positions) {
+        int[][] inDoc = new int[docsOf.length][];
+        for (int i = 0; i < docsOf.length; i++) {
+            inDoc[i] = positions[i][Arrays.binarySearch(docsOf[i], doc)];
+        }
+        for (int start : inDoc[0]) {
+            boolean match = true;
+            for (int i = 1; i < inDoc.length && match; i++) {
+                match = Arrays.binarySearch(inDoc[i], start + i) >= 0;
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private long[] keysOf(int[] docs) {
+        long[] keys = new long[docs.length];
+        int count = 0;
+        for (int doc : docs) {
+            if (keysByDoc[doc] != EntityKey.NONE) {
+                keys[count++] = keysByDoc[doc];
+            }
+        }
+        return count == keys.length ? keys : Arrays.copyOf(keys, count);
+    }
+    
+    /**
+     * Rewrites every posting list without retired documents and renumbers the live
+     * ones, which keeps their order.
+     */
+    private void compact() {
+        int[] renumbered = new int[nextDoc];
+        int live = 0;
+        for (int doc = 0; doc < nextDoc; doc++) {
+            if (keysByDoc[doc] == EntityKey.NONE) {
+                renumbered[doc] = -1;
+            } else {
+                renumbered[doc] = live;
+                keysByDoc[live] = keysByDoc[doc];
+                docsByKey.put(keysByDoc[live], live);
+                live++;
+            }
+        }
+        terms.values().removeIf(postings -> postings.rewrite(renumbered));
+        keysByDoc = Arrays.copyOf(keysByDoc, Math.max(16, live * 2));
+        nextDoc = live;
+        retired = 0;
+    }
+    
+    private static int[] intersect(int[] a, int[] b) {
+        int[] result = new int[Math.min(a.length, b.length)];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length && j < b.length) {
+            if (a[i] < b[j]) {
+                i++;
+            } else if (a[i] > b[j]) {
+                j++;
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+    
+    private static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        int[] result = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length || j < b.length) {
+            if (j == b.length || (i < a.length && a[i] < b[j])) {
+                result[count++] = a[i++];
+            } else if (i == a.length || b[j] < a[i]) {
+                result[count++] = b[j++];
+            } else {
+                result[count++] = a[i];
+                i++;
+                j++;
+            }
+        }
+        return Arrays.copyOf(result, count);
+    }
+    
+    /**
+     * Posting list of one word: for each document in increasing order, the gap from
+     * the previous document, the number of occurrences and the gaps between the
+     * word's positions, each as a variable-length integer.
+     */
+    private static final class Postings {
+        private byte[] bytes = new byte[8];
+        private int length;
+        private int lastDoc = -1;
+        private int docCount;
+        
+        void append(int doc, int[] positions) {
+            writeVarInt(doc - lastDoc - 1);
+            writeVarInt(positions.length);
+            int last = 0;
+            for (int position : positions) {
+                writeVarInt(position - last);
+                last = position;
+            }
+            lastDoc = doc;
+            docCount++;
+        }
+        
+        int[] docs() {
+            int[] docs = new int[docCount];
+            Reader reader = new Reader();
+            for (int i = 0; i < docCount; i++) {
+                docs[i] = reader.nextDoc();
+                reader.skipPositions();
+            }
+            return docs;
+        }
+        
+        int[][] positions() {
+            int[][] positions = new int[docCount][];
+            Reader reader = new Reader();
+            for (int i = 0; i < docCount; i++) {
+                reader.nextDoc();
+                positions[i] = reader.readPositions();
+            }
+            return positions;
+        }
+        
+        /**
+         * Re-encodes the list under new document numbers, dropping documents mapped
+         * to -1.
+         *
+         * @return true if no documents remain
+         */
+        boolean rewrite(int[] renumbered) {
+            Reader reader = new Reader();
+            int count = docCount;
+            bytes = new byte[Math.max(8, length)];
+            length = 0;
+            lastDoc = -1;
+            docCount = 0;
+            for (int i = 0; i < count; i++) {
+                int doc = renumbered[reader.nextDoc()];
+                int[] positions = reader.readPositions();
+                if (doc >= 0) {
+                    append(doc, positions);
+                }
+            }
+            bytes = Arrays.copyOf(bytes, Math.max(8, length));
+            return docCount == 0;
+        }
+        
+        private void writeVarInt(int value) {
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+        
+        private final class Reader {
+            private final byte[] source = bytes;
+            private int offset;
+            private int doc = -1;
+            
+            int nextDoc() {
+                doc += readVarInt() + 1;
+                return doc;
+            }
+            
+            void skipPositions() {
+                int count = readVarInt();
+                for (int i = 0; i < count; i++) {
+                    readVarInt();
+                }
+            }
+            
+            int[] readPositions() {
+                int[] positions = new int[readVarInt()];
+                int last = 0;
+                for (int i = 0; i < positions.length; i++) {
+                    last += readVarInt();
+                    positions[i] = last;
+                }
+                return positions;
+            }
+            
+            private int readVarInt() {
+                int value = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = source[offset++];
+                    value |= (b & 0x7F) << shift;
+                    if (b >= 0) {
+                        return value;
+                    }
+                }
+            }
+        }
+    }
+}
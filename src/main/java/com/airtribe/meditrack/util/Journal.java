@@ -0,0 +1,582 @@
+package com.airtribe.meditrack.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead journal of mutating operations.
+ * <p>
+ * Records are written to segment files named {@code journal-NNNNNN.log} in a
+ * directory. Each record is framed as {@code [length][crc32][payload]}, where the
+ * payload holds an operation name and its string fields, so a record torn by a
+ * crash is detected and cut off on the next {@link #replay}.
+ * <p>
+ * When an append is durable depends on the {@link FsyncPolicy}. {@link #rotate}
+ * starts a new segment so that older ones can be deleted once a snapshot covers them.
+ */
+public class Journal implements Closeable {
+    
+    /**
+     * When appended records are forced to disk.
+     */
+    public enum FsyncPolicy {
+        /** Every append forces the file before returning. */
+        PER_OP,
+        /** Appends wait for a force; concurrent appends share one force. */
+        GROUP_COMMIT,
+        /** A background thread forces the file periodically; appends do not wait. */
+        PERIODIC
+    }
+    
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final int HEADER_BYTES = 8;
+    private static final int NULL_FIELD = -1;
+    
+    private final Path directory;
+    private final FsyncPolicy policy;
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Condition syncFinished = syncLock.newCondition();
+    // operations hold the read lock and rotate the write lock; fair, so a waiting rotation holds back new operations
+    private final ReentrantReadWriteLock operationLock = new ReentrantReadWriteLock(true);
+    private final ScheduledExecutorService syncer;
+    private volatile FileChannel channel;
+    private long segment;
+    private volatile long writtenSeq;
+    private long durableSeq;
+    private boolean syncing;
+    private volatile boolean closed;
+    
+    private Journal(Path directory, FsyncPolicy policy, long syncIntervalMillis) throws IOException {
+        this.directory = directory;
+        this.policy = Objects.requireNonNull(policy, "policy cannot be null");
+        Files.createDirectories(directory);
+        List<Long> segments = listSegments(directory);
+        this.segment = segments.isEmpty() ? 1 : segments.get(segments.size() - 1);
+        this.channel = openSegment(segment);
+        if (policy == FsyncPolicy.PERIODIC) {
+            if (syncIntervalMillis <= 0) {
+                throw new IllegalArgumentException("syncIntervalMillis must be positive");
+            }
+            this.syncer = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "journal-sync");
+                thread.setDaemon(true);
+                return thread;
+            });
+            syncer.scheduleWithFixedDelay(this::periodicSync, syncIntervalMillis, syncIntervalMillis,
+                                          TimeUnit.MILLISECONDS);
+        } else {
+            this.syncer = null;
+        }
+    }
+    
+    /**
+     * Opens the journal in a directory for appending, creating it if needed.
+     * Call {@link #replay} first so that any torn tail record is removed.
+     *
+     * @param directory the journal directory
+     * @param policy when appends are forced to disk
+     * @param syncIntervalMillis the force interval for {@link FsyncPolicy#PERIODIC}, ignored otherwise
+     * @return the open journal
+     * @throws IOException if the directory or segment cannot be opened
+     */
+    public static Journal open(Path directory, FsyncPolicy policy, long syncIntervalMillis) throws IOException {
+        return new Journal(directory, policy, syncIntervalMillis);
+    }
+    
+    /**
+     * Reads every record in the directory in append order. A torn or corrupt record
+     * at the end of the last segment is truncated away; corruption anywhere else
+     * is reported as an error.
+     *
+     * @param directory the journal directory
+     * @param consumer receives each record
+     * @return the number of records replayed
+     * @throws IOException if a segment cannot be read or is corrupt
+     */
+    public static long replay(Path directory, Consumer<Record> consumer) throws IOException {
+        return replay(directory, 0, consumer);
+    }
+    
+    /**
+     * Reads the records of the segments numbered {@code fromSegment} or higher in append order,
+     * truncating a torn tail as {@link #replay(Path, Consumer)} does.
+     *
+     * @param directory the journal directory
+     * @param fromSegment the first segment to read
+     * @param consumer receives each record
+     * @return the number of records replayed
+     * @throws IOException if a segment cannot be read or is corrupt
+     */
+    public static long replay(Path directory, long fromSegment, Consumer<Record> consumer) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return 0;
+        }
+        List<Long> segments = listSegments(directory);
+        long count = 0;
+        for (int i = 0; i < segments.size(); i++) {
+            if (segments.get(i) < fromSegment) {
+                continue;
+            }
+            boolean last = i == segments.size() - 1;
+            count += replaySegment(directory.resolve(segmentName(segments.get(i))), last, consumer);
+        }
+        return count;
+    }
+    
+    /**
+     * Appends a record and waits until it is as durable as the policy requires.
+     *
+     * @param operation the operation name
+     * @param fields the operation's fields, which may be null
+     * @throws UncheckedIOException if the record cannot be written or forced
+     * @throws IllegalStateException if the journal is closed
+     */
+    public void append(String operation, String... fields) {
+        write(encode(operation, fields));
+    }
+    
+    private void write(ByteBuffer... records) {
+        long seq;
+        writeLock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Journal is closed");
+            }
+            long remaining = 0;
+            for (ByteBuffer record : records) {
+                remaining += record.remaining();
+            }
+            while (remaining > 0) {
+                remaining -= channel.write(records);
+            }
+            writtenSeq += records.length;
+            seq = writtenSeq;
+            if (policy == FsyncPolicy.PER_OP) {
+                channel.force(false);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append to journal", e);
+        } finally {
+            writeLock.unlock();
+        }
+        if (policy == FsyncPolicy.GROUP_COMMIT) {
+            awaitDurable(seq);
+        }
+    }
+    
+    /**
+     * Closes the current segment and directs later appends to a new one.
+     * Records appended before this call are forced to disk first, and operations
+     * started through {@link #record} are allowed to finish; new ones wait until the
+     * switch is done, so a steady stream of writes cannot hold a rotation off.
+     *
+     * @return the number of the segment that was closed
+     * @throws IOException if the segment cannot be forced or the new one opened
+     * @throws IllegalStateException if the journal is closed
+     */
+    public long rotate() throws IOException {
+        // Holding back new operations is safe because callers enter an operation
+        // before taking any data store lock; the ones in progress then drain.
+        operationLock.writeLock().lock();
+        try {
+            writeLock.lock();
+            try {
+                if (closed) {
+                    throw new IllegalStateException("Journal is closed");
+                }
+                FileChannel previous = channel;
+                previous.force(false);
+                channel = openSegment(segment + 1);
+                long closedSegment = segment++;
+                previous.close();
+                syncLock.lock();
+                try {
+                    durableSeq = Math.max(durableSeq, writtenSeq);
+                    syncFinished.signalAll();
+                } finally {
+                    syncLock.unlock();
+                }
+                return closedSegment;
+            } finally {
+                writeLock.unlock();
+            }
+        } finally {
+            operationLock.writeLock().unlock();
+        }
+    }
+    
+    /**
+     * Deletes the segments numbered below the given one, for example once a
+     * snapshot makes their records redundant. The active segment is never deleted.
+     *
+     * @param firstKept the lowest segment number to keep
+     * @return the number of segments deleted
+     * @throws IOException if a segment cannot be deleted
+     */
+    public int deleteSegmentsBefore(long firstKept) throws IOException {
+        int deleted = 0;
+        for (long number : listSegments(directory)) {
+            if (number < firstKept && number < currentSegment()) {
+                Files.deleteIfExists(directory.resolve(segmentName(number)));
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+    
+    /**
+     * Gets the number of the segment appends currently go to.
+     *
+     * @return the active segment number
+     */
+    public long currentSegment() {
+        writeLock.lock();
+        try {
+            return segment;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Appends a record and then applies the change it describes. A {@link #rotate}
+     * waits for operations in progress, so once it returns every record in the
+     * closed segments has also been applied. If the append fails the change is not applied.
+     * <p>
+     * A pending rotation holds this call back, so it must not be made while holding a
+     * lock that {@code apply} of another operation takes, such as a data store's entity
+     * lock; take such locks inside {@code apply} instead.
+     *
+     * @param apply applies the change in memory
+     * @param operation the operation name
+     * @param fields the operation's fields, which may be null
+     * @throws UncheckedIOException if the record cannot be written or forced
+     * @throws IllegalStateException if the journal is closed
+     */
+    public void record(Runnable apply, String operation, String... fields) {
+        operationLock.readLock().lock();
+        try {
+            append(operation, fields);
+            apply.run();
+        } finally {
+            operationLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Runs a change that appends its own records with {@link #append} as one
+     * operation, which a {@link #rotate} waits for like one started by {@link #record}.
+     * The body can then take a lock of its own, such as a data store's entity lock,
+     * and append and apply under it, so that the changes to one entity reach the
+     * journal in the order they are applied. The same rule applies as for
+     * {@link #record}: call this before taking such a lock, not while holding it.
+     *
+     * @param body appends the change's records, then applies it in memory
+     * @throws UncheckedIOException if a record cannot be written or forced
+     * @throws IllegalStateException if the journal is closed
+     */
+    public void perform(Runnable body) {
+        operationLock.readLock().lock();
+        try {
+            body.run();
+        } finally {
+            operationLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Batch form of {@link #record(Runnable, String, String...)}: appends one record
+     * per field array with a single write and a single wait for durability, then applies
+     * the whole batch.
+     *
+     * @param apply applies every change of the batch in memory
+     * @param operation the operation name shared by the records
+     * @param fieldsPerRecord the fields of each record
+     * @throws UncheckedIOException if the records cannot be written or forced
+     * @throws IllegalStateException if the journal is closed
+     */
+    public void recordAll(Runnable apply, String operation, List<String[]> fieldsPerRecord) {
+        ByteBuffer[] records = new ByteBuffer[fieldsPerRecord.size()];
+        for (int i = 0; i < records.length; i++) {
+            records[i] = encode(operation, fieldsPerRecord.get(i));
+        }
+        operationLock.readLock().lock();
+        try {
+            write(records);
+            apply.run();
+        } finally {
+            operationLock.readLock().unlock();
+        }
+    }
+    
+    /**
+     * Forces every appended record to disk.
+     *
+     * @throws UncheckedIOException if the force fails
+     */
+    public void sync() {
+        awaitDurable(writtenSeq);
+    }
+    
+    /**
+     * Gets the journal directory.
+     *
+     * @return the directory
+     */
+    public Path getDirectory() {
+        return directory;
+    }
+    
+    @Override
+    public void close() throws IOException {
+        writeLock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (syncer != null) {
+                syncer.shutdownNow();
+            }
+            channel.force(false);
+            channel.close();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+    
+    /**
+     * Leader/follower group commit: the first waiter forces the file for every
+     * record written so far while later waiters block until that force finishes.
+     */
+    private void awaitDurable(long seq) {
+        syncLock.lock();
+        try {
+            while (durableSeq < seq) {
+                if (syncing) {
+                    syncFinished.awaitUninterruptibly();
+                    continue;
+                }
+                syncing = true;
+                long target = writtenSeq;
+                boolean forced = false;
+                syncLock.unlock();
+                try {
+                    force();
+                    forced = true;
+                } finally {
+                    syncLock.lock();
+                    syncing = false;
+                    if (forced && target > durableSeq) {
+                        durableSeq = target;
+                    }
+                    syncFinished.signalAll();
+                }
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+    
+    private void force() {
+        while (true) {
+            FileChannel current = channel;
+            try {
+                current.force(false);
+                return;
+            } catch (ClosedChannelException e) {
+                // a rotation forced and closed this segment; force its successor instead
+                if (closed || current == channel) {
+                    throw new IllegalStateException("Journal is closed", e);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to force journal", e);
+            }
+        }
+    }
+    
+    private void periodicSync() {
+        try {
+            sync();
+        } catch (RuntimeException e) {
+            // the next run retries; a closed journal stops the schedule in close()
+        }
+    }
+    
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(directory.resolve(segmentName(number)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+    
+    private static ByteBuffer encode(String operation, String[] fields) {
+        byte[][] encoded = new byte[fields.length + 1][];
+        int size = 4;
+        encoded[0] = operation.getBytes(StandardCharsets.UTF_8);
+        for (int i = 0; i < fields.length; i++) {
+            encoded[i + 1] = fields[i] == null ? null : fields[i].getBytes(StandardCharsets.UTF_8);
+        }
+        for (byte[] bytes : encoded) {
+            size += 4 + (bytes == null ? 0 : bytes.length);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + size);
+        buffer.position(HEADER_BYTES);
+        buffer.putInt(fields.length);
+        for (byte[] bytes : encoded) {
+            if (bytes == null) {
+                buffer.putInt(NULL_FIELD);
+            } else {
+                buffer.putInt(bytes.length);
+                buffer.put(bytes);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), HEADER_BYTES, size);
+        buffer.putInt(0, size);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        return buffer;
+    }
+    
+    private static Record decode(ByteBuffer payload) {
+        int fieldCount = payload.getInt();
+        String operation = readField(payload);
+        List<String> fields = new ArrayList<>(fieldCount);
+        for (int i = 0; i < fieldCount; i++) {
+            fields.add(readField(payload));
+        }
+        return new Record(operation, fields);
+    }
+    
+    private static String readField(ByteBuffer payload) {
+        int length = payload.getInt();
+        if (length == NULL_FIELD) {
+            return null;
+        }
+        String value = new String(payload.array(), payload.arrayOffset() + payload.position(), length,
+                                  StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return value;
+    }
+    
+    private static long replaySegment(Path file, boolean last, Consumer<Record> consumer) throws IOException {
+        long count = 0;
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            long position = 0;
+            long size = in.size();
+            while (position < size) {
+                header.clear();
+                boolean valid = readFully(in, header, position);
+                ByteBuffer payload = null;
+                if (valid) {
+                    int length = header.getInt(0);
+                    valid = length >= 4 && position + HEADER_BYTES + length <= size;
+                    if (valid) {
+                        payload = ByteBuffer.allocate(length);
+                        readFully(in, payload, position + HEADER_BYTES);
+                        CRC32 crc = new CRC32();
+                        crc.update(payload.array(), 0, length);
+                        valid = (int) crc.getValue() == header.getInt(4);
+                    }
+                }
+                if (!valid) {
+                    if (!last) {
+                        throw new IOException("Corrupt journal record in " + file + " at offset " + position);
+                    }
+                    in.truncate(position);
+                    in.force(false);
+                    break;
+                }
+                payload.flip();
+                consumer.accept(decode(payload));
+                count++;
+                position += HEADER_BYTES + payload.capacity();
+            }
+        }
+        return count;
+    }
+    
+    private static boolean readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, position + buffer.position());
+            if (read < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private static List<Long> listSegments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.add(Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                                                               name.length() - SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // not a segment file
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+    
+    private static String segmentName(long number) {
+        return String.format("%s%06d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+    }
+    
+    /**
+     * One journaled operation.
+     */
+    public static final class Record {
+        private final String operation;
+        private final List<String> fields;
+        
+        Record(String operation, List<String> fields) {
+            this.operation = operation;
+            this.fields = Collections.unmodifiableList(fields);
+        }
+        
+        public String getOperation() {
+            return operation;
+        }
+        
+        public List<String> getFields() {
+            return fields;
+        }
+        
+        /**
+         * Gets a field by position.
+         *
+         * @param index the field position
+         * @return the field value, which may be null
+         */
+        public String field(int index) {
+            return fields.get(index);
+        }
+        
+        @Override
+        public String toString() {
+            return "Record{operation=\"" + operation + "\", fields=" + fields + '}';
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.airtribe.meditrack.util;
+
+import java.util.Arrays;
+
+/**
+ * Hash map from primitive long keys to primitive long values, suited to links
+ * between packed entity keys such as appointment to doctor.
+ * <p>
+ * Keys and values sit in two parallel arrays probed linearly, so an entry costs
+ * sixteen bytes of array space at most three quarters full, with no objects
+ * allocated per entry. Removal backward-shifts the probe chain instead of leaving
+ * tombstones. Key 0 cannot mark an empty slot and is held outside the arrays. A
+ * lookup of an absent key returns the map's missing value. The map is not
+ * thread-safe.
+ */
+public class LongLongMap {
+    
+    /**
+     * Receives the entries of a map.
+     */
+    @FunctionalInterface
+    public interface EntryConsumer {
+        void accept(long key, long value);
+    }
+    
+    private static final int DEFAULT_CAPACITY = 16;
+    
+    private final long missingValue;
+    private long[] keys;
+    private long[] values;
+    private int size;
+    private boolean hasZeroKey;
+    private long zeroValue;
+    
+    /**
+     * Constructs an empty map that returns 0 for absent keys.
+     */
+    public LongLongMap() {
+        this(DEFAULT_CAPACITY, 0L);
+    }
+    
+    /**
+     * Constructs an empty map.
+     *
+     * @param expectedSize the number of entries it holds without resizing
+     * @param missingValue the value returned for absent keys
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public LongLongMap(int expectedSize, long missingValue) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize cannot be negative");
+        }
+        this.missingValue = missingValue;
+        allocate(tableLengthFor(Math.max(expectedSize, DEFAULT_CAPACITY)));
+    }
+    
+    /**
+     * Gets the value stored under a key.
+     *
+     * @param key the key
+     * @return the value, or the missing value if the key is absent
+     */
+    public long get(long key) {
+        if (key == 0) {
+            return hasZeroKey ? zeroValue : missingValue;
+        }
+        int slot = slotOf(key);
+        return keys[slot] == 0 ? missingValue : values[slot];
+    }
+    
+    /**
+     * Checks whether a key is present.
+     *
+     * @param key the key
+     * @return true if present, false otherwise
+     */
+    public boolean containsKey(long key) {
+        return key == 0 ? hasZeroKey : keys[slotOf(key)] != 0;
+    }
+    
+    /**
+     * Stores a value under a key.
+     *
+     * @param key the key
+     * @param value the value
+     * @return the previous value, or the missing value if the key was absent
+     */
+    public long put(long key, long value) {
+        if (key == 0) {
+            long previous = hasZeroKey ? zeroValue : missingValue;
+            if (!hasZeroKey) {
+                hasZeroKey = true;
+                size++;
+            }
+            zeroValue = value;
+            return previous;
+        }
+        int slot = slotOf(key);
+        if (keys[slot] != 0) {
+            long previous = values[slot];
+            values[slot] = value;
+            return previous;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size > keys.length - keys.length / 4) {
+            rehash(keys.length * 2);
+        }
+        return missingValue;
+    }
+    
+    /**
+     * Removes the entry stored under a key.
+     *
+     * @param key the key
+     * @return the removed value, or the missing value if the key was absent
+     */
+    public long remove(long key) {
+        if (key == 0) {
+            if (!hasZeroKey) {
+                return missingValue;
+            }
+            hasZeroKey = false;
+            size--;
+            return zeroValue;
+        }
+        int slot = slotOf(key);
+        if (keys[slot] == 0) {
+            return missingValue;
+        }
+        long removed = values[slot];
+        int mask = keys.length - 1;
+        int hole = slot;
+        for (int i = (hole + 1) & mask; keys[i] != 0; i = (i + 1) & mask) {
+            int home = hash(keys[i]) & mask;
+            boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                keys[hole] = keys[i];
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = 0;
+        size--;
+        return removed;
+    }
+    
+    /**
+     * Gets the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Checks whether the map is empty.
+     *
+     * @return true if empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Removes every entry, keeping the current capacity.
+     */
+    public void clear() {
+        Arrays.fill(keys, 0L);
+        hasZeroKey = false;
+        size = 0;
+    }
+    
+    /**
+     * Passes every entry to a consumer, in no particular order.
+     *
+     * @param consumer the consumer
+     */
+    public void forEach(EntryConsumer consumer) {
+        if (hasZeroKey) {
+            consumer.accept(0L, zeroValue);
+        }
+        for (int i = 0; i < keys.length; i++) {
+            if (keys[i] != 0) {
+                consumer.accept(keys[i], values[i]);
+            }
+        }
+    }
+    
+    /**
+     * Gets the number of bytes held by the map's arrays.
+     *
+     * @return the approximate footprint in bytes
+     */
+    public long footprintBytes() {
+        return 2 * 16L + 16L * keys.length;
+    }
+    
+    /**
+     * Finds the slot holding a non-zero key, or the empty slot where it belongs.
+     */
+    private int slotOf(long key) {
+        int mask = keys.length - 1;
+        int i = hash(key) & mask;
+        while (keys[i] != 0 && keys[i] != key) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+    
+    private void rehash(int tableLength) {
+        long[] oldKeys = keys;
+        long[] oldValues = values;
+        allocate(tableLength);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != 0) {
+                int slot = slotOf(oldKeys[i]);
+                keys[slot] = oldKeys[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+    
+    private void allocate(int tableLength) {
+        keys = new long[tableLength];
+        values = new long[tableLength];
+    }
+    
+    private static int tableLengthFor(int expectedSize) {
+        return Integer.highestOneBit(Math.max(2, expectedSize + expectedSize / 3) - 1) << 1;
+    }
+    
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
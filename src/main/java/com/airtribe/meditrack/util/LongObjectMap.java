@@ -0,0 +1,329 @@
+package com.airtribe.meditrack.util;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+
+/**
+ * Hash map from primitive long keys to objects, without boxing or entry objects.
+ * <p>
+ * Entries live in two dense parallel arrays (keys and values) in insertion order,
+ * and an open-addressing table of {@code int} positions into those arrays is probed
+ * linearly. An entry therefore costs one long, one reference and a little over one
+ * int of table space, against a node object, a boxed key and a table slot in
+ * {@link java.util.HashMap}. Iteration walks the dense arrays, so it follows
+ * insertion order like {@link java.util.LinkedHashMap}. Removal clears the dense
+ * slot and backward-shifts the probe chain, so no tombstones build up in the table;
+ * cleared dense slots are reclaimed when the arrays are next rebuilt.
+ * <p>
+ * Values may not be null. The map is not thread-safe, and iteration fails fast
+ * with {@code ConcurrentModificationException} if the map changes.
+ *
+ * @param <V> the type of values
+ */
+public class LongObjectMap<V> {
+    
+    private static final int DEFAULT_CAPACITY = 16;
+    
+    private int[] table;
+    private long[] keys;
+    private Object[] values;
+    private int used;
+    private int size;
+    private int modCount;
+    
+    /**
+     * Constructs an empty map.
+     */
+    public LongObjectMap() {
+        this(DEFAULT_CAPACITY);
+    }
+    
+    /**
+     * Constructs an empty map that holds the given number of entries without resizing.
+     *
+     * @param expectedSize the expected number of entries
+     * @throws IllegalArgumentException if the size is negative
+     */
+    public LongObjectMap(int expectedSize) {
+        if (expectedSize < 0) {
+            throw new IllegalArgumentException("expectedSize cannot be negative");
+        }
+        allocate(Math.max(expectedSize, DEFAULT_CAPACITY));
+    }
+    
+    /**
+     * Gets the value stored under a key.
+     *
+     * @param key the key
+     * @return the value, or null if the key is absent
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int slot = slotOf(key);
+        return slot < 0 ? null : (V) values[table[slot] - 1];
+    }
+    
+    /**
+     * Checks whether a key is present.
+     *
+     * @param key the key
+     * @return true if present, false otherwise
+     */
+    public boolean containsKey(long key) {
+        return slotOf(key) >= 0;
+    }
+    
+    /**
+     * Stores a value under a key. Replacing a value keeps the entry's position in
+     * iteration order.
+     *
+     * @param key the key
+     * @param value the value, not null
+     * @return the previous value, or null if the key was absent
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        Objects.requireNonNull(value, "value cannot be null");
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int position = table[i] - 1;
+            if (position < 0) {
+                break;
+            }
+            if (keys[position] == key) {
+                V previous = (V) values[position];
+                values[position] = value;
+                return previous;
+            }
+        }
+        if (used == keys.length) {
+            rebuild(size + 1);
+        }
+        keys[used] = key;
+        values[used] = value;
+        used++;
+        insertPosition(key, used);
+        size++;
+        modCount++;
+        return null;
+    }
+    
+    /**
+     * Removes the entry stored under a key.
+     *
+     * @param key the key
+     * @return the removed value, or null if the key was absent
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int slot = slotOf(key);
+        if (slot < 0) {
+            return null;
+        }
+        int position = table[slot] - 1;
+        V removed = (V) values[position];
+        values[position] = null;
+        if (position == used - 1) {
+            used--;
+        }
+        deleteSlot(slot);
+        size--;
+        modCount++;
+        return removed;
+    }
+    
+    /**
+     * Gets the number of entries.
+     *
+     * @return the number of entries
+     */
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * Checks whether the map is empty.
+     *
+     * @return true if empty, false otherwise
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    /**
+     * Removes every entry and shrinks the map back to its default capacity.
+     */
+    public void clear() {
+        allocate(DEFAULT_CAPACITY);
+        used = 0;
+        size = 0;
+        modCount++;
+    }
+    
+    /**
+     * Gets the keys in insertion order.
+     *
+     * @return a new array of the keys
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int n = 0;
+        for (int i = 0; i < used; i++) {
+            if (values[i] != null) {
+                result[n++] = keys[i];
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Gets a live read-only view of the values in insertion order.
+     *
+     * @return the values
+     */
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new ValueIterator();
+            }
+            
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+    
+    /**
+     * Gets the number of bytes held by the map's arrays, excluding the values
+     * themselves, assuming compressed (4-byte) references.
+     *
+     * @return the approximate footprint in bytes
+     */
+    public long footprintBytes() {
+        return 3 * 16L + 4L * table.length + 8L * keys.length + 4L * values.length;
+    }
+    
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < used; i++) {
+            if (values[i] != null) {
+                if (sb.length() > 1) {
+                    sb.append(", ");
+                }
+                sb.append(keys[i]).append('=').append(values[i]);
+            }
+        }
+        return sb.append('}').toString();
+    }
+    
+    private int slotOf(long key) {
+        int mask = table.length - 1;
+        for (int i = hash(key) & mask; ; i = (i + 1) & mask) {
+            int position = table[i] - 1;
+            if (position < 0) {
+                return -1;
+            }
+            if (keys[position] == key) {
+                return i;
+            }
+        }
+    }
+    
+    private void insertPosition(long key, int positionPlusOne) {
+        int mask = table.length - 1;
+        int i = hash(key) & mask;
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = positionPlusOne;
+    }
+    
+    /**
+     * Empties a table slot and shifts later entries of the probe chain back, so
+     * every remaining entry stays reachable from its home slot.
+     */
+    private void deleteSlot(int slot) {
+        int mask = table.length - 1;
+        int hole = slot;
+        for (int i = (hole + 1) & mask; table[i] != 0; i = (i + 1) & mask) {
+            int home = hash(keys[table[i] - 1]) & mask;
+            boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                table[hole] = table[i];
+                hole = i;
+            }
+        }
+        table[hole] = 0;
+    }
+    
+    /**
+     * Compacts the dense arrays, dropping removed entries, and grows them if more
+     * than half of the capacity would still be in use.
+     */
+    private void rebuild(int needed) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        int oldUsed = used;
+        allocate(needed * 2 > keys.length ? keys.length * 2 : keys.length);
+        used = 0;
+        for (int i = 0; i < oldUsed; i++) {
+            if (oldValues[i] != null) {
+                keys[used] = oldKeys[i];
+                values[used] = oldValues[i];
+                used++;
+                insertPosition(oldKeys[i], used);
+            }
+        }
+        modCount++;
+    }
+    
+    private void allocate(int capacity) {
+        int tableLength = Integer.highestOneBit(Math.max(2, capacity + capacity / 3) - 1) << 1;
+        table = new int[tableLength];
+        keys = new long[capacity];
+        values = new Object[capacity];
+    }
+    
+    private static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+    
+    private final class ValueIterator implements Iterator<V> {
+        private final int expectedModCount = modCount;
+        private int next = advance(0);
+        
+        @Override
+        public boolean hasNext() {
+            return next < used;
+        }
+        
+        @Override
+        @SuppressWarnings("unchecked")
+        public V next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= used) {
+                throw new NoSuchElementException();
+            }
+            V value = (V) values[next];
+            next = advance(next + 1);
+            return value;
+        }
+        
+        private int advance(int from) {
+            while (from < used && values[from] == null) {
+                from++;
+            }
+            return from;
+        }
+    }
+}
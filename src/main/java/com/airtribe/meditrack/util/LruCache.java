@@ -0,0 +1,163 @@
+package com.airtribe.meditrack.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Bounded cache that evicts the least recently used entry once it is full, and
+ * counts hits, misses and evictions so its effectiveness can be reported.
+ * <p>
+ * Removing an entry explicitly, for example because the value behind it changed,
+ * is an invalidation and is not counted as an eviction. The cache is not
+ * thread-safe.
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class LruCache<K, V> {
+    
+    /**
+     * Snapshot of a cache's counters.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final int size;
+        private final int capacity;
+        
+        Stats(long hits, long misses, long evictions, int size, int capacity) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.size = size;
+            this.capacity = capacity;
+        }
+        
+        public long getHits() {
+            return hits;
+        }
+        
+        public long getMisses() {
+            return misses;
+        }
+        
+        public long getEvictions() {
+            return evictions;
+        }
+        
+        public int getSize() {
+            return size;
+        }
+        
+        public int getCapacity() {
+            return capacity;
+        }
+        
+        /**
+         * Gets the share of lookups answered from the cache.
+         *
+         * @return the hit ratio between 0 and 1, or 0 before the first lookup
+         */
+        public double getHitRatio() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0.0 : (double) hits / lookups;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("hits=%d, misses=%d, hitRatio=%.3f, evictions=%d, size=%d/%d",
+                                 hits, misses, getHitRatio(), evictions, size, capacity);
+        }
+    }
+    
+    private final int capacity;
+    private final Map<K, V> entries;
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    /**
+     * Constructs an empty cache.
+     *
+     * @param capacity the most entries it holds; 0 disables caching
+     * @throws IllegalArgumentException if the capacity is negative
+     */
+    public LruCache(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("capacity cannot be negative");
+        }
+        this.capacity = capacity;
+        this.entries = new LinkedHashMap<K, V>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                if (size() > LruCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+    
+    /**
+     * Gets a cached value and marks it as most recently used.
+     *
+     * @param key the key
+     * @return the value, or null on a miss
+     */
+    public V get(K key) {
+        V value = entries.get(key);
+        if (value == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return value;
+    }
+    
+    /**
+     * Caches a value, evicting the least recently used entry if the cache is full.
+     *
+     * @param key the key
+     * @param value the value
+     */
+    public void put(K key, V value) {
+        entries.put(key, Objects.requireNonNull(value, "value cannot be null"));
+    }
+    
+    /**
+     * Invalidates a cached value.
+     *
+     * @param key the key
+     */
+    public void remove(K key) {
+        entries.remove(key);
+    }
+    
+    /**
+     * Invalidates every cached value. The counters are kept.
+     */
+    public void clear() {
+        entries.clear();
+    }
+    
+    /**
+     * Gets the number of cached values.
+     *
+     * @return the number of cached values
+     */
+    public int size() {
+        return entries.size();
+    }
+    
+    /**
+     * Gets the current counters.
+     *
+     * @return a snapshot of the counters
+     */
+    public Stats stats() {
+        return new Stats(hits, misses, evictions, entries.size(), capacity);
+    }
+}
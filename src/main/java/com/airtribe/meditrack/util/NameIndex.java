@@ -0,0 +1,526 @@
+package com.airtribe.meditrack.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Search index over people's names that answers exact, prefix and typo-tolerant
+ * lookups without scanning, returning packed entity keys ranked best first.
+ * <p>
+ * Names are split into words by {@link NameMatcher#words(String)}. Each
+ * distinct word is stored once in a character trie whose children are kept in
+ * alphabetical order, and carries the keys of the people whose name contains it. A
+ * prefix lookup walks the trie to the prefix and then visits its completions
+ * breadth first, so shorter completions rank first. A fuzzy lookup counts, for
+ * each known word, the letter trigrams it shares with the query word, and only
+ * computes the edit distance for words that share enough of them to be within
+ * {@link NameMatcher#maxEdits(int)} edits. Matches rank by edit distance.
+ * <p>
+ * Words are never removed from the trie or the trigram lists; removing a person
+ * only empties their keys from the words' buckets. All methods are synchronized.
+ */
+public class NameIndex {
+    
+    private static final int ROOT = 0;
+    private static final int NONE = -1;
+    private static final int GRAM = 3;
+    private static final long[] NO_KEYS = new long[0];
+    
+    // trie nodes, one slot per node in each array
+    private char[] labels = new char[64];
+    private int[] firstChild = filled(64);
+    private int[] nextSibling = filled(64);
+    private int[] tokenOf = filled(64);
+    private int nodeCount = 1;
+    
+    // distinct words and the keys of the people whose names contain them
+    private String[] tokenText = new String[64];
+    private long[][] tokenKeys = new long[64][];
+    private int[] tokenKeyCount = new int[64];
+    private int tokenCount;
+    
+    private final Map<String, IntList> grams = new HashMap<>();
+    private final LongObjectMap<int[]> tokensByKey = new LongObjectMap<>();
+    private int[] gramHits = new int[64];
+    
+    /**
+     * Indexes a person's name, replacing any name indexed for them before.
+     *
+     * @param key the person's packed key
+     * @param name the name, may be null
+     */
+    public synchronized void put(long key, String name) {
+        remove(key);
+        Set<String> distinct = new LinkedHashSet<>(NameMatcher.words(name));
+        if (distinct.isEmpty()) {
+            return;
+        }
+        int[] tokens = new int[distinct.size()];
+        int i = 0;
+        for (String word : distinct) {
+            int token = intern(word);
+            if (tokenKeys[token] == null) {
+                tokenKeys[token] = new long[2];
+            } else if (tokenKeyCount[token] == tokenKeys[token].length) {
+                tokenKeys[token] = Arrays.copyOf(tokenKeys[token], tokenKeyCount[token] * 2);
+            }
+            tokenKeys[token][tokenKeyCount[token]++] = key;
+            tokens[i++] = token;
+        }
+        tokensByKey.put(key, tokens);
+    }
+    
+    /**
+     * Removes a person's name from the index.
+     *
+     * @param key the person's packed key
+     * @return true if a name was indexed for them, false otherwise
+     */
+    public synchronized boolean remove(long key) {
+        int[] tokens = tokensByKey.remove(key);
+        if (tokens == null) {
+            return false;
+        }
+        for (int token : tokens) {
+            long[] keys = tokenKeys[token];
+            int count = tokenKeyCount[token];
+            for (int i = 0; i < count; i++) {
+                if (keys[i] == key) {
+                    System.arraycopy(keys, i + 1, keys, i, count - i - 1);
+                    tokenKeyCount[token]--;
+                    break;
+                }
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Gets the number of people with an indexed name.
+     *
+     * @return the number of indexed people
+     */
+    public synchronized int size() {
+        return tokensByKey.size();
+    }
+    
+    /**
+     * Finds the people whose name contains every word of the given name, in the
+     * order they were indexed. The caller decides whether word order matters.
+     *
+     * @param name the name
+     * @return the matching keys
+     */
+    public synchronized long[] withWords(String name) {
+        int[] tokens = exactTokens(NameMatcher.words(name));
+        if (tokens == null || tokens.length == 0) {
+            return NO_KEYS;
+        }
+        int rarest = tokens[0];
+        for (int token : tokens) {
+            if (tokenKeyCount[token] < tokenKeyCount[rarest]) {
+                rarest = token;
+            }
+        }
+        KeyList result = new KeyList(Integer.MAX_VALUE);
+        for (int i = 0; i < tokenKeyCount[rarest]; i++) {
+            long key = tokenKeys[rarest][i];
+            if (containsAll(tokensByKey.get(key), tokens)) {
+                result.add(key);
+            }
+        }
+        return result.toArray();
+    }
+    
+    /**
+     * Finds the people whose name has a word starting with the last word of the
+     * query and contains its other words exactly. A name ranks higher the shorter
+     * its completion of the last word is.
+     *
+     * @param query the typed part of a name, such as "Shar" or "Anita Sha"
+     * @param limit the most keys to return
+     * @return the matching keys, best first
+     */
+    public synchronized long[] prefix(String query, int limit) {
+        List<String> words = NameMatcher.words(query);
+        if (words.isEmpty() || limit <= 0) {
+            return NO_KEYS;
+        }
+        String last = words.remove(words.size() - 1);
+        int[] required = exactTokens(words);
+        int node = find(last);
+        if (required == null || node == NONE) {
+            return NO_KEYS;
+        }
+        KeyList result = new KeyList(limit);
+        int[] queue = new int[16];
+        int head = 0;
+        int tail = 0;
+        queue[tail++] = node;
+        while (head < tail && !result.full()) {
+            int current = queue[head++];
+            int token = tokenOf[current];
+            if (token != NONE) {
+                for (int i = 0; i < tokenKeyCount[token] && !result.full(); i++) {
+                    long key = tokenKeys[token][i];
+                    if (containsAll(tokensByKey.get(key), required)) {
+                        result.add(key);
+                    }
+                }
+            }
+            for (int child = firstChild[current]; child != NONE; child = nextSibling[child]) {
+                if (tail == queue.length) {
+                    queue = Arrays.copyOf(queue, queue.length * 2);
+                }
+                queue[tail++] = child;
+            }
+        }
+        return result.toArray();
+    }
+    
+    /**
+     * Finds the people whose name has, for every word of the query, a word within
+     * {@link NameMatcher#maxEdits(int)} typing mistakes of it. Names rank by the
+     * total number of mistakes.
+     *
+     * @param query the name as typed, such as "Sarma"
+     * @param limit the most keys to return
+     * @return the matching keys, best first
+     */
+    public synchronized long[] fuzzy(String query, int limit) {
+        List<String> words = NameMatcher.words(query);
+        if (words.isEmpty() || limit <= 0) {
+            return NO_KEYS;
+        }
+        List<Map<Integer, Integer>> matches = new ArrayList<>(words.size());
+        int driver = 0;
+        long driverKeys = Long.MAX_VALUE;
+        for (int w = 0; w < words.size(); w++) {
+            Map<Integer, Integer> distances = similarTokens(words.get(w));
+            if (distances.isEmpty()) {
+                return NO_KEYS;
+            }
+            long keys = 0;
+            for (int token : distances.keySet()) {
+                keys += tokenKeyCount[token];
+            }
+            if (keys < driverKeys) {
+                driver = w;
+                driverKeys = keys;
+            }
+            matches.add(distances);
+        }
+        List<Map.Entry<Integer, Integer>> driverTokens = new ArrayList<>(matches.get(driver).entrySet());
+        driverTokens.sort(Map.Entry.<Integer, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+        // a key scores at least its driver token's distance plus the other words' best
+        // distances, so once enough keys score no more than that, the rest cannot
+        // outrank them
+        int floor = 0;
+        for (int w = 0; w < matches.size(); w++) {
+            if (w != driver) {
+                floor += matches.get(w).values().stream().mapToInt(Integer::intValue).min().getAsInt();
+            }
+        }
+        int[] atScore = new int[2 * words.size() + 1];
+        List<long[]> scored = new ArrayList<>();
+        LongLongMap seen = new LongLongMap();
+        visit:
+        for (int t = 0; t < driverTokens.size(); t++) {
+            int token = driverTokens.get(t).getKey();
+            int level = driverTokens.get(t).getValue();
+            for (int i = 0; i < tokenKeyCount[token]; i++) {
+                long key = tokenKeys[token][i];
+                if (seen.put(key, 1L) != 0L) {
+                    continue;
+                }
+                long score = score(tokensByKey.get(key), matches);
+                if (score >= 0) {
+                    scored.add(new long[] {key, score, scored.size()});
+                    atScore[(int) score]++;
+                    if (settled(atScore, level + floor) >= limit) {
+                        break visit;
+                    }
+                }
+            }
+            int next = t + 1 < driverTokens.size() ? driverTokens.get(t + 1).getValue() : atScore.length;
+            if (settled(atScore, next + floor) >= limit) {
+                break;
+            }
+        }
+        scored.sort(Comparator.<long[]>comparingLong(entry -> entry[1]).thenComparingLong(entry -> entry[2]));
+        KeyList result = new KeyList(limit);
+        for (int i = 0; i < scored.size() && !result.full(); i++) {
+            result.add(scored.get(i)[0]);
+        }
+        return result.toArray();
+    }
+    
+    /**
+     * Finds people by a name as typed at the front desk: prefix matches first, then
+     * fuzzy matches that are not prefix matches.
+     *
+     * @param query the typed name
+     * @param limit the most keys to return
+     * @return the matching keys, best first
+     */
+    public synchronized long[] search(String query, int limit) {
+        long[] prefixed = prefix(query, limit);
+        if (prefixed.length >= limit) {
+            return prefixed;
+        }
+        KeyList result = new KeyList(limit);
+        for (long key : prefixed) {
+            result.add(key);
+        }
+        for (long key : fuzzy(query, limit)) {
+            if (result.full()) {
+                break;
+            }
+            result.add(key);
+        }
+        return result.toArray();
+    }
+    
+    private static int settled(int[] atScore, int bound) {
+        int count = 0;
+        for (int score = 0; score <= bound && score < atScore.length; score++) {
+            count += atScore[score];
+        }
+        return count;
+    }
+    
+    /**
+     * Sums a person's best distance to each query word, or returns -1 if some query
+     * word matches none of their words.
+     */
+    private static long score(int[] tokens, List<Map<Integer, Integer>> matches) {
+        long score = 0;
+        for (Map<Integer, Integer> distances : matches) {
+            int bestDistance = Integer.MAX_VALUE;
+            for (int token : tokens) {
+                Integer distance = distances.get(token);
+                if (distance != null && distance < bestDistance) {
+                    bestDistance = distance;
+                }
+            }
+            if (bestDistance == Integer.MAX_VALUE) {
+                return -1;
+            }
+            score += bestDistance;
+        }
+        return score;
+    }
+    
+    /**
+     * Finds the known words within the tolerated edit distance of a query word,
+     * using shared trigrams to skip words that cannot be close enough.
+     */
+    private Map<Integer, Integer> similarTokens(String word) {
+        Map<Integer, Integer> distances = new HashMap<>();
+        int max = NameMatcher.maxEdits(word.length());
+        if (max == 0) {
+            int node = find(word);
+            if (node != NONE && tokenOf[node] != NONE) {
+                distances.put(tokenOf[node], 0);
+            }
+            return distances;
+        }
+        // an edit changes at most GRAM trigrams, and a swap of two letters GRAM + 1
+        Set<String> queryGrams = gramsOf(word);
+        int threshold = Math.max(1, queryGrams.size() - (GRAM + 1) * max);
+        if (gramHits.length < tokenCount) {
+            gramHits = new int[tokenText.length];
+        }
+        IntList touched = new IntList();
+        for (String gram : queryGrams) {
+            IntList tokens = grams.get(gram);
+            if (tokens == null) {
+                continue;
+            }
+            for (int i = 0; i < tokens.size; i++) {
+                int token = tokens.values[i];
+                if (gramHits[token]++ == 0) {
+                    touched.add(token);
+                }
+            }
+        }
+        for (int i = 0; i < touched.size; i++) {
+            int token = touched.values[i];
+            if (gramHits[token] >= threshold) {
+                int distance = NameMatcher.editDistance(word, tokenText[token], max);
+                if (distance <= max) {
+                    distances.put(token, distance);
+                }
+            }
+            gramHits[token] = 0;
+        }
+        return distances;
+    }
+    
+    private static Set<String> gramsOf(String word) {
+        String padded = "$" + word + "$";
+        Set<String> result = new LinkedHashSet<>();
+        for (int i = 0; i + GRAM <= padded.length(); i++) {
+            result.add(padded.substring(i, i + GRAM));
+        }
+        return result;
+    }
+    
+    /**
+     * Gets the token of each word, or null if a word is not in the index.
+     */
+    private int[] exactTokens(List<String> words) {
+        int[] tokens = new int[words.size()];
+        for (int i = 0; i < tokens.length; i++) {
+            int node = find(words.get(i));
+            if (node == NONE || tokenOf[node] == NONE) {
+                return null;
+            }
+            tokens[i] = tokenOf[node];
+        }
+        return tokens;
+    }
+    
+    private static boolean containsAll(int[] tokens, int[] required) {
+        for (int token : required) {
+            boolean found = false;
+            for (int own : tokens) {
+                if (own == token) {
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private int find(String word) {
+        int node = ROOT;
+        for (int i = 0; i < word.length() && node != NONE; i++) {
+            node = child(node, word.charAt(i), false);
+        }
+        return node;
+    }
+    
+    private int intern(String word) {
+        int node = ROOT;
+        for (int i = 0; i < word.length(); i++) {
+            node = child(node, word.charAt(i), true);
+        }
+        if (tokenOf[node] == NONE) {
+            if (tokenCount == tokenText.length) {
+                int length = tokenCount * 2;
+                tokenText = Arrays.copyOf(tokenText, length);
+                tokenKeys = Arrays.copyOf(tokenKeys, length);
+                tokenKeyCount = Arrays.copyOf(tokenKeyCount, length);
+            }
+            int token = tokenCount++;
+            tokenText[token] = word;
+            tokenOf[node] = token;
+            for (String gram : gramsOf(word)) {
+                grams.computeIfAbsent(gram, g -> new IntList()).add(token);
+            }
+        }
+        return tokenOf[node];
+    }
+    
+    /**
+     * Finds the child of a node with the given label, keeping siblings in label
+     * order when a child is created.
+     */
+    private int child(int node, char label, boolean create) {
+        int previous = NONE;
+        int child = firstChild[node];
+        while (child != NONE && labels[child] < label) {
+            previous = child;
+            child = nextSibling[child];
+        }
+        if (child != NONE && labels[child] == label) {
+            return child;
+        }
+        if (!create) {
+            return NONE;
+        }
+        if (nodeCount == labels.length) {
+            int length = nodeCount * 2;
+            labels = Arrays.copyOf(labels, length);
+            firstChild = grow(firstChild, length);
+            nextSibling = grow(nextSibling, length);
+            tokenOf = grow(tokenOf, length);
+        }
+        int created = nodeCount++;
+        labels[created] = label;
+        nextSibling[created] = child;
+        if (previous == NONE) {
+            firstChild[node] = created;
+        } else {
+            nextSibling[previous] = created;
+        }
+        return created;
+    }
+    
+    private static int[] filled(int length) {
+        int[] array = new int[length];
+        Arrays.fill(array, NONE);
+        return array;
+    }
+    
+    private static int[] grow(int[] array, int length) {
+        int[] grown = Arrays.copyOf(array, length);
+        Arrays.fill(grown, array.length, length, NONE);
+        return grown;
+    }
+    
+    private static final class IntList {
+        private int[] values = new int[4];
+        private int size;
+        
+        void add(int value) {
+            if (size == values.length) {
+                values = Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+    }
+    
+    /**
+     * Result keys without duplicates, up to a limit.
+     */
+    private static final class KeyList {
+        private final int limit;
+        private final LongLongMap seen = new LongLongMap();
+        private long[] keys = new long[8];
+        private int size;
+        
+        KeyList(int limit) {
+            this.limit = limit;
+        }
+        
+        void add(long key) {
+            if (full() || seen.put(key, 1L) != 0L) {
+                return;
+            }
+            if (size == keys.length) {
+                keys = Arrays.copyOf(keys, size * 2);
+            }
+            keys[size++] = key;
+        }
+        
+        boolean full() {
+            return size >= limit;
+        }
+        
+        long[] toArray() {
+            return Arrays.copyOf(keys, size);
+        }
+    }
+}
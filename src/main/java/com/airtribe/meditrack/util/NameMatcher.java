@@ -0,0 +1,143 @@
+package com.airtribe.meditrack.util;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares people's names the way the front desk types them: by word, ignoring
+ * case and accents, and tolerating a few typing mistakes per word. {@link NameIndex}
+ * uses the same rules to answer these questions without comparing every name.
+ */
+public final class NameMatcher {
+    
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    
+    private NameMatcher() {
+    }
+    
+    /**
+     * Splits a name into lower-case words without accents.
+     *
+     * @param name the name, may be null
+     * @return the words in order
+     */
+    public static List<String> words(String name) {
+        List<String> words = new ArrayList<>();
+        if (name != null) {
+            String plain = MARKS.matcher(Normalizer.normalize(name, Normalizer.Form.NFD)).replaceAll("");
+            Matcher matcher = WORD.matcher(plain);
+            while (matcher.find()) {
+                words.add(matcher.group().toLowerCase(Locale.ROOT));
+            }
+        }
+        return words;
+    }
+    
+    /**
+     * Normalizes a name to its words separated by single spaces.
+     *
+     * @param name the name, may be null
+     * @return the normalized name, empty if it has no words
+     */
+    public static String normalize(String name) {
+        return String.join(" ", words(name));
+    }
+    
+    /**
+     * Gets the number of typing mistakes tolerated in a word of the given length:
+     * none up to three letters, one up to six and two beyond.
+     *
+     * @param length the word length
+     * @return the tolerated edit distance
+     */
+    public static int maxEdits(int length) {
+        return length <= 3 ? 0 : length <= 6 ? 1 : 2;
+    }
+    
+    /**
+     * Computes the number of insertions, deletions, substitutions and swaps of
+     * adjacent letters that turn one word into the other, giving up once the count
+     * exceeds a limit.
+     *
+     * @param a the first word
+     * @param b the second word
+     * @param max the largest distance of interest
+     * @return the distance, or max + 1 if it is larger than max
+     */
+    public static int editDistance(String a, String b, int max) {
+        if (Math.abs(a.length() - b.length()) > max) {
+            return max + 1;
+        }
+        int[] before = new int[b.length() + 1];
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        int previousMin = 0;
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            int rowMin = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+                int distance = Math.min(Math.min(previous[j] + 1, current[j - 1] + 1), previous[j - 1] + cost);
+                if (i > 1 && j > 1 && a.charAt(i - 1) == b.charAt(j - 2) && a.charAt(i - 2) == b.charAt(j - 1)) {
+                    distance = Math.min(distance, before[j - 2] + 1);
+                }
+                current[j] = distance;
+                rowMin = Math.min(rowMin, distance);
+            }
+            // a swap reaches back two rows, so both must be out of range
+            if (rowMin > max && previousMin > max) {
+                return max + 1;
+            }
+            previousMin = rowMin;
+            int[] recycled = before;
+            before = previous;
+            previous = current;
+            current = recycled;
+        }
+        return Math.min(previous[b.length()], max + 1);
+    }
+    
+    /**
+     * Checks whether a word of a name starts with a prefix, so "Shar" matches
+     * "Anita Sharma".
+     *
+     * @param name the name, may be null
+     * @param prefix the typed start of a name
+     * @return true if a word of the name starts with the prefix, false otherwise
+     */
+    public static boolean matchesPrefix(String name, String prefix) {
+        String query = normalize(prefix);
+        return !query.isEmpty() && (" " + normalize(name)).contains(" " + query);
+    }
+    
+    /**
+     * Checks whether every word of a query is within {@link #maxEdits(int)} edits of
+     * some word of a name.
+     *
+     * @param name the name, may be null
+     * @param query the name as typed
+     * @return true if the name matches despite the mistakes, false otherwise
+     */
+    public static boolean matchesFuzzy(String name, String query) {
+        List<String> wanted = words(query);
+        List<String> own = words(name);
+        if (wanted.isEmpty()) {
+            return false;
+        }
+        for (String word : wanted) {
+            int max = maxEdits(word.length());
+            if (own.stream().noneMatch(candidate -> editDistance(word, candidate, max) <= max)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
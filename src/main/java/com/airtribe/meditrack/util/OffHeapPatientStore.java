@@ -0,0 +1,764 @@
+package com.airtribe.meditrack.util;
+
+import com.airtribe.meditrack.constants.Constants;
+import com.airtribe.meditrack.entity.Patient;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Patient store that keeps patient records outside the Java heap, in memory-mapped
+ * files, so heap usage stays flat as the number of patients grows.
+ * <p>
+ * Each patient has a fixed-width record in a header file holding its packed key,
+ * age, a live flag and the offset and lengths of its text fields. The name, email,
+ * phone number, medical history and ID are written as UTF-8 to a separate heap file.
+ * Both files are mapped in fixed-size segments, and a new segment is mapped as a
+ * file fills up. An update rewrites the text in place when it fits and otherwise
+ * appends it and repoints the header record, leaving the old text as garbage.
+ * Removed records are flagged and skipped. Once garbage outweighs live text the
+ * store compacts both files, sliding live records down in order and returning
+ * whole segments to the file system; {@link #compact} does the same on demand.
+ * <p>
+ * On the Java heap the store keeps only a map from packed key to record number,
+ * the secondary indexes (which hold keys, not patients) and an {@link LruCache} of
+ * the most recently used patients, so rarely seen patients live only in the files.
+ * Lookups fault patients in from the files on a cache miss.
+ * A returned patient is the store's copy: changes reach the files only through
+ * {@link #update} or {@link #add}. Iteration decodes each record without caching it
+ * and follows insertion order.
+ * <p>
+ * Creating a store over existing files reopens them: the live records are read
+ * back and the patients are available again, as they were when the store was
+ * closed. Mapped pages are forced to disk only on {@link #close}, and a rewrite in
+ * place is not atomic, so after a crash the files may be torn; durability still
+ * comes from the journal and snapshots as for any other store. The store is not
+ * thread-safe.
+ */
+public class OffHeapPatientStore extends EntityStore<Patient> implements Closeable {
+    
+    /** The file holding one fixed-width record per patient. */
+    public static final String HEADER_FILE = "patients.hdr";
+    /** The file holding the patients' text fields. */
+    public static final String HEAP_FILE = "patients.heap";
+    
+    private static final int RECORD_BYTES = 64;
+    private static final int HEADER_SEGMENT_BITS = 22;
+    private static final int HEAP_SEGMENT_BITS = 24;
+    private static final int FIELDS = 5;
+    private static final int ID_FIELD = 4;
+    private static final long COMPACTION_MIN_GARBAGE = 1L << 20;
+    
+    // record layout
+    private static final int KEY = 0;
+    private static final int LIVE = 8;
+    private static final int AGE = 12;
+    private static final int TEXT_OFFSET = 16;
+    private static final int TEXT_LENGTHS = 24;
+    
+    private final MappedFile header;
+    private final MappedFile heap;
+    private final LongLongMap records = new LongLongMap(0, -1L);
+    private final LruCache<Long, Patient> cache;
+    private final Map<String, KeyBuckets> indexes = new LinkedHashMap<>();
+    private int recordCount;
+    private long heapEnd;
+    private long liveBytes;
+    private int modCount;
+    
+    /**
+     * Creates a store in the given directory with the default cache size, reopening
+     * any patients already in its files.
+     *
+     * @param directory the directory for the mapped files, created if needed
+     * @throws IOException if the files cannot be created
+     */
+    public OffHeapPatientStore(Path directory) throws IOException {
+        this(directory, Constants.PATIENT_CACHE_SIZE);
+    }
+    
+    /**
+     * Creates a store in the given directory, reopening any patients already in its files.
+     *
+     * @param directory the directory for the mapped files, created if needed
+     * @param cacheSize the number of decoded patients kept on the heap
+     * @throws IOException if the files cannot be created
+     * @throws IllegalArgumentException if the cache size is negative
+     */
+    public OffHeapPatientStore(Path directory, int cacheSize) throws IOException {
+        super(Patient::getId);
+        this.cache = new LruCache<>(cacheSize);
+        Files.createDirectories(directory);
+        this.header = new MappedFile(directory.resolve(HEADER_FILE), HEADER_SEGMENT_BITS);
+        this.heap = new MappedFile(directory.resolve(HEAP_FILE), HEAP_SEGMENT_BITS);
+        recover();
+    }
+    
+    @Override
+    public void add(Patient patient) {
+        if (patient == null) {
+            return;
+        }
+        long key = keyOf(patient);
+        int record = (int) records.get(key);
+        boolean rewrite = record >= 0;
+        if (rewrite) {
+            unindex(key, decode(record));
+        } else {
+            record = recordCount++;
+            records.put(key, record);
+        }
+        write(record, key, patient, rewrite);
+        index(key, patient);
+        cache.remove(key);
+        modCount++;
+        compactIfWasteful();
+    }
+    
+    @Override
+    public boolean remove(Patient patient) {
+        return patient != null && removeByKey(EntityKey.find(patient.getId()));
+    }
+    
+    @Override
+    public Optional<Patient> findByKey(long key) {
+        return Optional.ofNullable(load(key));
+    }
+    
+    @Override
+    public boolean containsKey(long key) {
+        return key != EntityKey.NONE && records.containsKey(key);
+    }
+    
+    @Override
+    public boolean removeByKey(long key) {
+        int record = key == EntityKey.NONE ? -1 : (int) records.remove(key);
+        if (record < 0) {
+            return false;
+        }
+        unindex(key, decode(record));
+        header.putInt(recordPosition(record) + LIVE, 0);
+        liveBytes -= textBytes(recordPosition(record));
+        cache.remove(key);
+        modCount++;
+        compactIfWasteful();
+        return true;
+    }
+    
+    @Override
+    public boolean contains(Patient patient) {
+        return patient != null && containsKey(EntityKey.find(patient.getId()));
+    }
+    
+    /**
+     * Applies a mutation to a patient and writes the result to the files. The patient
+     * may be the cached copy or any other copy carrying the stored patient's ID.
+     */
+    @Override
+    public boolean update(Patient patient, Consumer<? super Patient> mutation) {
+        Objects.requireNonNull(patient, "patient cannot be null");
+        long key = EntityKey.find(patient.getId());
+        int record = key == EntityKey.NONE ? -1 : (int) records.get(key);
+        if (record < 0) {
+            mutation.accept(patient);
+            return false;
+        }
+        Patient stored = decode(record);
+        try {
+            mutation.accept(patient);
+        } catch (RuntimeException e) {
+            // the copy may be half changed; make the next read decode the stored record
+            cache.remove(key);
+            throw e;
+        }
+        unindex(key, stored);
+        write(record, key, patient, true);
+        index(key, patient);
+        cache.remove(key);
+        compactIfWasteful();
+        return true;
+    }
+    
+    @Override
+    public void addIndex(String name, Function<? super Patient, ?> indexKeyExtractor) {
+        Objects.requireNonNull(name, "name cannot be null");
+        if (indexes.containsKey(name)) {
+            throw new IllegalArgumentException("Index already exists: " + name);
+        }
+        KeyBuckets index = new KeyBuckets(indexKeyExtractor);
+        forEachRecord((record, key) -> index.add(key, decode(record)));
+        indexes.put(name, index);
+    }
+    
+    @Override
+    public List<Patient> findByIndex(String name, Object value) {
+        List<Patient> result = new ArrayList<>();
+        LongLongMap bucket = indexNamed(name).bucket(value);
+        if (bucket != null) {
+            bucket.forEach((key, unused) -> result.add(load(key)));
+        }
+        return result;
+    }
+    
+    @Override
+    public int countByIndex(String name, Object value) {
+        LongLongMap bucket = indexNamed(name).bucket(value);
+        return bucket == null ? 0 : bucket.size();
+    }
+    
+    @Override
+    public List<Patient> getAll() {
+        List<Patient> result = new ArrayList<>(records.size());
+        forEachRecord((record, key) -> result.add(decode(record)));
+        return result;
+    }
+    
+    @Override
+    public Collection<Patient> view() {
+        return new AbstractCollection<Patient>() {
+            @Override
+            public Iterator<Patient> iterator() {
+                return new RecordIterator();
+            }
+            
+            @Override
+            public int size() {
+                return records.size();
+            }
+        };
+    }
+    
+    @Override
+    public Stream<Patient> stream() {
+        return view().stream();
+    }
+    
+    @Override
+    public int size() {
+        return records.size();
+    }
+    
+    @Override
+    public boolean isEmpty() {
+        return records.isEmpty();
+    }
+    
+    /**
+     * Removes every patient and returns the mapped space to the file system.
+     */
+    @Override
+    public void clear() {
+        records.clear();
+        cache.clear();
+        for (KeyBuckets index : indexes.values()) {
+            index.clear();
+        }
+        for (int record = 0; record < recordCount; record++) {
+            header.putLong(recordPosition(record) + KEY, EntityKey.NONE);
+        }
+        recordCount = 0;
+        heapEnd = 0;
+        liveBytes = 0;
+        header.shrink(0);
+        heap.shrink(0);
+        modCount++;
+    }
+    
+    @Override
+    public Patient get(int index) {
+        if (index < 0 || index >= records.size()) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + records.size());
+        }
+        Iterator<Patient> it = view().iterator();
+        for (int i = 0; i < index; i++) {
+            it.next();
+        }
+        return it.next();
+    }
+    
+    /**
+     * Compacts the files: live header records slide down over removed ones and live
+     * text slides down over garbage, both keeping their order, and the segments past
+     * the new ends are unmapped and truncated away. Runs automatically once garbage
+     * outweighs live text.
+     */
+    public void compact() {
+        int kept = 0;
+        byte[] buffer = new byte[RECORD_BYTES];
+        for (int record = 0; record < recordCount; record++) {
+            long position = recordPosition(record);
+            if (header.getInt(position + LIVE) == 0) {
+                continue;
+            }
+            if (record != kept) {
+                header.get(position, buffer);
+                header.put(recordPosition(kept), buffer);
+                records.put(header.getLong(position + KEY), kept);
+            }
+            kept++;
+        }
+        for (int record = kept; record < recordCount; record++) {
+            header.putLong(recordPosition(record) + KEY, EntityKey.NONE);
+            header.putInt(recordPosition(record) + LIVE, 0);
+        }
+        recordCount = kept;
+        
+        // text moves only towards the start of the file, so copying in offset order never overwrites live text
+        Integer[] byOffset = new Integer[recordCount];
+        for (int record = 0; record < recordCount; record++) {
+            byOffset[record] = record;
+        }
+        Arrays.sort(byOffset, Comparator.comparingLong(record -> header.getLong(recordPosition(record) + TEXT_OFFSET)));
+        long end = 0;
+        for (int record : byOffset) {
+            long position = recordPosition(record);
+            long offset = header.getLong(position + TEXT_OFFSET);
+            int length = textBytes(position);
+            if (offset != end) {
+                byte[] text = new byte[length];
+                heap.get(offset, text);
+                heap.put(end, text);
+                header.putLong(position + TEXT_OFFSET, end);
+            }
+            end += length;
+        }
+        heapEnd = end;
+        liveBytes = end;
+        header.shrink(recordPosition(recordCount));
+        heap.shrink(heapEnd);
+        modCount++;
+    }
+    
+    /**
+     * Gets the number of bytes written to the mapped files, including text left
+     * behind by updates that has not been compacted away yet.
+     *
+     * @return the bytes used outside the Java heap
+     */
+    public long getOffHeapBytes() {
+        return (long) recordCount * RECORD_BYTES + heapEnd;
+    }
+    
+    /**
+     * Gets the number of decoded patients currently cached on the heap.
+     *
+     * @return the cache size
+     */
+    public int getCachedCount() {
+        return cache.size();
+    }
+    
+    /**
+     * Gets the hit, miss and eviction counts of the hot cache in front of the files.
+     *
+     * @return a snapshot of the cache counters
+     */
+    public LruCache.Stats getCacheStats() {
+        return cache.stats();
+    }
+    
+    /**
+     * Forces the mapped segments to disk, unmaps them and closes the files. The store
+     * cannot be used afterwards.
+     *
+     * @throws IOException if a file cannot be closed
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            header.close();
+        } finally {
+            heap.close();
+        }
+    }
+    
+    private Patient load(long key) {
+        if (key == EntityKey.NONE) {
+            return null;
+        }
+        Patient patient = cache.get(key);
+        if (patient == null) {
+            int record = (int) records.get(key);
+            if (record < 0) {
+                return null;
+            }
+            patient = decode(record);
+            cache.put(key, patient);
+        }
+        return patient;
+    }
+    
+    /**
+     * Writes a patient to a record. A rewrite reuses the record's text space when
+     * the new text fits in it.
+     */
+    private void write(int record, long key, Patient patient, boolean rewrite) {
+        byte[][] fields = {
+            utf8(patient.getName()), utf8(patient.getEmail()),
+            utf8(patient.getPhoneNumber()), utf8(patient.getMedicalHistory()), utf8(patient.getId())
+        };
+        int length = 0;
+        for (byte[] field : fields) {
+            length += field == null ? 0 : field.length;
+        }
+        long position = recordPosition(record);
+        int oldLength = rewrite ? textBytes(position) : 0;
+        long offset;
+        if (rewrite && length <= oldLength) {
+            offset = header.getLong(position + TEXT_OFFSET);
+        } else {
+            offset = heapEnd;
+            heapEnd += length;
+        }
+        liveBytes += length - oldLength;
+        header.putLong(position + KEY, key);
+        header.putInt(position + AGE, patient.getAge());
+        header.putLong(position + TEXT_OFFSET, offset);
+        for (int i = 0; i < FIELDS; i++) {
+            header.putInt(position + TEXT_LENGTHS + 4L * i, fields[i] == null ? -1 : fields[i].length);
+            if (fields[i] != null) {
+                heap.put(offset, fields[i]);
+                offset += fields[i].length;
+            }
+        }
+        header.putInt(position + LIVE, 1);
+    }
+    
+    private Patient decode(int record) {
+        long position = recordPosition(record);
+        long offset = header.getLong(position + TEXT_OFFSET);
+        String[] fields = new String[FIELDS];
+        for (int i = 0; i < FIELDS; i++) {
+            int length = header.getInt(position + TEXT_LENGTHS + 4L * i);
+            if (length >= 0) {
+                byte[] bytes = new byte[length];
+                heap.get(offset, bytes);
+                offset += length;
+                fields[i] = new String(bytes, StandardCharsets.UTF_8);
+            }
+        }
+        return new Patient(fields[ID_FIELD], fields[0], fields[1], fields[2], header.getInt(position + AGE), fields[3]);
+    }
+    
+    private int textBytes(long position) {
+        int total = 0;
+        for (int i = 0; i < FIELDS; i++) {
+            total += Math.max(0, header.getInt(position + TEXT_LENGTHS + 4L * i));
+        }
+        return total;
+    }
+    
+    /**
+     * Reads back the records of files left by an earlier store. Records are written
+     * densely, so the first empty key marks the end. Keys are recomputed from the
+     * stored IDs because interned keys do not outlive the process that made them.
+     */
+    private void recover() {
+        long size = header.size();
+        for (int record = 0; recordPosition(record + 1) <= size; record++) {
+            long position = recordPosition(record);
+            if (header.getLong(position + KEY) == EntityKey.NONE) {
+                break;
+            }
+            recordCount = record + 1;
+            if (header.getInt(position + LIVE) == 0) {
+                continue;
+            }
+            long key = EntityKey.of(decode(record).getId());
+            header.putLong(position + KEY, key);
+            records.put(key, record);
+            int length = textBytes(position);
+            heapEnd = Math.max(heapEnd, header.getLong(position + TEXT_OFFSET) + length);
+            liveBytes += length;
+        }
+    }
+    
+    private void compactIfWasteful() {
+        long garbage = heapEnd - liveBytes;
+        if (garbage >= COMPACTION_MIN_GARBAGE && garbage > liveBytes) {
+            compact();
+        }
+    }
+    
+    private void forEachRecord(RecordVisitor visitor) {
+        for (int record = 0; record < recordCount; record++) {
+            long position = recordPosition(record);
+            if (header.getInt(position + LIVE) != 0) {
+                visitor.visit(record, header.getLong(position + KEY));
+            }
+        }
+    }
+    
+    private void index(long key, Patient patient) {
+        for (KeyBuckets index : indexes.values()) {
+            index.add(key, patient);
+        }
+    }
+    
+    private void unindex(long key, Patient patient) {
+        for (KeyBuckets index : indexes.values()) {
+            index.remove(key, patient);
+        }
+    }
+    
+    private KeyBuckets indexNamed(String name) {
+        KeyBuckets index = indexes.get(name);
+        if (index == null) {
+            throw new IllegalArgumentException("Unknown index: " + name);
+        }
+        return index;
+    }
+    
+    private static long recordPosition(int record) {
+        return (long) record * RECORD_BYTES;
+    }
+    
+    private static byte[] utf8(String value) {
+        return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+    }
+    
+    @FunctionalInterface
+    private interface RecordVisitor {
+        void visit(int record, long key);
+    }
+    
+    /**
+     * Non-unique secondary index holding the packed keys of the patients in each bucket.
+     */
+    private static final class KeyBuckets {
+        private final Function<? super Patient, ?> keyExtractor;
+        private final Map<Object, LongLongMap> buckets = new HashMap<>();
+        
+        KeyBuckets(Function<? super Patient, ?> keyExtractor) {
+            this.keyExtractor = Objects.requireNonNull(keyExtractor, "indexKeyExtractor cannot be null");
+        }
+        
+        void add(long key, Patient patient) {
+            Object indexKey = normalize(keyExtractor.apply(patient));
+            if (indexKey != null) {
+                buckets.computeIfAbsent(indexKey, k -> new LongLongMap()).put(key, 1L);
+            }
+        }
+        
+        void remove(long key, Patient patient) {
+            Object indexKey = normalize(keyExtractor.apply(patient));
+            LongLongMap bucket = indexKey == null ? null : buckets.get(indexKey);
+            if (bucket != null) {
+                bucket.remove(key);
+                if (bucket.isEmpty()) {
+                    buckets.remove(indexKey);
+                }
+            }
+        }
+        
+        LongLongMap bucket(Object value) {
+            Object indexKey = normalize(value);
+            return indexKey == null ? null : buckets.get(indexKey);
+        }
+        
+        void clear() {
+            buckets.clear();
+        }
+        
+        private static Object normalize(Object key) {
+            return key instanceof String ? normalizeKey((String) key) : key;
+        }
+    }
+    
+    private final class RecordIterator implements Iterator<Patient> {
+        private final int expectedModCount = modCount;
+        private int next = advance(0);
+        
+        @Override
+        public boolean hasNext() {
+            return next < recordCount;
+        }
+        
+        @Override
+        public Patient next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (next >= recordCount) {
+                throw new NoSuchElementException();
+            }
+            Patient patient = decode(next);
+            next = advance(next + 1);
+            return patient;
+        }
+        
+        private int advance(int from) {
+            while (from < recordCount && header.getInt(recordPosition(from) + LIVE) == 0) {
+                from++;
+            }
+            return from;
+        }
+    }
+    
+    /**
+     * A file mapped in segments of a fixed power-of-two size. Primitive values never
+     * straddle a segment because records are aligned to their size; byte arrays may
+     * and are copied piecewise.
+     */
+    private static final class MappedFile implements Closeable {
+        private static final Object UNSAFE;
+        private static final Method INVOKE_CLEANER;
+        
+        static {
+            Object unsafe = null;
+            Method invokeCleaner = null;
+            try {
+                Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+                Field field = unsafeClass.getDeclaredField("theUnsafe");
+                field.setAccessible(true);
+                unsafe = field.get(null);
+                invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                // mappings are then released by the garbage collector
+            }
+            UNSAFE = unsafe;
+            INVOKE_CLEANER = invokeCleaner;
+        }
+        
+        private final FileChannel channel;
+        private final int segmentBits;
+        private final long segmentMask;
+        private final List<MappedByteBuffer> segments = new ArrayList<>();
+        
+        MappedFile(Path path, int segmentBits) throws IOException {
+            this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                                            StandardOpenOption.WRITE);
+            this.segmentBits = segmentBits;
+            this.segmentMask = (1L << segmentBits) - 1;
+        }
+        
+        long getLong(long position) {
+            return segment(position).getLong((int) (position & segmentMask));
+        }
+        
+        void putLong(long position, long value) {
+            segment(position).putLong((int) (position & segmentMask), value);
+        }
+        
+        int getInt(long position) {
+            return segment(position).getInt((int) (position & segmentMask));
+        }
+        
+        void putInt(long position, int value) {
+            segment(position).putInt((int) (position & segmentMask), value);
+        }
+        
+        void put(long position, byte[] source) {
+            int done = 0;
+            while (done < source.length) {
+                MappedByteBuffer segment = segment(position + done);
+                int offset = (int) ((position + done) & segmentMask);
+                int chunk = Math.min(source.length - done, segment.capacity() - offset);
+                ByteBuffer slice = segment.duplicate();
+                slice.position(offset);
+                slice.put(source, done, chunk);
+                done += chunk;
+            }
+        }
+        
+        void get(long position, byte[] target) {
+            int done = 0;
+            while (done < target.length) {
+                MappedByteBuffer segment = segment(position + done);
+                int offset = (int) ((position + done) & segmentMask);
+                int chunk = Math.min(target.length - done, segment.capacity() - offset);
+                ByteBuffer slice = segment.duplicate();
+                slice.position(offset);
+                slice.get(target, done, chunk);
+                done += chunk;
+            }
+        }
+        
+        long size() {
+            try {
+                return channel.size();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to read patient storage", e);
+            }
+        }
+        
+        /**
+         * Unmaps the segments wholly past the given size and truncates the file to the
+         * segments that remain. The file is left alone if a segment cannot be unmapped,
+         * since truncating under a live mapping is not portable.
+         */
+        void shrink(long size) {
+            int keep = (int) ((size + segmentMask) >>> segmentBits);
+            boolean unmapped = true;
+            while (segments.size() > keep) {
+                unmapped &= unmap(segments.remove(segments.size() - 1));
+            }
+            long length = (long) keep << segmentBits;
+            try {
+                if (unmapped && channel.size() > length) {
+                    channel.truncate(length);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Failed to shrink patient storage", e);
+            }
+        }
+        
+        private MappedByteBuffer segment(long position) {
+            int index = (int) (position >>> segmentBits);
+            while (segments.size() <= index) {
+                try {
+                    segments.add(channel.map(FileChannel.MapMode.READ_WRITE,
+                                             (long) segments.size() << segmentBits, 1L << segmentBits));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to map patient storage", e);
+                }
+            }
+            return segments.get(index);
+        }
+        
+        @Override
+        public void close() throws IOException {
+            try {
+                for (MappedByteBuffer segment : segments) {
+                    segment.force();
+                    unmap(segment);
+                }
+                segments.clear();
+            } finally {
+                channel.close();
+            }
+        }
+        
+        /**
+         * Releases a mapping now instead of when it is garbage collected, through the
+         * JDK's unsupported cleaner hook where it is available.
+         *
+         * @return true if the mapping was released
+         */
+        private static boolean unmap(MappedByteBuffer segment) {
+            if (INVOKE_CLEANER == null) {
+                return false;
+            }
+            try {
+                INVOKE_CLEANER.invoke(UNSAFE, segment);
+                return true;
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.airtribe.meditrack.util;
+
+import com.airtribe.meditrack.entity.Appointment;
+import com.airtribe.meditrack.entity.AppointmentStatus;
+
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * {@link AppointmentTimeIndex} over appointment objects, globally and per doctor
+ * and patient.
+ * <p>
+ * Appointments are kept in skip lists sorted by date and time (ties broken by
+ * packed appointment key), so a range query seeks to the start of the range and walks
+ * only the matching entries: O(log n + k) for k results however long the history
+ * is. The index is safe for concurrent use.
+ */
+public class SkipListTimeIndex implements AppointmentTimeIndex {
+    
+    private final NavigableMap<TimeKey, Appointment> all = new ConcurrentSkipListMap<>();
+    private final Map<Long, NavigableMap<TimeKey, Appointment>> byDoctor = new ConcurrentHashMap<>();
+    private final Map<Long, NavigableMap<TimeKey, Appointment>> byPatient = new ConcurrentHashMap<>();
+    
+    @Override
+    public void add(Appointment appointment) {
+        TimeKey key = keyOf(appointment);
+        all.put(key, appointment);
+        partition(byDoctor, appointment.getDoctorKey()).put(key, appointment);
+        partition(byPatient, appointment.getPatientKey()).put(key, appointment);
+    }
+    
+    @Override
+    public void remove(Appointment appointment) {
+        TimeKey key = keyOf(appointment);
+        all.remove(key);
+        NavigableMap<TimeKey, Appointment> doctorEntries = byDoctor.get(appointment.getDoctorKey());
+        if (doctorEntries != null) {
+            doctorEntries.remove(key);
+        }
+        NavigableMap<TimeKey, Appointment> patientEntries = byPatient.get(appointment.getPatientKey());
+        if (patientEntries != null) {
+            patientEntries.remove(key);
+        }
+    }
+    
+    @Override
+    public List<Appointment> between(LocalDateTime from, LocalDateTime to, AppointmentStatus status) {
+        return range(all, from, to, status);
+    }
+    
+    @Override
+    public List<Appointment> betweenForDoctor(String doctorId, LocalDateTime from, LocalDateTime to,
+                                              AppointmentStatus status) {
+        return range(byDoctor.get(EntityKey.find(doctorId)), from, to, status);
+    }
+    
+    @Override
+    public List<Appointment> betweenForPatient(String patientId, LocalDateTime from, LocalDateTime to,
+                                               AppointmentStatus status) {
+        return range(byPatient.get(EntityKey.find(patientId)), from, to, status);
+    }
+    
+    private static List<Appointment> range(NavigableMap<TimeKey, Appointment> entries, LocalDateTime from,
+                                           LocalDateTime to, AppointmentStatus status) {
+        Objects.requireNonNull(from, "from cannot be null");
+        Objects.requireNonNull(to, "to cannot be null");
+        List<Appointment> result = new ArrayList<>();
+        if (entries == null || !from.isBefore(to)) {
+            return result;
+        }
+        for (Appointment appointment : entries.subMap(TimeKey.first(from), TimeKey.first(to)).values()) {
+            if (status == null || appointment.getStatus() == status) {
+                result.add(appointment);
+            }
+        }
+        return result;
+    }
+    
+    private static NavigableMap<TimeKey, Appointment> partition(Map<Long, NavigableMap<TimeKey, Appointment>> partitions,
+                                                                long key) {
+        return partitions.computeIfAbsent(key, k -> new ConcurrentSkipListMap<>());
+    }
+    
+    private static TimeKey keyOf(Appointment appointment) {
+        return new TimeKey(appointment.getAppointmentDateTime(), EntityKey.of(appointment.getAppointmentId()));
+    }
+    
+    /**
+     * Sort key ordering by date and time, then appointment key.
+     */
+    private static final class TimeKey implements Comparable<TimeKey> {
+        private final LocalDateTime time;
+        private final long appointmentKey;
+        
+        TimeKey(LocalDateTime time, long appointmentKey) {
+            this.time = time;
+            this.appointmentKey = appointmentKey;
+        }
+        
+        /**
+         * Returns a key sorting before every appointment at the given time.
+         */
+        static TimeKey first(LocalDateTime time) {
+            return new TimeKey(time, Long.MIN_VALUE);
+        }
+        
+        @Override
+        public int compareTo(TimeKey other) {
+            int byTime = time.compareTo(other.time);
+            return byTime != 0 ? byTime : Long.compare(appointmentKey, other.appointmentKey);
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof TimeKey)) return false;
+            TimeKey that = (TimeKey) o;
+            return time.equals(that.time) && appointmentKey == that.appointmentKey;
+        }
+        
+        @Override
+        public int hashCode() {
+            return 31 * time.hashCode() + Long.hashCode(appointmentKey);
+        }
+    }
+}
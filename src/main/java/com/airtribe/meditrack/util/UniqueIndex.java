@@ -0,0 +1,160 @@
+package com.airtribe.meditrack.util;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Unique index from a normalized field value, such as an email address, to the
+ * packed key of the one entity that owns it.
+ * <p>
+ * Values are stored as 64-bit fingerprints in a {@link LongLongMap}, so an entry
+ * costs no string. Two values can in principle share a fingerprint, so an owner
+ * returned here must be confirmed against the owner's actual value; a value whose
+ * fingerprint is already taken by a different value is simply left unindexed,
+ * which can hide a duplicate but never invents one. During a bulk import a
+ * {@link BloomFilter} can be put in front of the map to answer most lookups of new
+ * values without touching it; it is dropped when the import ends or once more values
+ * are claimed than it was sized for. All methods are synchronized.
+ */
+public class UniqueIndex {
+    
+    private static final double BLOOM_FALSE_POSITIVE_RATE = 0.01;
+    
+    private final LongLongMap owners = new LongLongMap(0, EntityKey.NONE);
+    private BloomFilter front;
+    private long frontCapacity;
+    
+    /**
+     * Computes the 64-bit fingerprint of a value (FNV-1a over its UTF-8 bytes,
+     * followed by a mixing step).
+     *
+     * @param value the normalized value
+     * @return the fingerprint
+     */
+    public static long fingerprint(String value) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : value.getBytes(StandardCharsets.UTF_8)) {
+            h = (h ^ (b & 0xFF)) * 0x100000001b3L;
+        }
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    /**
+     * Gets the key of the entity owning a value.
+     *
+     * @param value the normalized value, may be null
+     * @return the owner's key, or {@link EntityKey#NONE} if the value is free
+     */
+    public synchronized long owner(String value) {
+        if (value == null || value.isEmpty()) {
+            return EntityKey.NONE;
+        }
+        long fingerprint = fingerprint(value);
+        if (front != null && !front.mightContain(fingerprint)) {
+            return EntityKey.NONE;
+        }
+        return owners.get(fingerprint);
+    }
+    
+    /**
+     * Makes an entity the owner of a value unless another entity owns it.
+     *
+     * @param value the normalized value, may be null
+     * @param key the entity's packed key
+     * @return true if the entity owns the value now, or the value is null or empty;
+     *         false if another entity owns it
+     */
+    public synchronized boolean claim(String value, long key) {
+        long owner = putIfAbsent(value, key);
+        return owner == EntityKey.NONE || owner == key;
+    }
+    
+    /**
+     * Makes an entity the owner of a value unless some entity owns it, as one step,
+     * so the caller can reserve a value and learn whether the reservation is new.
+     *
+     * @param value the normalized value, may be null
+     * @param key the entity's packed key
+     * @return the previous owner's key, or {@link EntityKey#NONE} if the value was
+     *         free and is now owned by the entity, or is null or empty
+     */
+    public synchronized long putIfAbsent(String value, long key) {
+        if (value == null || value.isEmpty()) {
+            return EntityKey.NONE;
+        }
+        long fingerprint = fingerprint(value);
+        if (front == null || front.mightContain(fingerprint)) {
+            long owner = owners.get(fingerprint);
+            if (owner != EntityKey.NONE) {
+                return owner;
+            }
+        }
+        owners.put(fingerprint, key);
+        if (front != null) {
+            if (owners.size() > frontCapacity) {
+                // past its sizing the filter answers "possibly present" too often to pay off
+                front = null;
+            } else {
+                front.add(fingerprint);
+            }
+        }
+        return EntityKey.NONE;
+    }
+    
+    /**
+     * Gives up an entity's ownership of a value. Nothing happens if another entity
+     * owns it.
+     *
+     * @param value the normalized value, may be null
+     * @param key the entity's packed key
+     */
+    public synchronized void release(String value, long key) {
+        if (value != null && !value.isEmpty()) {
+            long fingerprint = fingerprint(value);
+            if (owners.get(fingerprint) == key) {
+                owners.remove(fingerprint);
+            }
+        }
+    }
+    
+    /**
+     * Puts a Bloom filter in front of the index, sized for the values already owned
+     * plus the expected number of new ones, replacing any earlier filter.
+     *
+     * @param expectedNewValues the number of values expected to be claimed
+     */
+    public synchronized void addBloomFilter(int expectedNewValues) {
+        long capacity = (long) owners.size() + Math.max(0, expectedNewValues);
+        BloomFilter filter = new BloomFilter((int) Math.min(Integer.MAX_VALUE, capacity), BLOOM_FALSE_POSITIVE_RATE);
+        owners.forEach((fingerprint, owner) -> filter.add(fingerprint));
+        front = filter;
+        frontCapacity = capacity;
+    }
+    
+    /**
+     * Removes the Bloom filter, if any, so lookups go straight to the map again.
+     */
+    public synchronized void removeBloomFilter() {
+        front = null;
+    }
+    
+    /**
+     * Checks whether a Bloom filter is in front of the index.
+     *
+     * @return true if lookups consult a Bloom filter first
+     */
+    public synchronized boolean hasBloomFilter() {
+        return front != null;
+    }
+    
+    /**
+     * Gets the number of owned values.
+     *
+     * @return the number of owned values
+     */
+    public synchronized int size() {
+        return owners.size();
+    }
+}
@@ -1,7 +1,10 @@
 package com.airtribe.meditrack.util;
 
+import com.airtribe.meditrack.constants.Constants;
 import com.airtribe.meditrack.exception.InvalidDataException;
 
+import java.util.Locale;
+
 /**
  * Utility class for validating input data.
  */
@@ -30,6 +33,41 @@ public class Validator {
         return phone != null && phone.matches(PHONE_REGEX);
     }
     
+    /**
+     * Normalizes an email address for duplicate detection: surrounding whitespace is
+     * dropped and letters are lowercased.
+     *
+     * @param email the email, may be null
+     * @return the normalized email, or null if it is null or blank
+     */
+    public static String normalizeEmail(String email) {
+        if (email == null || email.trim().isEmpty()) {
+            return null;
+        }
+        return email.trim().toLowerCase(Locale.ROOT);
+    }
+    
+    /**
+     * Normalizes a phone number for duplicate detection by keeping only its digits,
+     * so "98765 43210" and "9876543210" compare equal.
+     *
+     * @param phone the phone number, may be null
+     * @return the digits, or null if there are none
+     */
+    public static String normalizePhone(String phone) {
+        if (phone == null) {
+            return null;
+        }
+        StringBuilder digits = new StringBuilder(phone.length());
+        for (int i = 0; i < phone.length(); i++) {
+            char c = phone.charAt(i);
+            if (c >= '0' && c <= '9') {
+                digits.append(c);
+            }
+        }
+        return digits.length() == 0 ? null : digits.toString();
+    }
+    
     /**
      * Validates if a string is not empty or null.
      *
@@ -47,7 +85,7 @@ public class Validator {
      * @return true if valid, false otherwise
      */
     public static boolean isValidAge(int age) {
-        return age > 0 && age <= 150;
+        return age > 0 && age <= Constants.MAX_AGE;
     }
     
     /**
@@ -100,7 +138,7 @@ public class Validator {
             throw new InvalidDataException("Phone number must be 10 digits");
         }
         if (!isValidAge(age)) {
-            throw new InvalidDataException("Age must be between 1 and 150");
+            throw new InvalidDataException("Age must be between 1 and " + Constants.MAX_AGE);
         }
     }
 }
@@ -2,11 +2,67 @@ package com.airtribe.meditrack;
 
 import com.airtribe.meditrack.entity.*;
 import com.airtribe.meditrack.exception.AppointmentNotFoundException;
+import com.airtribe.meditrack.exception.DuplicatePatientException;
 import com.airtribe.meditrack.exception.InvalidDataException;
 import com.airtribe.meditrack.service.*;
+import com.airtribe.meditrack.util.AIHelper;
+import com.airtribe.meditrack.util.AgeIndex;
+import com.airtribe.meditrack.util.BloomFilter;
+import com.airtribe.meditrack.util.CSVAppender;
+import com.airtribe.meditrack.util.CSVReader;
+import com.airtribe.meditrack.util.CSVUtil;
+import com.airtribe.meditrack.util.ColumnarAppointmentStore;
+import com.airtribe.meditrack.util.ConcurrentDataStore;
+import com.airtribe.meditrack.util.DataStore;
+import com.airtribe.meditrack.util.EntityCodec;
+import com.airtribe.meditrack.util.EntityKey;
+import com.airtribe.meditrack.util.FreeSlotFinder;
+import com.airtribe.meditrack.util.IdGenerator;
+import com.airtribe.meditrack.util.InvertedIndex;
+import com.airtribe.meditrack.util.Journal;
+import com.airtribe.meditrack.util.LongLongMap;
+import com.airtribe.meditrack.util.LongObjectMap;
+import com.airtribe.meditrack.util.LruCache;
+import com.airtribe.meditrack.util.NameMatcher;
+import com.airtribe.meditrack.util.OffHeapPatientStore;
+import com.airtribe.meditrack.util.UniqueIndex;
 import com.airtribe.meditrack.util.Validator;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.ConcurrentModificationException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
 
 /**
  * Manual test runner for the MediTrack system.
@@ -24,6 +80,26 @@ public class TestRunner {
         testDoctorService();
         testPatientService();
         testAppointmentService();
+        testDoubleBooking();
+        testFreeSlotSearch();
+        testConcurrentStore();
+        testJournalReplay();
+        testCsvReader();
+        testCsvAppender();
+        testBulkImport();
+        testEntityCodec();
+        testIdReservation();
+        testEntityKeys();
+        testPrimitiveMaps();
+        testColumnarAppointments();
+        testOffHeapPatients();
+        testPatientCache();
+        testMedicalHistorySearch();
+        testNameSearch();
+        testAgeIndex();
+        testDoctorAvailabilityIndex();
+        testDuplicatePatients();
+        testAppointmentStatistics();
         
         printTestSummary();
     }
@@ -67,16 +143,25 @@ public class TestRunner {
             
             // Test retrieval
             assertTrue("Get doctor by ID", doctorService.getDoctorById(doc1.getId()).isPresent());
+            assertTrue("Get doctor by lower-case ID",
+                      doctorService.getDoctorById(doc1.getId().toLowerCase()).map(d -> d == doc1).orElse(false));
+            assertFalse("Unknown doctor ID not found", doctorService.getDoctorById("DOC-UNKNOWN").isPresent());
             assertTrue("Get doctor by name", doctorService.getDoctorByName("Dr. John Smith").isPresent());
             
             // Test specialty filter
             assertTrue("Filter by specialty", doctorService.getDoctorsBySpecialty("CARDIOLOGY").size() == 1);
+            assertTrue("Filter by specialty ignores case", doctorService.getDoctorsBySpecialty("cardiology").size() == 1);
             
             // Test availability
             assertTrue("Available doctors list", doctorService.getAvailableDoctors().size() == 2);
             doctorService.setDoctorAvailability(doc1.getId(), false);
             assertTrue("Available doctors after status change", doctorService.getAvailableDoctors().size() == 1);
             
+            // Test removal by ID
+            assertTrue("Remove doctor by ID", doctorService.removeDoctor(doc2.getId()));
+            assertFalse("Removed doctor no longer found", doctorService.getDoctorById(doc2.getId()).isPresent());
+            assertFalse("Removing twice fails", doctorService.removeDoctor(doc2.getId()));
+            
         } catch (InvalidDataException e) {
             fail("Doctor registration failed: " + e.getMessage());
         }
@@ -103,6 +188,16 @@ public class TestRunner {
             assertTrue("Get patient by ID", patientService.getPatientById(patient1.getId()).isPresent());
             assertTrue("Get patient by name", patientService.getPatientByName("John Doe").isPresent());
             
+            // Test live read-only view
+            var allPatients = patientService.getAllPatients();
+            assertTrue("All patients view", allPatients.size() == 2);
+            try {
+                allPatients.clear();
+                fail("Patients view should be read-only");
+            } catch (UnsupportedOperationException e) {
+                assertTrue("Patients view is read-only", allPatients.size() == 2);
+            }
+            
             // Test age range filter
             assertTrue("Filter by age range", patientService.getPatientsByAgeRange(30, 40).size() == 1);
             
@@ -147,6 +242,12 @@ public class TestRunner {
             appointmentService.completeAppointment(appointment.getAppointmentId());
             Appointment completed = appointmentService.getAppointmentById(appointment.getAppointmentId());
             assertTrue("Appointment marked as completed", completed.getStatus() == AppointmentStatus.COMPLETED);
+            assertTrue("Completed appointment moved out of SCHEDULED",
+                      appointmentService.getAppointmentsByStatus(AppointmentStatus.SCHEDULED).isEmpty());
+            assertTrue("Completed appointment listed under COMPLETED",
+                      appointmentService.getAppointmentsByStatus(AppointmentStatus.COMPLETED).size() == 1);
+            assertTrue("Appointments by lower-case doctor ID",
+                      appointmentService.getAppointmentsByDoctor(doctor.getId().toLowerCase()).size() == 1);
             
             // Test invalid operations
             try {
@@ -164,7 +265,1392 @@ public class TestRunner {
         System.out.println();
     }
     
+    private static void testDoubleBooking() {
+        System.out.println("--- Testing Double-Booking Detection ---");
+        
+        try {
+            DoctorService doctorService = new DoctorService();
+            PatientService patientService = new PatientService();
+            AppointmentService appointmentService = new AppointmentService(doctorService, patientService);
+            
+            Doctor doctor = doctorService.registerDoctor("Dr. Ravi Menon", "ravi@example.com",
+                                                         "9876543213", "CARDIOLOGY", "LIC004");
+            Patient first = patientService.registerPatient("Asha Rao", "asha@example.com",
+                                                           "8765432106", 50, "Hypertension");
+            Patient second = patientService.registerPatient("Karan Shah", "karan@example.com",
+                                                            "8765432105", 33, "None");
+            LocalDateTime slot = LocalDateTime.now().plusDays(10).withHour(10).withMinute(0).withSecond(0).withNano(0);
+            
+            Appointment booked = appointmentService.bookAppointment(doctor.getId(), first.getId(), slot, "Checkup");
+            assertTrue("Same slot rejected", isRejected(appointmentService, doctor, second, slot));
+            assertTrue("Overlapping slot rejected", isRejected(appointmentService, doctor, second, slot.plusMinutes(15)));
+            assertTrue("Earlier overlapping slot rejected", isRejected(appointmentService, doctor, second, slot.minusMinutes(29)));
+            
+            Appointment next = appointmentService.bookAppointment(doctor.getId(), second.getId(), slot.plusMinutes(30), "Follow-up");
+            assertTrue("Adjacent slot accepted", next != null);
+            
+            try {
+                appointmentService.rescheduleAppointment(next.getAppointmentId(), slot.plusMinutes(10));
+                fail("Reschedule into a booked slot should fail");
+            } catch (InvalidDataException e) {
+                assertTrue("Reschedule into booked slot rejected", next.getAppointmentDateTime().equals(slot.plusMinutes(30)));
+            }
+            
+            appointmentService.cancelAppointment(booked.getAppointmentId());
+            appointmentService.rescheduleAppointment(next.getAppointmentId(), slot);
+            assertTrue("Cancelled slot can be reused", next.getAppointmentDateTime().equals(slot));
+            assertFalse("Vacated slot is free again", isRejected(appointmentService, doctor, first, slot.plusMinutes(30)));
+            
+            // Range queries over the time index
+            assertTrue("Appointments in morning window",
+                      appointmentService.getAppointmentsBetween(slot, slot.plusHours(1)).size() == 3);
+            assertTrue("Scheduled appointments in morning window",
+                      appointmentService.getAppointmentsBetween(slot, slot.plusHours(1), AppointmentStatus.SCHEDULED).size() == 2);
+            assertTrue("Range end is exclusive",
+                      appointmentService.getDoctorAppointmentsBetween(doctor.getId(), slot, slot.plusMinutes(30)).size() == 2);
+            assertTrue("Patient range follows reschedule",
+                      appointmentService.getPatientAppointmentsBetween(second.getId(), slot, slot.plusMinutes(1)).size() == 1);
+            assertTrue("Empty range for other day",
+                      appointmentService.getAppointmentsBetween(slot.plusDays(1), slot.plusDays(2)).isEmpty());
+        } catch (Exception e) {
+            fail("Double-booking test failed: " + e.getMessage());
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testFreeSlotSearch() {
+        System.out.println("--- Testing Free Slot Search ---");
+        
+        try {
+            DoctorService doctorService = new DoctorService();
+            PatientService patientService = new PatientService();
+            AppointmentService appointmentService = new AppointmentService(doctorService, patientService);
+            
+            Doctor busy = doctorService.registerDoctor("Dr. Meera Iyer", "meera@example.com",
+                                                       "9876543214", "CARDIOLOGY", "LIC005");
+            Doctor idle = doctorService.registerDoctor("Dr. Arjun Das", "arjun@example.com",
+                                                       "9876543215", "CARDIOLOGY", "LIC006");
+            Doctor away = doctorService.registerDoctor("Dr. Neha Gupta", "neha@example.com",
+                                                       "9876543216", "CARDIOLOGY", "LIC007");
+            doctorService.setDoctorAvailability(away.getId(), DoctorAvailability.ON_LEAVE);
+            Patient patient = patientService.registerPatient("Vikram Singh", "vikram@example.com",
+                                                             "8765432104", 61, "Arrhythmia");
+            
+            LocalDateTime day = LocalDateTime.now().plusDays(20).withHour(0).withMinute(0).withSecond(0).withNano(0);
+            appointmentService.bookAppointment(busy.getId(), patient.getId(), day.withHour(9), "Slot 1");
+            appointmentService.bookAppointment(busy.getId(), patient.getId(), day.withHour(9).withMinute(30), "Slot 2");
+            appointmentService.bookAppointment(busy.getId(), patient.getId(), day.withHour(10).withMinute(15), "Off-grid");
+            
+            var slots = appointmentService.findFreeSlots(busy.getId(), day, day.plusDays(1), 2);
+            assertTrue("Earliest free slot skips bookings", slots.get(0).equals(day.withHour(11)));
+            assertTrue("Second free slot follows", slots.get(1).equals(day.withHour(11).withMinute(30)));
+            assertTrue("No slots for doctor on leave",
+                      appointmentService.findFreeSlots(away.getId(), day, day.plusDays(1), 5).isEmpty());
+            
+            var cardiology = appointmentService.findFreeSlotsBySpecialty("CARDIOLOGY", day, day.plusDays(1), 5);
+            assertTrue("Specialty search returns limit", cardiology.size() == 5);
+            assertTrue("Specialty search starts with idle doctor",
+                      cardiology.get(0).getDoctorId().equals(idle.getId()) && cardiology.get(0).getStart().equals(day.withHour(9)));
+            assertTrue("Specialty search excludes doctor on leave",
+                      cardiology.stream().map(FreeSlotFinder.Slot::getDoctorId).noneMatch(away.getId()::equals));
+            assertTrue("AI helper suggests a time", AIHelper.suggestAppointmentTime(appointmentService, idle.getId()) != null);
+        } catch (Exception e) {
+            fail("Free slot test failed: " + e.getMessage());
+        }
+        
+        System.out.println();
+    }
+    
+    private static boolean isRejected(AppointmentService service, Doctor doctor, Patient patient, LocalDateTime time) {
+        try {
+            service.bookAppointment(doctor.getId(), patient.getId(), time, "Attempt");
+            return false;
+        } catch (InvalidDataException e) {
+            return true;
+        }
+    }
+    
+    private static void testConcurrentStore() {
+        System.out.println("--- Testing Concurrent Data Store ---");
+        
+        PatientService patientService = new PatientService(new ConcurrentDataStore<>(Patient::getId));
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                int thread = t;
+                writers.add(pool.submit(() -> {
+                    for (int i = 0; i < 500; i++) {
+                        int n = thread * 1000 + i;
+                        patientService.registerPatient("Concurrent Patient", "c" + n + "@example.com",
+                                                       String.format("9%09d", n), 30, "None");
+                    }
+                    return null;
+                }));
+            }
+            boolean iterationFailed = false;
+            while (!writers.stream().allMatch(Future::isDone)) {
+                try {
+                    for (Patient p : patientService.getAllPatients()) {
+                        p.getId();
+                    }
+                } catch (java.util.ConcurrentModificationException e) {
+                    iterationFailed = true;
+                }
+            }
+            for (Future<?> writer : writers) {
+                writer.get();
+            }
+            assertFalse("Concurrent iteration never throws", iterationFailed);
+            assertTrue("All concurrent registrations stored", patientService.getAllPatients().size() == 2000);
+            
+            int raceWinners = 0;
+            for (int round = 0; round < 200; round++) {
+                String email = "race" + round + "@example.com";
+                List<Callable<Boolean>> racers = new ArrayList<>();
+                for (int t = 0; t < 4; t++) {
+                    String phone = String.format("8%09d", round * 10 + t);
+                    racers.add(() -> {
+                        try {
+                            patientService.registerPatient("Race Patient", email, phone, 30, null);
+                            return true;
+                        } catch (DuplicatePatientException e) {
+                            return false;
+                        }
+                    });
+                }
+                for (Future<Boolean> racer : pool.invokeAll(racers)) {
+                    raceWinners += racer.get() ? 1 : 0;
+                }
+            }
+            assertTrue("Concurrent duplicate registrations admit one patient per email", raceWinners == 200
+                       && patientService.findDuplicates().isEmpty());
+            
+            ConcurrentDataStore<Patient> keyed = new ConcurrentDataStore<>(Patient::getId);
+            Patient renamed = new Patient("PAT8801", "Key Change", "key@example.com", "8765432190", 30, null);
+            keyed.add(renamed);
+            boolean rejected = false;
+            try {
+                keyed.update(renamed, p -> p.setId("PAT8802"));
+            } catch (IllegalArgumentException e) {
+                rejected = true;
+            }
+            assertTrue("Concurrent store rejects key changes", rejected && keyed.isEmpty()
+                       && !keyed.containsKey("PAT8802"));
+        } catch (Exception e) {
+            fail("Concurrent store test failed: " + e.getMessage());
+        } finally {
+            pool.shutdownNow();
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testJournalReplay() {
+        System.out.println("--- Testing Journal Replay ---");
+        
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("meditrack-journal");
+            String doctorId;
+            String patientId;
+            String keptId;
+            String cancelledId;
+            LocalDateTime moved = LocalDateTime.now().plusDays(5).withNano(0);
+            try (ClinicPersistence clinic = ClinicPersistence.open(dir, Journal.FsyncPolicy.PER_OP)) {
+                Doctor doctor = clinic.getDoctorService().registerDoctor("Dr. Journal", "journal@example.com",
+                        "9876501234", "Cardiology", "LIC900");
+                Patient patient = clinic.getPatientService().registerPatient("Journal Patient",
+                        "jp@example.com", "9876505678", 40, "Asthma");
+                doctorId = doctor.getId();
+                patientId = patient.getId();
+                AppointmentService appointments = clinic.getAppointmentService();
+                keptId = appointments.bookAppointment(doctorId, patientId,
+                        LocalDateTime.now().plusDays(2), "Check-up").getAppointmentId();
+                cancelledId = appointments.bookAppointment(doctorId, patientId,
+                        LocalDateTime.now().plusDays(3), "Follow-up").getAppointmentId();
+                appointments.cancelAppointment(cancelledId);
+                appointments.rescheduleAppointment(keptId, moved);
+                clinic.getPatientService().updatePatient(patientId, "jp2@example.com", "9876509999");
+                clinic.getDoctorService().setDoctorAvailability(doctorId, DoctorAvailability.ON_LEAVE);
+            }
+            
+            // a write torn by a crash leaves a partial record at the end of the segment
+            try (var stream = Files.list(dir)) {
+                Path segment = stream.findFirst().orElseThrow();
+                Files.write(segment, new byte[] {0, 0, 0, 42, 1, 2}, StandardOpenOption.APPEND);
+            }
+            
+            try (ClinicPersistence clinic = ClinicPersistence.open(dir, Journal.FsyncPolicy.GROUP_COMMIT)) {
+                assertTrue("Journal replays every record", clinic.getReplayedRecords() == 8);
+                Patient patient = clinic.getPatientService().getPatientById(patientId).orElse(null);
+                assertTrue("Patient update survives restart",
+                           patient != null && "jp2@example.com".equals(patient.getEmail()));
+                Doctor doctor = clinic.getDoctorService().getDoctorById(doctorId).orElse(null);
+                assertTrue("Availability change survives restart",
+                           doctor != null && doctor.getAvailability() == DoctorAvailability.ON_LEAVE);
+                AppointmentService appointments = clinic.getAppointmentService();
+                assertTrue("Cancellation survives restart",
+                           appointments.getAppointmentById(cancelledId).getStatus() == AppointmentStatus.CANCELLED);
+                assertTrue("Reschedule survives restart",
+                           moved.equals(appointments.getAppointmentById(keptId).getAppointmentDateTime()));
+                clinic.getDoctorService().setDoctorAvailability(doctorId, DoctorAvailability.AVAILABLE);
+                assertTrue("Restored booking still holds its slot",
+                           isRejected(appointments, doctor, patient, moved.plusMinutes(10)));
+                Patient next = clinic.getPatientService().registerPatient("After Restart", "ar@example.com",
+                                                                          "9876512345", 20, "None");
+                assertFalse("New IDs do not collide with restored ones", next.getId().equals(patientId));
+                
+                clinic.checkpointInBackground().get();
+                appointments.cancelAppointment(keptId);
+            }
+            
+            try (ClinicPersistence clinic = ClinicPersistence.open(dir, Journal.FsyncPolicy.PERIODIC)) {
+                assertTrue("Snapshot leaves only the journal tail to replay", clinic.getReplayedRecords() == 1);
+                assertTrue("Snapshot restores patients",
+                           clinic.getPatientService().getPatientByName("After Restart").isPresent());
+                assertTrue("Tail replay applies on top of the snapshot",
+                           clinic.getAppointmentService().getAppointmentById(keptId).getStatus()
+                                   == AppointmentStatus.CANCELLED);
+            }
+            try (var stream = Files.list(dir)) {
+                assertTrue("Checkpoint deletes covered journal segments",
+                           stream.filter(f -> f.getFileName().toString().endsWith(".log")).count() == 1);
+            }
+            
+            // writers that never pause must not hold a rotation off
+            ExecutorService writers = Executors.newFixedThreadPool(5);
+            AtomicBoolean writing = new AtomicBoolean(true);
+            try (Journal journal = Journal.open(dir.resolve("busy"), Journal.FsyncPolicy.GROUP_COMMIT, 0)) {
+                for (int t = 0; t < 4; t++) {
+                    writers.submit(() -> {
+                        while (writing.get()) {
+                            journal.record(() -> { }, "NOOP");
+                        }
+                    });
+                }
+                Future<Long> rotated = writers.submit(() -> {
+                    long last = 0;
+                    for (int i = 0; i < 20; i++) {
+                        last = journal.rotate();
+                    }
+                    return last;
+                });
+                try {
+                    assertTrue("Rotation completes under steady writes", rotated.get(30, TimeUnit.SECONDS) == 20);
+                } finally {
+                    writing.set(false);
+                    writers.shutdown();
+                    writers.awaitTermination(10, TimeUnit.SECONDS);
+                }
+            }
+            
+            // updates racing on one patient must reach the journal in the order they apply
+            Path orderDir = dir.resolve("order");
+            Map<String, String> liveHistories = new HashMap<>();
+            try (ClinicPersistence clinic = ClinicPersistence.open(orderDir, Journal.FsyncPolicy.GROUP_COMMIT)) {
+                PatientService patients = clinic.getPatientService();
+                List<String> sharedIds = new ArrayList<>();
+                for (int i = 0; i < 10; i++) {
+                    sharedIds.add(patients.registerPatient("Shared Patient " + i, "shared" + i + "@example.com",
+                                                           String.valueOf(9_876_512_300L + i), 40, null).getId());
+                }
+                ExecutorService updaters = Executors.newFixedThreadPool(8);
+                try {
+                    for (String id : sharedIds) {
+                        List<Future<?>> runs = new ArrayList<>();
+                        for (int t = 0; t < 8; t++) {
+                            int thread = t;
+                            runs.add(updaters.submit(() -> {
+                                for (int i = 0; i < 100; i++) {
+                                    patients.updateMedicalHistory(id, "thread " + thread + " update " + i);
+                                }
+                                return null;
+                            }));
+                        }
+                        for (Future<?> run : runs) {
+                            run.get();
+                        }
+                    }
+                } finally {
+                    updaters.shutdown();
+                }
+                for (String id : sharedIds) {
+                    liveHistories.put(id, patients.getPatientById(id).map(Patient::getMedicalHistory).orElse(null));
+                }
+            }
+            try (ClinicPersistence clinic = ClinicPersistence.open(orderDir, Journal.FsyncPolicy.GROUP_COMMIT)) {
+                boolean same = true;
+                for (Map.Entry<String, String> live : liveHistories.entrySet()) {
+                    same &= live.getValue().equals(clinic.getPatientService().getPatientById(live.getKey())
+                                                           .map(Patient::getMedicalHistory).orElse(null));
+                }
+                assertTrue("Replay ends in the state concurrent updates left", same);
+            }
+        } catch (Exception e) {
+            fail("Journal replay test failed: " + e);
+        } finally {
+            deleteRecursively(dir);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testCsvReader() {
+        System.out.println("--- Testing CSV Reader ---");
+        
+        String csv = "id,name,notes\r\n"
+                + "PAT1,\"Doe, Jane\",\"said \"\"hi\"\"\"\n"
+                + "PAT2,Smith,\"line one\nline two\"\n"
+                + "PAT3,,\n";
+        try (CSVReader reader = new CSVReader(new StringReader(csv), 4)) {
+            List<List<String>> rows = new ArrayList<>();
+            reader.forEachRemaining(rows::add);
+            assertTrue("CSV reader yields every row", rows.size() == 4);
+            assertTrue("Quoted commas stay in one field",
+                       rows.get(1).equals(Arrays.asList("PAT1", "Doe, Jane", "said \"hi\"")));
+            assertTrue("Quoted line breaks stay in one field", "line one\nline two".equals(rows.get(2).get(2)));
+            assertTrue("Trailing empty fields are kept", rows.get(3).equals(Arrays.asList("PAT3", "", "")));
+        } catch (IOException e) {
+            fail("CSV reader test failed: " + e);
+        }
+        
+        try (CSVReader reader = new CSVReader(new StringReader("a,\"unterminated\n"))) {
+            reader.readRow();
+            fail("Unterminated quote should be rejected");
+        } catch (IOException e) {
+            assertTrue("Unterminated quote is rejected", e.getMessage().contains("row 1"));
+        }
+        
+        Path file = null;
+        try {
+            file = Files.createTempFile("meditrack", ".csv");
+            Files.write(file, ("\uFEFFid,name\nDOC1,\"Dr. A, MD\"\n").getBytes(StandardCharsets.UTF_8));
+            List<List<String>> rows = CSVUtil.readCSV(file.toString());
+            assertTrue("readCSV skips the byte order mark", "id".equals(rows.get(0).get(0)));
+            try (var stream = CSVUtil.streamCSV(file.toString())) {
+                assertTrue("streamCSV parses quoted fields", stream.skip(1).findFirst()
+                        .map(row -> "Dr. A, MD".equals(row.get(1))).orElse(false));
+            }
+            
+            List<String> tricky = Arrays.asList("PAT1", "Doe, Jane", "said \"hi\"", "line one\nline two", "Zoë");
+            CSVUtil.writeCSV(file.toString(), Arrays.asList("id", "name", "notes", "history", "city"),
+                             Collections.singletonList(tricky));
+            CSVUtil.appendRowToCSV(file.toString(), tricky);
+            rows = CSVUtil.readCSV(file.toString());
+            assertTrue("Written rows round-trip through the reader", rows.size() == 3
+                       && rows.get(1).equals(tricky) && rows.get(2).equals(tricky));
+        } catch (IOException e) {
+            fail("CSV file test failed: " + e);
+        } finally {
+            deleteRecursively(file);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testCsvAppender() {
+        System.out.println("--- Testing CSV Appender ---");
+        
+        Path file = null;
+        try {
+            file = Files.createTempFile("meditrack", ".csv");
+            try (CSVAppender appender = new CSVAppender(file, 16, 20, false)) {
+                appender.append("APT1", "Checkup, fasting", "said \"ok\"");
+                Thread.sleep(200);
+                assertTrue("Time threshold flushes buffered rows", Files.size(file) > 0);
+                for (int i = 0; i < 100; i++) {
+                    appender.append("APT" + (i + 2), null, "row " + i);
+                }
+            }
+            List<List<String>> rows = CSVUtil.readCSV(file.toString());
+            assertTrue("Appender writes every row", rows.size() == 101);
+            assertTrue("Appended fields are quoted when needed",
+                       rows.get(0).equals(Arrays.asList("APT1", "Checkup, fasting", "said \"ok\"")));
+            assertTrue("Null fields are written empty", "".equals(rows.get(100).get(1)));
+        } catch (IOException | InterruptedException e) {
+            fail("CSV appender test failed: " + e);
+        } finally {
+            deleteRecursively(file);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testBulkImport() {
+        System.out.println("--- Testing Bulk Import ---");
+        
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("meditrack-import");
+            StringBuilder csv = new StringBuilder("name,email,phone,age,history\n");
+            for (int i = 0; i < 300; i++) {
+                csv.append("Import ").append(i).append(",imp").append(i).append("@example.com,")
+                   .append(String.format("8%09d", i)).append(',').append(20 + i % 50).append(",\"Flu, mild\"\n");
+            }
+            csv.append("Bad Email,not-an-email,8123456789,30,None\n");
+            csv.append("Bad Age,ba@example.com,8123456780,abc,None\n");
+            Path patientsCsv = dir.resolve("patients.csv");
+            Files.write(patientsCsv, csv.toString().getBytes(StandardCharsets.UTF_8));
+            
+            PatientService patientService = new PatientService();
+            DoctorService doctorService = new DoctorService();
+            // small chunks force the file to be split across many parallel tasks
+            BulkImporter importer = new BulkImporter(patientService, doctorService, ForkJoinPool.commonPool(),
+                                                     512, 64);
+            BulkImporter.ImportReport report = importer.importPatients(patientsCsv);
+            assertTrue("Bulk import reads every data row", report.getRowsRead() == 302);
+            assertTrue("Bulk import stores valid rows", report.getImported() == 300
+                       && patientService.getAllPatients().size() == 300);
+            assertTrue("Bulk import reports bad rows by line", report.getErrors().size() == 2
+                       && report.getErrors().get(0).getLine() == 302 && report.getErrors().get(1).getLine() == 303);
+            assertTrue("Quoted fields survive chunking", patientService.getPatientByName("Import 299")
+                    .map(p -> "Flu, mild".equals(p.getMedicalHistory())).orElse(false));
+            
+            // one thread keeps only two chunks in flight, so most chunks wait for insertion
+            ForkJoinPool single = new ForkJoinPool(1);
+            try {
+                PatientService ordered = new PatientService();
+                report = new BulkImporter(ordered, doctorService, single, 512, 64).importPatients(patientsCsv);
+                List<Patient> imported = ordered.getAllPatients().stream()
+                        .sorted(Comparator.comparingLong(p -> EntityKey.of(p.getId())))
+                        .collect(Collectors.toList());
+                assertTrue("Bounded parsing keeps file order", report.getImported() == 300
+                           && imported.get(0).getName().equals("Import 0")
+                           && imported.get(299).getName().equals("Import 299"));
+            } finally {
+                single.shutdown();
+            }
+            
+            Path doctorsCsv = dir.resolve("doctors.csv");
+            Files.write(doctorsCsv, ("Dr. Bulk,bulk@example.com,7123456789,Neurology,LIC1,ON_LEAVE\n"
+                    + "Dr. Short,short@example.com\n").getBytes(StandardCharsets.UTF_8));
+            report = importer.importDoctors(doctorsCsv);
+            assertTrue("Doctor import keeps availability", report.getImported() == 1
+                       && doctorService.getDoctorByName("Dr. Bulk")
+                               .map(d -> d.getAvailability() == DoctorAvailability.ON_LEAVE).orElse(false));
+            assertTrue("Short doctor rows are rejected", report.getErrors().size() == 1);
+            
+            Locale defaultLocale = Locale.getDefault();
+            Locale.setDefault(new Locale("tr", "TR"));
+            try {
+                Files.write(doctorsCsv, "Dr. Locale,locale@example.com,7123456788,Neurology,LIC2,available\n"
+                        .getBytes(StandardCharsets.UTF_8));
+                assertTrue("Availability parsing ignores the default locale",
+                           importer.importDoctors(doctorsCsv).getImported() == 1);
+            } finally {
+                Locale.setDefault(defaultLocale);
+            }
+            
+            Path journalDir = dir.resolve("journal");
+            try (ClinicPersistence clinic = ClinicPersistence.open(journalDir, Journal.FsyncPolicy.GROUP_COMMIT)) {
+                new BulkImporter(clinic.getPatientService(), clinic.getDoctorService()).importPatients(patientsCsv);
+            }
+            try (ClinicPersistence clinic = ClinicPersistence.open(journalDir, Journal.FsyncPolicy.GROUP_COMMIT)) {
+                assertTrue("Imported batches are journaled", clinic.getPatientService().getAllPatients().size() == 300);
+            }
+        } catch (IOException e) {
+            fail("Bulk import test failed: " + e);
+        } finally {
+            deleteRecursively(dir);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testEntityCodec() {
+        System.out.println("--- Testing Entity Codec ---");
+        
+        LocalDateTime when = LocalDateTime.of(2031, 5, 17, 10, 30, 15, 123_456_789);
+        Doctor doctor = new Doctor("DOC1001", "Dr. Müller", "mueller@example.com", "9876543210",
+                                   "Cardiology", null, DoctorAvailability.ON_LEAVE);
+        Patient patient = new Patient("PAT007", "Zoë", "zoe@example.com", "9876543211", 33, "Asthma, 日本");
+        Appointment appointment = new Appointment("APT3001", "DOC1001", "PAT007", when,
+                                                  AppointmentStatus.COMPLETED, null);
+        Bill bill = new Bill("BILL4001", "PAT007", "APT3001", 500.0, 200.5, 0.0);
+        bill.markAsPaid();
+        BillSummary summary = new BillSummary(bill);
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (EntityCodec.Encoder out = new EntityCodec.Encoder(bytes)) {
+                out.writeLongs(1L, -5L, Long.MAX_VALUE);
+                out.write(doctor);
+                out.write(patient);
+                out.write(appointment);
+                out.write(bill);
+                out.write(summary);
+                out.write(new Patient("pat12", "Lower Case", null, null, 1, null));
+                out.write(new Patient("PAT123456789012345678", "Long Number", null, null, 2, null));
+                out.writeEnd();
+            }
+            try (EntityCodec.Decoder in = new EntityCodec.Decoder(new ByteArrayInputStream(bytes.toByteArray()))) {
+                assertTrue("Codec round-trips longs",
+                           Arrays.equals((long[]) in.read(), new long[] {1L, -5L, Long.MAX_VALUE}));
+                Doctor d = (Doctor) in.read();
+                assertTrue("Codec round-trips doctors", "DOC1001".equals(d.getId()) && "Dr. Müller".equals(d.getName())
+                           && d.getLicenseNumber() == null && d.getAvailability() == DoctorAvailability.ON_LEAVE);
+                Patient p = (Patient) in.read();
+                assertTrue("Codec keeps non-canonical IDs and UTF-8 text", "PAT007".equals(p.getId())
+                           && "Asthma, 日本".equals(p.getMedicalHistory()) && p.getAge() == 33);
+                Appointment a = (Appointment) in.read();
+                assertTrue("Codec keeps timestamps to the nanosecond", when.equals(a.getAppointmentDateTime())
+                           && a.getStatus() == AppointmentStatus.COMPLETED && a.getNotes() == null);
+                Bill b = (Bill) in.read();
+                assertTrue("Codec round-trips bills", b.isPaid() && b.getTotalAmount() == 700.5
+                           && bill.getPaidDate().equals(b.getPaidDate()) && bill.getBillDate().equals(b.getBillDate()));
+                assertTrue("Codec round-trips bill summaries", summary.equals(in.read()));
+                assertTrue("Codec keeps the exact spelling of generated-looking IDs",
+                           "pat12".equals(((Patient) in.read()).getId())
+                           && "PAT123456789012345678".equals(((Patient) in.read()).getId()));
+                assertTrue("Codec reports the end marker", in.read() == null);
+            }
+        } catch (IOException e) {
+            fail("Entity codec test failed: " + e);
+        }
+        
+        byte[] future = {0x4D, 0x54, 0x4B, 0x31, 0, 99};
+        try {
+            new EntityCodec.Decoder(new ByteArrayInputStream(future)).close();
+            fail("Newer schema version should be rejected");
+        } catch (IOException e) {
+            assertTrue("Newer schema version is rejected", e.getMessage().contains("99"));
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testIdReservation() {
+        System.out.println("--- Testing ID Reservation ---");
+        
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("meditrack-ids");
+            Path file = dir.resolve("ids.dat");
+            ByteBuffer saved = ByteBuffer.allocate(4 * Long.BYTES + Integer.BYTES);
+            saved.putLong(0).putLong(900_000).putLong(0).putLong(0);
+            CRC32 crc = new CRC32();
+            crc.update(saved.array(), 0, 4 * Long.BYTES);
+            saved.putInt((int) crc.getValue());
+            Files.write(file, saved.array());
+            
+            IdGenerator.persistTo(file);
+            long issued = Long.parseLong(IdGenerator.generatePatientId().substring(3));
+            assertTrue("Reserved limits move the counter past earlier runs", issued >= 900_000);
+            ByteBuffer written = ByteBuffer.wrap(Files.readAllBytes(file));
+            assertTrue("Issued IDs stay below the durable limit", written.getLong(Long.BYTES) > issued);
+            
+            ExecutorService pool = Executors.newFixedThreadPool(4);
+            List<Future<List<String>>> batches = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                batches.add(pool.submit(() -> {
+                    List<String> ids = new ArrayList<>();
+                    for (int i = 0; i < 5000; i++) {
+                        ids.add(IdGenerator.generatePatientId());
+                    }
+                    return ids;
+                }));
+            }
+            Set<String> unique = new HashSet<>();
+            long highest = 0;
+            for (Future<List<String>> batch : batches) {
+                for (String id : batch.get()) {
+                    unique.add(id);
+                    highest = Math.max(highest, Long.parseLong(id.substring(3)));
+                }
+            }
+            pool.shutdown();
+            assertTrue("Concurrent threads receive unique IDs", unique.size() == 20_000);
+            written = ByteBuffer.wrap(Files.readAllBytes(file));
+            assertTrue("Reservations cover IDs issued across threads", written.getLong(Long.BYTES) > highest);
+            
+            saved = ByteBuffer.allocate(4 * Long.BYTES + Integer.BYTES);
+            saved.putLong(5_000_000).putLong(written.getLong(Long.BYTES)).putLong(0).putLong(0);
+            crc.reset();
+            crc.update(saved.array(), 0, 4 * Long.BYTES);
+            saved.putInt((int) crc.getValue());
+            Files.write(file, saved.array());
+            IdGenerator.persistTo(file);
+            for (int i = 0; i < 30_000; i++) {
+                IdGenerator.generatePatientId();
+            }
+            IdGenerator.persistTo(file);
+            written = ByteBuffer.wrap(Files.readAllBytes(file));
+            assertTrue("Reserving one counter keeps the others' saved limits", written.getLong(0) == 5_000_000
+                       && Long.parseLong(IdGenerator.generateDoctorId().substring(3)) >= 5_000_000);
+            
+            Files.write(file, new byte[] {1, 2, 3});
+            try {
+                IdGenerator.persistTo(file);
+                fail("Corrupt reservation file should be rejected");
+            } catch (IOException e) {
+                assertTrue("Corrupt reservation file is rejected", e.getMessage().contains("Corrupt"));
+            }
+        } catch (Exception e) {
+            fail("ID reservation test failed: " + e);
+        } finally {
+            try {
+                IdGenerator.persistTo(null);
+            } catch (IOException e) {
+                fail("Detaching the reservation file failed: " + e);
+            }
+            deleteRecursively(dir);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testEntityKeys() {
+        System.out.println("--- Testing Entity Keys ---");
+        
+        long key = EntityKey.of("DOC1001");
+        assertTrue("Generated IDs pack without interning", key == EntityKey.find("doc1001"));
+        assertTrue("Packed keys rebuild the ID", "DOC1001".equals(EntityKey.toId(key)));
+        assertTrue("Prefixes get distinct keys", key != EntityKey.of("PAT1001"));
+        assertTrue("Leading zeros are not canonical", EntityKey.find("PAT0099-unstored") == EntityKey.NONE);
+        long interned = EntityKey.of("Walk-in-7");
+        assertTrue("Other IDs are interned case-insensitively", interned == EntityKey.find("WALK-IN-7"));
+        assertTrue("Interned IDs keep their spelling", "Walk-in-7".equals(EntityKey.toId(interned)));
+        assertTrue("IDs compare ignoring case", EntityKey.sameId("apt3001", "APT3001")
+                   && !EntityKey.sameId("APT3001", "APT03001"));
+        
+        DataStore<Patient> store = new DataStore<>(Patient::getId);
+        Patient patient = new Patient("PAT2042", "Key Test", "key@example.com", "9876543210", 40, "None");
+        store.add(patient);
+        assertTrue("Stores find entities by packed key", store.findByKey(EntityKey.of("PAT2042")).orElse(null) == patient);
+        assertTrue("Stores parse string keys case-insensitively", store.containsKey("pat2042"));
+        assertTrue("Stores remove by packed key", store.removeByKey(EntityKey.find("PAT2042")) && store.isEmpty());
+        
+        Appointment appointment = new Appointment("APT3999", "doc1001", "Walk-in-7", LocalDateTime.of(2031, 1, 1, 9, 0),
+                                                  AppointmentStatus.SCHEDULED, null);
+        assertTrue("Appointments reference doctors by key", appointment.getDoctorKey() == key
+                   && "DOC1001".equals(appointment.getDoctorId()));
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+                out.writeObject(appointment);
+            }
+            try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+                Appointment copy = (Appointment) in.readObject();
+                assertTrue("Serialized appointments keep their references", copy.getDoctorKey() == key
+                           && "Walk-in-7".equals(copy.getPatientId()));
+            }
+        } catch (IOException | ClassNotFoundException e) {
+            fail("Appointment serialization failed: " + e);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testPrimitiveMaps() {
+        System.out.println("--- Testing Primitive Maps ---");
+        
+        LongObjectMap<String> objects = new LongObjectMap<>();
+        LongLongMap links = new LongLongMap(0, -1L);
+        Map<Long, String> expectedObjects = new LinkedHashMap<>();
+        Map<Long, Long> expectedLinks = new HashMap<>();
+        Random random = new Random(42);
+        boolean consistent = true;
+        for (int i = 0; i < 50_000; i++) {
+            // a small key range forces long probe chains, removals and re-inserts
+            long key = random.nextInt(2_000) - 100;
+            if (random.nextInt(3) == 0) {
+                consistent &= Objects.equals(objects.remove(key), expectedObjects.remove(key));
+                consistent &= links.remove(key) == expectedLinks.getOrDefault(key, -1L);
+                expectedLinks.remove(key);
+            } else {
+                consistent &= Objects.equals(objects.put(key, "v" + i), expectedObjects.put(key, "v" + i));
+                consistent &= links.put(key, i) == expectedLinks.getOrDefault(key, -1L);
+                expectedLinks.put(key, (long) i);
+            }
+        }
+        for (long key = -100; key < 1_900; key++) {
+            consistent &= Objects.equals(objects.get(key), expectedObjects.get(key))
+                    && links.get(key) == expectedLinks.getOrDefault(key, -1L)
+                    && links.containsKey(key) == expectedLinks.containsKey(key);
+        }
+        assertTrue("Primitive maps agree with HashMap under random updates", consistent);
+        assertTrue("Primitive map sizes agree", objects.size() == expectedObjects.size()
+                   && links.size() == expectedLinks.size());
+        
+        List<String> iterated = new ArrayList<>(objects.values());
+        List<Long> keys = new ArrayList<>();
+        for (long key : objects.keys()) {
+            keys.add(key);
+        }
+        assertTrue("LongObjectMap iterates in insertion order",
+                   iterated.equals(new ArrayList<>(expectedObjects.values()))
+                   && keys.equals(new ArrayList<>(expectedObjects.keySet())));
+        
+        long[] sum = new long[1];
+        links.forEach((key, value) -> sum[0] += value);
+        assertTrue("LongLongMap visits every entry",
+                   sum[0] == expectedLinks.values().stream().mapToLong(Long::longValue).sum());
+        
+        try {
+            for (String value : objects.values()) {
+                objects.put(-1_000, value);
+            }
+            fail("Changing the map during iteration should fail fast");
+        } catch (ConcurrentModificationException e) {
+            assertTrue("Changing the map during iteration fails fast", true);
+        }
+        objects.clear();
+        links.clear();
+        assertTrue("Cleared maps are empty", objects.isEmpty() && objects.get(5) == null
+                   && links.isEmpty() && links.get(0) == -1L);
+        
+        System.out.println();
+    }
+    
+    private static void testColumnarAppointments() {
+        System.out.println("--- Testing Columnar Appointment Store ---");
+        
+        try {
+            DoctorService doctorService = new DoctorService();
+            PatientService patientService = new PatientService();
+            ColumnarAppointmentStore store = new ColumnarAppointmentStore();
+            AppointmentService appointmentService = new AppointmentService(doctorService, patientService, store);
+            
+            Doctor doctor = doctorService.registerDoctor("Dr. Column", "column@example.com",
+                                                         "9876543219", "NEUROLOGY", "LIC010");
+            Patient patient = patientService.registerPatient("Row Reader", "row@example.com",
+                                                             "8765432109", 45, "None");
+            LocalDateTime slot = LocalDateTime.now().plusDays(12).withHour(9).withMinute(0).withSecond(0).withNano(0);
+            LocalDateTime precise = slot.plusHours(2).withSecond(17).withNano(5);
+            
+            Appointment first = appointmentService.bookAppointment(doctor.getId(), patient.getId(), slot, "Scan");
+            Appointment second = appointmentService.bookAppointment(doctor.getId(), patient.getId(), precise, null);
+            assertTrue("Columnar store rejects overlapping bookings",
+                       isRejected(appointmentService, doctor, patient, slot.plusMinutes(10)));
+            Appointment copy = appointmentService.getAppointmentById(first.getAppointmentId().toLowerCase());
+            assertTrue("Columnar store rebuilds appointments", copy != first && "Scan".equals(copy.getNotes())
+                       && slot.equals(copy.getAppointmentDateTime()) && doctor.getId().equals(copy.getDoctorId()));
+            assertTrue("Columnar store keeps sub-minute times",
+                       precise.equals(appointmentService.getAppointmentById(second.getAppointmentId()).getAppointmentDateTime()));
+            
+            appointmentService.rescheduleAppointment(first.getAppointmentId(), slot.plusHours(1));
+            appointmentService.cancelAppointment(second.getAppointmentId());
+            assertTrue("Columnar updates are written back", appointmentService.getAppointmentById(first.getAppointmentId())
+                       .getAppointmentDateTime().equals(slot.plusHours(1)));
+            assertTrue("Released slots can be booked again",
+                       !isRejected(appointmentService, doctor, patient, precise.withSecond(0).withNano(0)));
+            assertTrue("Columnar doctor scan", appointmentService.getAppointmentsByDoctor(doctor.getId()).size() == 3);
+            assertTrue("Columnar status scan",
+                       appointmentService.getAppointmentsByStatus(AppointmentStatus.CANCELLED).size() == 1
+                       && store.countByIndex(ColumnarAppointmentStore.STATUS_COLUMN, AppointmentStatus.SCHEDULED) == 2);
+            List<Appointment> window = appointmentService.getDoctorAppointmentsBetween(doctor.getId(), slot, slot.plusHours(3));
+            assertTrue("Columnar range scan is in time order", window.size() == 3
+                       && window.get(0).getAppointmentDateTime().equals(slot.plusHours(1))
+                       && window.get(1).getAppointmentDateTime().equals(precise.withSecond(0).withNano(0)));
+            assertTrue("Columnar range end is exclusive",
+                       appointmentService.getAppointmentsBetween(slot.plusHours(1), slot.plusHours(2),
+                                                               AppointmentStatus.SCHEDULED).size() == 1);
+            
+            store.add(new Appointment("APT5", doctor.getId(), patient.getId(), slot, AppointmentStatus.COMPLETED, null));
+            store.add(new Appointment("Legacy-1", doctor.getId(), patient.getId(), slot, AppointmentStatus.COMPLETED, null));
+            assertTrue("Keys added out of order are found", store.containsKey("apt5") && store.containsKey("LEGACY-1")
+                       && store.containsKey(first.getAppointmentId()));
+            assertTrue("Removed rows disappear", store.removeByKey("APT5") && !store.containsKey("APT5")
+                       && store.size() == 4 && store.view().size() == 4 && store.getAll().size() == 4);
+            store.add(new Appointment("APT5", doctor.getId(), patient.getId(), slot, AppointmentStatus.CANCELLED, null));
+            assertTrue("Removed keys can be added again",
+                       store.findByKey("APT5").map(a -> a.getStatus() == AppointmentStatus.CANCELLED).orElse(false));
+            try {
+                store.update(null, a -> a.setStatus(AppointmentStatus.CANCELLED));
+                fail("Updating a null appointment should fail");
+            } catch (NullPointerException e) {
+                assertTrue("Updating a null appointment is rejected", "appointment cannot be null".equals(e.getMessage()));
+            }
+        } catch (Exception e) {
+            fail("Columnar store test failed: " + e);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testOffHeapPatients() {
+        System.out.println("--- Testing Off-Heap Patient Store ---");
+        
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("meditrack-patients");
+            List<String> bulky = new ArrayList<>();
+            String thirdId;
+            try (OffHeapPatientStore store = new OffHeapPatientStore(dir, 2)) {
+                PatientService patientService = new PatientService(store);
+                Patient first = patientService.registerPatient("Ada Mapped", "ada@example.com", "8765432100", 36,
+                                                               "Asthma \u2013 mild");
+                Patient second = patientService.registerPatient("Ben Mapped", "ben@example.com", "8765432101", 52, null);
+                Patient third = patientService.registerPatient("Cy Mapped", "cy@example.com", "8765432102", 19, "None");
+                thirdId = third.getId();
+                assertTrue("Off-heap store writes both files", Files.size(dir.resolve(OffHeapPatientStore.HEADER_FILE)) > 0
+                           && Files.size(dir.resolve(OffHeapPatientStore.HEAP_FILE)) > 0);
+                
+                Patient copy = patientService.getPatientById(first.getId().toLowerCase()).orElse(null);
+                assertTrue("Off-heap patients are decoded on demand", copy != null && copy != first
+                           && "Asthma \u2013 mild".equals(copy.getMedicalHistory()) && copy.getAge() == 36
+                           && first.getId().equals(copy.getId()));
+                assertTrue("Decoded patients are cached", patientService.getPatientById(first.getId()).orElse(null) == copy);
+                assertTrue("Null fields survive the round trip",
+                           patientService.getPatientById(second.getId()).map(p -> p.getMedicalHistory() == null).orElse(false));
+                patientService.getPatientById(third.getId());
+                assertTrue("The hot cache is bounded", store.getCachedCount() == 2);
+                
+                patientService.updatePatient(second.getId(), "ben.new@example.com", "8765432109");
+                patientService.updateMedicalHistory(third.getId(), "Fracture, healed");
+                assertTrue("Updates are written back", patientService.getPatientById(second.getId())
+                           .map(p -> "ben.new@example.com".equals(p.getEmail())).orElse(false));
+                store.clear();
+                assertTrue("Clearing empties the store", store.isEmpty() && !store.containsKey(first.getId()));
+                store.add(first);
+                store.add(second);
+                store.add(third);
+                store.addIndex("age", Patient::getAge);
+                assertTrue("Off-heap index holds keys", store.countByIndex("age", 19) == 1
+                           && store.findByIndex("age", 36).get(0).getName().equals("Ada Mapped"));
+                store.update(store.findByKey(third.getId()).get(), p -> p.setAge(20));
+                assertTrue("Updates move index entries", store.countByIndex("age", 19) == 0
+                           && store.countByIndex("age", 20) == 1);
+                
+                assertTrue("Removed patients are skipped", patientService.removePatient(second.getId())
+                           && store.size() == 2 && patientService.getAllPatients().size() == 2
+                           && !store.containsKey(second.getId()) && store.getAll().get(1).getId().equals(third.getId()));
+                assertTrue("Scans decode off-heap records", patientService.getPatientsByAgeRange(30, 40).size() == 1);
+                
+                StringBuilder history = new StringBuilder();
+                for (int i = 0; i < 200_000; i++) {
+                    history.append((char) ('a' + i % 26));
+                }
+                for (int i = 0; i < 100; i++) {
+                    String grown = history.toString() + i;
+                    store.update(store.findByKey(first.getId()).get(), p -> p.setMedicalHistory(grown));
+                }
+                assertTrue("Growing rewrites are compacted away", store.getAll().get(0).getMedicalHistory()
+                           .equals(history + "99") && store.getOffHeapBytes() < (1 << 21));
+                long settled = store.getOffHeapBytes();
+                store.update(store.findByKey(third.getId()).get(), p -> p.setMedicalHistory("Well"));
+                assertTrue("Text that fits is rewritten in place", store.getOffHeapBytes() == settled
+                           && "Well".equals(store.findByKey(third.getId()).get().getMedicalHistory()));
+                
+                for (int i = 0; i < 100; i++) {
+                    bulky.add(patientService.registerPatient("Bulk Mapped", "bulk" + i + "@example.com",
+                                                             String.valueOf(8_765_400_000L + i), 40,
+                                                             history.toString()).getId());
+                }
+                boolean intact = store.size() == 102;
+                for (Patient patient : store.view()) {
+                    intact &= patient.getMedicalHistory() == null || patient.getMedicalHistory().startsWith(history.toString())
+                              || patient.getMedicalHistory().equals("Well");
+                }
+                assertTrue("Text crossing mapped segments round-trips", intact && store.getOffHeapBytes() > (1 << 24));
+                for (String id : bulky.subList(0, 95)) {
+                    patientService.removePatient(id);
+                }
+                store.compact();
+                assertTrue("Compaction returns whole segments to the file system",
+                           store.getOffHeapBytes() < (1 << 21) && Files.size(dir.resolve(OffHeapPatientStore.HEAP_FILE)) == (1 << 24)
+                           && store.findByKey(bulky.get(99)).map(p -> p.getMedicalHistory().equals(history.toString()))
+                                   .orElse(false)
+                           && store.getAll().get(0).getId().equals(first.getId()));
+            }
+            
+            try (OffHeapPatientStore reopened = new OffHeapPatientStore(dir, 2)) {
+                PatientService patientService = new PatientService(reopened);
+                assertTrue("Reopening reads the patients back", reopened.size() == 7
+                           && patientService.getPatientByName("Cy Mapped").map(p -> p.getAge() == 20).orElse(false)
+                           && patientService.getPatientsByAgeRange(40, 40).size() == 5);
+                try {
+                    patientService.registerPatient("Cy Again", "cy@example.com", "8765432188", 20, null);
+                    fail("Reopened patients should keep their contacts");
+                } catch (DuplicatePatientException e) {
+                    assertTrue("Reopened patients keep their contacts", thirdId.equals(e.getExistingPatientId()));
+                }
+                Patient later = patientService.registerPatient("Dee Mapped", "dee@example.com", "8765432189", 28, null);
+                assertTrue("Reopened stores hand out fresh IDs", reopened.size() == 8 && !later.getId().equals(bulky.get(99))
+                           && reopened.findByKey(bulky.get(99)).isPresent());
+            }
+        } catch (Exception e) {
+            fail("Off-heap patient store test failed: " + e);
+        } finally {
+            deleteRecursively(dir);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testPatientCache() {
+        System.out.println("--- Testing Patient Cache ---");
+        
+        LruCache<String, Integer> cache = new LruCache<>(2);
+        cache.put("a", 1);
+        cache.put("b", 2);
+        cache.get("a");
+        cache.put("c", 3);
+        assertTrue("Least recently used entry is evicted", cache.get("b") == null && cache.get("a") == 1
+                   && cache.get("c") == 3);
+        cache.remove("a");
+        LruCache.Stats stats = cache.stats();
+        assertTrue("Cache counts hits, misses and evictions", stats.getHits() == 3 && stats.getMisses() == 1
+                   && stats.getEvictions() == 1 && stats.getSize() == 1 && stats.getCapacity() == 2);
+        assertTrue("Hit ratio covers every lookup", Math.abs(stats.getHitRatio() - 0.75) < 1e-9);
+        assertTrue("Heap store reports no cache", !new PatientService().getCacheStats().isPresent());
+        
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("meditrack-tiers");
+            try (OffHeapPatientStore store = new OffHeapPatientStore(dir, 1)) {
+                PatientService patientService = new PatientService(store);
+                Patient cold = patientService.registerPatient("Cold Case", "cold@example.com", "8765432103", 61, "None");
+                Patient warm = patientService.registerPatient("Warm Case", "warm@example.com", "8765432104", 24, "None");
+                patientService.getPatientById(cold.getId());
+                patientService.getPatientById(warm.getId());
+                patientService.getPatientById(warm.getId());
+                patientService.getPatientById(cold.getId());
+                LruCache.Stats tiers = patientService.getCacheStats().orElse(null);
+                assertTrue("Cold patients are faulted in from disk", tiers != null && tiers.getMisses() == 3
+                           && tiers.getHits() == 1 && tiers.getEvictions() == 2 && tiers.getSize() == 1);
+            }
+        } catch (Exception e) {
+            fail("Patient cache test failed: " + e);
+        } finally {
+            deleteRecursively(dir);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testMedicalHistorySearch() {
+        System.out.println("--- Testing Medical History Search ---");
+        
+        try {
+            PatientService patientService = new PatientService();
+            Patient both = patientService.registerPatient("Dia Hyper", "dh@example.com", "8765432110", 58,
+                                                          "Type 2 diabetes; hypertension since 2015.");
+            Patient sugar = patientService.registerPatient("Dia Only", "do@example.com", "8765432111", 44,
+                                                           "Diabetes, diet controlled");
+            Patient pressure = patientService.registerPatient("Blood Pressure", "bp@example.com", "8765432112", 67,
+                                                              "High blood pressure, hypertensive crisis in 2020");
+            Patient none = patientService.registerPatient("No History", "nh@example.com", "8765432113", 30, null);
+            
+            assertTrue("AND query needs every word",
+                       patientService.searchMedicalHistory("diabetes hypertension").equals(List.of(both)));
+            assertTrue("OR query takes either alternative",
+                       patientService.countMedicalHistoryMatches("hypertension OR pressure") == 2);
+            assertTrue("Phrase query needs adjacent words",
+                       patientService.countMedicalHistoryMatches("\"blood pressure\"") == 1
+                       && patientService.countMedicalHistoryMatches("\"pressure blood\"") == 0);
+            assertTrue("Prefix query matches word starts",
+                       patientService.countMedicalHistoryMatches("hyperten*") == 2
+                       && patientService.countMedicalHistoryMatches("diabetes OR hyperten*") == 3);
+            assertTrue("Search ignores case", patientService.countMedicalHistoryMatches("DIABETES") == 2);
+            
+            patientService.updateMedicalHistory(sugar.getId(), "Asthma");
+            patientService.removePatient(pressure.getId());
+            assertTrue("Index follows history updates and removals",
+                       patientService.countMedicalHistoryMatches("diabetes") == 1
+                       && patientService.countMedicalHistoryMatches("asthma") == 1
+                       && patientService.countMedicalHistoryMatches("hyperten*") == 1);
+            assertTrue("AI helper reports shared chronic conditions",
+                       AIHelper.analyzeMedicalHistory(patientService, both.getId()).contains("diabetes (1 patients)")
+                       && AIHelper.analyzeMedicalHistory(patientService, none.getId()).contains("stable")
+                       && AIHelper.analyzeMedicalHistory(patientService, pressure.getId()) == null);
+            
+            InvertedIndex index = new InvertedIndex();
+            for (int i = 0; i < 3000; i++) {
+                index.put(i + 1, i % 2 == 0 ? "renal stones" : "renal failure stage " + i);
+            }
+            for (int i = 0; i < 2500; i++) {
+                index.remove(i + 1);
+            }
+            long[] stones = index.phrase("renal stones");
+            assertTrue("Compaction keeps live documents in order", stones.length == 250 && stones[0] == 2501
+                       && index.allOf("renal").length == 500 && index.prefix("stage").length == 250);
+            assertTrue("Compaction drops retired words", index.termCount() < 1000);
+        } catch (Exception e) {
+            fail("Medical history search test failed: " + e);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testNameSearch() {
+        System.out.println("--- Testing Name Search ---");
+        
+        try {
+            PatientService patientService = new PatientService();
+            Patient anita = patientService.registerPatient("Anita Sharma", "anita@example.com", "8765432120", 33, null);
+            Patient sharad = patientService.registerPatient("Sharad Rao", "sharad@example.com", "8765432121", 41, null);
+            Patient shar = patientService.registerPatient("Vikram Shar", "vikram@example.com", "8765432122", 50, null);
+            Patient jose = patientService.registerPatient("Jos\u00e9 Sarmiento", "jose@example.com", "8765432123", 29, null);
+            
+            assertTrue("Prefix search ranks shorter completions first",
+                       patientService.searchPatientsByName("Shar", 10).equals(List.of(shar, sharad, anita)));
+            assertTrue("Prefix search respects the limit", patientService.searchPatientsByName("shar", 1).size() == 1);
+            assertTrue("Fuzzy search tolerates a missing letter",
+                       patientService.searchPatientsByName("Sarma", 5).get(0) == anita);
+            assertTrue("Fuzzy search tolerates swapped letters and accents",
+                       patientService.searchPatientsByName("jose sarmeinto", 5).equals(List.of(jose)));
+            assertTrue("Multi-word prefix needs the other words", patientService.searchPatientsByName("anita sh", 5)
+                       .equals(List.of(anita)) && patientService.searchPatientsByName("vikram rao", 5).isEmpty());
+            assertTrue("Exact lookup uses the index", patientService.getPatientByName("anita SHARMA").orElse(null) == anita
+                       && !patientService.getPatientByName("Anita").isPresent());
+            patientService.removePatient(shar.getId());
+            assertTrue("Removed people leave the name index",
+                       patientService.searchPatientsByName("Shar", 10).equals(List.of(sharad, anita)));
+            
+            DoctorService doctorService = new DoctorService();
+            Doctor doctor = doctorService.registerDoctor("Meera Iyer", "meera@example.com", "9876543220",
+                                                         "CARDIOLOGY", "LIC020");
+            assertTrue("Doctors are searchable by name", doctorService.searchDoctorsByName("iyr", 3).isEmpty()
+                       && doctorService.searchDoctorsByName("Meeera", 3).equals(List.of(doctor))
+                       && doctorService.getDoctorByName("Meera Iyer").isPresent());
+            
+            assertTrue("Searchable matches name prefixes", anita.matchesNamePrefix("shar")
+                       && anita.matchesNamePrefix("Anita Sh") && !anita.matchesNamePrefix("nita"));
+            assertTrue("Searchable matches misspelt names", !anita.matchesNameFuzzy("Aneeta Sharma")
+                       && anita.matchesNameFuzzy("Anitta Shamra") && !anita.matchesNameFuzzy(""));
+            assertTrue("Edit distance counts swaps once", NameMatcher.editDistance("sharma", "shamra", 2) == 1
+                       && NameMatcher.editDistance("abcdef", "uvwxyz", 2) == 3);
+        } catch (Exception e) {
+            fail("Name search test failed: " + e);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testAgeIndex() {
+        System.out.println("--- Testing Age Index ---");
+        
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("meditrack-ages");
+            String movedId;
+            try (ClinicPersistence clinic = ClinicPersistence.open(dir, Journal.FsyncPolicy.PER_OP)) {
+                PatientService patientService = clinic.getPatientService();
+                Patient child = patientService.registerPatient("Age Child", "child@example.com", "8765432130", 9, null);
+                Patient adult = patientService.registerPatient("Age Adult", "adult@example.com", "8765432131", 42, null);
+                Patient senior = patientService.registerPatient("Age Senior", "senior@example.com", "8765432132", 77, null);
+                movedId = adult.getId();
+                
+                assertTrue("Age range comes from the index youngest first",
+                           patientService.getPatientsByAgeRange(1, 100).equals(List.of(child, adult, senior)));
+                assertTrue("Age range counts without retrieval", patientService.countPatientsByAgeRange(40, 80) == 2
+                           && patientService.countPatientsByAgeRange(10, 40) == 0);
+                
+                assertTrue("Age updates move the patient", patientService.updateAge(movedId, 43)
+                           && patientService.countPatientsByAgeRange(42, 42) == 0
+                           && patientService.getPatientsByAgeRange(43, 43).get(0).getAge() == 43);
+                assertTrue("Unknown patients are not updated", !patientService.updateAge("PAT0", 30));
+                try {
+                    patientService.updateAge(movedId, 151);
+                    fail("Invalid age should be rejected");
+                } catch (InvalidDataException e) {
+                    assertTrue("Invalid age is rejected", patientService.getAgeHistogram()[43] == 1);
+                }
+                patientService.removePatient(child.getId());
+                int[] histogram = patientService.getAgeHistogram();
+                assertTrue("Histogram follows removals", histogram.length == 151
+                           && histogram[9] == 0 && histogram[77] == 1 && Arrays.stream(histogram).sum() == 2);
+            }
+            try (ClinicPersistence clinic = ClinicPersistence.open(dir, Journal.FsyncPolicy.PER_OP)) {
+                assertTrue("Age updates are replayed from the journal",
+                           clinic.getPatientService().getPatientsByAgeRange(43, 43).size() == 1
+                           && clinic.getPatientService().getPatientById(movedId).get().getAge() == 43);
+            }
+            
+            AgeIndex index = new AgeIndex();
+            for (int i = 1; i <= 1000; i++) {
+                index.put(i, i % 100);
+            }
+            index.put(5000, 0);
+            index.put(5001, 200);
+            for (int i = 1; i <= 1000; i += 2) {
+                index.remove(i);
+            }
+            long[] fifties = index.between(50, 50);
+            assertTrue("Removal keeps the other keys of a bucket", fifties.length == 10 && index.size() == 502
+                       && Arrays.stream(fifties).allMatch(key -> key % 100 == 50));
+            assertTrue("Ages outside the buckets are still found", index.countBetween(0, 0) == 11
+                       && index.between(150, 300).length == 1 && index.countBetween(-5, 500) == 502);
+        } catch (Exception e) {
+            fail("Age index test failed: " + e);
+        } finally {
+            deleteRecursively(dir);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testDoctorAvailabilityIndex() {
+        System.out.println("--- Testing Doctor Availability Index ---");
+        
+        try {
+            DoctorService doctorService = new DoctorService(new ConcurrentDataStore<>(Doctor::getId));
+            Doctor heart = doctorService.registerDoctor("Dr. Heart", "heart@example.com", "9876543230",
+                                                        "CARDIOLOGY", "LIC030");
+            Doctor pulse = doctorService.registerDoctor("Dr. Pulse", "pulse@example.com", "9876543231",
+                                                        "Cardiology", "LIC031", DoctorAvailability.ON_LEAVE);
+            Doctor skin = doctorService.registerDoctor("Dr. Skin", "skin@example.com", "9876543232",
+                                                       "DERMATOLOGY", "LIC032");
+            
+            assertTrue("Available doctors by specialty",
+                       doctorService.getAvailableDoctors("cardiology").equals(List.of(heart)));
+            assertTrue("Doctors by specialty and state",
+                       doctorService.getDoctors("CARDIOLOGY", DoctorAvailability.ON_LEAVE).equals(List.of(pulse))
+                       && doctorService.getDoctors(null, DoctorAvailability.ON_LEAVE).isEmpty());
+            
+            doctorService.setDoctorAvailability(pulse.getId(), DoctorAvailability.AVAILABLE);
+            doctorService.setDoctorAvailability(heart.getId(), DoctorAvailability.BUSY);
+            assertTrue("Availability changes move doctors between partitions",
+                       doctorService.getAvailableDoctors("CARDIOLOGY").equals(List.of(pulse))
+                       && doctorService.countDoctors("cardiology", DoctorAvailability.BUSY) == 1
+                       && doctorService.countDoctors("CARDIOLOGY", DoctorAvailability.ON_LEAVE) == 0);
+            
+            doctorService.removeDoctor(skin.getId());
+            Map<DoctorAvailability, Integer> counts = doctorService.getAvailabilityCounts();
+            assertTrue("Counters cover every state", counts.size() == DoctorAvailability.values().length
+                       && counts.get(DoctorAvailability.AVAILABLE) == 1 && counts.get(DoctorAvailability.BUSY) == 1
+                       && counts.get(DoctorAvailability.NOT_AVAILABLE) == 0);
+        } catch (Exception e) {
+            fail("Doctor availability index test failed: " + e);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testDuplicatePatients() {
+        System.out.println("--- Testing Duplicate Patient Detection ---");
+        
+        BloomFilter filter = new BloomFilter(1000, 0.01);
+        for (long i = 0; i < 1000; i++) {
+            filter.add(UniqueIndex.fingerprint("user" + i + "@example.com"));
+        }
+        int falsePositives = 0;
+        boolean allFound = true;
+        for (long i = 0; i < 1000; i++) {
+            allFound &= filter.mightContain(UniqueIndex.fingerprint("user" + i + "@example.com"));
+            if (filter.mightContain(UniqueIndex.fingerprint("other" + i + "@example.com"))) {
+                falsePositives++;
+            }
+        }
+        assertTrue("Bloom filter has no false negatives", allFound);
+        assertTrue("Bloom filter false positives stay rare", falsePositives < 50);
+        
+        UniqueIndex index = new UniqueIndex();
+        assertTrue("Unique index claims free values", index.claim("a@example.com", 7)
+                   && index.claim("a@example.com", 7) && !index.claim("a@example.com", 8));
+        index.release("a@example.com", 8);
+        assertTrue("Only the owner releases a value", index.owner("a@example.com") == 7);
+        index.release("a@example.com", 7);
+        assertTrue("Released values are free", index.owner("a@example.com") == EntityKey.NONE && index.size() == 0);
+        assertTrue("Reserving a value reports its previous owner", index.putIfAbsent("e@example.com", 5) == EntityKey.NONE
+                   && index.putIfAbsent("e@example.com", 6) == 5 && index.owner("e@example.com") == 5);
+        index.release("e@example.com", 5);
+        index.addBloomFilter(2);
+        boolean filtered = index.hasBloomFilter() && index.claim("b@example.com", 1) && index.claim("c@example.com", 2)
+                           && index.hasBloomFilter() && index.owner("c@example.com") == 2;
+        index.claim("d@example.com", 3);
+        assertTrue("Bloom filter is dropped once past its sizing", filtered && !index.hasBloomFilter()
+                   && index.owner("d@example.com") == 3);
+        index.addBloomFilter(10);
+        index.removeBloomFilter();
+        assertTrue("Bloom filter can be removed", !index.hasBloomFilter() && index.owner("b@example.com") == 1);
+        
+        Path dir = null;
+        try {
+            PatientService patientService = new PatientService();
+            Patient first = patientService.registerPatient("Dup First", "dup.first@example.com", "8765432140", 30, null);
+            Patient second = patientService.registerPatient("Dup Second", "dup.second@example.com", "8765432141", 31,
+                                                            null);
+            try {
+                patientService.registerPatient("Dup Copy", "DUP.First@Example.com", "8765432142", 30, null);
+                fail("Registering a known email should fail");
+            } catch (DuplicatePatientException e) {
+                assertTrue("Duplicate email is rejected with the existing patient",
+                           first.getId().equals(e.getExistingPatientId()));
+            }
+            try {
+                patientService.registerPatient("Dup Copy", "dup.copy@example.com", "8765432141", 30, null);
+                fail("Registering a known phone should fail");
+            } catch (DuplicatePatientException e) {
+                assertTrue("Duplicate phone is rejected with the existing patient",
+                           second.getId().equals(e.getExistingPatientId()));
+            }
+            try {
+                patientService.updatePatient(second.getId(), "dup.first@example.com", "8765432141");
+                fail("Taking another patient's email should fail");
+            } catch (DuplicatePatientException e) {
+                assertTrue("Updates cannot take another patient's email", true);
+            }
+            assertTrue("Updates may keep the patient's own contacts",
+                       patientService.updatePatient(second.getId(), "dup.second@example.com", "8765432143"));
+            Patient reused = patientService.registerPatient("Dup Reuse", "dup.reuse@example.com", "8765432141", 40,
+                                                            null);
+            patientService.removePatient(first.getId());
+            Patient after = patientService.registerPatient("Dup After", "dup.first@example.com", "8765432140", 30,
+                                                           null);
+            assertTrue("Released and removed contacts can be registered again", reused != null && after != null);
+            
+            dir = Files.createTempDirectory("meditrack-duplicates");
+            Path csv = dir.resolve("patients.csv");
+            Files.write(csv, ("Row One,row.one@example.com,8765432150,20,None\n"
+                    + "Row Two,ROW.ONE@example.com,8765432151,21,None\n"
+                    + "Row Three,row.three@example.com,8765432140,22,None\n"
+                    + "Row Four,row.four@example.com,8765432154,23,None\n").getBytes(StandardCharsets.UTF_8));
+            BulkImporter.ImportReport report = new BulkImporter(patientService, new DoctorService()).importPatients(csv);
+            assertTrue("Bulk import skips duplicate rows", report.getImported() == 2
+                       && report.getErrors().size() == 2 && report.getErrors().get(0).getLine() == 2
+                       && report.getErrors().get(1).getLine() == 3);
+            
+            DataStore<Patient> restored = new DataStore<>(Patient::getId);
+            restored.add(new Patient("PAT9101", "Old A", "old.a@example.com", "8765432160", 50, null));
+            restored.add(new Patient("PAT9102", "Old B", "other@example.com", "8765432161", 51, null));
+            restored.add(new Patient("PAT9103", "Old C", "OLD.A@example.com", "8765432162", 52, null));
+            restored.add(new Patient("PAT9104", "Old D", "old.d@example.com", "87654 32162", 53, null));
+            List<List<Patient>> groups = new PatientService(restored).findDuplicates();
+            assertTrue("Dedupe report merges chained duplicates", groups.size() == 1 && groups.get(0).size() == 3
+                       && groups.get(0).get(0).getId().equals("PAT9101")
+                       && groups.get(0).get(2).getId().equals("PAT9104"));
+            assertTrue("Registered patients have no duplicates", patientService.findDuplicates().isEmpty());
+            
+            // journals written before the check, or by a racing registration, can hold duplicates
+            Path journalDir = dir.resolve("journal");
+            try (Journal journal = Journal.open(journalDir, Journal.FsyncPolicy.PER_OP, 0)) {
+                journal.append("REGISTER_PATIENT", "PAT9201", "Old E", "old.e@example.com", "8765432180", "40", null);
+                journal.append("REGISTER_PATIENT", "PAT9202", "Old F", "old.e@example.com", "8765432181", "41", null);
+                journal.append("UPDATE_PATIENT", "PAT9202", "old.e@example.com", "8765432180");
+                journal.append("UPDATE_AGE", "PAT9202", "42");
+            }
+            try (ClinicPersistence clinic = ClinicPersistence.open(journalDir, Journal.FsyncPolicy.PER_OP)) {
+                Patient replayed = clinic.getPatientService().getPatientById("PAT9202").orElse(null);
+                assertTrue("Replay keeps duplicates already in the journal", replayed != null
+                           && "8765432180".equals(replayed.getPhoneNumber()) && replayed.getAge() == 42
+                           && clinic.getPatientService().findDuplicates().size() == 1);
+            }
+        } catch (InvalidDataException | IOException e) {
+            fail("Duplicate patient test failed: " + e);
+        } finally {
+            deleteRecursively(dir);
+        }
+        
+        System.out.println();
+    }
+    
+    private static void testAppointmentStatistics() {
+        System.out.println("--- Testing Appointment Statistics ---");
+        
+        Path dir = null;
+        try {
+            dir = Files.createTempDirectory("meditrack-stats");
+            LocalDateTime day = LocalDateTime.now().plusDays(20).withHour(9).withMinute(0).withSecond(0).withNano(0);
+            String doctorId;
+            try (ClinicPersistence clinic = ClinicPersistence.open(dir, Journal.FsyncPolicy.PER_OP)) {
+                Doctor doctor = clinic.getDoctorService().registerDoctor("Dr. Count", "count@example.com",
+                                                                         "9876543240", "NEUROLOGY", "LIC040");
+                Doctor other = clinic.getDoctorService().registerDoctor("Dr. Tally", "tally@example.com",
+                                                                        "9876543241", "NEUROLOGY", "LIC041");
+                Patient patient = clinic.getPatientService().registerPatient("Stat Patient", "stat@example.com",
+                                                                             "8765432170", 45, null);
+                doctorId = doctor.getId();
+                AppointmentService appointments = clinic.getAppointmentService();
+                Appointment first = appointments.bookAppointment(doctorId, patient.getId(), day, null);
+                Appointment second = appointments.bookAppointment(doctorId, patient.getId(), day.plusHours(1), null);
+                Appointment third = appointments.bookAppointment(other.getId(), patient.getId(), day, null);
+                assertTrue("Bookings are counted as scheduled",
+                           appointments.countAppointments(AppointmentStatus.SCHEDULED) == 3
+                           && appointments.getStatusCountsForDoctor(doctorId).get(AppointmentStatus.SCHEDULED) == 2);
+                
+                appointments.cancelAppointment(first.getAppointmentId());
+                appointments.completeAppointment(third.getAppointmentId());
+                appointments.rescheduleAppointment(second.getAppointmentId(), day.plusDays(1));
+                Map<AppointmentStatus, Long> counts = appointments.getStatusCounts();
+                assertTrue("Status changes move counts", counts.get(AppointmentStatus.SCHEDULED) == 1
+                           && counts.get(AppointmentStatus.CANCELLED) == 1 && counts.get(AppointmentStatus.COMPLETED) == 1);
+                Map<AppointmentStatus, Long> today = appointments.getStatusCountsForDay(day.toLocalDate());
+                assertTrue("Reschedules move daily counts", today.get(AppointmentStatus.SCHEDULED) == 0
+                           && today.get(AppointmentStatus.CANCELLED) == 1
+                           && appointments.getStatusCountsForDay(day.toLocalDate().plusDays(1))
+                                   .get(AppointmentStatus.SCHEDULED) == 1);
+                assertTrue("Unknown doctors count zero",
+                           appointments.getStatusCountsForDoctor("DOC0").values().stream().allMatch(c -> c == 0));
+            }
+            try (ClinicPersistence clinic = ClinicPersistence.open(dir, Journal.FsyncPolicy.PER_OP)) {
+                AppointmentService appointments = clinic.getAppointmentService();
+                Map<AppointmentStatus, Long> doctorCounts = appointments.getStatusCountsForDoctor(doctorId);
+                assertTrue("Replayed journal rebuilds the counts",
+                           appointments.getStatusCounts().equals(Map.of(AppointmentStatus.SCHEDULED, 1L,
+                                   AppointmentStatus.CANCELLED, 1L, AppointmentStatus.COMPLETED, 1L))
+                           && doctorCounts.get(AppointmentStatus.SCHEDULED) == 1
+                           && doctorCounts.get(AppointmentStatus.CANCELLED) == 1);
+            }
+            
+            // reschedules racing cancellations must not leave the counters off
+            DoctorService doctors = new DoctorService(new ConcurrentDataStore<>(Doctor::getId));
+            PatientService patients = new PatientService(new ConcurrentDataStore<>(Patient::getId));
+            AppointmentService racing = new AppointmentService(doctors, patients,
+                    new ConcurrentDataStore<>(Appointment::getAppointmentId));
+            Doctor busy = doctors.registerDoctor("Dr. Race", "race@example.com", "9876543242", "NEUROLOGY", "LIC042");
+            Patient racer = patients.registerPatient("Race Patient", "race.patient@example.com", "8765432171", 30,
+                                                     null);
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                ids.add(racing.bookAppointment(busy.getId(), racer.getId(), day.plusMinutes(30L * i), null)
+                              .getAppointmentId());
+            }
+            ExecutorService pool = Executors.newFixedThreadPool(2);
+            Future<?> rescheduling = pool.submit(() -> {
+                for (int i = 0; i < ids.size(); i++) {
+                    racing.rescheduleAppointment(ids.get(i), day.plusDays(30).plusMinutes(30L * i));
+                }
+                return null;
+            });
+            Future<?> cancelling = pool.submit(() -> {
+                for (String id : ids) {
+                    racing.cancelAppointment(id);
+                }
+                return null;
+            });
+            rescheduling.get();
+            cancelling.get();
+            pool.shutdown();
+            Map<AppointmentStatus, Long> raced = racing.getStatusCounts();
+            long onDays = 0;
+            for (int d = 0; d <= 40; d++) {
+                onDays += racing.getStatusCountsForDay(day.toLocalDate().plusDays(d)).get(AppointmentStatus.CANCELLED);
+            }
+            assertTrue("Concurrent reschedules and cancellations keep counts exact",
+                       raced.get(AppointmentStatus.CANCELLED) == 200 && raced.get(AppointmentStatus.SCHEDULED) == 0
+                       && onDays == 200);
+            int stillHeld = 0;
+            for (int i = 0; i < ids.size(); i++) {
+                if (isRejected(racing, busy, racer, day.plusMinutes(30L * i))
+                        || isRejected(racing, busy, racer, day.plusDays(30).plusMinutes(30L * i))) {
+                    stillHeld++;
+                }
+            }
+            assertTrue("Cancelling during a reschedule frees the slot it moved to", stillHeld == 0);
+        } catch (Exception e) {
+            fail("Appointment statistics test failed: " + e);
+        } finally {
+            deleteRecursively(dir);
+        }
+        
+        System.out.println();
+    }
+    
     // Test utilities
+    private static void deleteRecursively(Path dir) {
+        if (dir == null) {
+            return;
+        }
+        try (var paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            // leave the temporary directory behind
+        }
+    }
+    
     private static void assertTrue(String testName, boolean condition) {
         if (condition) {
             System.out.println("[✓ PASS] " + testName);
@@ -0,0 +1,71 @@
+package com.airtribe.meditrack.benchmark;
+
+import com.airtribe.meditrack.service.PatientService;
+
+import java.util.Random;
+import java.util.stream.Collectors;
+
+/**
+ * Manual comparison of age-band queries answered by scanning every patient against
+ * the age index, for a dashboard of ten-year bands retrieved and counted and for a
+ * single year of age. The scan copies its matches into lists, as the service did
+ * before the index.
+ * Run with: java -cp target/classes:target/test-classes com.airtribe.meditrack.benchmark.AgeRangeBenchmark [count]
+ */
+public class AgeRangeBenchmark {
+    
+    private static final int ROUNDS = 5;
+    
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        PatientService patientService = new PatientService();
+        Random random = new Random(7);
+        for (int i = 0; i < count; i++) {
+            patientService.registerPatient("Patient " + i, "p" + i + "@example.com",
+                                           String.valueOf(9_000_000_000L + i), 1 + random.nextInt(100), null);
+        }
+        
+        long scanNanos = Long.MAX_VALUE;
+        long rangeNanos = Long.MAX_VALUE;
+        long countNanos = Long.MAX_VALUE;
+        long narrowScanNanos = Long.MAX_VALUE;
+        long narrowNanos = Long.MAX_VALUE;
+        long checksum = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int band = 0; band < 100; band += 10) {
+                int min = band + 1;
+                int max = band + 10;
+                checksum += patientService.getAllPatients().stream()
+                        .filter(p -> p.getAge() >= min && p.getAge() <= max).collect(Collectors.toList()).size();
+            }
+            scanNanos = Math.min(scanNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int band = 0; band < 100; band += 10) {
+                checksum += patientService.getPatientsByAgeRange(band + 1, band + 10).size();
+            }
+            rangeNanos = Math.min(rangeNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            for (int band = 0; band < 100; band += 10) {
+                checksum += patientService.countPatientsByAgeRange(band + 1, band + 10);
+            }
+            countNanos = Math.min(countNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            checksum += patientService.getAllPatients().stream()
+                    .filter(p -> p.getAge() == 42).collect(Collectors.toList()).size();
+            narrowScanNanos = Math.min(narrowScanNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            checksum += patientService.getPatientsByAgeRange(42, 42).size();
+            narrowNanos = Math.min(narrowNanos, System.nanoTime() - start);
+        }
+        System.out.println("========== Age Bands (" + count + " patients, 10 bands) ==========");
+        System.out.printf("%-24s %10.3f ms%n", "scan", scanNanos / 1e6);
+        System.out.printf("%-24s %10.3f ms%n", "index, retrieve", rangeNanos / 1e6);
+        System.out.printf("%-24s %10.3f ms%n", "index, count", countNanos / 1e6);
+        System.out.printf("%-24s %10.3f ms%n", "scan, age 42 only", narrowScanNanos / 1e6);
+        System.out.printf("%-24s %10.3f ms%n", "index, age 42 only", narrowNanos / 1e6);
+        if (checksum == 42) {
+            System.out.println();
+        }
+    }
+}
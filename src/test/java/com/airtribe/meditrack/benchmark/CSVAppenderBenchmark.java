@@ -0,0 +1,59 @@
+package com.airtribe.meditrack.benchmark;
+
+import com.airtribe.meditrack.util.CSVAppender;
+import com.airtribe.meditrack.util.CSVUtil;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Manual throughput comparison of CSVUtil.appendRowToCSV, which opens and closes
+ * the file per row, against a long-lived CSVAppender with and without forcing each batch.
+ * Run with: java -cp target/classes:target/test-classes com.airtribe.meditrack.benchmark.CSVAppenderBenchmark [rows]
+ */
+public class CSVAppenderBenchmark {
+    
+    private interface RowSink {
+        void write(List<String> row) throws IOException;
+    }
+    
+    public static void main(String[] args) throws IOException {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        List<String> row = Arrays.asList("APT3001", "DOC1001", "PAT2001", "2030-01-15T10:30", "SCHEDULED",
+                                         "Follow-up, bring reports");
+        
+        System.out.println("========== CSV Append Throughput (" + rows + " rows) ==========");
+        Path file = Files.createTempFile("meditrack-bench", ".csv");
+        try {
+            // the per-row open/close path is slow; measure it on a tenth of the rows
+            int legacyRows = Math.max(1, rows / 10);
+            report("appendRowToCSV", legacyRows, run(legacyRows, r -> CSVUtil.appendRowToCSV(file.toString(), r), row));
+            
+            for (boolean force : new boolean[] {false, true}) {
+                Files.deleteIfExists(file);
+                long nanos;
+                try (CSVAppender appender = new CSVAppender(file, 64 * 1024, 1000, force)) {
+                    nanos = run(rows, appender::append, row);
+                }
+                report(force ? "CSVAppender (force/batch)" : "CSVAppender", rows, nanos);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+    
+    private static long run(int rows, RowSink sink, List<String> row) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < rows; i++) {
+            sink.write(row);
+        }
+        return System.nanoTime() - start;
+    }
+    
+    private static void report(String name, int rows, long nanos) {
+        System.out.printf("%-28s %12.0f rows/s%n", name, rows * 1e9 / nanos);
+    }
+}
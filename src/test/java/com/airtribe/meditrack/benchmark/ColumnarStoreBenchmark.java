@@ -0,0 +1,99 @@
+package com.airtribe.meditrack.benchmark;
+
+import com.airtribe.meditrack.entity.Appointment;
+import com.airtribe.meditrack.entity.AppointmentStatus;
+import com.airtribe.meditrack.util.AppointmentTimeIndex;
+import com.airtribe.meditrack.util.ColumnarAppointmentStore;
+import com.airtribe.meditrack.util.DataStore;
+import com.airtribe.meditrack.util.EntityKey;
+import com.airtribe.meditrack.util.EntityStore;
+import com.airtribe.meditrack.util.SkipListTimeIndex;
+
+import java.time.LocalDateTime;
+
+/**
+ * Manual comparison of the object-per-appointment store (keyed DataStore with the
+ * appointment service's indexes plus the time index) against the columnar store.
+ * Reports retained heap per appointment, measured as the growth of used heap after
+ * a full collection, and the time of a doctor lookup, a status count and a one-day
+ * range query.
+ * Run with: java -cp target/classes:target/test-classes com.airtribe.meditrack.benchmark.ColumnarStoreBenchmark [count]
+ */
+public class ColumnarStoreBenchmark {
+    
+    private static final int DOCTORS = 200;
+    private static final int PATIENTS = 100_000;
+    private static final int ROUNDS = 5;
+    private static final String[] NOTES = {"Follow-up", "Checkup", "Scan review", null};
+    private static final LocalDateTime BASE = LocalDateTime.of(2030, 1, 1, 9, 0);
+    
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        System.out.println("========== Appointment Stores (" + count + " appointments) ==========");
+        System.out.printf("%-12s %12s %10s %12s %12s %12s%n", "store", "heap MB", "B/appt", "doctor ms",
+                          "count ms", "day ms");
+        
+        long before = usedHeap();
+        DataStore<Appointment> objects = new DataStore<>(Appointment::getAppointmentId);
+        AppointmentTimeIndex timeIndex = new SkipListTimeIndex();
+        fill(objects, timeIndex, count);
+        report("objects", objects, timeIndex, usedHeap() - before, count);
+        objects = null;
+        timeIndex = null;
+        
+        before = usedHeap();
+        ColumnarAppointmentStore columns = new ColumnarAppointmentStore();
+        fill(columns, null, count);
+        report("columnar", columns, columns.timeIndex(), usedHeap() - before, count);
+    }
+    
+    private static void fill(EntityStore<Appointment> store, AppointmentTimeIndex timeIndex, int count) {
+        store.addIndex(ColumnarAppointmentStore.PATIENT_COLUMN, Appointment::getPatientKey);
+        store.addIndex(ColumnarAppointmentStore.DOCTOR_COLUMN, Appointment::getDoctorKey);
+        store.addIndex(ColumnarAppointmentStore.STATUS_COLUMN, Appointment::getStatus);
+        AppointmentStatus[] statuses = AppointmentStatus.values();
+        for (int i = 0; i < count; i++) {
+            Appointment appointment = new Appointment("APT" + (3000 + i), "DOC" + (1000 + i % DOCTORS),
+                                                      "PAT" + (2000 + i % PATIENTS), BASE.plusMinutes(30L * i),
+                                                      statuses[i % statuses.length], NOTES[i % NOTES.length]);
+            store.add(appointment);
+            if (timeIndex != null) {
+                timeIndex.add(appointment);
+            }
+        }
+    }
+    
+    private static void report(String name, EntityStore<Appointment> store, AppointmentTimeIndex timeIndex,
+                               long bytes, int count) {
+        long doctor = EntityKey.of("DOC1007");
+        LocalDateTime day = BASE.plusMinutes(30L * count / 2).withHour(0);
+        long doctorNanos = Long.MAX_VALUE;
+        long countNanos = Long.MAX_VALUE;
+        long dayNanos = Long.MAX_VALUE;
+        long checksum = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            checksum += store.findByIndex(ColumnarAppointmentStore.DOCTOR_COLUMN, doctor).size();
+            doctorNanos = Math.min(doctorNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            checksum += store.countByIndex(ColumnarAppointmentStore.STATUS_COLUMN, AppointmentStatus.CANCELLED);
+            countNanos = Math.min(countNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            checksum += timeIndex.between(day, day.plusDays(1), null).size();
+            dayNanos = Math.min(dayNanos, System.nanoTime() - start);
+        }
+        System.out.printf("%-12s %12.1f %10.1f %12.2f %12.2f %12.2f%n", name, bytes / 1e6, (double) bytes / count,
+                          doctorNanos / 1e6, countNanos / 1e6, dayNanos / 1e6);
+        if (checksum == 42) {
+            System.out.println();
+        }
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,137 @@
+package com.airtribe.meditrack.benchmark;
+
+import com.airtribe.meditrack.entity.Patient;
+import com.airtribe.meditrack.util.ConcurrentDataStore;
+import com.airtribe.meditrack.util.DataStore;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Manual throughput comparison of the data store variants under 1 to 32 threads.
+ * Each thread runs a 90% lookup / 10% remove-and-re-add mix on a shared store.
+ * Run with: java -cp target/classes:target/test-classes com.airtribe.meditrack.benchmark.DataStoreBenchmark
+ */
+public class DataStoreBenchmark {
+    
+    private static final int ENTITIES = 2_000;
+    private static final long RUN_MILLIS = 300;
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32};
+    
+    /**
+     * Minimal operations each contender must support.
+     */
+    private interface Contender {
+        Patient lookup(String id);
+        void rewrite(Patient patient);
+    }
+    
+    public static void main(String[] args) throws InterruptedException {
+        List<Patient> patients = new ArrayList<>();
+        for (int i = 0; i < ENTITIES; i++) {
+            patients.add(new Patient("PAT" + i, "Patient " + i, "p" + i + "@example.com", "9000000000", 30, "None"));
+        }
+        
+        System.out.println("========== DataStore Throughput (ops/s) ==========");
+        System.out.printf("%-8s %18s %18s %18s%n", "threads", "list (locked)", "keyed (locked)", "concurrent");
+        for (int threads : THREAD_COUNTS) {
+            long list = run(listContender(patients), patients, threads);
+            long keyed = run(keyedContender(patients), patients, threads);
+            long concurrent = run(concurrentContender(patients), patients, threads);
+            System.out.printf("%-8d %18d %18d %18d%n", threads, list, keyed, concurrent);
+        }
+    }
+    
+    /**
+     * The pre-index behaviour: a plain list behind one lock, looked up by copying and scanning.
+     */
+    private static Contender listContender(List<Patient> patients) {
+        DataStore<Patient> store = new DataStore<>();
+        patients.forEach(store::add);
+        return new Contender() {
+            @Override
+            public synchronized Patient lookup(String id) {
+                return store.getAll().stream().filter(p -> p.matchesId(id)).findFirst().orElse(null);
+            }
+            
+            @Override
+            public synchronized void rewrite(Patient patient) {
+                store.remove(patient);
+                store.add(patient);
+            }
+        };
+    }
+    
+    private static Contender keyedContender(List<Patient> patients) {
+        DataStore<Patient> store = new DataStore<>(Patient::getId);
+        patients.forEach(store::add);
+        return new Contender() {
+            @Override
+            public synchronized Patient lookup(String id) {
+                return store.findByKey(id).orElse(null);
+            }
+            
+            @Override
+            public synchronized void rewrite(Patient patient) {
+                store.remove(patient);
+                store.add(patient);
+            }
+        };
+    }
+    
+    private static Contender concurrentContender(List<Patient> patients) {
+        DataStore<Patient> store = new ConcurrentDataStore<>(Patient::getId);
+        patients.forEach(store::add);
+        return new Contender() {
+            @Override
+            public Patient lookup(String id) {
+                return store.findByKey(id).orElse(null);
+            }
+            
+            @Override
+            public void rewrite(Patient patient) {
+                store.remove(patient);
+                store.add(patient);
+            }
+        };
+    }
+    
+    private static long run(Contender contender, List<Patient> patients, int threads) throws InterruptedException {
+        LongAdder ops = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        long deadline = System.nanoTime() + RUN_MILLIS * 1_000_000L + 50_000_000L;
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    long local = 0;
+                    while (System.nanoTime() < deadline) {
+                        Patient patient = patients.get(random.nextInt(patients.size()));
+                        if (random.nextInt(10) == 0) {
+                            contender.rewrite(patient);
+                        } else {
+                            contender.lookup(patient.getId());
+                        }
+                        local++;
+                    }
+                    ops.add(local);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            });
+            worker.setDaemon(true);
+            worker.start();
+        }
+        Thread.sleep(50);
+        start.countDown();
+        done.await();
+        return ops.sum() * 1000 / RUN_MILLIS;
+    }
+}
@@ -0,0 +1,61 @@
+package com.airtribe.meditrack.benchmark;
+
+import com.airtribe.meditrack.entity.Patient;
+import com.airtribe.meditrack.service.PatientService;
+import com.airtribe.meditrack.util.Validator;
+
+import java.util.List;
+
+/**
+ * Manual comparison of the duplicate contact check done by scanning every patient
+ * against the unique indexes consulted on registration, plus the time of the
+ * parallel dedupe report.
+ * Run with: java -cp target/classes:target/test-classes com.airtribe.meditrack.benchmark.DuplicateCheckBenchmark [count]
+ */
+public class DuplicateCheckBenchmark {
+    
+    private static final int PROBES = 1_000;
+    
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        PatientService patientService = new PatientService();
+        for (int i = 0; i < count; i++) {
+            patientService.registerPatient("Patient " + i, "p" + i + "@example.com",
+                                           String.valueOf(9_000_000_000L + i), 20 + i % 60, null);
+        }
+        
+        System.out.println("========== Duplicate Check (" + count + " patients) ==========");
+        long start = System.nanoTime();
+        int scanHits = 0;
+        for (int i = 0; i < PROBES; i++) {
+            String email = Validator.normalizeEmail("P" + (i * 7) + "@Example.com");
+            for (Patient patient : patientService.getAllPatients()) {
+                if (email.equals(Validator.normalizeEmail(patient.getEmail()))) {
+                    scanHits++;
+                    break;
+                }
+            }
+        }
+        long scanNanos = System.nanoTime() - start;
+        
+        start = System.nanoTime();
+        int indexHits = 0;
+        for (int i = 0; i < PROBES; i++) {
+            try {
+                patientService.registerPatient("Probe " + i, "P" + (i * 7) + "@Example.com", "8000000000", 30, null);
+            } catch (Exception e) {
+                indexHits++;
+            }
+        }
+        long indexNanos = System.nanoTime() - start;
+        if (scanHits != indexHits) {
+            throw new IllegalStateException("scan found " + scanHits + ", index " + indexHits);
+        }
+        System.out.printf("scan:  %10.3f us per check%n", scanNanos / 1e3 / PROBES);
+        System.out.printf("index: %10.3f us per rejected registration%n", indexNanos / 1e3 / PROBES);
+        
+        start = System.nanoTime();
+        List<List<Patient>> groups = patientService.findDuplicates();
+        System.out.printf("dedupe report: %.2f ms, %d groups%n", (System.nanoTime() - start) / 1e6, groups.size());
+    }
+}
@@ -0,0 +1,118 @@
+package com.airtribe.meditrack.benchmark;
+
+import com.airtribe.meditrack.entity.Appointment;
+import com.airtribe.meditrack.entity.AppointmentStatus;
+import com.airtribe.meditrack.entity.Patient;
+import com.airtribe.meditrack.util.EntityCodec;
+
+import java.io.*;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Manual comparison of EntityCodec against ObjectOutputStream for dumping and
+ * restoring patients and appointments. Reports time per round and bytes written.
+ * Run with: java -cp target/classes:target/test-classes com.airtribe.meditrack.benchmark.EntityCodecBenchmark [count]
+ */
+public class EntityCodecBenchmark {
+    
+    private static final int ROUNDS = 5;
+    
+    private interface Round {
+        byte[] write(List<Object> entities) throws IOException;
+        int read(byte[] data) throws IOException;
+    }
+    
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        List<Object> entities = new ArrayList<>(count * 2);
+        LocalDateTime base = LocalDateTime.of(2030, 1, 1, 9, 0);
+        for (int i = 0; i < count; i++) {
+            entities.add(new Patient("PAT" + (2000 + i), "Patient " + i, "p" + i + "@example.com",
+                                     "9000000000", 20 + i % 60, "Asthma, seasonal allergies"));
+            entities.add(new Appointment("APT" + (3000 + i), "DOC" + (1000 + i % 50), "PAT" + (2000 + i),
+                                         base.plusMinutes(30L * i), AppointmentStatus.SCHEDULED, "Follow-up"));
+        }
+        
+        System.out.println("========== Snapshot Encoding (" + entities.size() + " entities) ==========");
+        System.out.printf("%-20s %12s %12s %14s%n", "format", "write ms", "read ms", "bytes");
+        run("ObjectOutputStream", javaSerialization(), entities);
+        run("EntityCodec", codec(), entities);
+    }
+    
+    private static void run(String name, Round round, List<Object> entities) throws IOException {
+        long writeNanos = Long.MAX_VALUE;
+        long readNanos = Long.MAX_VALUE;
+        byte[] data = null;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            data = round.write(entities);
+            writeNanos = Math.min(writeNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            if (round.read(data) != entities.size()) {
+                throw new IllegalStateException(name + " lost entities");
+            }
+            readNanos = Math.min(readNanos, System.nanoTime() - start);
+        }
+        System.out.printf("%-20s %12d %12d %14d%n", name, writeNanos / 1_000_000, readNanos / 1_000_000,
+                          data.length);
+    }
+    
+    private static Round javaSerialization() {
+        return new Round() {
+            @Override
+            public byte[] write(List<Object> entities) throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(bytes))) {
+                    for (Object entity : entities) {
+                        out.writeObject(entity);
+                    }
+                    out.writeObject(null);
+                }
+                return bytes.toByteArray();
+            }
+            
+            @Override
+            public int read(byte[] data) throws IOException {
+                int n = 0;
+                try (ObjectInputStream in = new ObjectInputStream(
+                        new BufferedInputStream(new ByteArrayInputStream(data)))) {
+                    while (in.readObject() != null) {
+                        n++;
+                    }
+                } catch (ClassNotFoundException e) {
+                    throw new IOException(e);
+                }
+                return n;
+            }
+        };
+    }
+    
+    private static Round codec() {
+        return new Round() {
+            @Override
+            public byte[] write(List<Object> entities) throws IOException {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                try (EntityCodec.Encoder out = new EntityCodec.Encoder(bytes)) {
+                    for (Object entity : entities) {
+                        out.write(entity);
+                    }
+                    out.writeEnd();
+                }
+                return bytes.toByteArray();
+            }
+            
+            @Override
+            public int read(byte[] data) throws IOException {
+                int n = 0;
+                try (EntityCodec.Decoder in = new EntityCodec.Decoder(new ByteArrayInputStream(data))) {
+                    while (in.read() != null) {
+                        n++;
+                    }
+                }
+                return n;
+            }
+        };
+    }
+}
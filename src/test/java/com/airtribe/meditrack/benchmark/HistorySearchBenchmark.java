@@ -0,0 +1,89 @@
+package com.airtribe.meditrack.benchmark;
+
+import com.airtribe.meditrack.entity.Patient;
+import com.airtribe.meditrack.service.PatientService;
+import com.airtribe.meditrack.util.InvertedIndex;
+
+import java.util.Random;
+
+/**
+ * Manual comparison of a medical history query answered by scanning every patient's
+ * history against the same query answered by the inverted index.
+ * Run with: java -cp target/classes:target/test-classes com.airtribe.meditrack.benchmark.HistorySearchBenchmark [count]
+ */
+public class HistorySearchBenchmark {
+    
+    private static final int ROUNDS = 5;
+    private static final String[] CONDITIONS = {
+        "type 2 diabetes", "hypertension", "asthma", "migraine", "high blood pressure", "arthritis",
+        "seasonal allergies", "hypothyroidism", "anaemia", "none reported"
+    };
+    
+    public static void main(String[] args) throws Exception {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+        PatientService patientService = new PatientService();
+        Random random = new Random(7);
+        for (int i = 0; i < count; i++) {
+            String history = CONDITIONS[random.nextInt(CONDITIONS.length)] + "; "
+                             + CONDITIONS[random.nextInt(CONDITIONS.length)] + " since " + (1990 + i % 30);
+            patientService.registerPatient("Patient " + i, "p" + i + "@example.com",
+                                           String.valueOf(9_000_000_000L + i), 20 + i % 60, history);
+        }
+        
+        System.out.println("========== Medical History Search (" + count + " patients) ==========");
+        System.out.printf("%-40s %10s %10s %8s%n", "query", "scan ms", "index ms", "hits");
+        run(patientService, "diabetes hypertension");
+        run(patientService, "asthma OR migraine");
+        run(patientService, "\"blood pressure\"");
+        run(patientService, "hypo*");
+    }
+    
+    private static void run(PatientService patientService, String query) {
+        long scanNanos = Long.MAX_VALUE;
+        long indexNanos = Long.MAX_VALUE;
+        int scanHits = 0;
+        int indexHits = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            scanHits = scan(patientService, query);
+            scanNanos = Math.min(scanNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            indexHits = patientService.countMedicalHistoryMatches(query);
+            indexNanos = Math.min(indexNanos, System.nanoTime() - start);
+        }
+        if (scanHits != indexHits) {
+            throw new IllegalStateException(query + ": scan found " + scanHits + ", index " + indexHits);
+        }
+        System.out.printf("%-40s %10.2f %10.2f %8d%n", query, scanNanos / 1e6, indexNanos / 1e6, indexHits);
+    }
+    
+    /**
+     * Answers the benchmark's query shapes the way a caller without the index would.
+     */
+    private static int scan(PatientService patientService, String query) {
+        int hits = 0;
+        for (Patient patient : patientService.getAllPatients()) {
+            String text = " " + String.join(" ", InvertedIndex.tokenize(patient.getMedicalHistory())) + " ";
+            boolean match;
+            if (query.contains(" OR ")) {
+                match = false;
+                for (String word : query.split(" OR ")) {
+                    match |= text.contains(" " + word + " ");
+                }
+            } else if (query.startsWith("\"")) {
+                match = text.contains(" " + query.replace("\"", "") + " ");
+            } else if (query.endsWith("*")) {
+                match = text.contains(" " + query.substring(0, query.length() - 1));
+            } else {
+                match = true;
+                for (String word : query.split(" ")) {
+                    match &= text.contains(" " + word + " ");
+                }
+            }
+            if (match) {
+                hits++;
+            }
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,186 @@
+package com.airtribe.meditrack.benchmark;
+
+import com.airtribe.meditrack.util.EntityKey;
+import com.airtribe.meditrack.util.LongLongMap;
+import com.airtribe.meditrack.util.LongObjectMap;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Manual comparison of the primitive long-keyed maps against boxed JDK maps, keyed
+ * by packed patient keys. Reports build time, lookup time and retained heap, which
+ * is measured as the growth of used heap after a full collection and so includes
+ * boxed keys and entry nodes. Values are shared, so only map overhead is counted.
+ * Run with: java -cp target/classes:target/test-classes com.airtribe.meditrack.benchmark.LongMapBenchmark [count]
+ */
+public class LongMapBenchmark {
+    
+    private static final int ROUNDS = 5;
+    private static final int LOOKUPS = 2_000_000;
+    private static final Object VALUE = new Object();
+    
+    private interface Contender {
+        Object build(long[] keys);
+        long lookup(Object map, long[] probes);
+    }
+    
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        long[] keys = new long[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = EntityKey.of("PAT" + (2000 + i));
+        }
+        long[] probes = new long[LOOKUPS];
+        Random random = new Random(7);
+        for (int i = 0; i < probes.length; i++) {
+            probes[i] = keys[random.nextInt(count)];
+        }
+        
+        System.out.println("========== Long-Keyed Maps (" + count + " entries) ==========");
+        System.out.printf("%-26s %10s %12s %12s %12s%n", "map", "build ms", "lookup ns", "heap MB", "bytes/entry");
+        run("LinkedHashMap<Long,V>", boxedObjects(true), keys, probes);
+        run("HashMap<Long,V>", boxedObjects(false), keys, probes);
+        run("LongObjectMap<V>", primitiveObjects(), keys, probes);
+        run("HashMap<Long,Long>", boxedLongs(), keys, probes);
+        run("LongLongMap", primitiveLongs(), keys, probes);
+    }
+    
+    private static void run(String name, Contender contender, long[] keys, long[] probes) {
+        long buildNanos = Long.MAX_VALUE;
+        long lookupNanos = Long.MAX_VALUE;
+        long checksum = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            Object map = contender.build(keys);
+            buildNanos = Math.min(buildNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            checksum += contender.lookup(map, probes);
+            lookupNanos = Math.min(lookupNanos, System.nanoTime() - start);
+        }
+        long before = usedHeap();
+        Object retained = contender.build(keys);
+        long bytes = usedHeap() - before;
+        if (contender.lookup(retained, probes) != probes.length) {
+            throw new IllegalStateException(name + " lost entries");
+        }
+        System.out.printf("%-26s %10d %12.1f %12.1f %12.1f%n", name, buildNanos / 1_000_000,
+                          (double) lookupNanos / probes.length, bytes / 1e6, (double) bytes / keys.length);
+        if (checksum == 42) {
+            System.out.println();
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Contender boxedObjects(boolean linked) {
+        return new Contender() {
+            @Override
+            public Object build(long[] keys) {
+                Map<Long, Object> map = linked ? new LinkedHashMap<>() : new HashMap<>();
+                for (long key : keys) {
+                    map.put(key, VALUE);
+                }
+                return map;
+            }
+            
+            @Override
+            public long lookup(Object map, long[] probes) {
+                Map<Long, Object> entries = (Map<Long, Object>) map;
+                long hits = 0;
+                for (long probe : probes) {
+                    if (entries.get(probe) != null) {
+                        hits++;
+                    }
+                }
+                return hits;
+            }
+        };
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Contender primitiveObjects() {
+        return new Contender() {
+            @Override
+            public Object build(long[] keys) {
+                LongObjectMap<Object> map = new LongObjectMap<>();
+                for (long key : keys) {
+                    map.put(key, VALUE);
+                }
+                return map;
+            }
+            
+            @Override
+            public long lookup(Object map, long[] probes) {
+                LongObjectMap<Object> entries = (LongObjectMap<Object>) map;
+                long hits = 0;
+                for (long probe : probes) {
+                    if (entries.get(probe) != null) {
+                        hits++;
+                    }
+                }
+                return hits;
+            }
+        };
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static Contender boxedLongs() {
+        return new Contender() {
+            @Override
+            public Object build(long[] keys) {
+                Map<Long, Long> map = new HashMap<>();
+                for (int i = 0; i < keys.length; i++) {
+                    map.put(keys[i], keys[i % 50]);
+                }
+                return map;
+            }
+            
+            @Override
+            public long lookup(Object map, long[] probes) {
+                Map<Long, Long> links = (Map<Long, Long>) map;
+                long hits = 0;
+                for (long probe : probes) {
+                    if (links.get(probe) != null) {
+                        hits++;
+                    }
+                }
+                return hits;
+            }
+        };
+    }
+    
+    private static Contender primitiveLongs() {
+        return new Contender() {
+            @Override
+            public Object build(long[] keys) {
+                LongLongMap map = new LongLongMap(0, EntityKey.NONE);
+                for (int i = 0; i < keys.length; i++) {
+                    map.put(keys[i], keys[i % 50]);
+                }
+                return map;
+            }
+            
+            @Override
+            public long lookup(Object map, long[] probes) {
+                LongLongMap links = (LongLongMap) map;
+                long hits = 0;
+                for (long probe : probes) {
+                    if (links.get(probe) != EntityKey.NONE) {
+                        hits++;
+                    }
+                }
+                return hits;
+            }
+        };
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
@@ -0,0 +1,73 @@
+package com.airtribe.meditrack.benchmark;
+
+import com.airtribe.meditrack.entity.Patient;
+import com.airtribe.meditrack.util.EntityKey;
+import com.airtribe.meditrack.util.NameIndex;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Manual comparison of name lookups by scanning every patient with the
+ * {@code Searchable} matchers against the trie and trigram name index, over
+ * generated first and last name combinations.
+ * Run with: java -cp target/classes:target/test-classes com.airtribe.meditrack.benchmark.NameSearchBenchmark [count]
+ */
+public class NameSearchBenchmark {
+    
+    private static final int ROUNDS = 5;
+    private static final int LIMIT = 10;
+    private static final String[] FIRST = {
+        "Anita", "Rahul", "Priya", "Vikram", "Meera", "Arjun", "Kavya", "Sanjay", "Divya", "Rohan", "Isha", "Karan"
+    };
+    private static final String[] LAST = {
+        "Sharma", "Verma", "Iyer", "Reddy", "Nair", "Gupta", "Patel", "Rao", "Menon", "Khan", "Das", "Singh"
+    };
+    
+    public static void main(String[] args) {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Random random = new Random(7);
+        List<Patient> patients = new ArrayList<>(count);
+        NameIndex index = new NameIndex();
+        long start = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            // a numbered suffix keeps the vocabulary growing like real surnames do
+            String name = FIRST[random.nextInt(FIRST.length)] + " " + LAST[random.nextInt(LAST.length)]
+                          + (i % 4 == 0 ? "" : " " + LAST[i % LAST.length].toLowerCase() + (i % 5000));
+            Patient patient = new Patient("PAT" + (2000 + i), name, null, null, 30, null);
+            patients.add(patient);
+            index.put(EntityKey.of(patient.getId()), name);
+        }
+        System.out.println("========== Name Search (" + count + " patients, index built in "
+                           + (System.nanoTime() - start) / 1_000_000 + " ms) ==========");
+        System.out.printf("%-16s %-8s %10s %10s %8s%n", "query", "kind", "scan ms", "index ms", "hits");
+        run(patients, index, "Shar", true);
+        run(patients, index, "reddy3", true);
+        run(patients, index, "Sarma", false);
+        run(patients, index, "Vikarm Redy", false);
+    }
+    
+    private static void run(List<Patient> patients, NameIndex index, String query, boolean prefix) {
+        long scanNanos = Long.MAX_VALUE;
+        long indexNanos = Long.MAX_VALUE;
+        int hits = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            int found = 0;
+            for (Patient patient : patients) {
+                if (prefix ? patient.matchesNamePrefix(query) : patient.matchesNameFuzzy(query)) {
+                    if (++found == LIMIT) {
+                        break;
+                    }
+                }
+            }
+            scanNanos = Math.min(scanNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            hits = (prefix ? index.prefix(query, LIMIT) : index.fuzzy(query, LIMIT)).length;
+            indexNanos = Math.min(indexNanos, System.nanoTime() - start);
+        }
+        System.out.printf("%-16s %-8s %10.3f %10.3f %8d%n", query, prefix ? "prefix" : "fuzzy", scanNanos / 1e6,
+                          indexNanos / 1e6, hits);
+    }
+}
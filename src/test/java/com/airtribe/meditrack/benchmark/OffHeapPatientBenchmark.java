@@ -0,0 +1,92 @@
+package com.airtribe.meditrack.benchmark;
+
+import com.airtribe.meditrack.entity.Patient;
+import com.airtribe.meditrack.util.DataStore;
+import com.airtribe.meditrack.util.EntityStore;
+import com.airtribe.meditrack.util.OffHeapPatientStore;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Manual comparison of the heap patient store against the memory-mapped store.
+ * Reports retained heap per patient, measured as the growth of used heap after a
+ * full collection, the bytes written to the mapped files, and the time of random
+ * lookups that mostly miss the hot cache and of a full age scan,
+ * followed by the hot cache's hit ratio and eviction count.
+ * Run with: java -cp target/classes:target/test-classes com.airtribe.meditrack.benchmark.OffHeapPatientBenchmark [count]
+ */
+public class OffHeapPatientBenchmark {
+    
+    private static final int LOOKUPS = 200_000;
+    private static final int ROUNDS = 3;
+    private static final String HISTORY = "Hypertension since 2019; allergic to penicillin; annual review due";
+    
+    public static void main(String[] args) throws IOException {
+        int count = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        System.out.println("========== Patient Stores (" + count + " patients) ==========");
+        System.out.printf("%-10s %10s %10s %12s %12s %10s%n", "store", "heap MB", "B/patient", "mapped MB",
+                          "lookup ns", "scan ms");
+        
+        long before = usedHeap();
+        DataStore<Patient> heap = new DataStore<>(Patient::getId);
+        fill(heap, count);
+        report("heap", heap, usedHeap() - before, 0, count);
+        heap = null;
+        
+        Path dir = Files.createTempDirectory("meditrack-offheap");
+        try {
+            before = usedHeap();
+            try (OffHeapPatientStore mapped = new OffHeapPatientStore(dir)) {
+                fill(mapped, count);
+                report("mapped", mapped, usedHeap() - before, mapped.getOffHeapBytes(), count);
+                System.out.println("cache: " + mapped.getCacheStats());
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+    
+    private static void fill(EntityStore<Patient> store, int count) {
+        for (int i = 0; i < count; i++) {
+            store.add(new Patient("PAT" + (2000 + i), "Patient " + i, "patient" + i + "@example.com",
+                                  String.valueOf(9_000_000_000L + i), 18 + i % 70, HISTORY));
+        }
+    }
+    
+    private static void report(String name, EntityStore<Patient> store, long bytes, long mappedBytes, int count) {
+        Random random = new Random(7);
+        long lookupNanos = Long.MAX_VALUE;
+        long scanNanos = Long.MAX_VALUE;
+        long checksum = 0;
+        for (int r = 0; r < ROUNDS; r++) {
+            long start = System.nanoTime();
+            for (int i = 0; i < LOOKUPS; i++) {
+                checksum += store.findByKey("PAT" + (2000 + random.nextInt(count))).get().getAge();
+            }
+            lookupNanos = Math.min(lookupNanos, System.nanoTime() - start);
+            start = System.nanoTime();
+            checksum += store.stream().filter(p -> p.getAge() >= 30 && p.getAge() <= 40).count();
+            scanNanos = Math.min(scanNanos, System.nanoTime() - start);
+        }
+        System.out.printf("%-10s %10.1f %10.1f %12.1f %12.1f %10.1f%n", name, bytes / 1e6, (double) bytes / count,
+                          mappedBytes / 1e6, (double) lookupNanos / LOOKUPS, scanNanos / 1e6);
+        if (checksum == 42) {
+            System.out.println();
+        }
+    }
+    
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+}
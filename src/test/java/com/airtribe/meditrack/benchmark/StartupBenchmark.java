@@ -0,0 +1,67 @@
+package com.airtribe.meditrack.benchmark;
+
+import com.airtribe.meditrack.exception.InvalidDataException;
+import com.airtribe.meditrack.service.ClinicPersistence;
+import com.airtribe.meditrack.service.PatientService;
+import com.airtribe.meditrack.util.Journal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/**
+ * Manual comparison of restart time with and without a checkpoint.
+ * Registers N patients (default 1,000,000) through the journal, then measures a start
+ * that replays the whole journal against one that loads a snapshot plus a short tail.
+ * Run with: java -Xmx4g -cp target/classes:target/test-classes com.airtribe.meditrack.benchmark.StartupBenchmark [N]
+ */
+public class StartupBenchmark {
+    
+    private static final int TAIL = 10_000;
+    
+    public static void main(String[] args) throws IOException, InvalidDataException {
+        int patients = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Path dir = Files.createTempDirectory("meditrack-startup");
+        try {
+            long start = System.nanoTime();
+            try (ClinicPersistence clinic = ClinicPersistence.open(dir, Journal.FsyncPolicy.PERIODIC)) {
+                register(clinic.getPatientService(), 0, patients);
+            }
+            System.out.println("========== Startup Time (" + patients + " patients) ==========");
+            System.out.printf("%-28s %10d ms%n", "populate", millisSince(start));
+            
+            start = System.nanoTime();
+            try (ClinicPersistence clinic = ClinicPersistence.open(dir, Journal.FsyncPolicy.PERIODIC)) {
+                System.out.printf("%-28s %10d ms (%d records)%n", "full journal replay", millisSince(start),
+                                  clinic.getReplayedRecords());
+                start = System.nanoTime();
+                clinic.checkpoint();
+                System.out.printf("%-28s %10d ms%n", "checkpoint", millisSince(start));
+                register(clinic.getPatientService(), patients, TAIL);
+            }
+            
+            start = System.nanoTime();
+            try (ClinicPersistence clinic = ClinicPersistence.open(dir, Journal.FsyncPolicy.PERIODIC)) {
+                System.out.printf("%-28s %10d ms (%d records)%n", "snapshot + tail replay", millisSince(start),
+                                  clinic.getReplayedRecords());
+            }
+        } finally {
+            try (Stream<Path> paths = Files.walk(dir)) {
+                paths.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+            }
+        }
+    }
+    
+    private static void register(PatientService service, int from, int count) throws InvalidDataException {
+        for (int i = from; i < from + count; i++) {
+            service.registerPatient("Patient " + i, "p" + i + "@example.com", String.format("9%09d", i), 30,
+                                    "None");
+        }
+    }
+    
+    private static long millisSince(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}